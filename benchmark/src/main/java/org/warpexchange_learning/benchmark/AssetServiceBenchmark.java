@@ -0,0 +1,79 @@
+package org.warpexchange_learning.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.UserType;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+import org.warpexchange_learning.tradingengine.assets.AssetService;
+import org.warpexchange_learning.tradingengine.assets.Transfer;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试AssetService.tryTransfer()，用户从users个用户中随机选取，用户数越多，缓存命中率越低
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssetServiceBenchmark {
+
+    @Param({"1000", "1000000"})
+    int users;
+
+    AssetService assetService;
+
+    // 预先装箱的用户ID和随机下标，避免测试中分配:
+    Long[] userIds;
+    int[] randomIndexes;
+    int cursor = 0;
+
+    long amount;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.assetService = new AssetService();
+        this.userIds = new Long[this.users];
+        long initial = FixedPointUtil.toAmount(new BigDecimal("100000000"));
+        for (int i = 0; i < this.users; i++) {
+            this.userIds[i] = 1000L + i;
+            for (AssetEnum asset : AssetEnum.values()) {
+                this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, UserType.DEBT.getInternalUserId(), this.userIds[i], asset, initial, false);
+            }
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        this.randomIndexes = new int[1 << 16];
+        for (int i = 0; i < this.randomIndexes.length; i++) {
+            this.randomIndexes[i] = random.nextInt(this.users);
+        }
+        this.amount = FixedPointUtil.toAmount(new BigDecimal("1.23"));
+    }
+
+    /**
+     * 冻结后立即解冻，对应下单后撤单
+     */
+    @Benchmark
+    public boolean freezeAndUnfreeze() {
+        Long userId = nextUser();
+        boolean ok = this.assetService.tryTransfer(Transfer.AVAILABLE_TO_FROZEN, userId, userId, AssetEnum.USD, this.amount, true);
+        return ok && this.assetService.tryTransfer(Transfer.FROZEN_TO_AVAILABLE, userId, userId, AssetEnum.USD, this.amount, true);
+    }
+
+    /**
+     * 两个随机用户之间转账，对应清算时的资产交换
+     */
+    @Benchmark
+    public boolean transfer() {
+        return this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, nextUser(), nextUser(), AssetEnum.BTC, this.amount, true);
+    }
+
+    Long nextUser() {
+        int index = this.randomIndexes[this.cursor];
+        this.cursor = (this.cursor + 1) & (this.randomIndexes.length - 1);
+        return this.userIds[index];
+    }
+}
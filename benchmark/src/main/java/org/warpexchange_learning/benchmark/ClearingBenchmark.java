@@ -0,0 +1,100 @@
+package org.warpexchange_learning.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warpexchange_learning.common.bean.TradingPair;
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.OrderBookType;
+import org.warpexchange_learning.common.enums.UserType;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+import org.warpexchange_learning.tradingengine.assets.AssetService;
+import org.warpexchange_learning.tradingengine.assets.Transfer;
+import org.warpexchange_learning.tradingengine.clearing.ClearingService;
+import org.warpexchange_learning.tradingengine.match.MatchEngine;
+import org.warpexchange_learning.tradingengine.match.MatchResult;
+import org.warpexchange_learning.tradingengine.match.OrderNode;
+import org.warpexchange_learning.tradingengine.order.OrderService;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试单个交易对处理下单和撤单的完整路径：OrderService冻结资产 -> MatchEngine撮合 -> ClearingService清算，
+ * 与只有一个交易对时的TradingEngineService相同，但不生成推送和持久化对象。
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClearingBenchmark {
+
+    @Param({"TREE_MAP", "PRICE_LEVEL"})
+    OrderBookType orderBookType;
+
+    @Param({"DEEP_BOOK", "THIN_BOOK", "HEAVY_CANCEL", "AGGRESSIVE_SWEEP"})
+    OrderFlow flow;
+
+    AssetService assetService;
+    static final TradingPair PAIR = TradingPair.of("BTC/USD");
+
+    OrderService orderService;
+    MatchEngine matchEngine;
+    ClearingService clearingService;
+
+    OrderFlowGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.assetService = new AssetService();
+        this.orderService = new OrderService(this.assetService);
+        this.matchEngine = new MatchEngine(this.orderBookType);
+        this.clearingService = new ClearingService(this.assetService, this.orderService, PAIR.baseAsset(), PAIR.quoteAsset());
+        // 每个用户充值足够多的资产，保证下单不会因余额不足失败:
+        long amount = FixedPointUtil.toAmount(new BigDecimal("100000000"));
+        for (Long userId : OrderFlowGenerator.users()) {
+            for (AssetEnum asset : AssetEnum.values()) {
+                this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, UserType.DEBT.getInternalUserId(), userId, asset, amount, false);
+            }
+        }
+        this.generator = new OrderFlowGenerator(this.flow, 42);
+        for (int i = 0; i < this.flow.targetSize(); i++) {
+            this.generator.prefill(i);
+            createOrder();
+        }
+    }
+
+    @Benchmark
+    public Object processNext() {
+        if (this.generator.next(bookSize()) == OrderFlowGenerator.CANCEL) {
+            return cancelOrder(this.generator.cancelOrder);
+        }
+        return createOrder();
+    }
+
+    MatchResult createOrder() {
+        OrderFlowGenerator g = this.generator;
+        long seq = g.nextSequenceId();
+        OrderEntity order = this.orderService.createOrder(seq, seq, seq, g.nextUser(), PAIR, g.direction, g.price, g.quantity);
+        if (order == null) {
+            // 余额不足冻结失败，与TradingEngineService.createOrder()一样跳过:
+            return null;
+        }
+        MatchResult result = this.matchEngine.processOrder(seq, order);
+        this.clearingService.clearMatchResult(result);
+        g.afterMatch(order);
+        return result;
+    }
+
+    OrderNode cancelOrder(OrderEntity order) {
+        long seq = this.generator.nextSequenceId();
+        OrderNode node = this.matchEngine.cancel(seq, seq, order);
+        this.clearingService.clearCancelOrder(node);
+        return node;
+    }
+
+    int bookSize() {
+        return this.matchEngine.buyBook.size() + this.matchEngine.sellBook.size();
+    }
+}
@@ -0,0 +1,72 @@
+package org.warpexchange_learning.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.warpexchange_learning.common.enums.OrderBookType;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.tradingengine.match.MatchEngine;
+import org.warpexchange_learning.tradingengine.match.MatchResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只测试MatchEngine：每次调用按订单流执行一次processOrder()或cancel()，不涉及资产和清算。
+ * OrderEntity在每次调用中创建，其分配量可以由generateOnly()单独得到。
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchEngineBenchmark {
+
+    @Param({"TREE_MAP", "PRICE_LEVEL"})
+    OrderBookType orderBookType;
+
+    @Param({"DEEP_BOOK", "THIN_BOOK", "HEAVY_CANCEL", "AGGRESSIVE_SWEEP"})
+    OrderFlow flow;
+
+    MatchEngine matchEngine;
+
+    OrderFlowGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.matchEngine = new MatchEngine(this.orderBookType);
+        this.generator = new OrderFlowGenerator(this.flow, 42);
+        for (int i = 0; i < this.flow.targetSize(); i++) {
+            this.generator.prefill(i);
+            process(this.generator.newOrder());
+        }
+    }
+
+    @Benchmark
+    public Object processNext() {
+        OrderFlowGenerator g = this.generator;
+        if (g.next(bookSize()) == OrderFlowGenerator.CANCEL) {
+            long seq = g.nextSequenceId();
+            return this.matchEngine.cancel(seq, seq, g.cancelOrder);
+        }
+        return process(g.newOrder());
+    }
+
+    /**
+     * 只生成订单流，作为processNext()的基准
+     */
+    @Benchmark
+    public Object generateOnly() {
+        OrderFlowGenerator g = this.generator;
+        g.next(this.flow.targetSize());
+        return g.newOrder();
+    }
+
+    MatchResult process(OrderEntity order) {
+        MatchResult result = this.matchEngine.processOrder(order.sequenceId, order);
+        this.generator.afterMatch(order);
+        return result;
+    }
+
+    int bookSize() {
+        return this.matchEngine.buyBook.size() + this.matchEngine.sellBook.size();
+    }
+}
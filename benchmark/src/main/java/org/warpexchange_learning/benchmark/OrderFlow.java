@@ -0,0 +1,53 @@
+package org.warpexchange_learning.benchmark;
+
+/**
+ * 模拟的订单流场景，见OrderFlowGenerator
+ */
+public enum OrderFlow {
+
+    /**
+     * 每侧500档、每档20个订单，以挂单和撤单为主，偶尔有小额吃单
+     */
+    DEEP_BOOK(500, 20, 10, 30, 100),
+
+    /**
+     * 每侧5档、每档2个订单，吃单频繁
+     */
+    THIN_BOOK(5, 2, 40, 10, 100),
+
+    /**
+     * 深订单簿上大量撤单
+     */
+    HEAVY_CANCEL(500, 20, 5, 60, 100),
+
+    /**
+     * 每档订单较少，吃单数量较大，每次吃单穿越多个档位
+     */
+    AGGRESSIVE_SWEEP(500, 2, 20, 0, 400);
+
+    // 每侧初始档位数，挂单价格也在此范围内:
+    final int levels;
+    // 每档初始订单数:
+    final int ordersPerLevel;
+    // 吃单比例(%):
+    final int aggressivePercent;
+    // 撤单比例(%)，其余为挂单:
+    final int cancelPercent;
+    // 吃单的最大数量(定点)，挂单数量为1~100:
+    final int maxAggressiveQuantity;
+
+    OrderFlow(int levels, int ordersPerLevel, int aggressivePercent, int cancelPercent, int maxAggressiveQuantity) {
+        this.levels = levels;
+        this.ordersPerLevel = ordersPerLevel;
+        this.aggressivePercent = aggressivePercent;
+        this.cancelPercent = cancelPercent;
+        this.maxAggressiveQuantity = maxAggressiveQuantity;
+    }
+
+    /**
+     * 初始挂单总数，订单流会使订单簿大小保持在该值附近
+     */
+    int targetSize() {
+        return this.levels * this.ordersPerLevel * 2;
+    }
+}
@@ -0,0 +1,196 @@
+package org.warpexchange_learning.benchmark;
+
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 按OrderFlow生成确定的订单流：挂单价格落在中间价两侧levels档以内，吃单以对侧最差价格报价，
+ * 撤单从仍在订单簿中的订单里随机选取。订单簿偏离目标大小时，挂单和撤单会相互转换，使订单簿大小保持稳定。
+ * 价格和数量的BigDecimal预先生成，生成订单流本身不分配内存（OrderEntity除外）。
+ */
+public class OrderFlowGenerator {
+
+    public static final int PASSIVE = 0;
+    public static final int AGGRESSIVE = 1;
+    public static final int CANCEL = 2;
+
+    // 中间价10000.00，最小价格变动0.01:
+    static final int MID_PRICE = 1000000;
+
+    // 下单用户:
+    private static final Long[] USERS = new Long[1000];
+
+    static {
+        for (int i = 0; i < USERS.length; i++) {
+            USERS[i] = 1000L + i;
+        }
+    }
+
+    private static final List<Long> USER_LIST = List.of(USERS);
+
+    /**
+     * 全部下单用户，不可修改
+     */
+    public static List<Long> users() {
+        return USER_LIST;
+    }
+
+    final OrderFlow flow;
+    final SplittableRandom random;
+
+    // 中间价上下levels档的价格:
+    final BigDecimal[] buyPrices;
+    final BigDecimal[] sellPrices;
+    final BigDecimal[] quantities;
+
+    // 可能仍在订单簿中的订单，撤单时从中选取:
+    final List<OrderEntity> resting = new ArrayList<>();
+
+    long sequenceId = 0;
+
+    // next()生成的订单参数:
+    public Direction direction;
+    public BigDecimal price;
+    public BigDecimal quantity;
+    // price和quantity的定点值:
+    public long priceValue;
+    public long quantityValue;
+    // next()返回CANCEL时要取消的订单:
+    public OrderEntity cancelOrder;
+
+    public OrderFlowGenerator(OrderFlow flow, long seed) {
+        this.flow = flow;
+        this.random = new SplittableRandom(seed);
+        this.buyPrices = new BigDecimal[flow.levels];
+        this.sellPrices = new BigDecimal[flow.levels];
+        for (int i = 0; i < flow.levels; i++) {
+            this.buyPrices[i] = BigDecimal.valueOf(MID_PRICE - 1 - i, 2);
+            this.sellPrices[i] = BigDecimal.valueOf(MID_PRICE + 1 + i, 2);
+        }
+        this.quantities = new BigDecimal[Math.max(100, flow.maxAggressiveQuantity) + 1];
+        for (int i = 0; i < this.quantities.length; i++) {
+            this.quantities[i] = BigDecimal.valueOf(i, 2);
+        }
+    }
+
+    /**
+     * 生成初始订单簿中的第index个挂单的参数
+     */
+    public void prefill(int index) {
+        int level = index / (this.flow.ordersPerLevel * 2);
+        this.direction = index % 2 == 0 ? Direction.BUY : Direction.SELL;
+        setPrice(this.direction, level);
+        setQuantity(1 + this.random.nextInt(100));
+    }
+
+    /**
+     * 生成下一个操作，返回PASSIVE、AGGRESSIVE或CANCEL
+     *
+     * @param bookSize 当前订单簿中的订单数
+     */
+    public int next(int bookSize) {
+        int r = this.random.nextInt(100);
+        if (r < this.flow.aggressivePercent) {
+            this.direction = this.random.nextBoolean() ? Direction.BUY : Direction.SELL;
+            // 以对侧最差价格报价，成交数量由quantity决定:
+            setPrice(this.direction == Direction.BUY ? Direction.SELL : Direction.BUY, this.flow.levels - 1);
+            setQuantity(1 + this.random.nextInt(this.flow.maxAggressiveQuantity));
+            return AGGRESSIVE;
+        }
+        int target = this.flow.targetSize();
+        boolean cancel = r < this.flow.aggressivePercent + this.flow.cancelPercent;
+        if (cancel && bookSize < target / 2) {
+            cancel = false;
+        } else if (!cancel && bookSize > target * 2) {
+            cancel = true;
+        }
+        if (cancel && (this.cancelOrder = pickResting()) != null) {
+            return CANCEL;
+        }
+        int level = this.random.nextInt(this.flow.levels);
+        this.direction = this.random.nextBoolean() ? Direction.BUY : Direction.SELL;
+        setPrice(this.direction, level);
+        setQuantity(1 + this.random.nextInt(100));
+        return PASSIVE;
+    }
+
+    // 设置side一侧第level档的价格，价格以2位小数表示，定点值即为MID_PRICE偏移后的整数:
+    private void setPrice(Direction side, int level) {
+        if (side == Direction.BUY) {
+            this.price = this.buyPrices[level];
+            this.priceValue = MID_PRICE - 1 - level;
+        } else {
+            this.price = this.sellPrices[level];
+            this.priceValue = MID_PRICE + 1 + level;
+        }
+    }
+
+    private void setQuantity(int n) {
+        this.quantity = this.quantities[n];
+        this.quantityValue = n;
+    }
+
+    /**
+     * 按next()生成的参数创建订单，由MatchEngine直接撮合时使用
+     */
+    public OrderEntity newOrder() {
+        long seq = ++this.sequenceId;
+        OrderEntity order = new OrderEntity();
+        order.id = seq;
+        order.sequenceId = seq;
+        order.userId = nextUser();
+        order.direction = this.direction;
+        order.price = this.price;
+        order.quantity = order.unfilledQuantity = this.quantity;
+        order.priceValue = this.priceValue;
+        order.quantityValue = order.unfilledQuantityValue = this.quantityValue;
+        order.createdAt = order.updatedAt = seq;
+        return order;
+    }
+
+    public Long nextUser() {
+        return USERS[this.random.nextInt(USERS.length)];
+    }
+
+    public long nextSequenceId() {
+        return ++this.sequenceId;
+    }
+
+    /**
+     * 撮合后调用，记录仍在订单簿中的订单
+     */
+    public void afterMatch(OrderEntity order) {
+        if (!order.status.isFinalStatus) {
+            this.resting.add(order);
+            // 清除已完全成交的订单，避免没有撤单时无限增长:
+            if (this.resting.size() > this.flow.targetSize() * 4) {
+                this.resting.removeIf(o -> o.status.isFinalStatus);
+            }
+        }
+    }
+
+    private OrderEntity pickResting() {
+        while (!this.resting.isEmpty()) {
+            int index = this.random.nextInt(this.resting.size());
+            OrderEntity order = removeAt(index);
+            // 已完全成交的订单不在订单簿中:
+            if (!order.status.isFinalStatus) {
+                return order;
+            }
+        }
+        return null;
+    }
+
+    private OrderEntity removeAt(int index) {
+        int last = this.resting.size() - 1;
+        OrderEntity order = this.resting.get(index);
+        this.resting.set(index, this.resting.get(last));
+        this.resting.remove(last);
+        return order;
+    }
+}
@@ -103,6 +103,7 @@ CREATE TABLE orders (
                         quantity DECIMAL(36,18) NOT NULL,
                         sequenceId BIGINT NOT NULL,
                         status VARCHAR(32) NOT NULL,
+                        symbol VARCHAR(50) NOT NULL,
                         unfilledQuantity DECIMAL(36,18) NOT NULL,
                         updatedAt BIGINT NOT NULL,
                         userId BIGINT NOT NULL,
@@ -136,6 +137,7 @@ CREATE TABLE ticks (
                        price DECIMAL(36,18) NOT NULL,
                        quantity DECIMAL(36,18) NOT NULL,
                        sequenceId BIGINT NOT NULL,
+                       symbol VARCHAR(50) NOT NULL,
                        takerDirection BIT NOT NULL,
                        takerOrderId BIGINT NOT NULL,
                        CONSTRAINT UNI_T_M UNIQUE (takerOrderId, makerOrderId),
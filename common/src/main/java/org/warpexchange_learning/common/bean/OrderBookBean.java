@@ -1,6 +1,5 @@
 package org.warpexchange_learning.common.bean;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.warpexchange_learning.common.util.JsonUtil;
 
 import java.math.BigDecimal;
@@ -13,9 +12,10 @@ import java.util.List;
  */
 public class OrderBookBean {
 
-    public static final String EMPTY = JsonUtil.writeJson(new OrderBookBean(0, BigDecimal.ZERO, List.of(), List.of()));
+    // 交易对，引擎中的快照不设置，写入redis的快照由update-orderbook.lua加入:
+    public String symbol;
 
-    @JsonIgnore
+    // 客户端以此对齐后续的OrderBookDeltaBean:
     public long sequenceId;
 
     public BigDecimal price;
@@ -30,4 +30,13 @@ public class OrderBookBean {
         this.buy = buy;
         this.sell = sell;
     }
+
+    /**
+     * 交易对还没有订单簿时返回的空快照
+     */
+    public static String empty(String symbol) {
+        OrderBookBean bean = new OrderBookBean(0, BigDecimal.ZERO, List.of(), List.of());
+        bean.symbol = symbol;
+        return JsonUtil.writeJson(bean);
+    }
 }
@@ -0,0 +1,67 @@
+package org.warpexchange_learning.common.bean;
+
+import org.warpexchange_learning.common.util.JsonUtil;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 相邻两次推送的OrderBookBean之间的增量：buy和sell只包含数量发生变化的价格档位，quantity为0表示该档位已删除。
+ * 客户端持有sequenceId等于previousId的快照时，合并增量即可得到sequenceId对应的快照，否则需要重新获取完整快照。
+ */
+public class OrderBookDeltaBean {
+
+    public long sequenceId;
+
+    public long previousId;
+
+    public BigDecimal price;
+
+    public List<OrderBookItemBean> buy;
+
+    public List<OrderBookItemBean> sell;
+
+    public OrderBookDeltaBean(long sequenceId, long previousId, BigDecimal price, List<OrderBookItemBean> buy, List<OrderBookItemBean> sell) {
+        this.sequenceId = sequenceId;
+        this.previousId = previousId;
+        this.price = price;
+        this.buy = buy;
+        this.sell = sell;
+    }
+
+    /**
+     * 计算从previous到current的增量
+     */
+    public static OrderBookDeltaBean of(OrderBookBean previous, OrderBookBean current) {
+        return new OrderBookDeltaBean(current.sequenceId, previous.sequenceId, current.price,
+                diff(previous.buy, current.buy), diff(previous.sell, current.sell));
+    }
+
+    static List<OrderBookItemBean> diff(List<OrderBookItemBean> before, List<OrderBookItemBean> after) {
+        if (before == after) {
+            return List.of();
+        }
+        Map<BigDecimal, BigDecimal> removed = new HashMap<>();
+        for (OrderBookItemBean item : before) {
+            removed.put(item.price, item.quantity);
+        }
+        List<OrderBookItemBean> changes = new ArrayList<>();
+        for (OrderBookItemBean item : after) {
+            BigDecimal quantity = removed.remove(item.price);
+            if (quantity == null || quantity.compareTo(item.quantity) != 0) {
+                changes.add(item);
+            }
+        }
+        for (BigDecimal price : removed.keySet()) {
+            changes.add(new OrderBookItemBean(price, BigDecimal.ZERO));
+        }
+        return changes;
+    }
+
+    public String toJson() {
+        return JsonUtil.writeJson(this);
+    }
+}
@@ -3,12 +3,16 @@ package org.warpexchange_learning.common.bean;
 import org.warpexchange_learning.common.ApiError;
 import org.warpexchange_learning.common.ApiException;
 import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.util.FixedPointUtil;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
 public class OrderRequestBean implements ValidatableBean {
 
+    // 交易对，为空时使用默认交易对:
+    public String symbol;
+
     public Direction direction;
 
     public BigDecimal price;
@@ -28,6 +32,9 @@ public class OrderRequestBean implements ValidatableBean {
         if (this.price.signum() <= 0) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price must be positive.");
         }
+        if (this.price.compareTo(FixedPointUtil.MAX_VALUE) > 0) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price is too large.");
+        }
         // quantity:
         if (this.quantity == null) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "quantity", "quantity is required.");
@@ -36,5 +43,8 @@ public class OrderRequestBean implements ValidatableBean {
         if (this.quantity.signum() <= 0) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "quantity", "quantity must be positive.");
         }
+        if (this.quantity.compareTo(FixedPointUtil.MAX_VALUE) > 0) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "quantity", "quantity is too large.");
+        }
     }
 }
@@ -0,0 +1,25 @@
+package org.warpexchange_learning.common.bean;
+
+import org.warpexchange_learning.common.enums.AssetEnum;
+
+/**
+ * 交易对，symbol格式为"基础资产/计价资产"，例如BTC/USD：买入时冻结计价资产，卖出时冻结基础资产
+ */
+public record TradingPair(String symbol, AssetEnum baseAsset, AssetEnum quoteAsset) {
+
+    /**
+     * @throws IllegalArgumentException symbol格式错误或资产不存在
+     */
+    public static TradingPair of(String symbol) {
+        int pos = symbol.indexOf('/');
+        if (pos <= 0 || pos != symbol.lastIndexOf('/')) {
+            throw new IllegalArgumentException("Invalid symbol: " + symbol);
+        }
+        AssetEnum baseAsset = AssetEnum.valueOf(symbol.substring(0, pos));
+        AssetEnum quoteAsset = AssetEnum.valueOf(symbol.substring(pos + 1));
+        if (baseAsset == quoteAsset) {
+            throw new IllegalArgumentException("Invalid symbol: " + symbol);
+        }
+        return new TradingPair(symbol, baseAsset, quoteAsset);
+    }
+}
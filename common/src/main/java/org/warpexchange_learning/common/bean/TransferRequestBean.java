@@ -4,6 +4,7 @@ package org.warpexchange_learning.common.bean;
 import org.warpexchange_learning.common.ApiError;
 import org.warpexchange_learning.common.ApiException;
 import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.util.FixedPointUtil;
 import org.warpexchange_learning.common.util.IdUtil;
 
 import java.math.BigDecimal;
@@ -43,9 +44,15 @@ public class TransferRequestBean implements ValidatableBean {
         if (amount == null) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "amount", "Must specify amount.");
         }
+        if (amount.stripTrailingZeros().scale() > AssetEnum.SCALE) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "amount", "Too many decimals.");
+        }
         amount = amount.setScale(AssetEnum.SCALE);
         if (amount.signum() <= 0) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "amount", "Must specify positive amount.");
         }
+        if (amount.compareTo(FixedPointUtil.MAX_AMOUNT) > 0) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "amount", "Amount is too large.");
+        }
     }
 }
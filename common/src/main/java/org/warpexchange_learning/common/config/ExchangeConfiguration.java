@@ -3,20 +3,40 @@ package org.warpexchange_learning.common.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.warpexchange_learning.common.bean.TradingPair;
+import org.warpexchange_learning.common.enums.FsyncPolicy;
+import org.warpexchange_learning.common.enums.MessageFormat;
+import org.warpexchange_learning.common.enums.OrderBookType;
+import org.warpexchange_learning.common.enums.WaitStrategy;
 
 import java.time.Duration;
 import java.time.ZoneId;
+import java.util.List;
 
 @Configuration
 @ConfigurationProperties(prefix = "exchange.config")
 public class ExchangeConfiguration {
 
     private int orderBookDepth = 50;
+    private OrderBookType orderBookType = OrderBookType.PRICE_LEVEL;
+    // 交易对，每个交易对由单独的撮合线程处理，第一个为默认交易对，未指定交易对的请求和行情都使用默认交易对:
+    private List<String> symbols = List.of("BTC/USD");
     private boolean debugMode = false;
+    // 每个事件后增量校验引擎状态，debugMode下总是开启:
+    private boolean validate = false;
+    // 增量校验时每隔fullValidateInterval个事件做一次全量校验，0表示不做全量校验:
+    private long fullValidateInterval = 10000;
+    // 批量写入数据库时每条INSERT语句最多包含的行数:
+    private int dbBatchSize = 1000;
+    private MessageFormat messageFormat = MessageFormat.JSON;
     private String timeZone = ZoneId.systemDefault().getId();
     private String hmacKey;
     private Duration sessionTimeout;
     private ApiEndpoints apiEndpoints;
+    private Snapshot snapshot = new Snapshot();
+    private Replica replica = new Replica();
+    private Pipeline pipeline = new Pipeline();
+    private Sequencer sequencer = new Sequencer();
 
     @Bean
     public ZoneId createZoneId() {
@@ -31,6 +51,27 @@ public class ExchangeConfiguration {
         this.orderBookDepth = orderBookDepth;
     }
 
+    public OrderBookType getOrderBookType() {
+        return orderBookType;
+    }
+
+    public void setOrderBookType(OrderBookType orderBookType) {
+        this.orderBookType = orderBookType;
+    }
+
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    public void setSymbols(List<String> symbols) {
+        if (symbols.isEmpty()) {
+            throw new IllegalArgumentException("At least one symbol is required.");
+        }
+        // 启动时即检查格式，避免各模块运行时才发现:
+        symbols.forEach(TradingPair::of);
+        this.symbols = List.copyOf(symbols);
+    }
+
     public boolean isDebugMode() {
         return debugMode;
     }
@@ -39,6 +80,38 @@ public class ExchangeConfiguration {
         this.debugMode = debugMode;
     }
 
+    public boolean isValidate() {
+        return validate;
+    }
+
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    public long getFullValidateInterval() {
+        return fullValidateInterval;
+    }
+
+    public void setFullValidateInterval(long fullValidateInterval) {
+        this.fullValidateInterval = fullValidateInterval;
+    }
+
+    public int getDbBatchSize() {
+        return dbBatchSize;
+    }
+
+    public void setDbBatchSize(int dbBatchSize) {
+        this.dbBatchSize = dbBatchSize;
+    }
+
+    public MessageFormat getMessageFormat() {
+        return messageFormat;
+    }
+
+    public void setMessageFormat(MessageFormat messageFormat) {
+        this.messageFormat = messageFormat;
+    }
+
     public String getTimeZone() {
         return timeZone;
     }
@@ -71,6 +144,14 @@ public class ExchangeConfiguration {
         this.apiEndpoints = apiEndpoints;
     }
 
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     public static class ApiEndpoints {
         private String tradingApi;
         private String tradingEngineApi;
@@ -91,4 +172,216 @@ public class ExchangeConfiguration {
             this.tradingEngineApi = tradingEngineApi;
         }
     }
+
+    public Replica getReplica() {
+        return replica;
+    }
+
+    public void setReplica(Replica replica) {
+        this.replica = replica;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public Sequencer getSequencer() {
+        return sequencer;
+    }
+
+    public void setSequencer(Sequencer sequencer) {
+        this.sequencer = sequencer;
+    }
+
+    /**
+     * 交易引擎状态快照，dir为空时不生成也不加载快照
+     */
+    public static class Snapshot {
+        private String dir = "";
+        // 每处理interval个事件生成一次快照:
+        private long interval = 100000;
+        // 保留最近的快照文件数:
+        private int retain = 2;
+
+        public String getDir() {
+            return dir;
+        }
+
+        public void setDir(String dir) {
+            this.dir = dir;
+        }
+
+        public long getInterval() {
+            return interval;
+        }
+
+        public void setInterval(long interval) {
+            this.interval = interval;
+        }
+
+        public int getRetain() {
+            return retain;
+        }
+
+        public void setRetain(int retain) {
+            this.retain = retain;
+        }
+    }
+
+    public static class Replica {
+        // 是否以热备模式启动，热备引擎处理相同的事件但不对外输出任何结果:
+        private boolean standby = false;
+        // 每隔hashInterval个sequenceId比较一次主备引擎的状态哈希:
+        private long hashInterval = 10000;
+
+        public boolean isStandby() {
+            return standby;
+        }
+
+        public void setStandby(boolean standby) {
+            this.standby = standby;
+        }
+
+        public long getHashInterval() {
+            return hashInterval;
+        }
+
+        public void setHashInterval(long hashInterval) {
+            this.hashInterval = hashInterval;
+        }
+    }
+
+    /**
+     * 交易引擎向各输出线程传递结果的环形队列
+     */
+    public static class Pipeline {
+        // 每个队列的容量:
+        private int bufferSize = 65536;
+        // 队列为空时输出线程的等待方式:
+        private WaitStrategy waitStrategy = WaitStrategy.PARK;
+        // 发布到redis时每批的最大消息数，以及不足一批时最多等待的时间:
+        private int publishBatchSize = 1000;
+        private Duration publishLinger = Duration.ZERO;
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public WaitStrategy getWaitStrategy() {
+            return waitStrategy;
+        }
+
+        public void setWaitStrategy(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+        }
+
+        public int getPublishBatchSize() {
+            return publishBatchSize;
+        }
+
+        public void setPublishBatchSize(int publishBatchSize) {
+            this.publishBatchSize = publishBatchSize;
+        }
+
+        public Duration getPublishLinger() {
+            return publishLinger;
+        }
+
+        public void setPublishLinger(Duration publishLinger) {
+            this.publishLinger = publishLinger;
+        }
+    }
+
+    /**
+     * 定序器按uniqueId去重，以及定序、写入数据库、发送消息三个阶段的流水线
+     */
+    public static class Sequencer {
+        // 缓存最近定序的uniqueId个数:
+        private int uniqueIdCacheSize = 100000;
+        // 布隆过滤器预计容纳的uniqueId个数，0表示不使用布隆过滤器:
+        private int uniqueIdBloomFilterCapacity = 10000000;
+        // 已定序但尚未写入数据库的最大批数，写入数据库时一次提交全部已定序的批:
+        private int pipelineDepth = 4;
+        // 积压pipelineDepth批时消费线程等待写入线程的最长时间，超时后定序器退出，必须小于Kafka的max.poll.interval.ms:
+        private Duration pipelineTimeout = Duration.ofSeconds(60);
+        // 本地事件日志目录，为空时定序后的事件直接写入数据库:
+        private String journalDir = "";
+        // 每个日志段文件的大小:
+        private int journalSegmentSize = 256 * 1024 * 1024;
+        // 日志刷盘策略，ALWAYS时每组事件刷盘后才发送，INTERVAL时至少间隔journalFsyncInterval刷盘一次，断电可能丢失已发送的事件:
+        private FsyncPolicy journalFsync = FsyncPolicy.ALWAYS;
+        private Duration journalFsyncInterval = Duration.ofSeconds(1);
+
+        public int getUniqueIdCacheSize() {
+            return uniqueIdCacheSize;
+        }
+
+        public void setUniqueIdCacheSize(int uniqueIdCacheSize) {
+            this.uniqueIdCacheSize = uniqueIdCacheSize;
+        }
+
+        public int getUniqueIdBloomFilterCapacity() {
+            return uniqueIdBloomFilterCapacity;
+        }
+
+        public void setUniqueIdBloomFilterCapacity(int uniqueIdBloomFilterCapacity) {
+            this.uniqueIdBloomFilterCapacity = uniqueIdBloomFilterCapacity;
+        }
+
+        public int getPipelineDepth() {
+            return pipelineDepth;
+        }
+
+        public void setPipelineDepth(int pipelineDepth) {
+            this.pipelineDepth = pipelineDepth;
+        }
+
+        public Duration getPipelineTimeout() {
+            return pipelineTimeout;
+        }
+
+        public void setPipelineTimeout(Duration pipelineTimeout) {
+            this.pipelineTimeout = pipelineTimeout;
+        }
+
+        public String getJournalDir() {
+            return journalDir;
+        }
+
+        public void setJournalDir(String journalDir) {
+            this.journalDir = journalDir;
+        }
+
+        public int getJournalSegmentSize() {
+            return journalSegmentSize;
+        }
+
+        public void setJournalSegmentSize(int journalSegmentSize) {
+            this.journalSegmentSize = journalSegmentSize;
+        }
+
+        public FsyncPolicy getJournalFsync() {
+            return journalFsync;
+        }
+
+        public void setJournalFsync(FsyncPolicy journalFsync) {
+            this.journalFsync = journalFsync;
+        }
+
+        public Duration getJournalFsyncInterval() {
+            return journalFsyncInterval;
+        }
+
+        public void setJournalFsyncInterval(Duration journalFsyncInterval) {
+            this.journalFsyncInterval = journalFsyncInterval;
+        }
+    }
 }
@@ -6,6 +6,7 @@ import jakarta.persistence.PersistenceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
@@ -31,8 +32,15 @@ public class DbTemplate {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    // MySQL allows at most 65535 parameters in one prepared statement:
+    static final int MAX_PARAMETERS = 65535;
+
     final JdbcTemplate jdbcTemplate;
 
+    // max rows in one multi-row INSERT:
+    @Value("#{exchangeConfiguration.dbBatchSize}")
+    int batchSize = 1000;
+
     // class -> Mapper:
     private Map<Class<?>, Mapper<?>> classMapping;
 
@@ -166,28 +174,28 @@ public class DbTemplate {
         }
     }
 
+    /**
+     * Insert beans by multi-row INSERT statements, at most batchSize rows per statement.
+     * Generated identity ids are set back to beans.
+     */
     public <T> void insert(List<T> beans) {
-        for (T bean : beans) {
-            doInsert(bean, false);
-        }
+        doInsert(beans.iterator(), false);
     }
 
+    /**
+     * Insert beans by multi-row INSERT IGNORE statements, at most batchSize rows per statement.
+     * Generated identity ids are set back only if no row of the statement is ignored.
+     */
     public <T> void insertIgnore(List<T> beans) {
-        for (T bean : beans) {
-            doInsert(bean, true);
-        }
+        doInsert(beans.iterator(), true);
     }
 
     public <T> void insert(Stream<T> beans) {
-        beans.forEach((bean) -> {
-            doInsert(bean, false);
-        });
+        doInsert(beans.iterator(), false);
     }
 
     public <T> void insertIgnore(Stream<T> beans) {
-        beans.forEach((bean) -> {
-            doInsert(bean, true);
-        });
+        doInsert(beans.iterator(), true);
     }
 
     public <T> void insert(T bean) {
@@ -198,6 +206,80 @@ public class DbTemplate {
         doInsert(bean, true);
     }
 
+    <T> void doInsert(Iterator<T> beans, boolean isIgnore) {
+        List<Object> batch = new ArrayList<>();
+        Mapper<?> mapper = null;
+        int maxRows = 0;
+        while (beans.hasNext()) {
+            T bean = beans.next();
+            Mapper<?> m = getMapper(bean.getClass());
+            // flush when entity class changed or batch is full:
+            if (m != mapper || batch.size() == maxRows) {
+                if (!batch.isEmpty()) {
+                    doBatchInsert(mapper, batch, isIgnore);
+                    batch.clear();
+                }
+                mapper = m;
+                maxRows = Math.max(1, Math.min(this.batchSize, MAX_PARAMETERS / mapper.insertableProperties.size()));
+            }
+            batch.add(bean);
+        }
+        if (!batch.isEmpty()) {
+            doBatchInsert(mapper, batch, isIgnore);
+        }
+    }
+
+    void doBatchInsert(Mapper<?> mapper, List<Object> beans, boolean isIgnore) {
+        if (beans.size() == 1) {
+            doInsert(beans.get(0), isIgnore);
+            return;
+        }
+        try {
+            final int cols = mapper.insertableProperties.size();
+            final Object[] args = new Object[cols * beans.size()];
+            int n = 0;
+            for (Object bean : beans) {
+                for (AccessibleProperty prop : mapper.insertableProperties) {
+                    args[n] = prop.get(bean);
+                    n++;
+                }
+            }
+            final String sql = mapper.batchInsertSQL(beans.size(), isIgnore);
+            if (logger.isDebugEnabled()) {
+                logger.debug("SQL: {} ({} rows)", isIgnore ? mapper.insertIgnoreSQL : mapper.insertSQL, beans.size());
+            }
+            if (mapper.id.isIdentityId()) {
+                // using identityId, keys are returned in the order of rows:
+                KeyHolder keyHolder = new GeneratedKeyHolder();
+                int rows = jdbcTemplate.update(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                    for (int i = 0; i < args.length; i++) {
+                        ps.setObject(i + 1, args[i]);
+                    }
+                    return ps;
+                }, keyHolder);
+                List<Map<String, Object>> keys = keyHolder.getKeyList();
+                if (rows == beans.size() && keys.size() == rows) {
+                    for (int i = 0; i < rows; i++) {
+                        Object key = keys.get(i).values().iterator().next();
+                        if (key instanceof BigInteger) {
+                            key = ((BigInteger) key).longValueExact();
+                        }
+                        mapper.id.set(beans.get(i), key);
+                    }
+                } else if (logger.isDebugEnabled()) {
+                    // some rows were ignored and keys cannot be matched to beans:
+                    logger.debug("{} of {} rows inserted, generated ids are not set.", rows, beans.size());
+                }
+            } else {
+                // id is specified:
+                jdbcTemplate.update(sql, args);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
     <T> void doInsert(T bean, boolean isIgnore) {
         try {
             int rows;
@@ -47,6 +47,9 @@ final class Mapper<T> {
     final String updateSQL;
     final String deleteSQL;
 
+    // "(?, ?, ...)" for one row of insertable properties:
+    final String insertRowSQL;
+
     public T newInstance() throws ReflectiveOperationException {
         return this.constructor.newInstance();
     }
@@ -67,9 +70,10 @@ final class Mapper<T> {
         this.constructor = clazz.getConstructor();
         this.tableName = getTableName(clazz);
         this.selectSQL = "SELECT * FROM " + this.tableName + " WHERE " + this.id.propertyName + " = ?";
+        this.insertRowSQL = "(" + numOfQuestions(this.insertableProperties.size()) + ")";
         this.insertSQL = "INSERT INTO " + this.tableName + " ("
                 + String.join(", ", this.insertableProperties.stream().map(p -> p.propertyName).toArray(String[]::new))
-                + ") VALUES (" + numOfQuestions(this.insertableProperties.size()) + ")";
+                + ") VALUES " + this.insertRowSQL;
         this.insertIgnoreSQL = this.insertSQL.replace("INSERT INTO", "INSERT IGNORE INTO");
         this.updateSQL = "UPDATE " + this.tableName + " SET "
                 + String.join(", ",
@@ -106,6 +110,19 @@ final class Mapper<T> {
         };
     }
 
+    /**
+     * Build multi-row INSERT like "INSERT INTO table (a, b) VALUES (?, ?), (?, ?), ..." for the given number of rows.
+     */
+    String batchInsertSQL(int rows, boolean isIgnore) {
+        String sql = isIgnore ? this.insertIgnoreSQL : this.insertSQL;
+        StringBuilder sb = new StringBuilder(sql.length() + (rows - 1) * (this.insertRowSQL.length() + 2));
+        sb.append(sql);
+        for (int i = 1; i < rows; i++) {
+            sb.append(", ").append(this.insertRowSQL);
+        }
+        return sb.toString();
+    }
+
     Object getIdValue(Object bean) throws ReflectiveOperationException {
         return this.id.get(bean);
     }
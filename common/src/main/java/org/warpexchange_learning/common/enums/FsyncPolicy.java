@@ -0,0 +1,24 @@
+package org.warpexchange_learning.common.enums;
+
+/**
+ * When appended data is forced from the page cache to the storage device.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Force after every append: nothing is lost on power failure, but each append waits for the device.
+     * An append of a whole group of records is forced once, so the cost is shared by the group.
+     */
+    ALWAYS,
+
+    /**
+     * Force on append when the configured interval has elapsed since the last force: at most one interval is lost on power failure.
+     * Records may be published before they are durable, so a power failure can lose records that consumers have already seen.
+     */
+    INTERVAL,
+
+    /**
+     * Never force explicitly and leave it to the operating system: survives process crash but not power failure.
+     */
+    NEVER;
+}
@@ -0,0 +1,19 @@
+package org.warpexchange_learning.common.enums;
+
+/**
+ * Encoding used when writing messages to Kafka. Both formats are always readable, so every consumer must be
+ * upgraded before producers switch to BINARY. Events in the database are always written as JSON.
+ */
+public enum MessageFormat {
+
+    /**
+     * Compact binary encoding: registered type tag, varint-encoded longs and fixed-point decimals.
+     * Message classes without a registered binary codec are still written as JSON.
+     */
+    BINARY,
+
+    /**
+     * Class name and JSON, human-readable for debugging.
+     */
+    JSON;
+}
@@ -0,0 +1,17 @@
+package org.warpexchange_learning.common.enums;
+
+/**
+ * Order book implementation used by trading engine.
+ */
+public enum OrderBookType {
+
+    /**
+     * All orders in one TreeMap sorted by price and sequence id.
+     */
+    TREE_MAP,
+
+    /**
+     * Sorted price levels, each level holds a FIFO queue of orders.
+     */
+    PRICE_LEVEL;
+}
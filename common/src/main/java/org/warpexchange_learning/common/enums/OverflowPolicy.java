@@ -0,0 +1,23 @@
+package org.warpexchange_learning.common.enums;
+
+/**
+ * What a ring buffer producer does when the buffer is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Wait until the consumer frees a slot: nothing is lost, and the producer is slowed down to the consumer's pace.
+     */
+    BLOCK,
+
+    /**
+     * Discard the oldest element to make room: the producer never waits, and the number of dropped elements is counted.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Merge the new element into a pending element which the consumer takes after the buffer is drained:
+     * the producer never waits, and no information is lost as long as merging preserves it.
+     */
+    CONFLATE;
+}
@@ -0,0 +1,22 @@
+package org.warpexchange_learning.common.enums;
+
+/**
+ * How a ring buffer consumer waits when there is nothing to consume.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spin on the CPU: lowest latency, but occupies one core per consumer.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Spin briefly, then Thread.yield() to other runnable threads.
+     */
+    YIELD,
+
+    /**
+     * Spin and yield briefly, then park until the producer publishes: no CPU is used while idle.
+     */
+    PARK;
+}
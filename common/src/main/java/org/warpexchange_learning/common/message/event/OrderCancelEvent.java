@@ -6,10 +6,13 @@ public class OrderCancelEvent extends AbstractEvent {
 
     public Long refOrderId;
 
+    // 被取消订单的交易对，只用于按交易对分区，引擎以订单自身的交易对为准:
+    public String symbol;
+
     @Override
     public String toString() {
         return "OrderCancelEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
                 + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", refOrderId=" + refOrderId
-                + "]";
+                + ", symbol=" + symbol + "]";
     }
 }
@@ -10,6 +10,9 @@ public class OrderRequestEvent extends AbstractEvent {
 
     public Long userId;
 
+    // 交易对，为null时（例如增加交易对之前生成的事件）按默认交易对处理:
+    public String symbol;
+
     public Direction direction;
 
     public BigDecimal price;
@@ -19,7 +22,7 @@ public class OrderRequestEvent extends AbstractEvent {
     @Override
     public String toString() {
         return "OrderRequestEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
-                + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", direction=" + direction
+                + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", symbol=" + symbol + ", direction=" + direction
                 + ", price=" + price + ", quantity=" + quantity + "]";
     }
 }
@@ -0,0 +1,16 @@
+package org.warpexchange_learning.common.messaging;
+
+
+import org.warpexchange_learning.common.message.AbstractMessage;
+
+import java.util.List;
+
+/**
+ * 处理一批消息，处理完成后调用acknowledge才提交这批消息的offset，acknowledge可在其他线程中调用。
+ */
+@FunctionalInterface
+public interface AcknowledgingBatchMessageHandler<T extends AbstractMessage> {
+
+    void processMessages(List<T> messages, Runnable acknowledge);
+
+}
@@ -16,4 +16,11 @@ public interface MessageProducer<T extends AbstractMessage> {
 
     }
 
+    /**
+     * 异步发送全部messages后只flush一次，等待全部发送成功后返回，失败时抛出异常
+     */
+    default void sendMessagesAndFlush(List<T> messages) {
+        sendMessages(messages);
+    }
+
 }
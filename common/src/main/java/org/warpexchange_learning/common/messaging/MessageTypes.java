@@ -3,6 +3,7 @@ package org.warpexchange_learning.common.messaging;
 import jakarta.annotation.PostConstruct;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.type.classreading.MetadataReader;
@@ -11,14 +12,31 @@ import org.springframework.core.type.filter.TypeFilter;
 import org.springframework.stereotype.Component;
 
 import org.slf4j.Logger;
+import org.warpexchange_learning.common.enums.MessageFormat;
 import org.warpexchange_learning.common.message.AbstractMessage;
+import org.warpexchange_learning.common.message.TickMessage;
+import org.warpexchange_learning.common.message.event.OrderCancelEvent;
+import org.warpexchange_learning.common.message.event.OrderRequestEvent;
+import org.warpexchange_learning.common.message.event.TransferEvent;
+import org.warpexchange_learning.common.messaging.codec.BinaryReader;
+import org.warpexchange_learning.common.messaging.codec.BinaryWriter;
+import org.warpexchange_learning.common.messaging.codec.MessageCodec;
+import org.warpexchange_learning.common.messaging.codec.MessageCodecs;
 import org.warpexchange_learning.common.util.JsonUtil;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * Holds message types.
+ * <p>
+ * 按messageFormat编码Kafka消息：BINARY格式为0字节+类型标签+各字段的二进制编码，没有注册二进制编解码的消息类型
+ * 以及JSON格式为"类名#JSON"。解码时根据首字节自动识别两种格式，因此切换格式不影响已写入的数据。
+ * 写入数据库的字符串始终为JSON格式，便于直接查询和调试。
  */
 @Component
 public class MessageTypes {
@@ -29,6 +47,16 @@ public class MessageTypes {
 
     final Map<String, Class<? extends AbstractMessage>> messageTypes = new HashMap<>();
 
+    final Map<Class<?>, BinaryType<?>> binaryTypesByClass = new HashMap<>();
+
+    final Map<Integer, BinaryType<?>> binaryTypesByTag = new HashMap<>();
+
+    @Value("#{exchangeConfiguration.messageFormat}")
+    MessageFormat messageFormat = MessageFormat.JSON;
+
+    record BinaryType<T extends AbstractMessage>(int tag, Class<T> messageClass, MessageCodec<T> codec) {
+    }
+
     @PostConstruct
     public void init(){
         logger.info("find message classes..");
@@ -58,18 +86,107 @@ public class MessageTypes {
                 throw new RuntimeException(e);
             }
         }
+        registerCodec(MessageCodecs.TAG_ORDER_REQUEST_EVENT, OrderRequestEvent.class, MessageCodecs.ORDER_REQUEST_EVENT);
+        registerCodec(MessageCodecs.TAG_ORDER_CANCEL_EVENT, OrderCancelEvent.class, MessageCodecs.ORDER_CANCEL_EVENT);
+        registerCodec(MessageCodecs.TAG_TRANSFER_EVENT, TransferEvent.class, MessageCodecs.TRANSFER_EVENT);
+        registerCodec(MessageCodecs.TAG_TICK_MESSAGE, TickMessage.class, MessageCodecs.TICK_MESSAGE);
+        logger.info("message format: {}, {} message classes have binary codec.", this.messageFormat, this.binaryTypesByTag.size());
+    }
+
+    /**
+     * 注册消息类型的二进制编解码，tag必须为正数且不能重复，一旦使用就不能再改变
+     */
+    public <T extends AbstractMessage> void registerCodec(int tag, Class<T> messageClass, MessageCodec<T> codec) {
+        if (tag <= 0) {
+            throw new IllegalArgumentException("Invalid message tag: " + tag);
+        }
+        BinaryType<T> type = new BinaryType<>(tag, messageClass, codec);
+        if (this.binaryTypesByTag.putIfAbsent(tag, type) != null) {
+            throw new IllegalArgumentException("Duplicate message tag: " + tag);
+        }
+        if (this.binaryTypesByClass.putIfAbsent(messageClass, type) != null) {
+            throw new IllegalArgumentException("Duplicate codec for message class: " + messageClass.getName());
+        }
     }
 
+    /**
+     * 按messageFormat编码为字节，Kafka直接发送该字节
+     */
+    public byte[] encode(AbstractMessage message) {
+        BinaryType<?> type = this.messageFormat == MessageFormat.BINARY ? this.binaryTypesByClass.get(message.getClass()) : null;
+        if (type == null) {
+            // 直接把类名和JSON写入字节，不经过String:
+            ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+            output.writeBytes(message.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            output.write(SEP);
+            try {
+                JsonUtil.writeJson(output, message);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return output.toByteArray();
+        }
+        return encodeBinary(type, message);
+    }
+
+    public AbstractMessage decode(byte[] data) {
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * 解码encode()编码的两种格式
+     */
+    public AbstractMessage decode(byte[] data, int offset, int length) {
+        if (length == 0) {
+            throw new RuntimeException("Unable to handle empty message.");
+        }
+        if (data[offset] == BINARY_MAGIC) {
+            BinaryReader reader = new BinaryReader(data, offset + 1, length - 1);
+            int tag = reader.readVarInt();
+            BinaryType<?> type = this.binaryTypesByTag.get(tag);
+            if (type == null) {
+                throw new RuntimeException("Unable to handle message with tag: " + tag);
+            }
+            return type.codec().read(reader);
+        }
+        int pos = -1;
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] == SEP) {
+                pos = i;
+                break;
+            }
+        }
+        if (pos == -1) {
+            throw new RuntimeException("Unable to handle message without type.");
+        }
+        String type = new String(data, offset, pos - offset, StandardCharsets.UTF_8);
+        Class<? extends AbstractMessage> clazz = messageTypes.get(type);
+        if (clazz == null) {
+            throw new RuntimeException("Unable to handle message with type: " + type);
+        }
+        return JsonUtil.readJson(new ByteArrayInputStream(data, pos + 1, offset + length - pos - 1), clazz);
+    }
+
+    /**
+     * 编码为"类名#JSON"格式的字符串，用于写入数据库，不受messageFormat影响
+     */
     public String serialize(AbstractMessage message) {
-        String type = message.getClass().getName();
-        String json = JsonUtil.writeJson(message);
-        return type + SEP + json;
+        return encodeJson(message);
     }
 
+    /**
+     * 解码serialize()编码的字符串，也能读取之前以Base64二进制格式（不含'#'）写入的数据
+     */
     public AbstractMessage deserialize(String data) {
         int pos = data.indexOf(SEP);
         if (pos == -1) {
-            throw new RuntimeException("Unable to handle message with data: " + data);
+            byte[] bytes;
+            try {
+                bytes = Base64.getDecoder().decode(data);
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unable to handle message with data: " + data);
+            }
+            return decode(bytes);
         }
         String type = data.substring(0, pos);
         Class<? extends AbstractMessage> clazz = messageTypes.get(type);
@@ -88,13 +205,29 @@ public class MessageTypes {
         return list;
     }
 
-    public List<AbstractMessage> deserializeConsumerRecords(List<ConsumerRecord<String, String>> dataList) {
+    public List<AbstractMessage> deserializeConsumerRecords(List<ConsumerRecord<String, byte[]>> dataList) {
         List<AbstractMessage> list = new ArrayList<>(dataList.size());
-        for (ConsumerRecord<String, String> data : dataList) {
-            list.add(deserialize(data.value()));
+        for (ConsumerRecord<String, byte[]> data : dataList) {
+            list.add(decode(data.value()));
         }
         return list;
     }
 
+    String encodeJson(AbstractMessage message) {
+        return message.getClass().getName() + SEP + JsonUtil.writeJson(message);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends AbstractMessage> byte[] encodeBinary(BinaryType<T> type, AbstractMessage message) {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeByte(BINARY_MAGIC);
+        writer.writeVarInt(type.tag());
+        type.codec().write((T) message, writer);
+        return writer.toByteArray();
+    }
+
     private static final char SEP = '#';
+
+    // JSON格式以类名开头，首字节不会是0:
+    private static final byte BINARY_MAGIC = 0;
 }
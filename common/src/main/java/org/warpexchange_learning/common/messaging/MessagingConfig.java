@@ -2,6 +2,8 @@ package org.warpexchange_learning.common.messaging;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
@@ -17,6 +19,9 @@ import org.springframework.kafka.core.*;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * 消息的key不使用，value为MessageTypes编码后的字节，由Kafka直接发送和接收，不再经过字符串转换
+ */
 @EnableKafka
 @Configuration
 public class MessagingConfig {
@@ -27,7 +32,7 @@ public class MessagingConfig {
         Map<String, Object> configs = new HashMap<>();
         configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configs.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configs.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configs.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
         return configs;
     }
 
@@ -37,7 +42,7 @@ public class MessagingConfig {
         configs.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
         configs.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configs.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        configs.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configs.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
         return configs;
     }
 
@@ -49,13 +54,13 @@ public class MessagingConfig {
     }
 
     @Bean
-    public ProducerFactory<String, String> producerFactory(@Value("${spring.kafka.bootstrap-servers}") String bootstrapServers) {
+    public ProducerFactory<String, byte[]> producerFactory(@Value("${spring.kafka.bootstrap-servers}") String bootstrapServers) {
         logger.info("init kafka producer from bootstrap servers: {}", bootstrapServers);
         return new DefaultKafkaProducerFactory<>(producerConfigs(bootstrapServers));
     }
 
     @Bean
-    public ConsumerFactory<String, String> consumerFactory(
+    public ConsumerFactory<String, byte[]> consumerFactory(
             @Value("${spring.kafka.bootstrap-servers}") String bootstrapServers,
             @Value("${spring.kafka.consumer.max-poll-records}") int batchSize) {
         logger.info("init kafka consumer from bootstrap servers: {}, batch-size: {}", bootstrapServers, Integer.valueOf(batchSize));
@@ -63,9 +68,9 @@ public class MessagingConfig {
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory(@Autowired ConsumerFactory<String, String> consumerFactory) {
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> kafkaListenerContainerFactory(@Autowired ConsumerFactory<String, byte[]> consumerFactory) {
         logger.info("init concurrent kafka listener container factory...");
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
         factory.setConcurrency(Integer.valueOf(1));
         factory.setBatchListener(Boolean.TRUE);
@@ -4,7 +4,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.NewTopic;
@@ -14,10 +16,13 @@ import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.KafkaListenerEndpoint;
 import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchAcknowledgingMessageListener;
 import org.springframework.kafka.listener.BatchMessageListener;
 import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.TopicPartitionOffset;
 import org.springframework.kafka.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
@@ -38,10 +43,10 @@ public class MessagingFactory extends LoggerSupport {
     private MessageTypes messageTypes;
 
     @Autowired
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
 
     @Autowired
-    private ConcurrentKafkaListenerContainerFactory<String, String> listenerContainerFactory;
+    private ConcurrentKafkaListenerContainerFactory<String, byte[]> listenerContainerFactory;
 
     @Autowired
     private KafkaAdmin kafkaAdmin;
@@ -70,12 +75,38 @@ public class MessagingFactory extends LoggerSupport {
     }
 
     public <T extends AbstractMessage> MessageProducer<T> createMessageProducer(Messaging.Topic topic, Class<T> messageClass) {
+        return createMessageProducer(topic, messageClass, message -> null);
+    }
+
+    /**
+     * 按keyMapper返回的key发送消息，key相同的消息进入同一个分区，因此保持发送的顺序，key为null时由Kafka选择分区
+     */
+    public <T extends AbstractMessage> MessageProducer<T> createMessageProducer(Messaging.Topic topic, Class<T> messageClass,
+                                                                                Function<T, String> keyMapper) {
         logger.info("try create message producer for topic {}...", topic);
         final String name = topic.name();
         return new MessageProducer<>() {
             @Override
-            public void sendMessage(AbstractMessage message) {
-                kafkaTemplate.send(name, messageTypes.serialize(message));
+            public void sendMessage(T message) {
+                kafkaTemplate.send(name, keyMapper.apply(message), messageTypes.encode(message));
+            }
+
+            @Override
+            public void sendMessagesAndFlush(List<T> messages) {
+                CompletableFuture<?>[] futures = new CompletableFuture<?>[messages.size()];
+                for (int i = 0; i < futures.length; i++) {
+                    T message = messages.get(i);
+                    futures[i] = kafkaTemplate.send(name, keyMapper.apply(message), messageTypes.encode(message));
+                }
+                kafkaTemplate.flush();
+                try {
+                    CompletableFuture.allOf(futures).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Send " + futures.length + " messages to " + name + " failed.", e.getCause());
+                }
             }
         };
     }
@@ -88,7 +119,7 @@ public class MessagingFactory extends LoggerSupport {
     public <T extends AbstractMessage> MessageConsumer createBatchMessageListener(Messaging.Topic topic, String groupId,
                                                                                   BatchMessageHandler<T> messageHandler, CommonErrorHandler errorHandler) {
         logger.info("try create batch message listener for topic {}: group id = {}...", topic, groupId);
-        ConcurrentMessageListenerContainer<String, String> listenerContainer = listenerContainerFactory
+        ConcurrentMessageListenerContainer<String, byte[]> listenerContainer = listenerContainerFactory
                 .createListenerContainer(new KafkaListenerEndpointAdapter() {
                     @Override
                     public String getGroupId() {
@@ -100,14 +131,14 @@ public class MessagingFactory extends LoggerSupport {
                         return List.of(topic.name());
                     }
                 });
-        listenerContainer.setupMessageListener(new BatchMessageListener<String, String>() {
+        listenerContainer.setupMessageListener(new BatchMessageListener<String, byte[]>() {
             @Override
             @SuppressWarnings("unchecked")
-            public void onMessage(List<ConsumerRecord<String, String>> data) {
+            public void onMessage(List<ConsumerRecord<String, byte[]>> data) {
                 // 将data中的数据使用messageTypes反序列化为messages，然后调用messageHandler中的processMessages方法对消息进行处理
                 List<T> messages = new ArrayList<>(data.size());
-                for (ConsumerRecord<String, String> record : data) {
-                    AbstractMessage message = messageTypes.deserialize(record.value());
+                for (ConsumerRecord<String, byte[]> record : data) {
+                    AbstractMessage message = messageTypes.decode(record.value());
                     messages.add((T) message);
                 }
                 messageHandler.processMessages(messages);
@@ -120,6 +151,45 @@ public class MessagingFactory extends LoggerSupport {
         return listenerContainer::stop;
     }
 
+    /**
+     * 创建手动提交offset的批量消息监听器，messageHandler处理完一批消息后调用acknowledge，该批消息的offset才会被提交
+     */
+    public <T extends AbstractMessage> MessageConsumer createAcknowledgingBatchMessageListener(Messaging.Topic topic, String groupId,
+                                                                                               AcknowledgingBatchMessageHandler<T> messageHandler, CommonErrorHandler errorHandler) {
+        logger.info("try create acknowledging batch message listener for topic {}: group id = {}...", topic, groupId);
+        ConcurrentMessageListenerContainer<String, byte[]> listenerContainer = listenerContainerFactory
+                .createListenerContainer(new KafkaListenerEndpointAdapter() {
+                    @Override
+                    public String getGroupId() {
+                        return groupId;
+                    }
+
+                    @Override
+                    public Collection<String> getTopics() {
+                        return List.of(topic.name());
+                    }
+                });
+        // 在其他线程中调用的acknowledge会排队，由消费线程在下一次poll时提交:
+        listenerContainer.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        listenerContainer.setupMessageListener(new BatchAcknowledgingMessageListener<String, byte[]>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onMessage(List<ConsumerRecord<String, byte[]>> data, Acknowledgment acknowledgment) {
+                List<T> messages = new ArrayList<>(data.size());
+                for (ConsumerRecord<String, byte[]> record : data) {
+                    AbstractMessage message = messageTypes.decode(record.value());
+                    messages.add((T) message);
+                }
+                messageHandler.processMessages(messages, acknowledgment::acknowledge);
+            }
+        });
+        if (errorHandler != null) {
+            listenerContainer.setCommonErrorHandler(errorHandler);
+        }
+        listenerContainer.start();
+        return listenerContainer::stop;
+    }
+
 
     /**
      * KafkaListenerEndpoint的一个默认实现，可以继承该类或者直接使用它，避免每次都必须实现接口的所有方法
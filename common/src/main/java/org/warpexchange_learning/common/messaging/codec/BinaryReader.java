@@ -0,0 +1,126 @@
+package org.warpexchange_learning.common.messaging.codec;
+
+import org.warpexchange_learning.common.util.FixedPointUtil;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 读取BinaryWriter写入的二进制编码，数据不完整或格式错误时抛出IllegalArgumentException。
+ */
+public final class BinaryReader {
+
+    static final int DECIMAL_NULL = 0;
+    static final int DECIMAL_FIXED_POINT = 1;
+    static final int DECIMAL_UNSCALED = 2;
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    public BinaryReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public boolean hasRemaining() {
+        return this.position < this.limit;
+    }
+
+    public int readByte() {
+        if (this.position >= this.limit) {
+            throw new IllegalArgumentException("Unexpected end of binary message.");
+        }
+        return this.buffer[this.position++] & 0xff;
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public long readVarLong() {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            v |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in binary message.");
+    }
+
+    public int readVarInt() {
+        long v = readVarLong();
+        if (v >>> 32 != 0) {
+            throw new IllegalArgumentException("Malformed varint in binary message.");
+        }
+        return (int) v;
+    }
+
+    public long readZigZagLong() {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public Long readNullableLong() {
+        return readBoolean() ? readZigZagLong() : null;
+    }
+
+    public String readString() {
+        int n = readVarInt();
+        if (n == 0) {
+            return null;
+        }
+        int length = n - 1;
+        checkRemaining(length);
+        String s = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+        this.position += length;
+        return s;
+    }
+
+    public <E extends Enum<E>> E readEnum(E[] values) {
+        int n = readVarInt();
+        if (n == 0) {
+            return null;
+        }
+        if (n > values.length) {
+            throw new IllegalArgumentException("Invalid enum ordinal in binary message: " + (n - 1));
+        }
+        return values[n - 1];
+    }
+
+    /**
+     * 读取定点数时返回scale为FixedPointUtil.SCALE的BigDecimal
+     */
+    public BigDecimal readDecimal() {
+        int type = readByte();
+        switch (type) {
+            case DECIMAL_NULL:
+                return null;
+            case DECIMAL_FIXED_POINT:
+                return FixedPointUtil.fromValue(readZigZagLong());
+            case DECIMAL_UNSCALED:
+                int scale = (int) readZigZagLong();
+                int length = readVarInt();
+                checkRemaining(length);
+                BigInteger unscaled = new BigInteger(this.buffer, this.position, length);
+                this.position += length;
+                return new BigDecimal(unscaled, scale);
+            default:
+                throw new IllegalArgumentException("Invalid decimal type in binary message: " + type);
+        }
+    }
+
+    private void checkRemaining(int n) {
+        if (n < 0 || n > this.limit - this.position) {
+            throw new IllegalArgumentException("Unexpected end of binary message.");
+        }
+    }
+}
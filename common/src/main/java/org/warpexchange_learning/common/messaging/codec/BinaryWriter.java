@@ -0,0 +1,127 @@
+package org.warpexchange_learning.common.messaging.codec;
+
+import org.warpexchange_learning.common.util.FixedPointUtil;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 写入二进制编码的消息，long使用varint编码，可为null的字段先写一个标记。
+ * <p>
+ * 非线程安全，每条消息使用一个新的BinaryWriter。
+ */
+public final class BinaryWriter {
+
+    private byte[] buffer;
+    private int position = 0;
+
+    public BinaryWriter() {
+        this(64);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    public int size() {
+        return this.position;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.position);
+    }
+
+    public void writeByte(int b) {
+        ensureCapacity(1);
+        this.buffer[this.position++] = (byte) b;
+    }
+
+    public void writeBoolean(boolean b) {
+        writeByte(b ? 1 : 0);
+    }
+
+    /**
+     * 按varint写入非负数，每字节7位，0~127只占1字节
+     */
+    public void writeVarLong(long v) {
+        ensureCapacity(10);
+        while ((v & ~0x7fL) != 0) {
+            this.buffer[this.position++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        this.buffer[this.position++] = (byte) v;
+    }
+
+    public void writeVarInt(int v) {
+        writeVarLong(v & 0xffffffffL);
+    }
+
+    /**
+     * 按zigzag+varint写入可能为负的数，绝对值小的负数也只占很少字节
+     */
+    public void writeZigZagLong(long v) {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    public void writeNullableLong(Long v) {
+        writeBoolean(v != null);
+        if (v != null) {
+            writeZigZagLong(v);
+        }
+    }
+
+    /**
+     * 写入长度+1（0表示null）和UTF-8字节
+     */
+    public void writeString(String s) {
+        if (s == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        writeBytes(bytes);
+    }
+
+    /**
+     * 写入枚举的ordinal+1（0表示null），枚举只能在末尾增加新值
+     */
+    public void writeEnum(Enum<?> e) {
+        writeVarInt(e == null ? 0 : e.ordinal() + 1);
+    }
+
+    /**
+     * 能精确表示为FixedPointUtil.SCALE位定点数时写入定点数，否则写入scale和unscaled value
+     */
+    public void writeDecimal(BigDecimal d) {
+        if (d == null) {
+            writeByte(BinaryReader.DECIMAL_NULL);
+            return;
+        }
+        if (d.scale() <= FixedPointUtil.SCALE && d.precision() - d.scale() <= 16) {
+            writeByte(BinaryReader.DECIMAL_FIXED_POINT);
+            writeZigZagLong(FixedPointUtil.toValue(d));
+            return;
+        }
+        BigInteger unscaled = d.unscaledValue();
+        writeByte(BinaryReader.DECIMAL_UNSCALED);
+        writeZigZagLong(d.scale());
+        byte[] bytes = unscaled.toByteArray();
+        writeVarInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    public void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+        this.position += bytes.length;
+    }
+
+    private void ensureCapacity(int n) {
+        if (this.position + n > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + n));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.warpexchange_learning.common.messaging.codec;
+
+import org.warpexchange_learning.common.message.AbstractMessage;
+
+/**
+ * 一种消息类型的二进制编解码，在MessageTypes中以类型标签注册。
+ * <p>
+ * 已经写入Kafka或数据库的数据仍需能读取，因此字段只能在末尾追加，读取新增的字段前先用hasRemaining()判断。
+ */
+public interface MessageCodec<T extends AbstractMessage> {
+
+    void write(T message, BinaryWriter writer);
+
+    T read(BinaryReader reader);
+}
@@ -0,0 +1,178 @@
+package org.warpexchange_learning.common.messaging.codec;
+
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.message.AbstractMessage;
+import org.warpexchange_learning.common.message.TickMessage;
+import org.warpexchange_learning.common.message.event.AbstractEvent;
+import org.warpexchange_learning.common.message.event.OrderCancelEvent;
+import org.warpexchange_learning.common.message.event.OrderRequestEvent;
+import org.warpexchange_learning.common.message.event.TransferEvent;
+import org.warpexchange_learning.common.model.quotation.TickEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 经过Kafka传递的消息的二进制编解码，类型标签一旦使用就不能再改变。
+ * <p>
+ * 事件的previousId、Tick的sequenceId和createdAt按与所属消息的差值写入，通常只占1字节。
+ * <p>
+ * 新增字段只能追加在末尾，读取时先判断hasRemaining()，这样增加字段之前写入的消息仍然可以解码。
+ */
+public final class MessageCodecs {
+
+    public static final int TAG_ORDER_REQUEST_EVENT = 1;
+    public static final int TAG_ORDER_CANCEL_EVENT = 2;
+    public static final int TAG_TRANSFER_EVENT = 3;
+    public static final int TAG_TICK_MESSAGE = 4;
+
+    public static final MessageCodec<OrderRequestEvent> ORDER_REQUEST_EVENT = new MessageCodec<>() {
+        @Override
+        public void write(OrderRequestEvent message, BinaryWriter writer) {
+            writeEvent(message, writer);
+            writer.writeNullableLong(message.userId);
+            writer.writeEnum(message.direction);
+            writer.writeDecimal(message.price);
+            writer.writeDecimal(message.quantity);
+            writer.writeString(message.symbol);
+        }
+
+        @Override
+        public OrderRequestEvent read(BinaryReader reader) {
+            OrderRequestEvent message = new OrderRequestEvent();
+            readEvent(message, reader);
+            message.userId = reader.readNullableLong();
+            message.direction = reader.readEnum(Direction.values());
+            message.price = reader.readDecimal();
+            message.quantity = reader.readDecimal();
+            message.symbol = reader.hasRemaining() ? reader.readString() : null;
+            return message;
+        }
+    };
+
+    public static final MessageCodec<OrderCancelEvent> ORDER_CANCEL_EVENT = new MessageCodec<>() {
+        @Override
+        public void write(OrderCancelEvent message, BinaryWriter writer) {
+            writeEvent(message, writer);
+            writer.writeNullableLong(message.userId);
+            writer.writeNullableLong(message.refOrderId);
+            writer.writeString(message.symbol);
+        }
+
+        @Override
+        public OrderCancelEvent read(BinaryReader reader) {
+            OrderCancelEvent message = new OrderCancelEvent();
+            readEvent(message, reader);
+            message.userId = reader.readNullableLong();
+            message.refOrderId = reader.readNullableLong();
+            message.symbol = reader.hasRemaining() ? reader.readString() : null;
+            return message;
+        }
+    };
+
+    public static final MessageCodec<TransferEvent> TRANSFER_EVENT = new MessageCodec<>() {
+        @Override
+        public void write(TransferEvent message, BinaryWriter writer) {
+            writeEvent(message, writer);
+            writer.writeNullableLong(message.fromUserId);
+            writer.writeNullableLong(message.toUserId);
+            writer.writeEnum(message.asset);
+            writer.writeDecimal(message.amount);
+            writer.writeBoolean(message.sufficient);
+        }
+
+        @Override
+        public TransferEvent read(BinaryReader reader) {
+            TransferEvent message = new TransferEvent();
+            readEvent(message, reader);
+            message.fromUserId = reader.readNullableLong();
+            message.toUserId = reader.readNullableLong();
+            message.asset = reader.readEnum(AssetEnum.values());
+            message.amount = reader.readDecimal();
+            message.sufficient = reader.readBoolean();
+            return message;
+        }
+    };
+
+    public static final MessageCodec<TickMessage> TICK_MESSAGE = new MessageCodec<>() {
+        @Override
+        public void write(TickMessage message, BinaryWriter writer) {
+            writeMessage(message, writer);
+            writer.writeZigZagLong(message.sequenceId);
+            if (message.ticks == null) {
+                writer.writeVarInt(0);
+                return;
+            }
+            writer.writeVarInt(message.ticks.size() + 1);
+            for (TickEntity tick : message.ticks) {
+                writer.writeZigZagLong(tick.id);
+                writer.writeZigZagLong(tick.sequenceId - message.sequenceId);
+                writer.writeNullableLong(tick.takerOrderId);
+                writer.writeNullableLong(tick.makerOrderId);
+                writer.writeBoolean(tick.takerDirection);
+                writer.writeDecimal(tick.price);
+                writer.writeDecimal(tick.quantity);
+                writer.writeZigZagLong(tick.createdAt - message.createdAt);
+            }
+            for (TickEntity tick : message.ticks) {
+                writer.writeString(tick.symbol);
+            }
+        }
+
+        @Override
+        public TickMessage read(BinaryReader reader) {
+            TickMessage message = new TickMessage();
+            readMessage(message, reader);
+            message.sequenceId = reader.readZigZagLong();
+            int n = reader.readVarInt();
+            if (n == 0) {
+                return message;
+            }
+            List<TickEntity> ticks = new ArrayList<>(n - 1);
+            for (int i = 1; i < n; i++) {
+                TickEntity tick = new TickEntity();
+                tick.id = reader.readZigZagLong();
+                tick.sequenceId = message.sequenceId + reader.readZigZagLong();
+                tick.takerOrderId = reader.readNullableLong();
+                tick.makerOrderId = reader.readNullableLong();
+                tick.takerDirection = reader.readBoolean();
+                tick.price = reader.readDecimal();
+                tick.quantity = reader.readDecimal();
+                tick.createdAt = message.createdAt + reader.readZigZagLong();
+                ticks.add(tick);
+            }
+            if (reader.hasRemaining()) {
+                for (TickEntity tick : ticks) {
+                    tick.symbol = reader.readString();
+                }
+            }
+            message.ticks = ticks;
+            return message;
+        }
+    };
+
+    static void writeMessage(AbstractMessage message, BinaryWriter writer) {
+        writer.writeString(message.refId);
+        writer.writeZigZagLong(message.createdAt);
+    }
+
+    static void readMessage(AbstractMessage message, BinaryReader reader) {
+        message.refId = reader.readString();
+        message.createdAt = reader.readZigZagLong();
+    }
+
+    static void writeEvent(AbstractEvent event, BinaryWriter writer) {
+        writeMessage(event, writer);
+        writer.writeZigZagLong(event.sequenceId);
+        writer.writeZigZagLong(event.sequenceId - event.previousId);
+        writer.writeString(event.uniqueId);
+    }
+
+    static void readEvent(AbstractEvent event, BinaryReader reader) {
+        readMessage(event, reader);
+        event.sequenceId = reader.readZigZagLong();
+        event.previousId = event.sequenceId - reader.readZigZagLong();
+        event.uniqueId = reader.readString();
+    }
+}
@@ -19,6 +19,12 @@ public class TickEntity implements EntitySupport {
     @Column(nullable = false, updatable = false)
     public long sequenceId;
 
+    /**
+     * Trading pair, e.g. BTC/USD.
+     */
+    @Column(nullable = false, updatable = false, length = VAR_CHAR_50)
+    public String symbol;
+
     @Column(nullable = false, updatable = false)
     public Long takerOrderId;
 
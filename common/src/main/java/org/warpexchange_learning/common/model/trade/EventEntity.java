@@ -29,7 +29,7 @@ public class EventEntity implements EntitySupport {
     public long previousId;
 
     /**
-     * JSON-encoded event data.
+     * Event data encoded by MessageTypes as "className#json". Rows written by older versions may hold Base64 of binary encoding.
      */
     @Column(nullable = false, updatable = false, length = VAR_CHAR_10000)
     public String data;
@@ -3,12 +3,14 @@ package org.warpexchange_learning.common.model.trade;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.lang.Nullable;
 
 import org.warpexchange_learning.common.enums.Direction;
 import org.warpexchange_learning.common.enums.OrderStatus;
 import org.warpexchange_learning.common.model.support.EntitySupport;
+import org.warpexchange_learning.common.util.FixedPointUtil;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
 
 @Entity
@@ -28,6 +30,12 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Column(nullable = false, updatable = false)
     public long sequenceId;
 
+    /**
+     * Trading pair of this order, e.g. BTC/USD.
+     */
+    @Column(nullable = false, updatable = false, length = VAR_CHAR_50)
+    public String symbol;
+
     /**
      * Order direction.
      */
@@ -47,12 +55,17 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     public OrderStatus status;
 
 
-    public void updateOrder(BigDecimal unfilledQuantity, OrderStatus status, long updatedAt) {
-        this.version++;
-        this.unfilledQuantity = unfilledQuantity;
+    /**
+     * 只能由引擎线程调用，修改期间版本号为奇数。
+     * 只更新定点的unfilledQuantityValue，BigDecimal的unfilledQuantity由copy()生成，撮合时无需创建BigDecimal
+     */
+    public void updateOrder(long unfilledQuantityValue, OrderStatus status, long updatedAt) {
+        VERSION.setOpaque(this, this.version + 1);
+        VarHandle.storeStoreFence();
+        this.unfilledQuantityValue = unfilledQuantityValue;
         this.status = status;
         this.updatedAt = updatedAt;
-        this.version++;
+        VERSION.setRelease(this, this.version + 1);
     }
 
     /**
@@ -73,9 +86,19 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Column(nullable = false, updatable = false)
     public long updatedAt;
 
-    // 通过版本号机制实现乐观锁
+    // 通过版本号机制实现乐观锁（seqlock），写入前后各加1，读取前后版本号相同且为偶数时读到的数据一致:
     private int version;
 
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(OrderEntity.class, "version", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     @Transient
     @JsonIgnore
     public int getVersion() {
@@ -94,23 +117,50 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Column(nullable = false, updatable = false, precision = PRECISION, scale = SCALE)
     public BigDecimal unfilledQuantity;
 
-    @Nullable
+    // 引擎使用的定点价格、数量和未成交数量（见FixedPointUtil.toValue()），由创建订单的一方设置。
+    // 引擎中的订单只更新unfilledQuantityValue，其unfilledQuantity保持创建时的值，交给其他线程前须调用copy():
+    @Transient
+    @JsonIgnore
+    public long priceValue;
+
+    @Transient
+    @JsonIgnore
+    public long quantityValue;
+
+    @Transient
+    @JsonIgnore
+    public long unfilledQuantityValue;
+
+    /**
+     * 复制订单，可在任意线程调用。与引擎线程的修改重叠时重新读取可变字段，
+     * 修改只有几次赋值，因此重试的次数和时间都极少。复制的订单按unfilledQuantityValue设置unfilledQuantity。
+     */
     public OrderEntity copy() {
         OrderEntity entity = new OrderEntity();
-        int ver = this.version;
-        entity.status = this.status;
-        entity.unfilledQuantity = this.unfilledQuantity;
-        entity.updatedAt = this.updatedAt;
-        // 版本号不对，说明在读的过程中有其他线程对该数据进行了修改，返回null用于读取重试
-        if (ver != this.version) {
-            return null;
+        for (; ; ) {
+            int ver = (int) VERSION.getAcquire(this);
+            if ((ver & 1) == 0) {
+                entity.status = this.status;
+                entity.unfilledQuantityValue = this.unfilledQuantityValue;
+                entity.updatedAt = this.updatedAt;
+                VarHandle.loadLoadFence();
+                // 版本号没变，说明读取过程中没有其他线程修改数据:
+                if ((int) VERSION.getOpaque(this) == ver) {
+                    break;
+                }
+            }
+            Thread.onSpinWait();
         }
         entity.createdAt = this.createdAt;
         entity.direction = this.direction;
         entity.id = this.id;
         entity.price = this.price;
         entity.quantity = this.quantity;
+        entity.unfilledQuantity = FixedPointUtil.fromValue(entity.unfilledQuantityValue);
+        entity.priceValue = this.priceValue;
+        entity.quantityValue = this.quantityValue;
         entity.sequenceId = this.sequenceId;
+        entity.symbol = this.symbol;
         entity.userId = this.userId;
         return entity;
     }
@@ -134,10 +184,10 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
 
     @Override
     public String toString() {
-        return "OrderEntity [id=" + id + ", sequenceId=" + sequenceId + ", direction=" + direction + ", userId="
+        return "OrderEntity [id=" + id + ", sequenceId=" + sequenceId + ", symbol=" + symbol + ", direction=" + direction + ", userId="
                 + userId + ", status=" + status + ", price=" + price + ", createdAt=" + createdAt + ", updatedAt="
                 + updatedAt + ", version=" + version + ", quantity=" + quantity + ", unfilledQuantity="
-                + unfilledQuantity + "]";
+                + unfilledQuantity + ", unfilledQuantityValue=" + unfilledQuantityValue + "]";
     }
 
     /**
@@ -0,0 +1,359 @@
+package org.warpexchange_learning.common.pipeline;
+
+import org.warpexchange_learning.common.enums.OverflowPolicy;
+import org.warpexchange_learning.common.enums.WaitStrategy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BinaryOperator;
+import java.util.function.LongConsumer;
+
+/**
+ * 单生产者、单消费者的有界环形队列，槽位在创建时一次分配，入队和出队都不分配对象。
+ * <p>
+ * 生产者写入槽位后推进tail，消费者成批取出[head, tail)之间的元素后一次推进head。
+ * 队列为空时消费者按WaitStrategy等待，PARK模式下生产者只在消费者确实挂起时才unpark，
+ * 因此空闲时不占用CPU，忙时也不会为每个元素付出唤醒的代价。
+ * <p>
+ * 队列已满时put()按OverflowPolicy处理：BLOCK等待消费者腾出空间；DROP_OLDEST由生产者推进head丢弃最旧的元素，
+ * 此时消费者也需用CAS推进head；CONFLATE把新元素合并到一个待取元素中，消费者取空队列后再取走它。
+ */
+public class RingBuffer<E> {
+
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+    private static final VarHandle PENDING;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(RingBuffer.class, "head", long.class);
+            TAIL = lookup.findVarHandle(RingBuffer.class, "tail", long.class);
+            PENDING = lookup.findVarHandle(RingBuffer.class, "pending", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // 空闲时先自旋SPIN_TRIES次，再让出CPU YIELD_TRIES次，之后才按策略挂起:
+    static final int SPIN_TRIES = 100;
+    static final int YIELD_TRIES = 100;
+    // 队列已满时生产者，或凑批时消费者每次挂起的时间:
+    static final long PRODUCER_PARK_NANOS = 10_000;
+
+    private final String name;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+    private final BinaryOperator<E> merger;
+    private final Object[] slots;
+    private final int mask;
+
+    // head通常只由消费者修改，DROP_OLDEST模式下生产者也会推进head；中间填充避免伪共享:
+    private volatile long head = 0;
+    private long p01, p02, p03, p04, p05, p06, p07;
+    private volatile long tail = 0;
+    private long p11, p12, p13, p14, p15, p16, p17;
+
+    // DROP_OLDEST模式下已丢弃的元素数，只由生产者修改:
+    private volatile long dropped = 0;
+    // DROP_OLDEST模式下消费者先把元素复制到这里，CAS推进head成功后才交出，失败说明生产者丢弃了其中的元素，需重新读取:
+    private final Object[] scratch;
+    private final long[] scratchWaits;
+
+    // CONFLATE模式下合并后等待消费者取走的元素，总是比队列中的元素新:
+    private volatile Object pending = null;
+
+    // 设置waitRecorder后记录每个元素入队的时间，出队时把在队列中等待的纳秒数交给waitRecorder:
+    private long[] publishedAt = null;
+    private LongConsumer waitRecorder = null;
+
+    // 消费者线程，PARK模式下由生产者唤醒:
+    private volatile Thread consumer;
+    private volatile boolean sleeping = false;
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public RingBuffer(String name, int capacity, WaitStrategy waitStrategy) {
+        this(name, capacity, waitStrategy, OverflowPolicy.BLOCK, null);
+    }
+
+    /**
+     * @param overflowPolicy BLOCK或DROP_OLDEST，CONFLATE需指定合并函数
+     */
+    public RingBuffer(String name, int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        this(name, capacity, waitStrategy, overflowPolicy, null);
+        if (overflowPolicy == OverflowPolicy.CONFLATE) {
+            throw new IllegalArgumentException("Merger is required for CONFLATE.");
+        }
+    }
+
+    /**
+     * 创建CONFLATE队列
+     *
+     * @param merger 把较新的元素（第二个参数）合并到较旧的元素（第一个参数），返回合并后的元素
+     */
+    public RingBuffer(String name, int capacity, WaitStrategy waitStrategy, BinaryOperator<E> merger) {
+        this(name, capacity, waitStrategy, OverflowPolicy.CONFLATE, merger);
+    }
+
+    private RingBuffer(String name, int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy, BinaryOperator<E> merger) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.name = name;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        this.merger = merger;
+        this.slots = new Object[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+        this.mask = this.slots.length - 1;
+        boolean dropOldest = overflowPolicy == OverflowPolicy.DROP_OLDEST;
+        this.scratch = dropOldest ? new Object[this.slots.length] : null;
+        this.scratchWaits = dropOldest ? new long[this.slots.length] : null;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    public int capacity() {
+        return this.slots.length;
+    }
+
+    /**
+     * DROP_OLDEST模式下已丢弃的元素数
+     */
+    public long dropped() {
+        return this.dropped;
+    }
+
+    public int size() {
+        return (int) (this.tail - this.head);
+    }
+
+    public boolean isEmpty() {
+        return this.tail == this.head && this.pending == null;
+    }
+
+    /**
+     * 记录每个元素在队列中等待的时间，必须在生产者和消费者开始工作之前调用
+     */
+    public void setWaitRecorder(LongConsumer waitRecorder) {
+        this.publishedAt = new long[this.slots.length];
+        this.waitRecorder = waitRecorder;
+    }
+
+    /**
+     * 由生产者调用，队列已满时返回false
+     */
+    public boolean offer(E e) {
+        long t = this.tail;
+        if (t - this.head == this.slots.length) {
+            return false;
+        }
+        write(t, e);
+        publish(t + 1);
+        return true;
+    }
+
+    /**
+     * 由生产者调用，队列已满时按OverflowPolicy处理，只有BLOCK模式会等待消费者腾出空间
+     */
+    public void put(E e) throws InterruptedException {
+        switch (this.overflowPolicy) {
+            case BLOCK -> {
+                long t = this.tail;
+                for (int n = 0; t - this.head == this.slots.length; n++) {
+                    idle(n, PRODUCER_PARK_NANOS);
+                }
+                write(t, e);
+                publish(t + 1);
+            }
+            case DROP_OLDEST -> {
+                long t = this.tail;
+                for (long h = this.head; t - h == this.slots.length; h = this.head) {
+                    // CAS失败说明消费者刚推进了head，队列已不满:
+                    if (HEAD.compareAndSet(this, h, h + 1)) {
+                        this.dropped = this.dropped + 1;
+                        break;
+                    }
+                }
+                write(t, e);
+                publish(t + 1);
+            }
+            case CONFLATE -> conflate(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void conflate(E e) {
+        for (;;) {
+            // 待取元素比e旧，必须先与e合并，保证消费者看到的顺序不变:
+            E prev = (E) PENDING.getAndSet(this, null);
+            if (prev != null) {
+                e = this.merger.apply(prev, e);
+            }
+            if (offer(e)) {
+                return;
+            }
+            this.pending = e;
+            // 先写pending再读head，与消费者先写head再读pending配合，不会出现队列已空而pending无人取走:
+            if (this.tail - this.head == this.slots.length) {
+                return;
+            }
+            e = (E) PENDING.getAndSet(this, null);
+            if (e == null) {
+                // 已被消费者取走:
+                return;
+            }
+        }
+    }
+
+    /**
+     * 由消费者调用，取出最多max个元素加入c，返回取出的个数
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> c, int max) {
+        if (this.overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            return drainDroppable(c, max);
+        }
+        long h = this.head;
+        int n = (int) Math.min(this.tail - h, max);
+        long now = this.waitRecorder == null || n == 0 ? 0 : System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            int index = (int) (h + i) & this.mask;
+            c.add((E) this.slots[index]);
+            this.slots[index] = null;
+            if (this.waitRecorder != null) {
+                this.waitRecorder.accept(now - this.publishedAt[index]);
+            }
+        }
+        if (this.overflowPolicy == OverflowPolicy.CONFLATE) {
+            // 按volatile写head，与conflate()中先写pending再读head配合:
+            this.head = h + n;
+        } else if (n > 0) {
+            HEAD.setRelease(this, h + n);
+        }
+        if (this.overflowPolicy == OverflowPolicy.CONFLATE && n < max && this.head == this.tail) {
+            Object p = PENDING.getAndSet(this, null);
+            if (p != null) {
+                c.add((E) p);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int drainDroppable(Collection<? super E> c, int max) {
+        for (;;) {
+            long h = this.head;
+            int n = (int) Math.min(this.tail - h, max);
+            if (n == 0) {
+                return 0;
+            }
+            long now = this.waitRecorder == null ? 0 : System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                int index = (int) (h + i) & this.mask;
+                this.scratch[i] = this.slots[index];
+                if (this.waitRecorder != null) {
+                    this.scratchWaits[i] = now - this.publishedAt[index];
+                }
+            }
+            // 生产者可能复用槽位，因此槽位不置null，由下一次写入覆盖:
+            if (HEAD.compareAndSet(this, h, h + n)) {
+                for (int i = 0; i < n; i++) {
+                    c.add((E) this.scratch[i]);
+                    this.scratch[i] = null;
+                    if (this.waitRecorder != null) {
+                        this.waitRecorder.accept(this.scratchWaits[i]);
+                    }
+                }
+                return n;
+            }
+        }
+    }
+
+    /**
+     * 由消费者调用，取出最多max个元素加入c，不足max个时最多再等待lingerNanos以凑成更大的一批，返回取出的个数
+     */
+    public int drainTo(Collection<? super E> c, int max, long lingerNanos) throws InterruptedException {
+        int n = drainTo(c, max);
+        if (lingerNanos <= 0 || n >= max) {
+            return n;
+        }
+        long deadline = System.nanoTime() + lingerNanos;
+        for (int i = 0; n < max && System.nanoTime() < deadline; ) {
+            int drained = drainTo(c, max - n);
+            if (drained == 0) {
+                idle(i++, PRODUCER_PARK_NANOS);
+            } else {
+                n += drained;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 由消费者调用，队列为空时按WaitStrategy等待，直到有元素可取
+     */
+    public void await() throws InterruptedException {
+        if (this.consumer == null) {
+            this.consumer = Thread.currentThread();
+        }
+        for (int n = 0; isEmpty(); n++) {
+            if (this.waitStrategy == WaitStrategy.PARK && n >= SPIN_TRIES + YIELD_TRIES) {
+                // 先声明将要挂起再检查一次，与publish()中先写tail再读sleeping配合，不会丢失唤醒:
+                this.sleeping = true;
+                if (isEmpty()) {
+                    LockSupport.park(this);
+                }
+                this.sleeping = false;
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } else {
+                idle(n, 0);
+            }
+        }
+    }
+
+    private void write(long t, E e) {
+        int index = (int) t & this.mask;
+        this.slots[index] = e;
+        if (this.publishedAt != null) {
+            this.publishedAt[index] = System.nanoTime();
+        }
+    }
+
+    private void publish(long t) {
+        if (this.waitStrategy == WaitStrategy.PARK) {
+            // tail和sleeping都按volatile读写，消费者要么看到新的tail，要么在这里被看到已挂起:
+            this.tail = t;
+            if (this.sleeping) {
+                LockSupport.unpark(this.consumer);
+            }
+        } else {
+            TAIL.setRelease(this, t);
+        }
+    }
+
+    private void idle(int n, long parkNanos) throws InterruptedException {
+        if (n < SPIN_TRIES || this.waitStrategy == WaitStrategy.BUSY_SPIN) {
+            Thread.onSpinWait();
+        } else if (n < SPIN_TRIES + YIELD_TRIES || this.waitStrategy == WaitStrategy.YIELD || parkNanos == 0) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(this, parkNanos);
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -14,6 +14,12 @@ public interface RedisCache {
 
         String ORDER_BOOK = "_orderbook_";
 
+        String ORDER_BOOK_BUY = "_orderbook_buy_";
+
+        String ORDER_BOOK_SELL = "_orderbook_sell_";
+
+        String ORDER_BOOK_LAST_SEQ = "_OBLastSeqId_";
+
         String RECENT_TICKS = "_ticks_";
 
         String DAY_BARS = "_day_bars_";
@@ -23,5 +29,14 @@ public interface RedisCache {
         String MIN_BARS = "_min_bars_";
 
         String SEC_BARS = "_sec_bars_";
+
+        String ENGINE_STATE_HASH = "_engine_state_hash_";
+
+        /**
+         * 每个交易对单独的key，例如ORDER_BOOK的"_orderbook_BTC/USD"
+         */
+        static String of(String key, String symbol) {
+            return key + symbol;
+        }
     }
 }
@@ -124,6 +124,13 @@ public class RedisService {
         });
     }
 
+    /**
+     * 创建使用独立连接的批量发布器，见RedisBatchPublisher
+     */
+    public RedisBatchPublisher createBatchPublisher() {
+        return new RedisBatchPublisher(this.redisClient.connect());
+    }
+
     public List<String> lrange(String key, long start, long end) {
         return executeSync((commands) -> {
             return commands.lrange(key, start, end);
@@ -0,0 +1,88 @@
+package org.warpexchange_learning.common.util;
+
+import org.warpexchange_learning.common.enums.AssetEnum;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point conversion between BigDecimal and scaled long.
+ * <p>
+ * 价格和数量以AssetEnum.SCALE位小数存储，金额（价格x数量）和资产余额以AMOUNT_SCALE位小数存储，
+ * 这样价格乘以数量的结果无需舍入即可精确表示。
+ */
+public class FixedPointUtil {
+
+    /**
+     * Scale of price and quantity.
+     */
+    public static final int SCALE = AssetEnum.SCALE;
+
+    /**
+     * Scale of amount (price x quantity) and asset balance.
+     */
+    public static final int AMOUNT_SCALE = SCALE * 2;
+
+    static final long FACTOR = pow10(SCALE);
+
+    /**
+     * Max price or quantity accepted from API, so that price x quantity always fits in long amount.
+     */
+    public static final BigDecimal MAX_VALUE = BigDecimal.valueOf(10_000_000L);
+
+    /**
+     * Max transfer amount accepted from API.
+     */
+    public static final BigDecimal MAX_AMOUNT = BigDecimal.valueOf(1_000_000_000_000L);
+
+    /**
+     * Convert price or quantity to scaled long.
+     *
+     * @throws ArithmeticException if value has more than SCALE decimals or overflows long.
+     */
+    public static long toValue(BigDecimal value) {
+        return value.movePointRight(SCALE).longValueExact();
+    }
+
+    public static BigDecimal fromValue(long value) {
+        return BigDecimal.valueOf(value, SCALE);
+    }
+
+    /**
+     * Convert amount to scaled long.
+     *
+     * @throws ArithmeticException if value has more than AMOUNT_SCALE decimals or overflows long.
+     */
+    public static long toAmount(BigDecimal amount) {
+        return amount.movePointRight(AMOUNT_SCALE).longValueExact();
+    }
+
+    public static BigDecimal fromAmount(long amount) {
+        return BigDecimal.valueOf(amount, AMOUNT_SCALE);
+    }
+
+    /**
+     * Amount of price x quantity, both scaled by SCALE.
+     *
+     * @throws ArithmeticException if overflows long.
+     */
+    public static long amountOf(long price, long quantity) {
+        return Math.multiplyExact(price, quantity);
+    }
+
+    /**
+     * Convert quantity scaled by SCALE to amount scaled by AMOUNT_SCALE.
+     *
+     * @throws ArithmeticException if overflows long.
+     */
+    public static long quantityToAmount(long quantity) {
+        return Math.multiplyExact(quantity, FACTOR);
+    }
+
+    static long pow10(int n) {
+        long r = 1;
+        for (int i = 0; i < n; i++) {
+            r *= 10;
+        }
+        return r;
+    }
+}
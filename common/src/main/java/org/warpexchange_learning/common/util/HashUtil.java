@@ -13,6 +13,30 @@ import java.security.NoSuchAlgorithmException;
  */
 public class HashUtil {
 
+    /**
+     * Mix a 64-bit value with the SplitMix64 finalizer. Fast enough for state hashing on the hot path, not cryptographic.
+     *
+     * @param z Input value.
+     * @return Mixed value.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Hash four longs into 64 bits. The result depends on the order of arguments.
+     *
+     * @return 64-bit hash.
+     */
+    public static long hash64(long a, long b, long c, long d) {
+        long h = mix64(a + 0x9e3779b97f4a7c15L);
+        h = mix64(h ^ b);
+        h = mix64(h ^ c);
+        return mix64(h ^ d);
+    }
+
     /**
      * Generate SHA-256 as hex string (all lower-case).
      *
@@ -1,32 +1,103 @@
 --[[
-刷新OrderBook快照:
+按增量刷新OrderBook快照:
 
 KEYS:
-  1: key: OrderBook快照的key
+  1: key: OrderBook完整快照JSON的key
+  2: buyKey: 买盘档位的hash，price => quantity
+  3: sellKey: 卖盘档位的hash，price => quantity
+  4: lastSeqKey: 上次更新的SequenceId
+
+以上key每个交易对各有一组，见RedisCache.Key.of()
 
 ARGV:
-  1: seqId: 本次的SequenceId
-  2: data: OrderBook快照的JSON数据
+  1: symbol: 交易对，写入快照并随推送消息发送，客户端据此忽略其他交易对的订单簿
+  2: seqId: 本次的SequenceId
+  3: prevId: 增量基于的SequenceId，即上次推送的SequenceId，为空时后面是完整快照
+  4: price: 最新成交价
+  5: buyCount: 买盘档位个数n
+  6..: n个买盘档位的price, quantity，之后是卖盘档位的price, quantity，quantity为0表示删除该档位
+
+返回:
+  OK: 已更新并推送
+  STALE: seqId不比上次新，忽略
+  GAP: prevId与上次保存的SequenceId衔接不上，需要重新发送完整快照
 
 ]]--
 
-local KEY_LAST_SEQ = '_OBLastSeqId_'
 local key = KEYS[1]
-local seqId = ARGV[1]
-local data = ARGV[2]
+local buyKey = KEYS[2]
+local sellKey = KEYS[3]
+local lastSeqKey = KEYS[4]
+local symbol = ARGV[1]
+local seqId = ARGV[2]
+local prevId = ARGV[3]
+local price = ARGV[4]
+local buyCount = tonumber(ARGV[5])
 
 -- 获取上次更新的sequenceId:
-local lastSeqId = redis.call('GET', KEY_LAST_SEQ)
-
--- 如果sequenceId较新:
-if not lastSeqId or tonumber(seqId) > tonumber(lastSeqId) then
-    -- 保存新的sequenceId:
-    redis.call('SET', KEY_LAST_SEQ, seqId)
-    -- 保存OrderBook的JSON:
-    redis.call('SET', key, data)
-    -- 发送通知:
-    redis.call('PUBLISH', 'notification', '{"type":"orderbook","data":' .. data .. '}')
-    return true
+local lastSeqId = redis.call('GET', lastSeqKey)
+
+if lastSeqId and tonumber(seqId) <= tonumber(lastSeqId) then
+    return 'STALE'
+end
+local full = prevId == ''
+if not full and (not lastSeqId or tonumber(prevId) ~= tonumber(lastSeqId)) then
+    return 'GAP'
+end
+if full then
+    redis.call('DEL', buyKey, sellKey)
+end
+
+-- 把ARGV[from..to]中的档位合并到hash，返回这些档位的JSON数组:
+local function apply(hashKey, from, to)
+    local items = {}
+    for i = from, to, 2 do
+        local p = ARGV[i]
+        local q = ARGV[i + 1]
+        if tonumber(q) == 0 then
+            redis.call('HDEL', hashKey, p)
+        else
+            redis.call('HSET', hashKey, p, q)
+        end
+        items[#items + 1] = '{"price":' .. p .. ',"quantity":' .. q .. '}'
+    end
+    return '[' .. table.concat(items, ',') .. ']'
+end
+
+-- 按价格排序返回hash中全部档位的JSON数组，买盘价格高在前，卖盘价格低在前:
+local function levels(hashKey, desc)
+    local flat = redis.call('HGETALL', hashKey)
+    local list = {}
+    for i = 1, #flat, 2 do
+        list[#list + 1] = { tonumber(flat[i]), flat[i], flat[i + 1] }
+    end
+    table.sort(list, function(a, b)
+        if desc then
+            return a[1] > b[1]
+        end
+        return a[1] < b[1]
+    end)
+    local items = {}
+    for i, level in ipairs(list) do
+        items[i] = '{"price":' .. level[2] .. ',"quantity":' .. level[3] .. '}'
+    end
+    return '[' .. table.concat(items, ',') .. ']'
 end
 
-return false
+local sellFrom = 6 + buyCount * 2
+local buy = apply(buyKey, 6, sellFrom - 1)
+local sell = apply(sellKey, sellFrom, #ARGV)
+
+-- 保存新的sequenceId和完整快照的JSON，供API读取:
+local data = '{"symbol":"' .. symbol .. '","sequenceId":' .. seqId .. ',"price":' .. price .. ',"buy":' .. levels(buyKey, true) .. ',"sell":' .. levels(sellKey, false) .. '}'
+redis.call('SET', lastSeqKey, seqId)
+redis.call('SET', key, data)
+
+-- 发送通知，收到完整快照时推送完整快照，否则只推送增量:
+if full then
+    redis.call('PUBLISH', 'notification', '{"type":"orderbook","symbol":"' .. symbol .. '","data":' .. data .. '}')
+else
+    local delta = '{"sequenceId":' .. seqId .. ',"previousId":' .. prevId .. ',"price":' .. price .. ',"buy":' .. buy .. ',"sell":' .. sell .. '}'
+    redis.call('PUBLISH', 'notification', '{"type":"orderbook_delta","symbol":"' .. symbol .. '","data":' .. delta .. '}')
+end
+return 'OK'
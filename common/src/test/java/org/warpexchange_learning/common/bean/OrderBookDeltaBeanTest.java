@@ -0,0 +1,146 @@
+package org.warpexchange_learning.common.bean;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 把OrderBookDeltaBean.of(prev, cur)合并到prev必须得到cur，合并方式与update-orderbook.lua和index.html中的mergeOrderBook()相同
+ */
+class OrderBookDeltaBeanTest {
+
+    static final int MAX_DEPTH = 3;
+
+    @Test
+    void changedAndRemovedLevels() {
+        OrderBookBean prev = book(1, items("100", "1", "99", "2", "98", "3"), items("101", "1"));
+        OrderBookBean cur = book(2, items("100", "1", "99", "5"), items("101", "1"));
+        OrderBookDeltaBean delta = OrderBookDeltaBean.of(prev, cur);
+        assertEquals(2, delta.sequenceId);
+        assertEquals(1, delta.previousId);
+        // 未变化的档位不发送，删除的档位数量为0:
+        assertItems(items("99", "5", "98", "0"), delta.buy);
+        assertItems(items(), delta.sell);
+        assertMerged(prev, cur);
+    }
+
+    @Test
+    void levelLeavesTopDepth() {
+        // 新的最高买价把98挤出前MAX_DEPTH档:
+        OrderBookBean prev = book(1, items("100", "1", "99", "2", "98", "3"), items());
+        OrderBookBean cur = book(2, items("101", "4", "100", "1", "99", "2"), items());
+        assertItems(items("101", "4", "98", "0"), OrderBookDeltaBean.of(prev, cur).buy);
+        assertMerged(prev, cur);
+    }
+
+    @Test
+    void levelEntersTopDepth() {
+        // 最低卖价成交完毕，原来在前MAX_DEPTH档以外的104进入:
+        OrderBookBean prev = book(1, items(), items("101", "1", "102", "2", "103", "3"));
+        OrderBookBean cur = book(2, items(), items("102", "2", "103", "3", "104", "7"));
+        assertItems(items("104", "7", "101", "0"), OrderBookDeltaBean.of(prev, cur).sell);
+        assertMerged(prev, cur);
+    }
+
+    @Test
+    void unchangedSideIsEmpty() {
+        List<OrderBookItemBean> buy = items("100", "1");
+        OrderBookBean prev = book(1, buy, items("101", "1"));
+        OrderBookBean cur = book(2, buy, items("101", "2"));
+        OrderBookDeltaBean delta = OrderBookDeltaBean.of(prev, cur);
+        assertTrue(delta.buy.isEmpty());
+        assertItems(items("101", "2"), delta.sell);
+        assertMerged(prev, cur);
+    }
+
+    @Test
+    void randomBooksMergeToCurrent() {
+        Random random = new Random(20231017);
+        // 完整的订单簿，只有前MAX_DEPTH档进入快照:
+        TreeMap<BigDecimal, BigDecimal> buyLevels = new TreeMap<>(Comparator.reverseOrder());
+        TreeMap<BigDecimal, BigDecimal> sellLevels = new TreeMap<>();
+        OrderBookBean prev = book(0, items(), items());
+        for (long seq = 1; seq <= 2000; seq++) {
+            randomChange(random, buyLevels, 9900);
+            randomChange(random, sellLevels, 10000);
+            OrderBookBean cur = book(seq, top(buyLevels), top(sellLevels));
+            assertMerged(prev, cur);
+            prev = cur;
+        }
+    }
+
+    static void randomChange(Random random, Map<BigDecimal, BigDecimal> levels, int base) {
+        BigDecimal price = BigDecimal.valueOf(base + random.nextInt(10), 2);
+        if (random.nextInt(3) == 0) {
+            levels.remove(price);
+        } else {
+            levels.put(price, BigDecimal.valueOf(1 + random.nextInt(100), 2));
+        }
+    }
+
+    static List<OrderBookItemBean> top(Map<BigDecimal, BigDecimal> levels) {
+        List<OrderBookItemBean> items = new ArrayList<>();
+        for (Map.Entry<BigDecimal, BigDecimal> entry : levels.entrySet()) {
+            if (items.size() == MAX_DEPTH) {
+                break;
+            }
+            items.add(new OrderBookItemBean(entry.getKey(), entry.getValue()));
+        }
+        return items;
+    }
+
+    static void assertMerged(OrderBookBean prev, OrderBookBean cur) {
+        OrderBookDeltaBean delta = OrderBookDeltaBean.of(prev, cur);
+        assertItems(cur.buy, merge(prev.buy, delta.buy, true));
+        assertItems(cur.sell, merge(prev.sell, delta.sell, false));
+    }
+
+    // 按mergeOrderBook()合并：数量为0时删除档位，否则覆盖，再按价格排序:
+    static List<OrderBookItemBean> merge(List<OrderBookItemBean> items, List<OrderBookItemBean> changes, boolean buy) {
+        Comparator<BigDecimal> order = buy ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        TreeMap<BigDecimal, BigDecimal> map = new TreeMap<>(order);
+        for (OrderBookItemBean item : items) {
+            map.put(item.price, item.quantity);
+        }
+        for (OrderBookItemBean item : changes) {
+            if (item.quantity.signum() == 0) {
+                map.remove(item.price);
+            } else {
+                map.put(item.price, item.quantity);
+            }
+        }
+        List<OrderBookItemBean> merged = new ArrayList<>();
+        map.forEach((price, quantity) -> merged.add(new OrderBookItemBean(price, quantity)));
+        return merged;
+    }
+
+    static void assertItems(List<OrderBookItemBean> expected, List<OrderBookItemBean> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(0, expected.get(i).price.compareTo(actual.get(i).price));
+            assertEquals(0, expected.get(i).quantity.compareTo(actual.get(i).quantity));
+        }
+    }
+
+    static OrderBookBean book(long sequenceId, List<OrderBookItemBean> buy, List<OrderBookItemBean> sell) {
+        return new OrderBookBean(sequenceId, BigDecimal.ONE, buy, sell);
+    }
+
+    // 按price, quantity交替给出的档位:
+    static List<OrderBookItemBean> items(String... values) {
+        List<OrderBookItemBean> items = new ArrayList<>();
+        for (int i = 0; i < values.length; i += 2) {
+            items.add(new OrderBookItemBean(new BigDecimal(values[i]), new BigDecimal(values[i + 1])));
+        }
+        return items;
+    }
+}
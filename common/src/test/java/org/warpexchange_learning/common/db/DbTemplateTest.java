@@ -0,0 +1,170 @@
+package org.warpexchange_learning.common.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.warpexchange_learning.common.enums.ClearingType;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.MatchType;
+import org.warpexchange_learning.common.enums.OrderStatus;
+import org.warpexchange_learning.common.model.trade.ClearingEntity;
+import org.warpexchange_learning.common.model.trade.MatchDetailEntity;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用模拟的JdbcTemplate验证多行INSERT的分批和自增id回填
+ */
+class DbTemplateTest {
+
+    JdbcTemplate jdbcTemplate;
+    DbTemplate dbTemplate;
+
+    // 每条INSERT语句的行数:
+    final List<Integer> statementRows = new ArrayList<>();
+    // 每条INSERT语句实际插入的行数，为null时全部插入:
+    Integer insertedRows = null;
+    long nextId = 1000;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        this.jdbcTemplate = mock(JdbcTemplate.class);
+        this.dbTemplate = new DbTemplate(this.jdbcTemplate);
+        this.dbTemplate.batchSize = 3;
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString(), anyInt())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            this.statementRows.add(countRows(sql));
+            return mock(PreparedStatement.class);
+        });
+        when(this.jdbcTemplate.update(any(PreparedStatementCreator.class), any(KeyHolder.class))).thenAnswer(invocation -> {
+            PreparedStatementCreator creator = invocation.getArgument(0);
+            KeyHolder keyHolder = invocation.getArgument(1);
+            creator.createPreparedStatement(connection);
+            int rows = this.statementRows.get(this.statementRows.size() - 1);
+            int inserted = this.insertedRows == null ? rows : Math.min(rows, this.insertedRows);
+            for (int i = 0; i < inserted; i++) {
+                // MySQL驱动返回BigInteger:
+                keyHolder.getKeyList().add(Map.of("GENERATED_KEY", BigInteger.valueOf(this.nextId++)));
+            }
+            return inserted;
+        });
+    }
+
+    @Test
+    void batchInsertSetsGeneratedIds() {
+        List<MatchDetailEntity> beans = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            beans.add(matchDetail());
+        }
+        this.dbTemplate.insert(beans);
+        // 每批最多3行，最后1行单独插入:
+        assertEquals(List.of(3, 3, 1), this.statementRows);
+        for (int i = 0; i < beans.size(); i++) {
+            assertEquals(1000 + i, beans.get(i).id);
+        }
+    }
+
+    @Test
+    void batchSplitsWhenEntityClassChanges() {
+        MatchDetailEntity m1 = matchDetail();
+        MatchDetailEntity m2 = matchDetail();
+        ClearingEntity c1 = clearing();
+        ClearingEntity c2 = clearing();
+        MatchDetailEntity m3 = matchDetail();
+        this.dbTemplate.insert(Stream.of(m1, m2, c1, c2, m3));
+        assertEquals(List.of(2, 2, 1), this.statementRows);
+        assertEquals(1000, m1.id);
+        assertEquals(1001, m2.id);
+        assertEquals(1002L, c1.id);
+        assertEquals(1003L, c2.id);
+        assertEquals(1004, m3.id);
+    }
+
+    @Test
+    void ignoredRowsLeaveIdsUnset() {
+        this.insertedRows = 2;
+        List<ClearingEntity> beans = List.of(clearing(), clearing(), clearing());
+        this.dbTemplate.insertIgnore(beans);
+        assertEquals(List.of(3), this.statementRows);
+        // 无法确定哪些行被忽略，因此不回填id:
+        for (ClearingEntity bean : beans) {
+            assertNull(bean.id);
+        }
+    }
+
+    @Test
+    void specifiedIdUsesPlainUpdate() {
+        List<OrderEntity> beans = new ArrayList<>();
+        for (long i = 1; i <= 4; i++) {
+            OrderEntity order = new OrderEntity();
+            order.id = i;
+            order.direction = Direction.BUY;
+            order.status = OrderStatus.PENDING;
+            beans.add(order);
+        }
+        this.dbTemplate.insert(beans);
+        verify(this.jdbcTemplate, never()).update(any(PreparedStatementCreator.class), any(KeyHolder.class));
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(this.jdbcTemplate, times(2)).update(sql.capture(), (Object[]) any());
+        assertEquals(List.of(3, 1), sql.getAllValues().stream().map(DbTemplateTest::countRows).toList());
+        assertTrue(this.statementRows.isEmpty());
+    }
+
+    @Test
+    void maxRowsLimitedByParameterCount() {
+        this.dbTemplate.batchSize = 100_000;
+        Mapper<MatchDetailEntity> mapper = this.dbTemplate.getMapper(MatchDetailEntity.class);
+        int maxRows = DbTemplate.MAX_PARAMETERS / mapper.insertableProperties.size();
+        List<MatchDetailEntity> beans = new ArrayList<>();
+        for (int i = 0; i < maxRows + 1; i++) {
+            beans.add(matchDetail());
+        }
+        this.dbTemplate.insert(beans);
+        assertEquals(List.of(maxRows, 1), this.statementRows);
+        assertEquals(1000 + maxRows, beans.get(maxRows).id);
+    }
+
+    static MatchDetailEntity matchDetail() {
+        MatchDetailEntity entity = new MatchDetailEntity();
+        entity.type = MatchType.TAKER;
+        entity.direction = Direction.BUY;
+        return entity;
+    }
+
+    static ClearingEntity clearing() {
+        ClearingEntity entity = new ClearingEntity();
+        entity.type = ClearingType.TAKER;
+        entity.direction = Direction.SELL;
+        entity.orderStatusAfterClearing = OrderStatus.FULLY_FILLED;
+        return entity;
+    }
+
+    // 按VALUES之后的行数计算:
+    static int countRows(String sql) {
+        String values = sql.substring(sql.indexOf(" VALUES ") + 8);
+        return values.split("\\), \\(").length;
+    }
+}
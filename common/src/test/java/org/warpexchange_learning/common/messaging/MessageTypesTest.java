@@ -0,0 +1,92 @@
+package org.warpexchange_learning.common.messaging;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.MessageFormat;
+import org.warpexchange_learning.common.message.AbstractMessage;
+import org.warpexchange_learning.common.message.event.OrderRequestEvent;
+
+import java.math.BigDecimal;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageTypesTest {
+
+    @Test
+    void defaultFormatIsJson() {
+        MessageTypes messageTypes = createMessageTypes(null);
+        byte[] data = messageTypes.encode(createEvent());
+        assertTrue(new String(data).startsWith(OrderRequestEvent.class.getName() + "#"));
+        assertEvent(messageTypes.decode(data));
+    }
+
+    @Test
+    void binaryFormatRoundTrip() {
+        MessageTypes messageTypes = createMessageTypes(MessageFormat.BINARY);
+        byte[] data = messageTypes.encode(createEvent());
+        assertEquals(0, data[0]);
+        assertTrue(data.length < createMessageTypes(MessageFormat.JSON).encode(createEvent()).length);
+        assertEvent(messageTypes.decode(data));
+        // JSON格式的消息在BINARY模式下也能解码:
+        assertEvent(messageTypes.decode(createMessageTypes(MessageFormat.JSON).encode(createEvent())));
+    }
+
+    @Test
+    void serializeAlwaysWritesJson() {
+        for (MessageFormat format : MessageFormat.values()) {
+            MessageTypes messageTypes = createMessageTypes(format);
+            String data = messageTypes.serialize(createEvent());
+            assertTrue(data.startsWith(OrderRequestEvent.class.getName() + "#{"));
+            assertEvent(messageTypes.deserialize(data));
+        }
+    }
+
+    @Test
+    void deserializeReadsLegacyBase64() {
+        MessageTypes messageTypes = createMessageTypes(MessageFormat.BINARY);
+        String legacy = Base64.getEncoder().encodeToString(messageTypes.encode(createEvent()));
+        assertEquals(-1, legacy.indexOf('#'));
+        assertEvent(messageTypes.deserialize(legacy));
+    }
+
+    static MessageTypes createMessageTypes(MessageFormat format) {
+        MessageTypes messageTypes = new MessageTypes();
+        if (format != null) {
+            messageTypes.messageFormat = format;
+        }
+        messageTypes.init();
+        return messageTypes;
+    }
+
+    static OrderRequestEvent createEvent() {
+        OrderRequestEvent event = new OrderRequestEvent();
+        event.refId = "ref";
+        event.createdAt = 1_700_000_000_000L;
+        event.sequenceId = 101;
+        event.previousId = 100;
+        event.uniqueId = "u-1";
+        event.userId = 42L;
+        event.direction = Direction.BUY;
+        event.price = new BigDecimal("123.45");
+        event.quantity = new BigDecimal("0.001");
+        event.symbol = "BTC/USD";
+        return event;
+    }
+
+    static void assertEvent(AbstractMessage message) {
+        OrderRequestEvent event = assertInstanceOf(OrderRequestEvent.class, message);
+        assertEquals("ref", event.refId);
+        assertEquals(1_700_000_000_000L, event.createdAt);
+        assertEquals(101, event.sequenceId);
+        assertEquals(100, event.previousId);
+        assertEquals("u-1", event.uniqueId);
+        assertEquals(42L, event.userId);
+        assertEquals(Direction.BUY, event.direction);
+        assertEquals(0, new BigDecimal("123.45").compareTo(event.price));
+        assertEquals(0, new BigDecimal("0.001").compareTo(event.quantity));
+        assertEquals("BTC/USD", event.symbol);
+    }
+}
@@ -0,0 +1,128 @@
+package org.warpexchange_learning.common.messaging;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpoint;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchAcknowledgingMessageListener;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.warpexchange_learning.common.enums.MessageFormat;
+import org.warpexchange_learning.common.message.event.AbstractEvent;
+import org.warpexchange_learning.common.message.event.OrderRequestEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用模拟的KafkaTemplate和监听容器验证：发送时按messageFormat编码，监听器收到的字节能解码为原消息
+ */
+class MessagingFactoryTest {
+
+    final KafkaTemplate<String, byte[]> kafkaTemplate = mock(KafkaTemplate.class);
+    final ConcurrentKafkaListenerContainerFactory<String, byte[]> listenerContainerFactory = mock(ConcurrentKafkaListenerContainerFactory.class);
+    ConcurrentMessageListenerContainer<String, byte[]> listenerContainer;
+
+    @BeforeEach
+    void setUp() {
+        // start()不能被模拟，用不连接Kafka的容器代替，和真实的容器工厂一样使用endpoint的topic和groupId:
+        when(this.listenerContainerFactory.createListenerContainer(any())).thenAnswer(invocation -> {
+            KafkaListenerEndpoint endpoint = invocation.getArgument(0);
+            ContainerProperties properties = new ContainerProperties(endpoint.getTopics().toArray(String[]::new));
+            properties.setGroupId(endpoint.getGroupId());
+            this.listenerContainer = new ConcurrentMessageListenerContainer<>(mock(ConsumerFactory.class), properties) {
+                @Override
+                protected void doStart() {
+                }
+            };
+            return this.listenerContainer;
+        });
+    }
+
+    @Test
+    void batchListenerDecodesJsonAndBinary() {
+        for (MessageFormat format : MessageFormat.values()) {
+            MessagingFactory factory = createMessagingFactory(format);
+            List<ConsumerRecord<String, byte[]>> records = send(factory, format);
+
+            List<AbstractEvent> received = new ArrayList<>();
+            factory.<AbstractEvent>createBatchMessageListener(Messaging.Topic.TRADE, "test", received::addAll);
+            BatchMessageListener<String, byte[]> listener = getMessageListener(BatchMessageListener.class);
+            listener.onMessage(records);
+            assertEquals(1, received.size());
+            MessageTypesTest.assertEvent(received.get(0));
+        }
+    }
+
+    @Test
+    void acknowledgingListenerDecodesJsonAndBinary() {
+        for (MessageFormat format : MessageFormat.values()) {
+            MessagingFactory factory = createMessagingFactory(format);
+            List<ConsumerRecord<String, byte[]>> records = send(factory, format);
+
+            List<AbstractEvent> received = new ArrayList<>();
+            factory.<AbstractEvent>createAcknowledgingBatchMessageListener(Messaging.Topic.TRADE, "test",
+                    (messages, acknowledge) -> {
+                        received.addAll(messages);
+                        acknowledge.run();
+                    }, null);
+            BatchAcknowledgingMessageListener<String, byte[]> listener = getMessageListener(BatchAcknowledgingMessageListener.class);
+            AtomicInteger acks = new AtomicInteger();
+            Acknowledgment acknowledgment = acks::incrementAndGet;
+            listener.onMessage(records, acknowledgment);
+            assertEquals(1, received.size());
+            MessageTypesTest.assertEvent(received.get(0));
+            assertEquals(1, acks.get());
+        }
+    }
+
+    /**
+     * 通过MessageProducer发送一条消息，返回Kafka实际收到的记录
+     */
+    List<ConsumerRecord<String, byte[]>> send(MessagingFactory factory, MessageFormat format) {
+        MessageProducer<AbstractEvent> producer = factory.createMessageProducer(Messaging.Topic.TRADE, AbstractEvent.class,
+                event -> ((OrderRequestEvent) event).symbol);
+        producer.sendMessage(MessageTypesTest.createEvent());
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+        verify(this.kafkaTemplate, times(1)).send(eq(Messaging.Topic.TRADE.name()), eq("BTC/USD"), data.capture());
+        byte[] value = data.getValue();
+        // 确认消息确实按该格式编码:
+        if (format == MessageFormat.BINARY) {
+            assertEquals(0, value[0]);
+        } else {
+            assertTrue(new String(value).startsWith(OrderRequestEvent.class.getName() + "#{"));
+        }
+        return List.of(new ConsumerRecord<>(Messaging.Topic.TRADE.name(), 0, 0L, "BTC/USD", value));
+    }
+
+    <L> L getMessageListener(Class<L> listenerClass) {
+        return listenerClass.cast(this.listenerContainer.getContainerProperties().getMessageListener());
+    }
+
+    MessagingFactory createMessagingFactory(MessageFormat format) {
+        clearInvocations(this.kafkaTemplate);
+        MessagingFactory factory = new MessagingFactory();
+        ReflectionTestUtils.setField(factory, "messageTypes", MessageTypesTest.createMessageTypes(format));
+        ReflectionTestUtils.setField(factory, "kafkaTemplate", this.kafkaTemplate);
+        ReflectionTestUtils.setField(factory, "listenerContainerFactory", this.listenerContainerFactory);
+        return factory;
+    }
+}
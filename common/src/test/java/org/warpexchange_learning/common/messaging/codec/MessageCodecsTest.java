@@ -0,0 +1,215 @@
+package org.warpexchange_learning.common.messaging.codec;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.message.AbstractMessage;
+import org.warpexchange_learning.common.message.TickMessage;
+import org.warpexchange_learning.common.message.event.AbstractEvent;
+import org.warpexchange_learning.common.message.event.OrderCancelEvent;
+import org.warpexchange_learning.common.message.event.OrderRequestEvent;
+import org.warpexchange_learning.common.message.event.TransferEvent;
+import org.warpexchange_learning.common.model.quotation.TickEntity;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageCodecsTest {
+
+    @Test
+    void orderRequestEventRoundTrip() {
+        OrderRequestEvent event = new OrderRequestEvent();
+        fillEvent(event);
+        event.userId = 1001L;
+        event.direction = Direction.SELL;
+        event.price = new BigDecimal("20000.15");
+        event.quantity = new BigDecimal("0.5");
+        event.symbol = "ETH/USD";
+        OrderRequestEvent copy = roundTrip(MessageCodecs.ORDER_REQUEST_EVENT, event);
+        assertEvent(event, copy);
+        assertEquals(event.userId, copy.userId);
+        assertEquals(event.direction, copy.direction);
+        assertDecimal(event.price, copy.price);
+        assertDecimal(event.quantity, copy.quantity);
+        assertEquals(event.symbol, copy.symbol);
+    }
+
+    @Test
+    void orderRequestEventWithoutSymbol() {
+        // 增加symbol之前写入的消息没有末尾的symbol字段:
+        OrderRequestEvent event = new OrderRequestEvent();
+        fillEvent(event);
+        BinaryWriter writer = new BinaryWriter();
+        MessageCodecs.writeEvent(event, writer);
+        writer.writeNullableLong(1001L);
+        writer.writeEnum(Direction.BUY);
+        writer.writeDecimal(new BigDecimal("100"));
+        writer.writeDecimal(new BigDecimal("2"));
+        OrderRequestEvent copy = MessageCodecs.ORDER_REQUEST_EVENT.read(new BinaryReader(writer.toByteArray()));
+        assertEvent(event, copy);
+        assertEquals(Direction.BUY, copy.direction);
+        assertDecimal(new BigDecimal("2"), copy.quantity);
+        assertNull(copy.symbol);
+    }
+
+    @Test
+    void orderCancelEventRoundTripWithNulls() {
+        OrderCancelEvent event = new OrderCancelEvent();
+        fillEvent(event);
+        event.refId = null;
+        event.uniqueId = null;
+        event.userId = null;
+        event.refOrderId = 123456789012L;
+        OrderCancelEvent copy = roundTrip(MessageCodecs.ORDER_CANCEL_EVENT, event);
+        assertEvent(event, copy);
+        assertNull(copy.userId);
+        assertEquals(event.refOrderId, copy.refOrderId);
+        assertNull(copy.symbol);
+    }
+
+    @Test
+    void transferEventRoundTrip() {
+        TransferEvent event = new TransferEvent();
+        fillEvent(event);
+        event.fromUserId = 1L;
+        event.toUserId = 2L;
+        event.asset = AssetEnum.USD;
+        event.amount = new BigDecimal("-1234567.89");
+        event.sufficient = true;
+        TransferEvent copy = roundTrip(MessageCodecs.TRANSFER_EVENT, event);
+        assertEvent(event, copy);
+        assertEquals(event.fromUserId, copy.fromUserId);
+        assertEquals(event.toUserId, copy.toUserId);
+        assertEquals(event.asset, copy.asset);
+        assertDecimal(event.amount, copy.amount);
+        assertTrue(copy.sufficient);
+    }
+
+    @Test
+    void tickMessageRoundTrip() {
+        TickMessage message = new TickMessage();
+        message.refId = "tick";
+        message.createdAt = 1_700_000_000_000L;
+        message.sequenceId = 500;
+        TickEntity tick = new TickEntity();
+        tick.id = 9;
+        tick.sequenceId = 499;
+        tick.takerOrderId = 100L;
+        tick.makerOrderId = null;
+        tick.takerDirection = true;
+        tick.price = new BigDecimal("100.01");
+        tick.quantity = new BigDecimal("3");
+        tick.createdAt = message.createdAt - 5;
+        tick.symbol = "BTC/USD";
+        message.ticks = List.of(tick);
+        TickMessage copy = roundTrip(MessageCodecs.TICK_MESSAGE, message);
+        assertEquals(message.refId, copy.refId);
+        assertEquals(message.createdAt, copy.createdAt);
+        assertEquals(message.sequenceId, copy.sequenceId);
+        assertEquals(1, copy.ticks.size());
+        TickEntity t = copy.ticks.get(0);
+        assertEquals(tick.id, t.id);
+        assertEquals(tick.sequenceId, t.sequenceId);
+        assertEquals(tick.takerOrderId, t.takerOrderId);
+        assertNull(t.makerOrderId);
+        assertTrue(t.takerDirection);
+        assertDecimal(tick.price, t.price);
+        assertDecimal(tick.quantity, t.quantity);
+        assertEquals(tick.createdAt, t.createdAt);
+        assertEquals(tick.symbol, t.symbol);
+
+        message.ticks = null;
+        assertNull(roundTrip(MessageCodecs.TICK_MESSAGE, message).ticks);
+    }
+
+    @Test
+    void decimalEncodings() {
+        BigDecimal[] values = {
+                null,
+                BigDecimal.ZERO,
+                new BigDecimal("0.01"),
+                new BigDecimal("-99.9"),
+                // 16位整数仍可按定点数写入:
+                new BigDecimal("9999999999999999.99"),
+                // 以下按scale和unscaled value写入:
+                new BigDecimal("0.001"),
+                new BigDecimal("12.3456789"),
+                new BigDecimal("99999999999999999"),
+                new BigDecimal("-123456789012345678901234567890.123"),
+                new BigDecimal("1E+30"),
+        };
+        BinaryWriter writer = new BinaryWriter(4);
+        for (BigDecimal value : values) {
+            writer.writeDecimal(value);
+        }
+        BinaryReader reader = new BinaryReader(writer.toByteArray());
+        for (BigDecimal value : values) {
+            BigDecimal copy = reader.readDecimal();
+            if (value == null) {
+                assertNull(copy);
+            } else {
+                assertDecimal(value, copy);
+            }
+        }
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    void decimalTypeTags() {
+        assertEquals(BinaryReader.DECIMAL_NULL, firstByte(null));
+        assertEquals(BinaryReader.DECIMAL_FIXED_POINT, firstByte(new BigDecimal("1.23")));
+        assertEquals(BinaryReader.DECIMAL_UNSCALED, firstByte(new BigDecimal("1.234")));
+        assertEquals(BinaryReader.DECIMAL_UNSCALED, firstByte(new BigDecimal("12345678901234567")));
+        // 保留scale和unscaled value，不会丢失精度:
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeDecimal(new BigDecimal("1.2340"));
+        assertEquals(new BigDecimal("1.2340"), new BinaryReader(writer.toByteArray()).readDecimal());
+    }
+
+    @Test
+    void invalidDecimalTypeIsRejected() {
+        BinaryReader reader = new BinaryReader(new byte[]{9});
+        assertThrows(IllegalArgumentException.class, reader::readDecimal);
+    }
+
+    static <T extends AbstractMessage> T roundTrip(MessageCodec<T> codec, T message) {
+        BinaryWriter writer = new BinaryWriter();
+        codec.write(message, writer);
+        BinaryReader reader = new BinaryReader(writer.toByteArray());
+        T copy = codec.read(reader);
+        assertFalse(reader.hasRemaining());
+        return copy;
+    }
+
+    static void fillEvent(AbstractEvent event) {
+        event.refId = "ref-1";
+        event.createdAt = 1_700_000_000_000L;
+        event.sequenceId = 1_000_000L;
+        event.previousId = 999_998L;
+        event.uniqueId = "unique-中文";
+    }
+
+    static void assertEvent(AbstractEvent expected, AbstractEvent actual) {
+        assertEquals(expected.refId, actual.refId);
+        assertEquals(expected.createdAt, actual.createdAt);
+        assertEquals(expected.sequenceId, actual.sequenceId);
+        assertEquals(expected.previousId, actual.previousId);
+        assertEquals(expected.uniqueId, actual.uniqueId);
+    }
+
+    static void assertDecimal(BigDecimal expected, BigDecimal actual) {
+        assertEquals(0, expected.compareTo(actual), () -> "expected " + expected + " but was " + actual);
+    }
+
+    static int firstByte(BigDecimal value) {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeDecimal(value);
+        return writer.toByteArray()[0];
+    }
+}
@@ -0,0 +1,109 @@
+package org.warpexchange_learning.common.model.trade;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.OrderStatus;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 引擎线程调用updateOrder()的同时，其他线程调用copy()得到的可变字段总是来自同一次修改
+ */
+class OrderEntityTest {
+
+    static final long QUANTITY = 1_000_000;
+
+    @Test
+    void copyWaitsForUnfinishedUpdate() throws Exception {
+        OrderEntity order = createOrder();
+        VarHandle version = MethodHandles.privateLookupIn(OrderEntity.class, MethodHandles.lookup())
+                .findVarHandle(OrderEntity.class, "version", int.class);
+        // 引擎线程修改到一半，只写了unfilledQuantityValue:
+        version.setOpaque(order, 1);
+        order.unfilledQuantityValue = 0;
+        AtomicReference<OrderEntity> copied = new AtomicReference<>();
+        Thread reader = new Thread(() -> copied.set(order.copy()), "reader");
+        reader.start();
+        reader.join(100);
+        assertTrue(reader.isAlive());
+        assertNull(copied.get());
+        order.status = OrderStatus.FULLY_FILLED;
+        order.updatedAt = 2;
+        version.setRelease(order, 2);
+        reader.join();
+        OrderEntity copy = copied.get();
+        assertEquals(0, copy.unfilledQuantityValue);
+        assertEquals(0, copy.unfilledQuantity.signum());
+        assertEquals(OrderStatus.FULLY_FILLED, copy.status);
+        assertEquals(2, copy.updatedAt);
+    }
+
+    @Test
+    void copyIsConsistentUnderConcurrentUpdates() throws Exception {
+        OrderEntity order = createOrder();
+        AtomicReference<String> error = new AtomicReference<>();
+        AtomicLong copies = new AtomicLong();
+        // 每次修改的updatedAt等于未成交数量，状态由未成交数量决定:
+        Thread engine = new Thread(() -> {
+            for (int n = 0; n < 20; n++) {
+                for (long unfilled = QUANTITY - 1; unfilled >= 0; unfilled--) {
+                    order.updateOrder(unfilled, statusOf(unfilled), unfilled);
+                }
+            }
+        }, "engine");
+        Runnable reader = () -> {
+            while (engine.isAlive() && error.get() == null) {
+                OrderEntity copy = order.copy();
+                long unfilled = copy.unfilledQuantityValue;
+                if (copy.updatedAt != unfilled || copy.status != statusOf(unfilled)
+                        || copy.unfilledQuantity.compareTo(BigDecimal.valueOf(unfilled, 2)) != 0) {
+                    error.compareAndSet(null, "inconsistent copy: " + copy);
+                }
+                copies.incrementAndGet();
+            }
+        };
+        Thread reader1 = new Thread(reader, "reader-1");
+        Thread reader2 = new Thread(reader, "reader-2");
+        engine.start();
+        reader1.start();
+        reader2.start();
+        engine.join();
+        reader1.join();
+        reader2.join();
+        assertNull(error.get());
+        assertTrue(copies.get() > 0);
+        assertEquals(40 * QUANTITY, order.getVersion());
+    }
+
+    static OrderStatus statusOf(long unfilled) {
+        // 读线程可能在第一次修改之前复制，此时是createOrder()的初始状态:
+        if (unfilled == QUANTITY) {
+            return OrderStatus.PENDING;
+        }
+        return unfilled == 0 ? OrderStatus.FULLY_FILLED : OrderStatus.PARTIAL_FILLED;
+    }
+
+    static OrderEntity createOrder() {
+        OrderEntity order = new OrderEntity();
+        order.id = 1L;
+        order.sequenceId = 1;
+        order.symbol = "BTC/USD";
+        order.userId = 2L;
+        order.direction = Direction.BUY;
+        order.status = OrderStatus.PENDING;
+        order.priceValue = 10000;
+        order.price = new BigDecimal("100.00");
+        order.quantityValue = order.unfilledQuantityValue = QUANTITY;
+        order.quantity = order.unfilledQuantity = BigDecimal.valueOf(QUANTITY, 2);
+        order.createdAt = order.updatedAt = QUANTITY;
+        return order;
+    }
+}
@@ -0,0 +1,181 @@
+package org.warpexchange_learning.common.pipeline;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.enums.OverflowPolicy;
+import org.warpexchange_learning.common.enums.WaitStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTest {
+
+    @Test
+    void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(1, new RingBuffer<Integer>("q", 1, WaitStrategy.PARK).capacity());
+        assertEquals(8, new RingBuffer<Integer>("q", 5, WaitStrategy.PARK).capacity());
+        assertEquals(8, new RingBuffer<Integer>("q", 8, WaitStrategy.PARK).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<Integer>("q", 0, WaitStrategy.PARK));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RingBuffer<Integer>("q", 4, WaitStrategy.PARK, OverflowPolicy.CONFLATE));
+    }
+
+    @Test
+    void offerAndDrainKeepOrder() {
+        RingBuffer<Integer> queue = new RingBuffer<>("q", 4, WaitStrategy.PARK);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        List<Integer> list = new ArrayList<>();
+        assertEquals(3, queue.drainTo(list, 3));
+        assertEquals(1, queue.drainTo(list, 10));
+        assertEquals(List.of(0, 1, 2, 3), list);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void blockWaitsUntilConsumerDrains() throws Exception {
+        RingBuffer<Integer> queue = new RingBuffer<>("q", 2, WaitStrategy.PARK, OverflowPolicy.BLOCK);
+        queue.put(1);
+        queue.put(2);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(3);
+                done.countDown();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        });
+        producer.start();
+        // 队列已满，生产者必须等待:
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        List<Integer> list = new ArrayList<>();
+        assertEquals(2, queue.drainTo(list, 10));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, queue.drainTo(list, 10));
+        assertEquals(List.of(1, 2, 3), list);
+        producer.join();
+    }
+
+    @Test
+    void blockedPutIsInterruptible() throws Exception {
+        RingBuffer<Integer> queue = new RingBuffer<>("q", 1, WaitStrategy.BUSY_SPIN, OverflowPolicy.BLOCK);
+        queue.put(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(2);
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        producer.start();
+        Thread.sleep(100);
+        producer.interrupt();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertInstanceOf(InterruptedException.class, error.get());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void dropOldestKeepsNewest() throws Exception {
+        RingBuffer<Integer> queue = new RingBuffer<>("q", 4, WaitStrategy.PARK, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            queue.put(i);
+        }
+        assertEquals(6, queue.dropped());
+        List<Integer> list = new ArrayList<>();
+        assertEquals(4, queue.drainTo(list, 10));
+        assertEquals(List.of(6, 7, 8, 9), list);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void dropOldestWithConcurrentConsumerKeepsOrder() throws Exception {
+        RingBuffer<Integer> queue = new RingBuffer<>("q", 8, WaitStrategy.PARK, OverflowPolicy.DROP_OLDEST);
+        final int total = 200_000;
+        List<Integer> received = new ArrayList<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                while (received.isEmpty() || received.get(received.size() - 1) != total - 1) {
+                    queue.await();
+                    queue.drainTo(received, 16);
+                }
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < total; i++) {
+            queue.put(i);
+        }
+        consumer.join(10_000);
+        assertFalse(consumer.isAlive());
+        // 收到的元素严格递增，收到的加丢弃的等于全部:
+        for (int i = 1; i < received.size(); i++) {
+            assertTrue(received.get(i) > received.get(i - 1));
+        }
+        assertEquals(total, received.size() + queue.dropped());
+    }
+
+    @Test
+    void conflateMergesOverflowIntoPending() throws Exception {
+        RingBuffer<List<Integer>> queue = new RingBuffer<>("q", 2, WaitStrategy.PARK, (a, b) -> {
+            List<Integer> merged = new ArrayList<>(a);
+            merged.addAll(b);
+            return merged;
+        });
+        for (int i = 0; i < 5; i++) {
+            queue.put(List.of(i));
+        }
+        assertEquals(2, queue.size());
+        assertFalse(queue.isEmpty());
+        List<List<Integer>> list = new ArrayList<>();
+        // 先取队列中的元素，队列取空后再取走合并的元素:
+        assertEquals(3, queue.drainTo(list, 10));
+        assertEquals(List.of(List.of(0), List.of(1), List.of(2, 3, 4)), list);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void conflatePendingWaitsForQueueToEmpty() throws Exception {
+        RingBuffer<List<Integer>> queue = new RingBuffer<>("q", 2, WaitStrategy.PARK, (a, b) -> {
+            List<Integer> merged = new ArrayList<>(a);
+            merged.addAll(b);
+            return merged;
+        });
+        for (int i = 0; i < 3; i++) {
+            queue.put(List.of(i));
+        }
+        List<List<Integer>> list = new ArrayList<>();
+        assertEquals(1, queue.drainTo(list, 1));
+        // 队列有空位后新元素先与待取元素合并，保证顺序:
+        queue.put(List.of(3));
+        assertEquals(2, queue.drainTo(list, 10));
+        assertEquals(List.of(List.of(0), List.of(1), List.of(2, 3)), list);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void waitRecorderReceivesOneSamplePerElement() {
+        RingBuffer<Integer> queue = new RingBuffer<>("q", 4, WaitStrategy.PARK);
+        List<Long> waits = new ArrayList<>();
+        queue.setWaitRecorder(waits::add);
+        queue.offer(1);
+        queue.offer(2);
+        queue.drainTo(new ArrayList<>(), 10);
+        assertEquals(2, waits.size());
+        assertTrue(waits.stream().allMatch(w -> w >= 0));
+    }
+}
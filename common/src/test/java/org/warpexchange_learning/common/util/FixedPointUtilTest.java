@@ -0,0 +1,46 @@
+package org.warpexchange_learning.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * API允许的最大价格、数量和金额换算成定点long不溢出，超出精度或范围时抛出ArithmeticException而不是舍入或截断
+ */
+class FixedPointUtilTest {
+
+    @Test
+    void boundsFitWithoutRounding() {
+        long max = FixedPointUtil.toValue(FixedPointUtil.MAX_VALUE);
+        assertEquals(0, FixedPointUtil.MAX_VALUE.compareTo(FixedPointUtil.fromValue(max)));
+        // 最大价格x最大数量仍可精确表示:
+        long amount = FixedPointUtil.amountOf(max, max);
+        assertEquals(0, FixedPointUtil.MAX_VALUE.multiply(FixedPointUtil.MAX_VALUE).compareTo(FixedPointUtil.fromAmount(amount)));
+        assertEquals(FixedPointUtil.toAmount(FixedPointUtil.MAX_VALUE), FixedPointUtil.quantityToAmount(max));
+        long maxAmount = FixedPointUtil.toAmount(FixedPointUtil.MAX_AMOUNT);
+        assertEquals(0, FixedPointUtil.MAX_AMOUNT.compareTo(FixedPointUtil.fromAmount(maxAmount)));
+
+        // 末尾的0不算超出精度:
+        assertEquals(max, FixedPointUtil.toValue(new BigDecimal(FixedPointUtil.MAX_VALUE + ".000000")));
+        BigDecimal smallest = BigDecimal.ONE.movePointLeft(FixedPointUtil.SCALE);
+        assertEquals(1, FixedPointUtil.toValue(smallest));
+        assertEquals(1, FixedPointUtil.toAmount(BigDecimal.ONE.movePointLeft(FixedPointUtil.AMOUNT_SCALE)));
+    }
+
+    @Test
+    void excessDecimalsAndOverflowThrow() {
+        BigDecimal tooPrecise = BigDecimal.ONE.movePointLeft(FixedPointUtil.SCALE + 1);
+        assertThrows(ArithmeticException.class, () -> FixedPointUtil.toValue(tooPrecise));
+        assertThrows(ArithmeticException.class, () -> FixedPointUtil.toValue(FixedPointUtil.MAX_VALUE.add(tooPrecise)));
+        assertThrows(ArithmeticException.class, () -> FixedPointUtil.toAmount(BigDecimal.ONE.movePointLeft(FixedPointUtil.AMOUNT_SCALE + 1)));
+
+        BigDecimal tooLarge = BigDecimal.valueOf(Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> FixedPointUtil.toValue(tooLarge));
+        assertThrows(ArithmeticException.class, () -> FixedPointUtil.toAmount(tooLarge));
+        assertThrows(ArithmeticException.class, () -> FixedPointUtil.amountOf(Long.MAX_VALUE / 2 + 1, 2));
+        assertThrows(ArithmeticException.class, () -> FixedPointUtil.quantityToAmount(Long.MAX_VALUE / FixedPointUtil.FACTOR + 1));
+    }
+}
@@ -5,6 +5,7 @@ import com.mysql.cj.protocol.Message;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.warpexchange_learning.common.enums.BarType;
 import org.warpexchange_learning.common.message.AbstractMessage;
@@ -23,6 +24,7 @@ import org.warpexchange_learning.common.util.JsonUtil;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
@@ -47,6 +49,10 @@ public class QuotationService extends LoggerSupport {
     @Autowired
     private MessagingFactory messagingFactory;
 
+    // 最近成交和K线只统计默认交易对，即配置的第一个交易对:
+    @Value("#{exchangeConfiguration.symbols[0]}")
+    private String symbol = "BTC/USD";
+
     private MessageConsumer tickConsumer;
 
     private String shaUpdateRecentTicksLua = null;
@@ -95,6 +101,10 @@ public class QuotationService extends LoggerSupport {
         // 生成[tick, tick...]列表以及合并为一个Bar:
         this.sequenceId = message.sequenceId;
         final long createdAt = message.createdAt;
+        final List<TickEntity> ticks = ticksOfSymbol(message.ticks);
+        if (ticks.isEmpty()) {
+            return;
+        }
         StringJoiner ticksStrJoiner = new StringJoiner(",", "[", "]");
         StringJoiner ticksJoiner = new StringJoiner(",", "[", "]");
         BigDecimal openPrice = BigDecimal.ZERO;
@@ -103,7 +113,7 @@ public class QuotationService extends LoggerSupport {
         BigDecimal lowPrice = BigDecimal.ZERO;
         BigDecimal quantity = BigDecimal.ZERO;
         // 遍历ticks找到openPrice、closePrice、highPrice、lowPrice、quantity
-        for (TickEntity tick : message.ticks) {
+        for (TickEntity tick : ticks) {
             String json = tick.toJson();
             // ticksStrJoiner构造的结果用于update-recent-ticks.lua脚本中发布redis Pub
             ticksStrJoiner.add("\"" + json + "\"");
@@ -147,7 +157,7 @@ public class QuotationService extends LoggerSupport {
             return;
         }
         // 保存Tick至数据库:
-        this.quotationDbService.saveTicks(message.ticks);
+        this.quotationDbService.saveTicks(ticks);
 
         // 更新各种类型的K线: 返回的strCreatedBars是序列化了的需要持久化的Bars，
         String strCreatedBars = this.redisService.executeScriptReturnString(
@@ -183,6 +193,22 @@ public class QuotationService extends LoggerSupport {
         }
     }
 
+    /**
+     * 返回默认交易对的ticks，没有交易对的tick来自增加交易对之前的交易引擎，属于默认交易对
+     */
+    List<TickEntity> ticksOfSymbol(List<TickEntity> ticks) {
+        List<TickEntity> result = new ArrayList<>(ticks.size());
+        for (TickEntity tick : ticks) {
+            if (tick.symbol == null) {
+                tick.symbol = this.symbol;
+            }
+            if (this.symbol.equals(tick.symbol)) {
+                result.add(tick);
+            }
+        }
+        return result;
+    }
+
     static <T extends AbstractBarEntity> T createBar(Supplier<T> fn, BigDecimal[] data) {
         if (data == null) {
             return null;
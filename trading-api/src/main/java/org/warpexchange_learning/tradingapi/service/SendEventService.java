@@ -4,6 +4,8 @@ import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.warpexchange_learning.common.message.event.AbstractEvent;
+import org.warpexchange_learning.common.message.event.OrderCancelEvent;
+import org.warpexchange_learning.common.message.event.OrderRequestEvent;
 import org.warpexchange_learning.common.messaging.MessageProducer;
 import org.warpexchange_learning.common.messaging.Messaging;
 import org.warpexchange_learning.common.messaging.MessagingFactory;
@@ -18,8 +20,18 @@ public class SendEventService {
 
     @PostConstruct
     public void init() {
-        // 向定序逻辑发送消息的生产者
-        this.messageProducer = messagingFactory.createMessageProducer(Messaging.Topic.SEQUENCE, AbstractEvent.class);
+        // 向定序逻辑发送消息的生产者，订单事件按交易对分区，同一交易对的请求保持发送顺序:
+        this.messageProducer = messagingFactory.createMessageProducer(Messaging.Topic.SEQUENCE, AbstractEvent.class, SendEventService::symbolOf);
+    }
+
+    static String symbolOf(AbstractEvent message) {
+        if (message instanceof OrderRequestEvent event) {
+            return event.symbol;
+        }
+        if (message instanceof OrderCancelEvent event) {
+            return event.symbol;
+        }
+        return null;
     }
 
     public void sendMessage(AbstractEvent message) {
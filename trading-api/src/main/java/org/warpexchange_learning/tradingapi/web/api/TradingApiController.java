@@ -3,6 +3,7 @@ package org.warpexchange_learning.tradingapi.web.api;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -56,6 +57,10 @@ public class TradingApiController extends AbstractApiController {
     @Autowired
     private TradingEngineApiProxyService tradingEngineApiProxyService;
 
+    // 已配置的交易对，第一个为默认交易对:
+    @Value("#{exchangeConfiguration.symbols}")
+    private List<String> symbols = List.of("BTC/USD");
+
     private Long asyncTimeout = Long.valueOf(500);
 
     // 操作超时的响应（序列化后）
@@ -97,11 +102,28 @@ public class TradingApiController extends AbstractApiController {
         return tradingEngineApiProxyService.get("/internal/" + UserContext.getRequiredUserId() + "/orders");
     }
 
+    /**
+     * 返回交易对最新的完整快照，其sequenceId用于衔接WebSocket推送的orderbook_delta增量，未指定交易对时返回默认交易对
+     */
     @ResponseBody
     @GetMapping(value = "/orderBook", produces = "application/json")
-    public String getOrderBook() {
-        String data = redisService.get(RedisCache.Key.ORDER_BOOK);
-        return data == null ? OrderBookBean.EMPTY : data;
+    public String getOrderBook(@RequestParam(value = "symbol", required = false) String symbol) {
+        symbol = checkSymbol(symbol);
+        String data = redisService.get(RedisCache.Key.of(RedisCache.Key.ORDER_BOOK, symbol));
+        return data == null ? OrderBookBean.empty(symbol) : data;
+    }
+
+    /**
+     * 返回交易对，为null时返回默认交易对
+     */
+    private String checkSymbol(String symbol) {
+        if (symbol == null) {
+            return this.symbols.get(0);
+        }
+        if (!this.symbols.contains(symbol)) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "symbol", "Invalid symbol.");
+        }
+        return symbol;
     }
 
     @ResponseBody
@@ -214,6 +236,8 @@ public class TradingApiController extends AbstractApiController {
         message.refId = refId;
         message.refOrderId = orderId;
         message.userId = userId;
+        // 按订单的交易对分区:
+        message.symbol = JsonUtil.readJson(orderStr, OrderEntity.class).symbol;
         message.createdAt = System.currentTimeMillis();
         ResponseEntity<String> timeout = new ResponseEntity<>(getTimeoutJson(), HttpStatus.BAD_REQUEST);
         DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>(this.asyncTimeout, timeout);
@@ -246,6 +270,7 @@ public class TradingApiController extends AbstractApiController {
         var event = new OrderRequestEvent();
         event.refId = refId;
         event.userId = userId;
+        event.symbol = checkSymbol(orderRequest.symbol);
         event.direction = orderRequest.direction;
         event.price = orderRequest.price;
         event.quantity = orderRequest.quantity;
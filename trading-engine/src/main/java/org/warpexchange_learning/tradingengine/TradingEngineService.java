@@ -1,15 +1,23 @@
 package org.warpexchange_learning.tradingengine;
 
+import com.sun.management.ThreadMXBean;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.warpexchange_learning.common.bean.OrderBookBean;
+import org.warpexchange_learning.common.bean.OrderBookDeltaBean;
+import org.warpexchange_learning.common.bean.OrderBookItemBean;
+import org.warpexchange_learning.common.bean.TradingPair;
 import org.warpexchange_learning.common.enums.AssetEnum;
 import org.warpexchange_learning.common.enums.Direction;
 import org.warpexchange_learning.common.enums.MatchType;
+import org.warpexchange_learning.common.enums.OrderBookType;
 import org.warpexchange_learning.common.enums.UserType;
+import org.warpexchange_learning.common.enums.OverflowPolicy;
+import org.warpexchange_learning.common.enums.WaitStrategy;
 import org.warpexchange_learning.common.message.ApiResultMessage;
 import org.warpexchange_learning.common.message.NotificationMessage;
 import org.warpexchange_learning.common.message.TickMessage;
@@ -24,28 +32,44 @@ import org.warpexchange_learning.common.messaging.MessagingFactory;
 import org.warpexchange_learning.common.model.quotation.TickEntity;
 import org.warpexchange_learning.common.model.trade.MatchDetailEntity;
 import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.pipeline.RingBuffer;
+import org.warpexchange_learning.common.redis.RedisBatchPublisher;
 import org.warpexchange_learning.common.redis.RedisCache;
 import org.warpexchange_learning.common.redis.RedisService;
 import org.warpexchange_learning.common.support.LoggerSupport;
 import org.warpexchange_learning.common.util.IpUtil;
+import org.warpexchange_learning.common.util.FixedPointUtil;
 import org.warpexchange_learning.common.util.JsonUtil;
 import org.warpexchange_learning.tradingengine.assets.Asset;
 import org.warpexchange_learning.tradingengine.assets.AssetService;
 import org.warpexchange_learning.tradingengine.assets.Transfer;
 import org.warpexchange_learning.tradingengine.clearing.ClearingService;
-import org.warpexchange_learning.tradingengine.match.MatchDetailRecord;
 import org.warpexchange_learning.tradingengine.match.MatchEngine;
 import org.warpexchange_learning.tradingengine.match.MatchResult;
+import org.warpexchange_learning.tradingengine.match.OrderNode;
+import org.warpexchange_learning.tradingengine.metrics.EngineMetrics;
 import org.warpexchange_learning.tradingengine.order.OrderService;
+import org.warpexchange_learning.tradingengine.replica.ReplicaService;
+import org.warpexchange_learning.tradingengine.snapshot.EngineSnapshot;
+import org.warpexchange_learning.tradingengine.snapshot.SnapshotService;
 import org.warpexchange_learning.tradingengine.store.StoreService;
+import org.warpexchange_learning.tradingengine.symbol.MatchTask;
+import org.warpexchange_learning.tradingengine.symbol.SymbolEngine;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Component
 public class TradingEngineService extends LoggerSupport {
@@ -59,6 +83,30 @@ public class TradingEngineService extends LoggerSupport {
     @Value("#{exchangeConfiguration.debugMode}")
     boolean debugMode = false;
 
+    @Value("#{exchangeConfiguration.validate}")
+    boolean validate = false;
+
+    @Value("#{exchangeConfiguration.fullValidateInterval}")
+    long fullValidateInterval = 10000;
+
+    @Value("#{exchangeConfiguration.orderBookType}")
+    OrderBookType orderBookType = OrderBookType.PRICE_LEVEL;
+
+    @Value("#{exchangeConfiguration.symbols}")
+    List<String> symbols = List.of("BTC/USD");
+
+    @Value("#{exchangeConfiguration.pipeline.bufferSize}")
+    int pipelineBufferSize = 65536;
+
+    @Value("#{exchangeConfiguration.pipeline.waitStrategy}")
+    WaitStrategy pipelineWaitStrategy = WaitStrategy.PARK;
+
+    @Value("#{exchangeConfiguration.pipeline.publishBatchSize}")
+    int publishBatchSize = 1000;
+
+    @Value("#{exchangeConfiguration.pipeline.publishLinger}")
+    Duration publishLinger = Duration.ZERO;
+
     boolean fatalError = false;
 
     @Autowired
@@ -68,16 +116,19 @@ public class TradingEngineService extends LoggerSupport {
     OrderService orderService;
 
     @Autowired
-    MatchEngine matchEngine;
+    MessagingFactory messagingFactory;
+
+    @Autowired
+    StoreService storeService;
 
     @Autowired
-    ClearingService clearingService;
+    SnapshotService snapshotService;
 
     @Autowired
-    MessagingFactory messagingFactory;
+    ReplicaService replicaService;
 
     @Autowired
-    StoreService storeService;
+    EngineMetrics engineMetrics;
 
     /**
      * redisService在TradingEngineService的作用是监控OrderBook快照，在其变化时通过redis PubSub推送消息
@@ -92,35 +143,98 @@ public class TradingEngineService extends LoggerSupport {
 
     private long lastSequenceId = 0;
 
-    private boolean orderBookChanged = false;
+    // 各交易对的订单簿和撮合线程，按配置顺序，第一个为默认交易对: symbol => SymbolEngine
+    final Map<String, SymbolEngine> symbolEngines = new LinkedHashMap<>();
+    private SymbolEngine primaryEngine;
+
+    // 已冻结资产、等待撮合和清算的任务，按sequenceId顺序排列，MatchTask复用:
+    static final int MAX_PENDING_TASKS = 1024;
+    private final List<MatchTask> pendingTasks = new ArrayList<>();
+    private int pendingCount = 0;
+    private final List<SymbolEngine> matchingEngines = new ArrayList<>();
+
+    // 追赶时读取线程领先引擎的最大事件数:
+    static final int CATCH_UP_BUFFER_SIZE = 10000;
+    static final AbstractEvent END_OF_CATCH_UP = new AbstractEvent();
+    // 定序器启用本地事件日志时事件异步写入数据库，追赶不到目标时等待后重试的间隔，
+    // 只要数据库中的事件还在增加就一直重试，连续CATCH_UP_STALL_MILLIS没有新事件才放弃:
+    static final long CATCH_UP_RETRY_MILLIS = 100;
+    static final long CATCH_UP_STALL_MILLIS = 30_000;
+
+    // 最近一次快照的sequenceId:
+    private long lastSnapshotSequenceId = 0;
+
+    // 已放入dbQueue和已存入数据库的条目数，用于判断快照之前的数据是否已全部存入数据库:
+    private long dbQueuedBatches = 0;
+    private volatile long savedDbBatches = 0;
+
+    // debugMode下用于统计引擎线程的内存分配，见recordOrderAllocation():
+    static final ThreadMXBean THREAD_MX_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    static final int ORDER_ALLOCATION_SAMPLES = 10000;
+    private long orderAllocatedBytes = 0;
+    private long orderAllocationOrders = 0;
+
+    // 订单ID中的年月只在跨月时重新计算，当前月份的起止时间和对应的yyyyMM:
+    private long monthStartMillis = 0;
+    private long monthEndMillis = 0;
+    private int yearMonth = 0;
 
     private String shaUpdateOrderBookLua;
 
     private Thread tickThread;
     private Thread notifyThread;
     private Thread apiResultThread;
-    private Thread orderBookThread;
+    private final List<Thread> orderBookThreads = new ArrayList<>();
     private Thread dbThread;
 
-    private OrderBookBean latestOrderBook = null;
-    private Queue<List<OrderEntity>> orderQueue = new ConcurrentLinkedQueue<>();
-    private Queue<List<MatchDetailEntity>> matchQueue = new ConcurrentLinkedQueue<>();
-    private Queue<TickMessage> tickQueue = new ConcurrentLinkedQueue<>();
-    private Queue<ApiResultMessage> apiResultQueue = new ConcurrentLinkedQueue<>();
-    private Queue<NotificationMessage> notificationQueue = new ConcurrentLinkedQueue<>();
+    // 输出线程每次从队列中最多取出的条目数:
+    static final int DRAIN_BATCH_SIZE = 1000;
+    // 成批发布失败后重建连接并重试的最小和最大等待时间:
+    static final long PUBLISH_RETRY_MIN_MILLIS = 100;
+    static final long PUBLISH_RETRY_MAX_MILLIS = 5000;
+
+    // 引擎线程是唯一的生产者，每个输出线程是各自队列唯一的消费者，每个交易对的orderbook队列见SymbolEngine。
+    // 队列已满时：db和api-result阻塞引擎线程，进而暂停消费Kafka；orderbook只保留最新快照，tick合并为一条消息；notification丢弃最旧的消息:
+    private RingBuffer<DbBatch> dbQueue;
+    private RingBuffer<TickMessage> tickQueue;
+    RingBuffer<ApiResultMessage> apiResultQueue;
+    private RingBuffer<NotificationMessage> notificationQueue;
+
+    // 各阶段耗时:
+    private Timer eventTimer;
+    private Timer matchTimer;
+    private Timer clearTimer;
+    private Timer orderBookTimer;
+    private Timer apiResultPublishTimer;
+    private Timer notificationPublishTimer;
+
+    /**
+     * 一个订单产生的需要存入数据库的已完成订单和成交明细
+     */
+    record DbBatch(List<OrderEntity> orders, List<MatchDetailEntity> matches) {
+    }
 
 
     @PostConstruct
     public void init() {
+        createPipeline();
         this.shaUpdateOrderBookLua = this.redisService.loadScriptFromClassPath("/redis/update-orderbook.lua");
+        // 从最新的快照恢复状态，之后只需处理快照之后的事件:
+        restoreFromSnapshot();
         // 接收发给TRADE的消息,并使用processMessages处理消息
-        this.consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.TRADE, IpUtil.getHostId(), this::processMessages);
+        // 热备引擎使用单独的group id，与同一主机上的主引擎各自消费全部消息:
+        String groupId = IpUtil.getHostId() + (this.replicaService.isStandby() ? "-standby" : "");
+        this.consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.TRADE, groupId, this::processMessages);
         // 向行情系统发处理完的ticks消息
         this.producer = this.messagingFactory.createMessageProducer(Messaging.Topic.TICK, TickMessage.class);
         this.tickThread = new Thread(this::runTickThread, "async-tick");
         this.tickThread.start();
-        this.orderBookThread = new Thread(this::runOrderBookThread, "async-orderbook");
-        this.orderBookThread.start();
+        for (SymbolEngine engine : this.symbolEngines.values()) {
+            engine.start();
+            Thread orderBookThread = new Thread(() -> runOrderBookThread(engine), "async-orderbook-" + engine.getSymbol());
+            orderBookThread.start();
+            this.orderBookThreads.add(orderBookThread);
+        }
         this.apiResultThread = new Thread(this::runApiResultThread, "async-api-result");
         this.apiResultThread.start();
         this.notifyThread = new Thread(this::runNotifyThread, "async-notify");
@@ -129,196 +243,338 @@ public class TradingEngineService extends LoggerSupport {
         this.dbThread.start();
     }
 
+    void createPipeline() {
+        this.dbQueue = new RingBuffer<>("db", this.pipelineBufferSize, this.pipelineWaitStrategy, OverflowPolicy.BLOCK);
+        this.tickQueue = new RingBuffer<>("tick", this.pipelineBufferSize, this.pipelineWaitStrategy, TradingEngineService::mergeTicks);
+        this.apiResultQueue = new RingBuffer<>("api-result", this.pipelineBufferSize, this.pipelineWaitStrategy, OverflowPolicy.BLOCK);
+        this.notificationQueue = new RingBuffer<>("notification", this.pipelineBufferSize, this.pipelineWaitStrategy, OverflowPolicy.DROP_OLDEST);
+        for (RingBuffer<?> queue : List.of(this.dbQueue, this.tickQueue, this.apiResultQueue, this.notificationQueue)) {
+            this.engineMetrics.registerQueue(queue);
+        }
+        this.eventTimer = this.engineMetrics.stage("event");
+        this.matchTimer = this.engineMetrics.stage("match");
+        this.clearTimer = this.engineMetrics.stage("clear");
+        this.orderBookTimer = this.engineMetrics.stage("orderbook");
+        this.apiResultPublishTimer = this.engineMetrics.stage("publish-api-result");
+        this.notificationPublishTimer = this.engineMetrics.stage("publish-notification");
+        createSymbolEngines();
+    }
+
+    /**
+     * 每个交易对一个MatchEngine和ClearingService，共用同一个AssetService和OrderService
+     */
+    void createSymbolEngines() {
+        for (String symbol : this.symbols) {
+            TradingPair pair = TradingPair.of(symbol);
+            ClearingService clearingService = new ClearingService(this.assetService, this.orderService, pair.baseAsset(), pair.quoteAsset());
+            SymbolEngine engine = new SymbolEngine(pair, new MatchEngine(this.orderBookType), clearingService, this.orderBookDepth,
+                    this.matchTimer, this.orderBookTimer);
+            engine.orderBookQueue = new RingBuffer<>("orderbook-" + symbol, this.pipelineBufferSize, this.pipelineWaitStrategy, (older, newer) -> newer);
+            this.engineMetrics.registerQueue(engine.orderBookQueue);
+            this.symbolEngines.put(symbol, engine);
+        }
+        this.primaryEngine = this.symbolEngines.values().iterator().next();
+    }
+
+    // symbol => MatchEngine，按配置顺序:
+    Map<String, MatchEngine> matchEngines() {
+        Map<String, MatchEngine> matchEngines = new LinkedHashMap<>();
+        this.symbolEngines.forEach((symbol, engine) -> matchEngines.put(symbol, engine.matchEngine));
+        return matchEngines;
+    }
+
     @PreDestroy
     public void destroy() {
         this.consumer.stop();
-        this.orderBookThread.interrupt();
+        this.tickThread.interrupt();
+        this.orderBookThreads.forEach(Thread::interrupt);
+        this.symbolEngines.values().forEach(SymbolEngine::stop);
+        this.apiResultThread.interrupt();
+        this.notifyThread.interrupt();
         this.dbThread.interrupt();
     }
 
+    private void restoreFromSnapshot() {
+        EngineSnapshot snapshot = this.snapshotService.load();
+        if (snapshot == null) {
+            return;
+        }
+        snapshot.restore(this.assetService, this.orderService, matchEngines());
+        this.lastSequenceId = this.lastSnapshotSequenceId = snapshot.sequenceId;
+        for (SymbolEngine engine : this.symbolEngines.values()) {
+            engine.latestOrderBook = engine.matchEngine.getOrderBook(this.orderBookDepth);
+            publish(engine.orderBookQueue, engine.latestOrderBook);
+        }
+        if (this.debugMode || this.validate) {
+            this.validate();
+        }
+        logger.info("restored from snapshot at sequence id {}.", this.lastSequenceId);
+    }
+
     /**
-     * 该线程循环访问apiResultQueue，如果其中有ApiResultMessage则通过redis Pub发布
+     * 每处理snapshot.interval个事件后，在两批消息之间复制当前状态，由SnapshotService在其他线程写入文件
+     */
+    private void trySnapshot() {
+        if (!this.snapshotService.isEnabled() || this.fatalError
+                || this.lastSequenceId - this.lastSnapshotSequenceId < this.snapshotService.getInterval()) {
+            return;
+        }
+        // 快照必须包含lastSequenceId之前的全部撮合和清算:
+        flush();
+        if (this.fatalError) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        EngineSnapshot snapshot = EngineSnapshot.capture(this.lastSequenceId, this.assetService, matchEngines());
+        final long queued = this.dbQueuedBatches;
+        if (this.snapshotService.submit(snapshot, () -> this.savedDbBatches >= queued)) {
+            this.lastSnapshotSequenceId = this.lastSequenceId;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("capture snapshot at {} in {} us.", this.lastSequenceId, (System.nanoTime() - startTime) / 1000);
+        }
+    }
+
+    /**
+     * 该线程成批取出apiResultQueue中的ApiResultMessage，并通过redis Pub成批发布
      */
     private void runApiResultThread() {
         logger.info("start publish api result to redis...");
-        for(;;) {
-            ApiResultMessage result = this.apiResultQueue.poll();
-            if (result != null) {
-                redisService.publish(RedisCache.Topic.TRADING_API_RESULT, JsonUtil.writeJson(result));
-            } else {
-                // 无推送时，暂停1ms:
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
-                }
-            }
-        }
+        runPublishThread(this.apiResultQueue, RedisCache.Topic.TRADING_API_RESULT, this.apiResultPublishTimer);
     }
 
     /**
-     * 该线程循环访问tickQueue，如果其中有TickMessage则成批发送（通过消息系统）
+     * 该线程成批取出tickQueue中的TickMessage，并通过消息系统成批发送
      */
     private void runTickThread() {
         logger.info("start tick thread...");
-        for(;;) {
-            List<TickMessage> msgs =  new ArrayList<>();
-            for(;;) {
-                TickMessage msg = tickQueue.poll();
-                if (msg != null) {
-                    msgs.add(msg);
-                    if (msgs.size() >= 1000) {
-                        // 单次发送的ticks达到上限，跳出内循环
-                        break;
-                    }
-                } else {
-                    // tickQueue中无待发送消息，跳出内循环
-                    break;
-                }
-            }
-            if (!msgs.isEmpty()){
+        List<TickMessage> msgs = new ArrayList<>(DRAIN_BATCH_SIZE);
+        try {
+            for (;;) {
+                this.tickQueue.await();
+                this.tickQueue.drainTo(msgs, DRAIN_BATCH_SIZE);
                 if (logger.isDebugEnabled()) {
                     logger.debug("send {} tick messages...", msgs.size());
                 }
                 this.producer.sendMessages(msgs);
-            } else {
-                // 无TickMessage时，暂停1ms:
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
-                }
+                // sendMessages()返回时消息已序列化，列表可复用:
+                msgs.clear();
             }
+        } catch (InterruptedException e) {
+            logger.warn("{} was interrupted.", Thread.currentThread().getName());
         }
     }
 
     /**
-     * 该线程监控this.latestOrderBook，如果发生变化则执行redis脚本，发送推送消息（在脚本内部使用redis Pub）
+     * 每个交易对一个该线程，从orderBookQueue中取出订单簿快照，只处理每批中最新的一个，执行redis脚本并发送推送消息（在脚本内部使用redis Pub）
+     * 发给redis的只是相对上次推送的增量，由脚本合并为完整快照并推送增量，只有脚本中的快照衔接不上时才发送完整快照
      */
-    private void runOrderBookThread() {
-        logger.info("start update orderbook snapshot to redis...");
-        long lastSequenceId = 0;
-        for (;;) {
-            // 获取OrderBookBean的引用，确保后续操作针对局部变量而非成员变量latestOrderBook:
-            final OrderBookBean orderBook = this.latestOrderBook;
-            // 仅在OrderBookBean更新后刷新Redis:
-            if (orderBook != null && orderBook.sequenceId > lastSequenceId) {
+    private void runOrderBookThread(SymbolEngine engine) {
+        logger.info("start update orderbook snapshot of {} to redis...", engine.getSymbol());
+        RingBuffer<OrderBookBean> orderBookQueue = engine.orderBookQueue;
+        List<OrderBookBean> orderBooks = new ArrayList<>(DRAIN_BATCH_SIZE);
+        OrderBookBean lastOrderBook = null;
+        try {
+            for (;;) {
+                orderBookQueue.await();
+                orderBookQueue.drainTo(orderBooks, DRAIN_BATCH_SIZE);
+                // 中间被覆盖的快照无需推送:
+                final OrderBookBean orderBook = orderBooks.get(orderBooks.size() - 1);
+                orderBooks.clear();
+                // 热备引擎不刷新:
+                if (this.replicaService.isStandby()
+                        || (lastOrderBook != null && orderBook.sequenceId <= lastOrderBook.sequenceId)) {
+                    continue;
+                }
                 if (logger.isDebugEnabled()) {
-                    logger.debug("update orderbook snapshot at sequence id {}...", orderBook.sequenceId);
+                    logger.debug("update orderbook snapshot of {} at sequence id {}...", engine.getSymbol(), orderBook.sequenceId);
                 }
-                redisService.executeScriptReturnBoolean(
-                        this.shaUpdateOrderBookLua,
-                        new String[]{RedisCache.Key.ORDER_BOOK},
-                        new String[]{String.valueOf(orderBook.sequenceId), JsonUtil.writeJson(orderBook)}
-                );
-                lastSequenceId = orderBook.sequenceId;
-            } else {
-                // 无更新时，暂停1ms:
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
+                // 增量基于上次实际推送的快照，redis中的快照衔接不上（如redis重启）时改为发送完整快照:
+                if ("GAP".equals(updateOrderBook(engine.getSymbol(), lastOrderBook, orderBook))) {
+                    logger.warn("orderbook of {} in redis is out of sync, send full snapshot at sequence id {}.",
+                            engine.getSymbol(), orderBook.sequenceId);
+                    updateOrderBook(engine.getSymbol(), null, orderBook);
                 }
+                lastOrderBook = orderBook;
             }
+        } catch (InterruptedException e) {
+            logger.warn("{} was interrupted.", Thread.currentThread().getName());
         }
     }
 
     /**
-     * 该线程循环访问notificationQueue，对于需要推送的消息使用redis Pub推送给推送模块
+     * 执行update-orderbook.lua，previous为null时发送完整快照，否则只发送变化的档位，返回脚本的结果
+     */
+    private String updateOrderBook(String symbol, OrderBookBean previous, OrderBookBean current) {
+        List<OrderBookItemBean> buy = current.buy;
+        List<OrderBookItemBean> sell = current.sell;
+        if (previous != null) {
+            OrderBookDeltaBean delta = OrderBookDeltaBean.of(previous, current);
+            buy = delta.buy;
+            sell = delta.sell;
+        }
+        String[] args = new String[5 + (buy.size() + sell.size()) * 2];
+        args[0] = symbol;
+        args[1] = String.valueOf(current.sequenceId);
+        args[2] = previous == null ? "" : String.valueOf(previous.sequenceId);
+        args[3] = current.price.toPlainString();
+        args[4] = String.valueOf(buy.size());
+        int n = 5;
+        for (List<OrderBookItemBean> items : List.of(buy, sell)) {
+            for (OrderBookItemBean item : items) {
+                args[n++] = item.price.toPlainString();
+                args[n++] = item.quantity.toPlainString();
+            }
+        }
+        return this.redisService.executeScriptReturnString(this.shaUpdateOrderBookLua,
+                new String[]{RedisCache.Key.of(RedisCache.Key.ORDER_BOOK, symbol), RedisCache.Key.of(RedisCache.Key.ORDER_BOOK_BUY, symbol),
+                        RedisCache.Key.of(RedisCache.Key.ORDER_BOOK_SELL, symbol), RedisCache.Key.of(RedisCache.Key.ORDER_BOOK_LAST_SEQ, symbol)},
+                args);
+    }
+
+    /**
+     * 该线程成批取出notificationQueue中的消息，使用redis Pub成批推送给推送模块
      */
     private void runNotifyThread() {
         logger.info("start publish notify to redis...");
-        for(;;) {
-            NotificationMessage msg = this.notificationQueue.poll();
-            if (msg != null) {
-                redisService.publish(RedisCache.Topic.NOTIFICATION, JsonUtil.writeJson(msg));
-            } else {
-                // 无推送时，暂停1ms:
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
+        runPublishThread(this.notificationQueue, RedisCache.Topic.NOTIFICATION, this.notificationPublishTimer);
+    }
+
+    /**
+     * 每次从queue中取出最多publishBatchSize条消息，序列化后在独立连接上以pipeline方式一次发布到topic，
+     * 发布失败时关闭连接，按指数退避等待后重建连接并重试整批消息，直到成功，因此消息可能重复但不会丢失
+     */
+    private <T> void runPublishThread(RingBuffer<T> queue, String topic, Timer publishTimer) {
+        List<T> msgs = new ArrayList<>(this.publishBatchSize);
+        List<String> payloads = new ArrayList<>(this.publishBatchSize);
+        long lingerNanos = this.publishLinger.toNanos();
+        RedisBatchPublisher publisher = null;
+        try {
+            for (;;) {
+                queue.await();
+                queue.drainTo(msgs, this.publishBatchSize, lingerNanos);
+                for (T msg : msgs) {
+                    payloads.add(JsonUtil.writeJson(msg));
                 }
+                long backoff = PUBLISH_RETRY_MIN_MILLIS;
+                for (;;) {
+                    try {
+                        if (publisher == null) {
+                            publisher = this.redisService.createBatchPublisher();
+                        }
+                        long startTime = System.nanoTime();
+                        publisher.publish(topic, payloads);
+                        publishTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                        break;
+                    } catch (RuntimeException e) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException();
+                        }
+                        logger.warn("publish " + payloads.size() + " messages to " + topic + " failed, reconnect and retry after "
+                                + backoff + " ms...", e);
+                        closeQuietly(publisher);
+                        publisher = null;
+                        Thread.sleep(backoff);
+                        backoff = Math.min(backoff * 2, PUBLISH_RETRY_MAX_MILLIS);
+                    }
+                }
+                msgs.clear();
+                payloads.clear();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("{} was interrupted.", Thread.currentThread().getName());
+        } finally {
+            closeQuietly(publisher);
+        }
+    }
+
+    private void closeQuietly(RedisBatchPublisher publisher) {
+        if (publisher != null) {
+            try {
+                publisher.close();
+            } catch (RuntimeException e) {
+                logger.warn("close redis batch publisher failed.", e);
             }
         }
     }
 
     /**
-     * 该线程循环调用saveToDb()，将matchQueue和orderQueue中的数据存入数据库
+     * 该线程成批取出dbQueue中的数据，调用saveToDb()存入数据库
      */
     private void runDbThread() {
         logger.info("start batch insert to db...");
-        for (;;) {
-            try {
-                saveToDb();
-            } catch (InterruptedException e) {
-                logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                break;
+        List<DbBatch> batches = new ArrayList<>(DRAIN_BATCH_SIZE);
+        try {
+            for (;;) {
+                this.dbQueue.await();
+                this.dbQueue.drainTo(batches, DRAIN_BATCH_SIZE);
+                saveToDb(batches);
+                batches.clear();
             }
+        } catch (InterruptedException e) {
+            logger.warn("{} was interrupted.", Thread.currentThread().getName());
         }
     }
 
     // called by dbExecutor thread only:
-    private void saveToDb() throws InterruptedException {
-        // 成批存储matchQueue中的数据
-        if (!matchQueue.isEmpty()) {
-            List<MatchDetailEntity> batch = new ArrayList<>(1000);
-            for(;;) {
-                List<MatchDetailEntity> matches = this.matchQueue.poll();
-                if (matches != null) {
-                    batch.addAll(matches);
-                    if (batch.size() >= 1000) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
-            }
-            batch.sort(MatchDetailEntity::compareTo);
+    private void saveToDb(List<DbBatch> batches) {
+        List<MatchDetailEntity> matches = new ArrayList<>();
+        List<OrderEntity> orders = new ArrayList<>();
+        for (DbBatch batch : batches) {
+            matches.addAll(batch.matches);
+            orders.addAll(batch.orders);
+        }
+        // 成批存储成交明细:
+        if (!matches.isEmpty()) {
+            matches.sort(MatchDetailEntity::compareTo);
             if (logger.isDebugEnabled()) {
-                logger.debug("batch insert {} match details...", batch.size());
+                logger.debug("batch insert {} match details...", matches.size());
             }
-            this.storeService.insertIgnore(batch);
+            this.storeService.insertIgnore(matches);
         }
-        // 成批存储orderQueue中的数据
-        if (!orderQueue.isEmpty()) {
-            List<OrderEntity> batch = new ArrayList<>(1000);
-            for (;;) {
-                List<OrderEntity> orders = orderQueue.poll();
-                if (orders != null) {
-                    batch.addAll(orders);
-                    if (batch.size() >= 1000) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
-            }
-            batch.sort(OrderEntity::compareTo);
+        // 成批存储已完成的订单:
+        if (!orders.isEmpty()) {
+            orders.sort(OrderEntity::compareTo);
             if (logger.isDebugEnabled()) {
-                logger.debug("batch insert {} orders...", batch.size());
+                logger.debug("batch insert {} orders...", orders.size());
             }
-            this.storeService.insertIgnore(batch);
+            this.storeService.insertIgnore(orders);
         }
-        if (matchQueue.isEmpty()) {
-            Thread.sleep(1);
+        this.savedDbBatches += batches.size();
+    }
+
+    /**
+     * tick队列已满时把较新的消息合并到较旧的消息：ticks依次追加，sequenceId和createdAt取较新的，
+     * 行情系统按sequenceId去重，因此ticks不会丢失，只是合并到同一批中生成K线
+     */
+    static TickMessage mergeTicks(TickMessage older, TickMessage newer) {
+        older.ticks.addAll(newer.ticks);
+        older.sequenceId = newer.sequenceId;
+        older.createdAt = newer.createdAt;
+        return older;
+    }
+
+    /**
+     * 由引擎线程放入输出队列，队列已满时按该队列的OverflowPolicy处理，只有BLOCK队列会等待输出线程腾出空间。
+     * 等待时被中断则该元素无法放入，BLOCK队列承诺不丢失数据，因此引擎直接退出，重启后从事件重新生成输出
+     */
+    private <E> void publish(RingBuffer<E> queue, E e) {
+        try {
+            queue.put(e);
+        } catch (InterruptedException ex) {
+            logger.error("interrupted when publish to {} queue.", queue.getName());
+            Thread.currentThread().interrupt();
+            panic();
         }
     }
 
     public void processMessages(List<AbstractEvent> messages){
-        this.orderBookChanged = false;
         for (AbstractEvent message : messages) {
             processEvent(message);
         }
-        if (this.orderBookChanged) {
-            // 如果某个事件引起了订单簿变化，则更新最新的订单簿快照
-            // 获取最新的OrderBook快照:
-            this.latestOrderBook = this.matchEngine.getOrderBook(this.orderBookDepth);
-        }
+        // 一批消息中的订单由各交易对并行撮合，清算后推送有变化的订单簿快照:
+        flush();
+        trySnapshot();
     }
 
     public void processEvent(AbstractEvent event) {
@@ -330,19 +586,14 @@ public class TradingEngineService extends LoggerSupport {
             logger.warn("skip duplicate event: {}", event);
             return;
         }
-        // 判断是否丢失了消息，如果是则从数据库中恢复丢失的消息（依据lastSequenceId）
+        // 判断是否丢失了消息，如果是则从数据库中追赶到event.previousId（依据lastSequenceId）
         if (event.previousId > this.lastSequenceId) {
             logger.warn("event lost: expected previous id {} but actual {} for event {}", this.lastSequenceId,
                     event.previousId, event);
-            List<AbstractEvent> events = this.storeService.loadEventsFromDb(this.lastSequenceId);
-            if (events.isEmpty()) {
-                logger.error("cannot load lost event from db.");
-                panic();
+            catchUp(event.previousId);
+            if (this.fatalError) {
                 return;
             }
-            for (AbstractEvent e : events) {
-                this.processEvent(e);
-            }
         }
         // 其他异常情况
         if (event.previousId != this.lastSequenceId) {
@@ -350,13 +601,128 @@ public class TradingEngineService extends LoggerSupport {
             panic();
             return;
         }
+        applyEvent(event);
+    }
+
+    /**
+     * 从数据库追赶到toSequenceId：async-catch-up线程以流式结果集读取并反序列化事件，
+     * 当前线程从有界队列中依次取出事件处理，两者并行，因此追赶速度只受引擎处理速度限制。
+     */
+    void catchUp(long toSequenceId) {
+        final long fromSequenceId = this.lastSequenceId;
+        long startTime = System.currentTimeMillis();
+        long progressTime = startTime;
+        for (;;) {
+            long before = this.lastSequenceId;
+            catchUpFromDb(toSequenceId);
+            if (this.fatalError || this.lastSequenceId == toSequenceId) {
+                break;
+            }
+            // 按mirror的进度等待，而不是固定的重试次数，mirror积压时追赶变慢但不会失败:
+            long now = System.currentTimeMillis();
+            if (this.lastSequenceId > before) {
+                progressTime = now;
+            } else if (now - progressTime >= CATCH_UP_STALL_MILLIS) {
+                break;
+            }
+            logger.warn("caught up to {} but expected {}, retry after {} ms...", this.lastSequenceId, toSequenceId, CATCH_UP_RETRY_MILLIS);
+            try {
+                Thread.sleep(CATCH_UP_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                logger.warn("catch up was interrupted.");
+                panic();
+                return;
+            }
+        }
+        if (!this.fatalError && this.lastSequenceId != toSequenceId) {
+            logger.error("cannot load lost event from db: expected {} but caught up to {}.", toSequenceId, this.lastSequenceId);
+            panic();
+        }
+        logger.info("caught up {} events from {} to {} in {} ms.", this.lastSequenceId - fromSequenceId, fromSequenceId,
+                this.lastSequenceId, System.currentTimeMillis() - startTime);
+    }
+
+    private void catchUpFromDb(long toSequenceId) {
+        final long fromSequenceId = this.lastSequenceId;
+        BlockingQueue<AbstractEvent> queue = new ArrayBlockingQueue<>(CATCH_UP_BUFFER_SIZE);
+        AtomicReference<RuntimeException> readError = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Thread readerThread = new Thread(() -> {
+            try {
+                this.storeService.streamEventsFromDb(fromSequenceId, toSequenceId, e -> {
+                    if (cancelled.get()) {
+                        throw new CancellationException();
+                    }
+                    try {
+                        queue.put(e);
+                    } catch (InterruptedException ex) {
+                        throw new CancellationException();
+                    }
+                });
+            } catch (CancellationException e) {
+                // 引擎已停止追赶
+            } catch (RuntimeException e) {
+                readError.set(e);
+            } finally {
+                // 队列满时等待引擎取走事件，保证结束标记一定被放入:
+                for (;;) {
+                    try {
+                        if (cancelled.get() || queue.offer(END_OF_CATCH_UP, 100, TimeUnit.MILLISECONDS)) {
+                            break;
+                        }
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+        }, "async-catch-up");
+        readerThread.start();
+        try {
+            for (;;) {
+                AbstractEvent event = queue.take();
+                if (event == END_OF_CATCH_UP) {
+                    break;
+                }
+                if (event.previousId != this.lastSequenceId) {
+                    logger.error("bad event during catch up: expected previous id {} but actual {} for event: {}",
+                            this.lastSequenceId, event.previousId, event);
+                    panic();
+                    break;
+                }
+                applyEvent(event);
+                if (this.fatalError) {
+                    break;
+                }
+                trySnapshot();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("catch up was interrupted.");
+            panic();
+        } finally {
+            cancelled.set(true);
+            readerThread.interrupt();
+        }
+        if (readError.get() != null) {
+            logger.error("cannot load lost event from db.", readError.get());
+            panic();
+        }
+    }
+
+    private void applyEvent(AbstractEvent event) {
         // 正常情况
         if (logger.isDebugEnabled()) {
             logger.debug("process event {} -> {}: {}...", this.lastSequenceId, event.sequenceId, event);
         }
+        long startTime = System.nanoTime();
         try {
             if (event instanceof OrderRequestEvent) {
+                long allocatedBytes = this.debugMode ? THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() : 0;
                 createOrder((OrderRequestEvent) event);
+                if (this.debugMode) {
+                    // 只有一个交易对有任务时撮合也在引擎线程中执行，因此统计包括撮合和清算:
+                    flush();
+                    recordOrderAllocation(THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() - allocatedBytes);
+                }
             } else if (event instanceof OrderCancelEvent) {
                 cancelOrder((OrderCancelEvent) event);
             } else if (event instanceof TransferEvent) {
@@ -371,85 +737,288 @@ public class TradingEngineService extends LoggerSupport {
             panic();
             return;
         }
+        this.eventTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
         // 处理完event后的收尾工作
         this.lastSequenceId = event.sequenceId;
+        // 校验和状态哈希都需要逐个处理事件后的状态:
+        if (this.pendingCount >= MAX_PENDING_TASKS || this.debugMode || this.validate) {
+            flush();
+        }
+        if (this.replicaService.isCheckpoint(event.previousId, event.sequenceId)) {
+            flush();
+            this.replicaService.checkpoint(event.sequenceId, getStateHash());
+        }
+        if (this.fatalError) {
+            return;
+        }
         if (logger.isDebugEnabled()) {
             logger.debug("set last processed sequence id: {}...", this.lastSequenceId);
         }
+        if (this.debugMode || this.validate) {
+            this.validateIncremental(event.previousId, event.sequenceId);
+        }
         if (debugMode) {
-            this.validate();
             this.debug();
         }
     }
 
     void transfer(TransferEvent event) {
-        this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, event.fromUserId, event.toUserId, event.asset, event.amount, event.sufficient);
+        boolean ok = tryTransfer(event);
+        if (!ok && this.pendingCount > 0) {
+            // 尚未清算的成交和取消只会增加可用余额，清算后再试，结果与逐个处理事件相同:
+            flush();
+            ok = !this.fatalError && tryTransfer(event);
+        }
+        if (!ok) {
+            logger.warn("transfer failed: {}", event);
+        }
     }
 
+    private boolean tryTransfer(TransferEvent event) {
+        try {
+            return this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, event.fromUserId, event.toUserId, event.asset, FixedPointUtil.toAmount(event.amount), event.sufficient);
+        } catch (ArithmeticException e) {
+            // 金额精度超出或余额溢出，按转账失败处理，不能让单个请求导致引擎退出:
+            return false;
+        }
+    }
+
+    /**
+     * 在引擎线程中冻结资产并创建订单，撮合和清算在flush()中完成
+     */
     void createOrder(OrderRequestEvent event) {
-        ZonedDateTime zdt = Instant.ofEpochMilli(event.createdAt).atZone(zoneId);
-        int year = zdt.getYear();
-        int month = zdt.getMonth().getValue();
-        long orderId = event.sequenceId * 10000 + (year * 100 + month);
-        // 建立订单order
-        OrderEntity order = this.orderService.createOrder(event.sequenceId, event.createdAt, orderId, event.userId, event.direction, event.price, event.quantity);
+        long orderId = event.sequenceId * 10000 + yearMonthOf(event.createdAt);
+        // 未指定交易对的事件使用默认交易对:
+        SymbolEngine engine = event.symbol == null ? this.primaryEngine : this.symbolEngines.get(event.symbol);
+        OrderEntity order = null;
+        if (engine == null) {
+            logger.warn("unknown symbol: {}", event.symbol);
+        } else {
+            // 建立订单order
+            order = this.orderService.createOrder(event.sequenceId, event.createdAt, orderId, event.userId, engine.pair,
+                    event.direction, event.price, event.quantity);
+            if (order == null && this.pendingCount > 0) {
+                // 尚未清算的成交和取消只会增加可用余额，清算后再试，结果与逐个处理事件相同:
+                flush();
+                if (this.fatalError) {
+                    return;
+                }
+                order = this.orderService.createOrder(event.sequenceId, event.createdAt, orderId, event.userId, engine.pair,
+                        event.direction, event.price, event.quantity);
+            }
+        }
         if (order == null) {
             logger.warn("create order failed.");
-            // redis Pub推送失败结果，消息将由API模块接受，为用户返回异步响应:
-            this.apiResultQueue.add(ApiResultMessage.createOrderFailed(event.refId, event.createdAt));
+            addTask(MatchTask.Type.ORDER_FAILED, event, null, null);
             return;
         }
-        // 由orderService创建订单后让matchEngine进行搓单
-        MatchResult result = this.matchEngine.processOrder(event.sequenceId, order);
-        // 搓单成功后由clearingService清算MatchResult
-        this.clearingService.clearMatchResult(result);
-        // 推送成功结果,消息将由API模块接受，为用户返回异步响应，注意必须复制一份OrderEntity,因为将异步序列化:
-        this.apiResultQueue.add(ApiResultMessage.orderSuccess(event.refId, order.copy(), event.createdAt));
-        this.orderBookChanged = true;
-        // 收集Notification:
-        List<NotificationMessage> notifications = new ArrayList<>();
-        // 该NotificationMessage有userId，订单匹配的消息会被通知给下单用户
-        notifications.add(createNotification(event.createdAt, "order_matched", order.userId, order.copy()));
-        // 收集已完成的OrderEntity并生成MatchDetailEntity, TickEntity:
-        if (!result.matchDetails.isEmpty()) {
+        addTask(MatchTask.Type.ORDER, event, engine, order);
+    }
+
+    void cancelOrder(OrderCancelEvent event) {
+        OrderEntity order = this.orderService.getOrder(event.refOrderId);
+        // 未找到活动订单或订单不属于该用户:
+        if (order == null || order.userId.longValue() != event.userId.longValue()) {
+            addTask(MatchTask.Type.CANCEL_FAILED, event, null, null);
+            return;
+        }
+        // 订单按自身的交易对取消，是否已在尚未清算的撮合中完全成交由撮合线程判断:
+        addTask(MatchTask.Type.CANCEL, event, this.symbolEngines.get(order.symbol), order);
+    }
+
+    private void addTask(MatchTask.Type type, AbstractEvent event, SymbolEngine engine, OrderEntity order) {
+        if (this.pendingCount == this.pendingTasks.size()) {
+            this.pendingTasks.add(new MatchTask());
+        }
+        MatchTask task = this.pendingTasks.get(this.pendingCount++).reset(type, event, engine, order);
+        if (engine != null) {
+            engine.add(task);
+        }
+    }
+
+    /**
+     * 各交易对并行撮合已加入的任务，再按sequenceId顺序清算并生成输出，最后推送有变化的订单簿快照。
+     * 撮合只依赖同一交易对之前的撮合，清算只修改余额，因此结果与逐个处理事件相同
+     */
+    void flush() {
+        if (this.pendingCount == 0 || this.fatalError) {
+            return;
+        }
+        // 热备引擎只维护状态，不生成任何输出，同一批任务使用同一个判断结果:
+        boolean standby = this.replicaService.isStandby();
+        try {
+            match(!standby);
+            for (int i = 0; i < this.pendingCount; i++) {
+                complete(this.pendingTasks.get(i), standby);
+            }
+        } catch (Exception e) {
+            logger.error("process event error.", e);
+            panic();
+            return;
+        }
+        this.pendingCount = 0;
+        // 订单簿快照由撮合线程生成，前orderBookDepth档未变化时仍是上次的快照，不会再次推送:
+        for (SymbolEngine engine : this.symbolEngines.values()) {
+            OrderBookBean orderBook = engine.getOrderBook();
+            if (orderBook != null && orderBook != engine.latestOrderBook) {
+                engine.latestOrderBook = orderBook;
+                publish(engine.orderBookQueue, orderBook);
+            }
+        }
+    }
+
+    private void match(boolean copyOrders) throws InterruptedException {
+        for (SymbolEngine engine : this.symbolEngines.values()) {
+            if (engine.hasTasks()) {
+                this.matchingEngines.add(engine);
+            }
+        }
+        try {
+            if (this.matchingEngines.size() == 1) {
+                // 只有一个交易对有任务时无需切换线程:
+                this.matchingEngines.get(0).match(copyOrders);
+                return;
+            }
+            for (SymbolEngine engine : this.matchingEngines) {
+                engine.submit(copyOrders);
+            }
+            for (SymbolEngine engine : this.matchingEngines) {
+                engine.await();
+            }
+        } finally {
+            this.matchingEngines.clear();
+        }
+    }
+
+    private void complete(MatchTask task, boolean standby) {
+        AbstractEvent event = task.event;
+        switch (task.type) {
+            case ORDER -> completeOrder(task, standby);
+            case CANCEL -> completeCancel(task, standby);
+            case ORDER_FAILED -> {
+                // redis Pub推送失败结果，消息将由API模块接受，为用户返回异步响应:
+                if (!standby) {
+                    publish(this.apiResultQueue, ApiResultMessage.createOrderFailed(event.refId, event.createdAt));
+                }
+            }
+            case CANCEL_FAILED -> {
+                // 发送失败消息:
+                if (!standby) {
+                    publish(this.apiResultQueue, ApiResultMessage.cancelOrderFailed(event.refId, event.createdAt));
+                }
+            }
+            default -> throw new IllegalArgumentException("Invalid match task: " + task.type);
+        }
+    }
+
+    private void completeOrder(MatchTask task, boolean standby) {
+        AbstractEvent event = task.event;
+        OrderEntity order = task.order;
+        MatchResult result = task.result;
+        // 撮合成功后由clearingService清算MatchResult
+        long startTime = System.nanoTime();
+        task.symbolEngine.clearingService.clearMatchResult(result);
+        this.clearTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        // 热备引擎只维护状态，不生成任何输出:
+        if (standby) {
+            return;
+        }
+        // 推送成功结果,消息将由API模块接受，为用户返回异步响应，订单已在撮合线程中复制，因为将异步序列化，
+        // 复制时才生成BigDecimal的unfilledQuantity，复制的订单不再修改，因此可以由多个输出线程共享:
+        OrderEntity takerCopy = task.orderCopy;
+        publish(this.apiResultQueue, ApiResultMessage.orderSuccess(event.refId, takerCopy, event.createdAt));
+        // 收集已完成的OrderEntity并生成MatchDetailEntity, TickEntity，没有成交时无需通知和写入数据库:
+        if (!result.isEmpty()) {
+            // 收集Notification:
+            List<NotificationMessage> notifications = new ArrayList<>(result.size() + 1);
+            // 该NotificationMessage有userId，订单匹配的消息会被通知给下单用户
+            notifications.add(createNotification(event.createdAt, "order_matched", order.userId, takerCopy));
             List<OrderEntity> closedOrders = new ArrayList<>();
-            List<MatchDetailEntity> matchDetails = new ArrayList<>();
-            List<TickEntity> ticks = new ArrayList<>();
-            if(result.takerOrder.status.isFinalStatus) {
-                closedOrders.add(result.takerOrder);
+            List<MatchDetailEntity> matchDetails = new ArrayList<>(result.size() * 2);
+            List<TickEntity> ticks = new ArrayList<>(result.size());
+            if(takerCopy.status.isFinalStatus) {
+                closedOrders.add(takerCopy);
             }
-            for(MatchDetailRecord detail : result.matchDetails) {
-                OrderEntity maker = detail.makerOrder();
+            for (int i = 0; i < result.size(); i++) {
+                OrderEntity maker = result.makerOrder(i);
+                OrderEntity makerCopy = task.makerCopies.get(i);
                 // 该消息将被推送给撮合交易成功的挂单用户,但这不意味这这一单已完成，有可能是部分交易
-                notifications.add(createNotification(maker.createdAt, "order_matched", maker.userId, maker.copy()));
-                if(maker.status.isFinalStatus) {
-                    closedOrders.add(maker);
+                notifications.add(createNotification(maker.createdAt, "order_matched", maker.userId, makerCopy));
+                if(makerCopy.status.isFinalStatus) {
+                    closedOrders.add(makerCopy);
                 }
-                MatchDetailEntity takerDetail = generateMatchDetailEntity(event.sequenceId, event.createdAt, detail, true);
-                MatchDetailEntity makerDetail = generateMatchDetailEntity(event.sequenceId, event.createdAt, detail, false);
+                MatchDetailEntity takerDetail = generateMatchDetailEntity(event.sequenceId, event.createdAt, result, i, true);
+                MatchDetailEntity makerDetail = generateMatchDetailEntity(event.sequenceId, event.createdAt, result, i, false);
                 matchDetails.add(takerDetail);
                 matchDetails.add(takerDetail);
                 TickEntity tick = new TickEntity();
-                tick.takerOrderId = detail.takerOrder().id;
-                tick.makerOrderId = detail.makerOrder().id;
-                tick.price = detail.price();
-                tick.quantity = detail.quantity();
-                tick.takerDirection = detail.takerOrder().direction == Direction.BUY;
+                tick.symbol = order.symbol;
+                tick.takerOrderId = result.takerOrder.id;
+                tick.makerOrderId = maker.id;
+                tick.price = FixedPointUtil.fromValue(result.price(i));
+                tick.quantity = FixedPointUtil.fromValue(result.quantity(i));
+                tick.takerDirection = result.takerOrder.direction == Direction.BUY;
                 tick.createdAt = event.createdAt;
                 ticks.add(tick);
             }
             // 异步写入数据库:
-            this.orderQueue.add(closedOrders);
-            this.matchQueue.add(matchDetails);
+            publish(this.dbQueue, new DbBatch(closedOrders, matchDetails));
+            this.dbQueuedBatches++;
             // 异步发送Tick消息:
             TickMessage msg = new TickMessage();
             msg.sequenceId = event.sequenceId;
             msg.createdAt = event.createdAt;
             msg.ticks = ticks;
-            this.tickQueue.add(msg);
+            publish(this.tickQueue, msg);
             // 异步通知OrderMatch:
-            this.notificationQueue.addAll(notifications);
+            for (NotificationMessage notification : notifications) {
+                publish(this.notificationQueue, notification);
+            }
+        }
+    }
+
+    private void completeCancel(MatchTask task, boolean standby) {
+        AbstractEvent event = task.event;
+        // 在这里解冻资产
+        task.symbolEngine.clearingService.clearCancelOrder(task.cancelled);
+        if (standby) {
+            return;
+        }
+        // 撮合线程复制时生成unfilledQuantity:
+        OrderEntity canceled = task.orderCopy;
+        // 向API模块发送处理结果，API模块向用户返回异步响应
+        publish(this.apiResultQueue, ApiResultMessage.orderSuccess(event.refId, canceled, event.createdAt));
+        // 向推送模块推送订单取消
+        publish(this.notificationQueue, createNotification(event.createdAt, "order_canceled", canceled.userId, canceled));
+    }
+
+    /**
+     * debugMode下统计处理下单事件平均每个订单分配的字节数，包括撮合、清算以及生成通知、复制订单等输出，
+     * 每ORDER_ALLOCATION_SAMPLES个订单输出一次
+     */
+    void recordOrderAllocation(long bytes) {
+        this.orderAllocatedBytes += bytes;
+        this.orderAllocationOrders++;
+        if (this.orderAllocationOrders == ORDER_ALLOCATION_SAMPLES) {
+            logger.info("create order allocated {} bytes per order in last {} orders.",
+                    this.orderAllocatedBytes / this.orderAllocationOrders, this.orderAllocationOrders);
+            this.orderAllocatedBytes = 0;
+            this.orderAllocationOrders = 0;
+        }
+    }
+
+    /**
+     * 返回时间戳所在月份的yyyyMM，同一个月内直接返回上次计算的结果
+     */
+    int yearMonthOf(long ts) {
+        if (ts < this.monthStartMillis || ts >= this.monthEndMillis) {
+            ZonedDateTime zdt = Instant.ofEpochMilli(ts).atZone(this.zoneId);
+            ZonedDateTime monthStart = zdt.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+            this.monthStartMillis = monthStart.toInstant().toEpochMilli();
+            this.monthEndMillis = monthStart.plusMonths(1).toInstant().toEpochMilli();
+            this.yearMonth = zdt.getYear() * 100 + zdt.getMonthValue();
         }
+        return this.yearMonth;
     }
 
     private NotificationMessage createNotification(long ts, String type, Long userId, Object data) {
@@ -461,37 +1030,32 @@ public class TradingEngineService extends LoggerSupport {
         return msg;
     }
 
-    MatchDetailEntity generateMatchDetailEntity(long sequenceId, long timestamp, MatchDetailRecord detail, boolean forTaker) {
+    MatchDetailEntity generateMatchDetailEntity(long sequenceId, long timestamp, MatchResult result, int index, boolean forTaker) {
+        OrderEntity taker = result.takerOrder;
+        OrderEntity maker = result.makerOrder(index);
         MatchDetailEntity d = new MatchDetailEntity();
         d.sequenceId = sequenceId;
-        d.orderId = forTaker ? detail.takerOrder().id : detail.makerOrder().id;
-        d.counterOrderId = forTaker ? detail.makerOrder().id : detail.takerOrder().id;
-        d.direction = forTaker ? detail.takerOrder().direction : detail.makerOrder().direction;
-        d.price = detail.price();
-        d.quantity = detail.quantity();
+        d.orderId = forTaker ? taker.id : maker.id;
+        d.counterOrderId = forTaker ? maker.id : taker.id;
+        d.direction = forTaker ? taker.direction : maker.direction;
+        d.price = FixedPointUtil.fromValue(result.price(index));
+        d.quantity = FixedPointUtil.fromValue(result.quantity(index));
         d.type = forTaker ? MatchType.TAKER : MatchType.MAKER;
-        d.userId = forTaker ? detail.takerOrder().userId : detail.makerOrder().userId;
-        d.counterUserId = forTaker ? detail.makerOrder().userId : detail.takerOrder().userId;
+        d.userId = forTaker ? taker.userId : maker.userId;
+        d.counterUserId = forTaker ? maker.userId : taker.userId;
         d.createdAt = timestamp;
         return d;
     }
 
-    void cancelOrder(OrderCancelEvent event) {
-        OrderEntity order = this.orderService.getOrder(event.refOrderId);
-        // 未找到活动订单或订单不属于该用户:
-        if (order == null || order.userId.longValue() != event.userId.longValue()) {
-            // 发送失败消息:
-            apiResultQueue.add(ApiResultMessage.cancelOrderFailed(event.refId, event.createdAt));
-            return;
+    /**
+     * 资产、各交易对订单簿和最新成交价的状态哈希，主备引擎在同一sequenceId的状态哈希必须相同，调用前必须flush()
+     */
+    long getStateHash() {
+        long hash = this.assetService.getStateHash();
+        for (SymbolEngine engine : this.symbolEngines.values()) {
+            hash = hash * 31 + engine.matchEngine.getStateHash();
         }
-        this.matchEngine.cancel(event.createdAt, order);
-        // 在这里解冻资产
-        this.clearingService.clearCancelOrder(order);
-        this.orderBookChanged = true;
-        // 向API模块发送处理结果，API模块向用户返回异步响应
-        this.apiResultQueue.add(ApiResultMessage.orderSuccess(event.refId, order, event.createdAt));
-        // 向推送模块推送订单取消
-        this.notificationQueue.add(createNotification(event.createdAt, "order_canceled", order.userId, order));
+        return hash;
     }
 
     private void panic() {
@@ -504,7 +1068,10 @@ public class TradingEngineService extends LoggerSupport {
         System.out.println("========== trading engine ==========");
         this.assetService.debug();
         this.orderService.debug();
-        this.matchEngine.debug();
+        for (SymbolEngine engine : this.symbolEngines.values()) {
+            System.out.println("---------- " + engine.getSymbol() + " ----------");
+            engine.matchEngine.debug();
+        }
         System.out.println("========== // trading engine ==========");
     }
 
@@ -517,40 +1084,99 @@ public class TradingEngineService extends LoggerSupport {
     }
 
 
-    void validateAssets() {
-        // 验证系统资产完整性:
-        BigDecimal totalUSD = BigDecimal.ZERO;
-        BigDecimal totalBTC = BigDecimal.ZERO;
-        for (Map.Entry<Long, ConcurrentMap<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
-            Long userId = userEntry.getKey();
-            ConcurrentMap<AssetEnum, Asset> assets = userEntry.getValue();
-            for (Map.Entry<AssetEnum, Asset> entry : assets.entrySet()) {
-                AssetEnum assetId = entry.getKey();
-                Asset asset = entry.getValue();
-                if (userId.longValue() == UserType.DEBT.getInternalUserId()) {
-                    // 系统负债账户available不允许为正:
-                    require(asset.getAvailable().signum() <= 0, "Debt has positive available: " + asset);
-                    // 系统负债账户frozen必须为0:
-                    require(asset.getFrozen().signum() == 0, "Debt has non-zero frozen: " + asset);
-                } else {
-                    // 交易用户的available/frozen不允许为负数:
-                    require(asset.getAvailable().signum() >= 0, "Trader has negative available: " + asset);
-                    require(asset.getFrozen().signum() >= 0, "Trader has negative frozen: " + asset);
+    /**
+     * 只校验本次事件中资产发生变化的用户，每隔fullValidateInterval个事件做一次全量校验。
+     * 订单成交或取消时其用户的资产必然变化，因此用户的冻结资产和订单簿中的未成交订单总是一起被校验。
+     */
+    void validateIncremental(long previousId, long sequenceId) {
+        if (!this.assetService.isTrackingChanges()) {
+            // 第一次校验时全量校验并开始记录资产变化:
+            this.assetService.enableChangeTracking();
+            for (SymbolEngine engine : this.symbolEngines.values()) {
+                engine.matchEngine.enableFrozenTracking();
+            }
+            validate();
+            return;
+        }
+        if (this.fullValidateInterval > 0 && previousId / this.fullValidateInterval != sequenceId / this.fullValidateInterval) {
+            validate();
+        } else {
+            // 每个事件都会执行，只在校验失败时才生成错误信息:
+            // 各类别资产总额为0:
+            for (AssetEnum assetId : AssetEnum.values()) {
+                long total = this.assetService.getTotal(assetId);
+                if (total != 0) {
+                    fail("Non zero " + assetId + " balance: " + FixedPointUtil.fromAmount(total));
                 }
-                switch (assetId) {
-                    case USD -> {
-                        totalUSD = totalUSD.add(asset.getTotal());
-                    }
-                    case BTC -> {
-                        totalBTC = totalBTC.add(asset.getTotal());
-                    }
-                    default -> require(false, "Unexpected asset id: " + assetId);
+            }
+            // 订单簿和活动订单数量一致:
+            int activeOrders = this.orderService.getActiveOrders().size();
+            int bookOrders = 0;
+            for (SymbolEngine engine : this.symbolEngines.values()) {
+                bookOrders += engine.matchEngine.buyBook.size() + engine.matchEngine.sellBook.size();
+            }
+            if (bookOrders != activeOrders) {
+                fail("Order book size is not equal to active orders: " + activeOrders);
+            }
+            for (Long userId : this.assetService.getChangedUsers()) {
+                validateUser(userId);
+            }
+        }
+        this.assetService.clearChangedUsers();
+    }
+
+    void validateUser(Long userId) {
+        boolean debt = userId.longValue() == UserType.DEBT.getInternalUserId();
+        // 各交易对的MatchEngine按订单簿中的未成交订单增量维护的冻结金额，按资产合计后必须和清算后的资产冻结一致:
+        long[] orderFrozen = new long[AssetEnum.values().length];
+        for (SymbolEngine engine : this.symbolEngines.values()) {
+            orderFrozen[engine.pair.quoteAsset().ordinal()] += engine.matchEngine.getOrderFrozen(userId, Direction.BUY);
+            orderFrozen[engine.pair.baseAsset().ordinal()] += engine.matchEngine.getOrderFrozen(userId, Direction.SELL);
+        }
+        for (Map.Entry<AssetEnum, Asset> entry : this.assetService.getAssets(userId).entrySet()) {
+            AssetEnum assetId = entry.getKey();
+            Asset asset = entry.getValue();
+            if (debt) {
+                if (asset.getAvailableAmount() > 0) {
+                    fail("Debt has positive available: " + asset);
+                }
+                if (asset.getFrozenAmount() != 0) {
+                    fail("Debt has non-zero frozen: " + asset);
+                }
+            } else {
+                if (asset.getAvailableAmount() < 0) {
+                    fail("Trader has negative available: " + asset);
+                }
+                long expected = orderFrozen[assetId.ordinal()];
+                if (asset.getFrozenAmount() != expected) {
+                    fail("Order frozen " + FixedPointUtil.fromAmount(expected) + " is not equals to asset frozen of user "
+                            + userId + ": " + asset);
                 }
             }
         }
+    }
+
+    void validateAssets() {
+        // 验证系统资产完整性:
+        Map<AssetEnum, BigDecimal> totals = new EnumMap<>(AssetEnum.class);
+        this.assetService.forEach((userId, assetId, available, frozen) -> {
+            Asset asset = new Asset(available, frozen);
+            if (userId == UserType.DEBT.getInternalUserId()) {
+                // 系统负债账户available不允许为正:
+                require(asset.getAvailable().signum() <= 0, "Debt has positive available: " + asset);
+                // 系统负债账户frozen必须为0:
+                require(asset.getFrozen().signum() == 0, "Debt has non-zero frozen: " + asset);
+            } else {
+                // 交易用户的available/frozen不允许为负数:
+                require(asset.getAvailable().signum() >= 0, "Trader has negative available: " + asset);
+                require(asset.getFrozen().signum() >= 0, "Trader has negative frozen: " + asset);
+            }
+            totals.merge(assetId, asset.getTotal(), BigDecimal::add);
+        });
         // 各类别资产总额为0:
-        require(totalUSD.signum() == 0, "Non zero USD balance: " + totalUSD);
-        require(totalBTC.signum() == 0, "Non zero BTC balance: " + totalBTC);
+        for (Map.Entry<AssetEnum, BigDecimal> entry : totals.entrySet()) {
+            require(entry.getValue().signum() == 0, "Non zero " + entry.getKey() + " balance: " + entry.getValue());
+        }
     }
 
     void validateOrders() {
@@ -558,50 +1184,51 @@ public class TradingEngineService extends LoggerSupport {
         Map<Long, Map<AssetEnum, BigDecimal>> userOrderFrozen = new HashMap<>();
         for (Map.Entry<Long, OrderEntity> entry : this.orderService.getActiveOrders().entrySet()) {
             OrderEntity order = entry.getValue();
-            require(order.unfilledQuantity.signum() > 0, "Active order must have positive unfilled amount: " + order);
+            require(order.unfilledQuantityValue > 0, "Active order must have positive unfilled amount: " + order);
+            SymbolEngine engine = this.symbolEngines.get(order.symbol);
+            require(engine != null, "Active order has unknown symbol: " + order);
+            MatchEngine matchEngine = engine.matchEngine;
+            AssetEnum baseAsset = engine.pair.baseAsset();
+            AssetEnum quoteAsset = engine.pair.quoteAsset();
+            BigDecimal unfilledQuantity = FixedPointUtil.fromValue(order.unfilledQuantityValue);
             switch (order.direction) {
                 case BUY -> {
                     // 订单必须在MatchEngine中:
-                    require(this.matchEngine.buyBook.exist(order), "order not found in buy book: " + order);
-                    // 累计冻结的USD:
+                    require(matchEngine.buyBook.exist(order), "order not found in buy book: " + order);
+                    // 累计冻结的计价资产:
                     userOrderFrozen.putIfAbsent(order.userId, new HashMap<>());
                     Map<AssetEnum, BigDecimal> frozenAssets = userOrderFrozen.get(order.userId);
-                    frozenAssets.putIfAbsent(AssetEnum.USD, BigDecimal.ZERO);
-                    BigDecimal frozen = frozenAssets.get(AssetEnum.USD);
-                    frozenAssets.put(AssetEnum.USD, frozen.add(order.price.multiply(order.unfilledQuantity)));
+                    frozenAssets.putIfAbsent(quoteAsset, BigDecimal.ZERO);
+                    BigDecimal frozen = frozenAssets.get(quoteAsset);
+                    frozenAssets.put(quoteAsset, frozen.add(order.price.multiply(unfilledQuantity)));
                 }
                 case SELL -> {
                     // 订单必须在MatchEngine中:
-                    require(this.matchEngine.sellBook.exist(order), "order not found in sell book: " + order);
-                    // 累计冻结的BTC:
+                    require(matchEngine.sellBook.exist(order), "order not found in sell book: " + order);
+                    // 累计冻结的基础资产:
                     userOrderFrozen.putIfAbsent(order.userId, new HashMap<>());
                     Map<AssetEnum, BigDecimal> frozenAssets = userOrderFrozen.get(order.userId);
-                    frozenAssets.putIfAbsent(AssetEnum.BTC, BigDecimal.ZERO);
-                    BigDecimal frozen = frozenAssets.get(AssetEnum.BTC);
-                    frozenAssets.put(AssetEnum.BTC, frozen.add(order.unfilledQuantity));
+                    frozenAssets.putIfAbsent(baseAsset, BigDecimal.ZERO);
+                    BigDecimal frozen = frozenAssets.get(baseAsset);
+                    frozenAssets.put(baseAsset, frozen.add(unfilledQuantity));
                 }
                 default -> require(false, "Unexpected order direction: " + order.direction);
             }
         }
         // 订单冻结的累计金额必须和Asset冻结一致:
-        for (Map.Entry<Long, ConcurrentMap<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
-            Long userId = userEntry.getKey();
-            ConcurrentMap<AssetEnum, Asset> assets = userEntry.getValue();
-            for (Map.Entry<AssetEnum, Asset> entry : assets.entrySet()) {
-                AssetEnum assetId = entry.getKey();
-                Asset asset = entry.getValue();
-                if (asset.getFrozen().signum() > 0) {
-                    Map<AssetEnum, BigDecimal> orderFrozen = userOrderFrozen.get(userId);
-                    require(orderFrozen != null, "No order frozen found for user: " + userId + ", asset: " + asset);
-                    BigDecimal frozen = orderFrozen.get(assetId);
-                    require(frozen != null, "No order frozen found for asset: " + asset);
-                    require(frozen.compareTo(asset.getFrozen()) == 0,
-                            "Order frozen " + frozen + " is not equals to asset frozen: " + asset);
-                    // 从userOrderFrozen中删除已验证的Asset数据:
-                    orderFrozen.remove(assetId);
-                }
+        this.assetService.forEach((userId, assetId, available, assetFrozen) -> {
+            Asset asset = new Asset(available, assetFrozen);
+            if (asset.getFrozen().signum() > 0) {
+                Map<AssetEnum, BigDecimal> orderFrozen = userOrderFrozen.get(userId);
+                require(orderFrozen != null, "No order frozen found for user: " + userId + ", asset: " + asset);
+                BigDecimal frozen = orderFrozen.get(assetId);
+                require(frozen != null, "No order frozen found for asset: " + asset);
+                require(frozen.compareTo(asset.getFrozen()) == 0,
+                        "Order frozen " + frozen + " is not equals to asset frozen: " + asset);
+                // 从userOrderFrozen中删除已验证的Asset数据:
+                orderFrozen.remove(assetId);
             }
-        }
+        });
         // userOrderFrozen不存在未验证的Asset数据:
         for (Map.Entry<Long, Map<AssetEnum, BigDecimal>> userEntry : userOrderFrozen.entrySet()) {
             Long userId = userEntry.getKey();
@@ -613,22 +1240,33 @@ public class TradingEngineService extends LoggerSupport {
     void validateMatchEngine() {
         // OrderBook的Order必须在ActiveOrders中:
         Map<Long, OrderEntity> copyOfActiveOrders = new HashMap<>(this.orderService.getActiveOrders());
-        for (OrderEntity order : this.matchEngine.buyBook.book.values()) {
-            require(copyOfActiveOrders.remove(order.id) == order,
-                    "Order in buy book is not in active orders: " + order);
-        }
-        for (OrderEntity order : this.matchEngine.sellBook.book.values()) {
-            require(copyOfActiveOrders.remove(order.id) == order,
-                    "Order in sell book is not in active orders: " + order);
+        for (SymbolEngine engine : this.symbolEngines.values()) {
+            for (OrderEntity order : engine.matchEngine.buyBook.getOrders()) {
+                require(copyOfActiveOrders.remove(order.id) == order && engine.getSymbol().equals(order.symbol),
+                        "Order in buy book of " + engine.getSymbol() + " is not in active orders: " + order);
+            }
+            for (OrderEntity order : engine.matchEngine.sellBook.getOrders()) {
+                require(copyOfActiveOrders.remove(order.id) == order && engine.getSymbol().equals(order.symbol),
+                        "Order in sell book of " + engine.getSymbol() + " is not in active orders: " + order);
+            }
         }
         // activeOrders的所有Order必须在Order Book中:
         require(copyOfActiveOrders.isEmpty(), "Not all active orders are in order book.");
+        // 订单簿中的每个Order必须在MatchEngine的索引中:
+        for (OrderEntity order : this.orderService.getActiveOrders().values()) {
+            OrderNode node = this.symbolEngines.get(order.symbol).matchEngine.getOrderNode(order.id);
+            require(node != null && node.order == order, "Order in order book is not indexed: " + order);
+        }
     }
 
     void require(boolean condition, String errorMessage) {
         if (!condition) {
-            logger.error("validate failed: {}", errorMessage);
-            panic();
+            fail(errorMessage);
         }
     }
+
+    void fail(String errorMessage) {
+        logger.error("validate failed: {}", errorMessage);
+        panic();
+    }
 }
@@ -1,34 +1,44 @@
 package org.warpexchange_learning.tradingengine.assets;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.warpexchange_learning.common.util.FixedPointUtil;
 
 import java.math.BigDecimal;
 
+/**
+ * 用户某一项资产的副本，available和frozen以FixedPointUtil.AMOUNT_SCALE定点存储，实际余额保存在UserAssetTable中
+ */
 public class Asset {
-    BigDecimal available;
+    final long available;
 
-    BigDecimal frozen;
+    final long frozen;
 
     public Asset() {
-        this(BigDecimal.ZERO, BigDecimal.ZERO);
+        this(0, 0);
     }
 
-    public Asset(BigDecimal available, BigDecimal frozen) {
+    public Asset(long available, long frozen) {
         this.available = available;
         this.frozen = frozen;
     }
 
-    public BigDecimal getAvailable() {return available;}
+    public BigDecimal getAvailable() {return FixedPointUtil.fromAmount(available);}
 
-    public BigDecimal getFrozen() {return frozen;}
+    public BigDecimal getFrozen() {return FixedPointUtil.fromAmount(frozen);}
+
+    @JsonIgnore
+    public long getAvailableAmount() {return available;}
+
+    @JsonIgnore
+    public long getFrozenAmount() {return frozen;}
 
     @JsonIgnore
     public BigDecimal getTotal() {
-        return available.add(frozen);
+        return FixedPointUtil.fromAmount(Math.addExact(available, frozen));
     }
 
     @Override
     public String toString() {
-        return String.format("[available=%04.2f, frozen=%02.2f]", available, frozen);
+        return String.format("[available=%04.2f, frozen=%02.2f]", getAvailable(), getFrozen());
     }
 }
@@ -3,94 +3,281 @@ package org.warpexchange_learning.tradingengine.assets;
 import org.springframework.stereotype.Component;
 import org.warpexchange_learning.common.enums.AssetEnum;
 import org.warpexchange_learning.common.support.LoggerSupport;
+import org.warpexchange_learning.common.util.HashUtil;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
 
+/**
+ * 用户资产，余额以FixedPointUtil.AMOUNT_SCALE定点存储在UserAssetTable中，只能由引擎线程修改。
+ */
 @Component
 public class AssetService extends LoggerSupport {
 
-    final ConcurrentMap<Long, ConcurrentMap<AssetEnum, Asset>> userAssets = new ConcurrentHashMap<>();
+    static final AssetEnum[] ASSET_IDS = AssetEnum.values();
 
-    public Asset getAsset(Long userId, AssetEnum assetId) {
-        ConcurrentMap<AssetEnum, Asset> assets = userAssets.get(userId);
-        if (assets == null) {
+    final UserAssetTable table = new UserAssetTable(1024);
+
+    // 所有资产的哈希之和，每次修改资产时增量更新，只取决于当前状态而与修改顺序无关:
+    private long stateHash = 0;
+
+    // 开启后记录资产发生变化的用户，并增量维护各类资产的总额，用于增量校验:
+    private boolean trackChanges = false;
+    private final Set<Long> changedUsers = new HashSet<>();
+    private final long[] totals = new long[ASSET_IDS.length];
+
+    /**
+     * 遍历资产时的回调，available和frozen为定点金额
+     */
+    @FunctionalInterface
+    public interface AssetVisitor {
+        void visit(long userId, AssetEnum assetId, long available, long frozen);
+    }
+
+    /**
+     * 开始记录资产变化，此时按当前所有资产重新计算各类资产总额
+     */
+    public void enableChangeTracking() {
+        Arrays.fill(this.totals, 0);
+        forEach((userId, assetId, available, frozen) -> {
+            this.totals[assetId.ordinal()] = Math.addExact(this.totals[assetId.ordinal()], Math.addExact(available, frozen));
+        });
+        this.changedUsers.clear();
+        this.trackChanges = true;
+    }
+
+    public boolean isTrackingChanges() {
+        return this.trackChanges;
+    }
+
+    /**
+     * 上次clearChangedUsers()之后资产发生过变化的用户
+     */
+    public Set<Long> getChangedUsers() {
+        return this.changedUsers;
+    }
+
+    public void clearChangedUsers() {
+        this.changedUsers.clear();
+    }
+
+    /**
+     * 增量维护的某类资产总额，所有用户（含负债账户）之和应当为0
+     */
+    public long getTotal(AssetEnum assetId) {
+        return this.totals[assetId.ordinal()];
+    }
+
+    /**
+     * 返回所有资产的状态哈希，必须在引擎线程中调用
+     */
+    public long getStateHash() {
+        return this.stateHash;
+    }
+
+    /**
+     * 返回资产的副本，不存在时返回null，可在任意线程调用
+     */
+    public Asset getAsset(long userId, AssetEnum assetId) {
+        UserAssetTable.Storage s = this.table.storage();
+        int row = s.find(userId);
+        if (row < 0) {
             return null;
         }
-        return assets.get(assetId);
+        int i = UserAssetTable.index(row, assetId);
+        for (; ; ) {
+            int version = s.beginRead(row);
+            boolean present = (s.present[row] & (1 << assetId.ordinal())) != 0;
+            long available = s.balances[i];
+            long frozen = s.balances[i + 1];
+            if (s.validate(row, version)) {
+                return present ? new Asset(available, frozen) : null;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 返回用户所有资产的一致副本，可在任意线程调用，不会阻塞引擎线程
+     */
+    public Map<AssetEnum, Asset> getAssets(long userId) {
+        UserAssetTable.Storage s = this.table.storage();
+        int row = s.find(userId);
+        if (row < 0) {
+            return Map.of();
+        }
+        Map<AssetEnum, Asset> assets = new EnumMap<>(AssetEnum.class);
+        long[] balances = new long[UserAssetTable.STRIDE];
+        for (; ; ) {
+            int version = s.beginRead(row);
+            int present = s.present[row];
+            System.arraycopy(s.balances, UserAssetTable.index(row, ASSET_IDS[0]), balances, 0, balances.length);
+            if (s.validate(row, version)) {
+                for (AssetEnum assetId : ASSET_IDS) {
+                    if ((present & (1 << assetId.ordinal())) != 0) {
+                        int i = assetId.ordinal() * 2;
+                        assets.put(assetId, new Asset(balances[i], balances[i + 1]));
+                    }
+                }
+                return assets;
+            }
+            // 与引擎线程修改同一用户重叠，修改只有几次赋值，稍后重读即可:
+            Thread.onSpinWait();
+        }
     }
 
-    public ConcurrentMap<Long, ConcurrentMap<AssetEnum, Asset>> getUserAssets() {
-        return this.userAssets;
+    /**
+     * 按用户加入的先后遍历所有资产
+     */
+    public void forEach(AssetVisitor visitor) {
+        // 先读size再读storage，保证storage中至少有size行:
+        int size = this.table.size();
+        UserAssetTable.Storage s = this.table.storage();
+        for (int row = 0; row < size; row++) {
+            int present = s.present[row];
+            for (AssetEnum assetId : ASSET_IDS) {
+                if ((present & (1 << assetId.ordinal())) != 0) {
+                    int i = UserAssetTable.index(row, assetId);
+                    visitor.visit(s.userIds[row], assetId, s.balances[i], s.balances[i + 1]);
+                }
+            }
+        }
     }
 
-    public Map<AssetEnum, Asset> getAssets(Long userId) {
-        ConcurrentMap<AssetEnum, Asset> assets = userAssets.get(userId);
-        if (assets == null) {
-            return Map.of();
+    /**
+     * 所有用户的资产总数
+     */
+    public int getAssetCount() {
+        int size = this.table.size();
+        UserAssetTable.Storage s = this.table.storage();
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            count += Integer.bitCount(s.present[row]);
         }
-        return assets;
+        return count;
     }
 
-    public boolean tryFreeze(Long userId, AssetEnum assetId, BigDecimal amount) {
+    /**
+     * 以下方法的amount均为FixedPointUtil.AMOUNT_SCALE定点金额
+     */
+    public boolean tryFreeze(long userId, AssetEnum assetId, long amount) {
         return tryTransfer(Transfer.AVAILABLE_TO_FROZEN, userId, userId, assetId, amount, true);
     }
 
-    public void unfreeze(Long userId, AssetEnum assetId, BigDecimal amount) {
+    public void unfreeze(long userId, AssetEnum assetId, long amount) {
         if (!tryTransfer(Transfer.FROZEN_TO_AVAILABLE, userId, userId, assetId, amount, true)) {
             throw new RuntimeException("Unfreeze failed");
         }
     }
 
-    public void transfer(Transfer type, Long fromUser, Long toUser, AssetEnum assetId, BigDecimal amount) {
+    public void transfer(Transfer type, long fromUser, long toUser, AssetEnum assetId, long amount) {
         if (!tryTransfer(type, fromUser, toUser, assetId, amount, true)){
             throw new RuntimeException("Transfer failed");
         }
     }
 
-    public boolean tryTransfer(Transfer type, Long fromUser, Long toUser, AssetEnum assetId, BigDecimal amount, boolean checkBalance) {
-        if (amount.signum() < 0) {
+    public boolean tryTransfer(Transfer type, long fromUser, long toUser, AssetEnum assetId, long amount, boolean checkBalance) {
+        if (amount < 0) {
             throw new IllegalArgumentException("Negative amount");
         }
 
-        Asset fromAsset = getAsset(fromUser, assetId);
-        if (fromAsset == null) {
-            fromAsset = initAssets(fromUser, assetId);
+        // from和to为available在balances中的下标，frozen紧随其后:
+        int from = initAssets(fromUser, assetId);
+        int to = initAssets(toUser, assetId);
+        // 创建资产可能导致扩容，因此在两者都创建后再取storage:
+        UserAssetTable.Storage s = this.table.storage();
+        long[] b = s.balances;
+
+        long hashBefore = hashOf(fromUser, assetId, b, from) + (from == to ? 0 : hashOf(toUser, assetId, b, to));
+        long totalBefore = this.trackChanges ? totalOf(b, from, to) : 0;
+        // 修改期间标记两个用户所在的行，其他线程读到的是修改前或修改后的完整数据:
+        int fromRow = UserAssetTable.rowOf(from);
+        int toRow = UserAssetTable.rowOf(to);
+        s.beginWrite(fromRow);
+        if (toRow != fromRow) {
+            s.beginWrite(toRow);
+        }
+        boolean ok;
+        try {
+            ok = transfer(type, b, from, to, amount, checkBalance);
+        } finally {
+            s.endWrite(fromRow);
+            if (toRow != fromRow) {
+                s.endWrite(toRow);
+            }
+        }
+        if (ok) {
+            this.stateHash += hashOf(fromUser, assetId, b, from) + (from == to ? 0 : hashOf(toUser, assetId, b, to)) - hashBefore;
+            if (this.trackChanges) {
+                this.totals[assetId.ordinal()] += totalOf(b, from, to) - totalBefore;
+                this.changedUsers.add(fromUser);
+                this.changedUsers.add(toUser);
+            }
         }
+        return ok;
+    }
 
-        Asset toAsset = getAsset(toUser, assetId);
-        if (toAsset == null) {
-            toAsset = initAssets(toUser, assetId);
+    /**
+     * 按增量修改一个用户的可用和冻结余额，增量为负时余额不足将抛出异常。
+     * 只修改单边余额，用于清算时把同一用户的多笔转账合并为一次修改，调用方须保证一次清算中同类资产的增量之和为0。
+     */
+    public void settle(long userId, AssetEnum assetId, long availableDelta, long frozenDelta) {
+        int i = initAssets(userId, assetId);
+        UserAssetTable.Storage s = this.table.storage();
+        long[] b = s.balances;
+        if ((availableDelta < 0 && b[i] < -availableDelta) || (frozenDelta < 0 && b[i + 1] < -frozenDelta)) {
+            throw new RuntimeException("Settle failed");
+        }
+        long hashBefore = hashOf(userId, assetId, b, i);
+        int row = UserAssetTable.rowOf(i);
+        s.beginWrite(row);
+        try {
+            b[i] = Math.addExact(b[i], availableDelta);
+            b[i + 1] = Math.addExact(b[i + 1], frozenDelta);
+        } finally {
+            s.endWrite(row);
+        }
+        this.stateHash += hashOf(userId, assetId, b, i) - hashBefore;
+        if (this.trackChanges) {
+            this.totals[assetId.ordinal()] += availableDelta + frozenDelta;
+            this.changedUsers.add(userId);
         }
+    }
 
+    private static boolean transfer(Transfer type, long[] b, int from, int to, long amount, boolean checkBalance) {
         return switch (type){
             case AVAILABLE_TO_AVAILABLE -> {
-                if (checkBalance && fromAsset.available.compareTo(amount) < 0) {
+                if (checkBalance && b[from] < amount) {
                     yield false;
                 }
-                fromAsset.available = fromAsset.available.subtract(amount);
-                toAsset.available = toAsset.available.add(amount);
+                // 先计算再写入，溢出时余额保持不变，from和to相同时结果不变:
+                long fromBalance = Math.subtractExact(b[from], amount);
+                Math.addExact(b[to], amount);
+                b[from] = fromBalance;
+                b[to] += amount;
                 yield true;
             }
             case AVAILABLE_TO_FROZEN -> {
-                if (checkBalance && fromAsset.available.compareTo(amount) < 0) {
+                if (checkBalance && b[from] < amount) {
                     yield false;
                 }
-                fromAsset.available = fromAsset.available.subtract(amount);
-                toAsset.frozen = toAsset.frozen.add(amount);
+                long fromBalance = Math.subtractExact(b[from], amount);
+                long toBalance = Math.addExact(b[to + 1], amount);
+                b[from] = fromBalance;
+                b[to + 1] = toBalance;
                 yield true;
             }
             case FROZEN_TO_AVAILABLE -> {
-                if (checkBalance && fromAsset.frozen.compareTo(amount) < 0) {
+                if (checkBalance && b[from + 1] < amount) {
                     yield false;
                 }
-                fromAsset.frozen = fromAsset.frozen.subtract(amount);
-                toAsset.available = toAsset.available.add(amount);
+                long fromBalance = Math.subtractExact(b[from + 1], amount);
+                long toBalance = Math.addExact(b[to], amount);
+                b[from + 1] = fromBalance;
+                b[to] = toBalance;
                 yield true;
             }
             default -> {
@@ -99,28 +286,62 @@ public class AssetService extends LoggerSupport {
         };
     }
 
-    private Asset initAssets(Long userId, AssetEnum assetId) {
-        ConcurrentMap<AssetEnum, Asset> map = userAssets.get(userId);
-        if (map == null) {
-            map = new ConcurrentHashMap<>();
-            userAssets.put(userId, map);
+    /**
+     * 从快照恢复资产，只在引擎启动时调用
+     */
+    public void restoreAsset(long userId, AssetEnum assetId, long available, long frozen) {
+        int i = initAssets(userId, assetId);
+        UserAssetTable.Storage s = this.table.storage();
+        long[] b = s.balances;
+        this.stateHash -= hashOf(userId, assetId, b, i);
+        long totalBefore = totalOf(b, i, i);
+        int row = UserAssetTable.rowOf(i);
+        s.beginWrite(row);
+        b[i] = available;
+        b[i + 1] = frozen;
+        s.endWrite(row);
+        this.stateHash += hashOf(userId, assetId, b, i);
+        if (this.trackChanges) {
+            this.totals[assetId.ordinal()] += totalOf(b, i, i) - totalBefore;
+            this.changedUsers.add(userId);
         }
-        Asset zeroAsset = new Asset();
-        map.put(assetId, zeroAsset);
-        return zeroAsset;
+    }
+
+    /**
+     * 返回资产在balances中的下标，资产不存在时创建余额为0的资产
+     */
+    private int initAssets(long userId, AssetEnum assetId) {
+        int row = this.table.findOrCreate(userId);
+        UserAssetTable.Storage s = this.table.storage();
+        int bit = 1 << assetId.ordinal();
+        if ((s.present[row] & bit) == 0) {
+            s.beginWrite(row);
+            s.present[row] |= bit;
+            s.endWrite(row);
+            this.stateHash += HashUtil.hash64(userId, assetId.ordinal(), 0, 0);
+        }
+        return UserAssetTable.index(row, assetId);
+    }
+
+    private static long totalOf(long[] b, int from, int to) {
+        long total = b[from] + b[from + 1];
+        return from == to ? total : total + b[to] + b[to + 1];
+    }
+
+    private static long hashOf(long userId, AssetEnum assetId, long[] b, int i) {
+        return HashUtil.hash64(userId, assetId.ordinal(), b[i], b[i + 1]);
     }
 
     public void debug() {
         System.out.println("---------- assets ----------");
-        List<Long> userIds = new ArrayList<>(userAssets.keySet());
-        Collections.sort(userIds);
-        for (Long userId : userIds) {
+        long[] userIds = new long[this.table.size()];
+        UserAssetTable.Storage s = this.table.storage();
+        System.arraycopy(s.userIds, 0, userIds, 0, userIds.length);
+        Arrays.sort(userIds);
+        for (long userId : userIds) {
             System.out.println("  user " + userId + " ----------");
-            Map<AssetEnum, Asset> assets = userAssets.get(userId);
-            List<AssetEnum> assetIds = new ArrayList<>(assets.keySet());
-            Collections.sort(assetIds);
-            for (AssetEnum assetId : assetIds) {
-                System.out.println("    " + assetId + ": " + assets.get(assetId));
+            for (Map.Entry<AssetEnum, Asset> entry : getAssets(userId).entrySet()) {
+                System.out.println("    " + entry.getKey() + ": " + entry.getValue());
             }
         }
         System.out.println("---------- // assets ----------");
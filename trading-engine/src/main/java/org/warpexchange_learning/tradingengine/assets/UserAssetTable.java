@@ -0,0 +1,183 @@
+package org.warpexchange_learning.tradingengine.assets;
+
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.util.HashUtil;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * 以long类型userId为键的用户资产表，只能由引擎线程修改。
+ * <p>
+ * userId通过开放寻址（线性探测）映射到行号，每个用户占一行，行内按AssetEnum.ordinal()依次存放available和frozen，
+ * 全部是long数组，没有装箱的Long、每用户的Map和Asset对象，读取一个余额只需几次数组访问。
+ * 行号按用户加入的先后分配且不会改变，遍历时按行号顺序访问。
+ * <p>
+ * 所有数组放在同一个Storage对象中，扩容时整体替换，其他线程通过volatile字段读取时不会拿到不匹配的数组。
+ * 每行另有一个版本号（seqlock），引擎线程修改一行前后各加1，其他线程读取一行前后版本号相同且为偶数时，
+ * 读到的该用户所有资产是一致的，读取不加锁，引擎线程也从不等待读取线程。
+ */
+final class UserAssetTable {
+
+    static final int ASSETS = AssetEnum.values().length;
+    static final int STRIDE = ASSETS * 2;
+
+    private static final VarHandle VERSIONS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    static final class Storage {
+        // 开放寻址的槽位，slots[i]为userId，rows[i]为行号+1，0表示空槽:
+        final long[] slots;
+        final int[] rows;
+        final int mask;
+        // 行号 => userId:
+        final long[] userIds;
+        // 行号 => 已存在的资产（按ordinal的位掩码）:
+        final int[] present;
+        // 行号 * STRIDE + ordinal * 2 => available，+1 => frozen:
+        final long[] balances;
+        // 行号 => 版本号，奇数表示正在修改:
+        final int[] versions;
+
+        Storage(long[] slots, int[] rows, long[] userIds, int[] present, long[] balances, int[] versions) {
+            this.slots = slots;
+            this.rows = rows;
+            this.mask = slots.length - 1;
+            this.userIds = userIds;
+            this.present = present;
+            this.balances = balances;
+            this.versions = versions;
+        }
+
+        /**
+         * 引擎线程修改一行之前调用
+         */
+        void beginWrite(int row) {
+            VERSIONS.setOpaque(this.versions, row, this.versions[row] + 1);
+            VarHandle.storeStoreFence();
+        }
+
+        /**
+         * 引擎线程修改一行之后调用
+         */
+        void endWrite(int row) {
+            VERSIONS.setRelease(this.versions, row, this.versions[row] + 1);
+        }
+
+        /**
+         * 读取一行之前调用，返回的版本号为奇数时说明正在修改，应稍后重试
+         */
+        int beginRead(int row) {
+            return (int) VERSIONS.getAcquire(this.versions, row);
+        }
+
+        /**
+         * 读取一行之后调用，返回false说明读取期间该行被修改过，读到的数据需丢弃
+         */
+        boolean validate(int row, int version) {
+            VarHandle.loadLoadFence();
+            return (version & 1) == 0 && (int) VERSIONS.getOpaque(this.versions, row) == version;
+        }
+
+        int find(long userId) {
+            for (int i = slot(userId, this.mask); ; i = (i + 1) & this.mask) {
+                int row = this.rows[i];
+                if (row == 0) {
+                    return -1;
+                }
+                if (this.slots[i] == userId) {
+                    return row - 1;
+                }
+            }
+        }
+    }
+
+    private volatile Storage storage;
+
+    // 已使用的行数:
+    private volatile int size = 0;
+
+    UserAssetTable(int initialUsers) {
+        int capacity = Integer.highestOneBit(Math.max(initialUsers, 8) * 2 - 1) * 2;
+        int rows = capacity / 2;
+        this.storage = new Storage(new long[capacity], new int[capacity], new long[rows], new int[rows], new long[rows * STRIDE], new int[rows]);
+    }
+
+    Storage storage() {
+        return this.storage;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * 返回用户所在行号，用户不存在时返回-1
+     */
+    int find(long userId) {
+        return this.storage.find(userId);
+    }
+
+    /**
+     * 返回用户所在行号，用户不存在时分配新行
+     */
+    int findOrCreate(long userId) {
+        Storage s = this.storage;
+        int i = slot(userId, s.mask);
+        for (; ; i = (i + 1) & s.mask) {
+            int row = s.rows[i];
+            if (row == 0) {
+                break;
+            }
+            if (s.slots[i] == userId) {
+                return row - 1;
+            }
+        }
+        int row = this.size;
+        if (row == s.userIds.length || (row + 1) * 2 > s.slots.length) {
+            s = grow(s);
+            i = slot(userId, s.mask);
+            while (s.rows[i] != 0) {
+                i = (i + 1) & s.mask;
+            }
+        }
+        s.userIds[row] = userId;
+        s.slots[i] = userId;
+        s.rows[i] = row + 1;
+        this.size = row + 1;
+        return row;
+    }
+
+    private Storage grow(Storage s) {
+        // 槽位数保持为行数的2倍，负载因子不超过0.5:
+        int rows = s.userIds.length * 2;
+        long[] slots = new long[rows * 2];
+        int[] slotRows = new int[rows * 2];
+        int mask = slots.length - 1;
+        for (int row = 0; row < this.size; row++) {
+            long userId = s.userIds[row];
+            int i = slot(userId, mask);
+            while (slotRows[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = userId;
+            slotRows[i] = row + 1;
+        }
+        Storage grown = new Storage(slots, slotRows, Arrays.copyOf(s.userIds, rows), Arrays.copyOf(s.present, rows),
+                Arrays.copyOf(s.balances, rows * STRIDE), Arrays.copyOf(s.versions, rows));
+        this.storage = grown;
+        return grown;
+    }
+
+    static int slot(long userId, int mask) {
+        return (int) HashUtil.mix64(userId) & mask;
+    }
+
+    static int index(int row, AssetEnum assetId) {
+        return row * STRIDE + assetId.ordinal() * 2;
+    }
+
+    static int rowOf(int index) {
+        return index / STRIDE;
+    }
+}
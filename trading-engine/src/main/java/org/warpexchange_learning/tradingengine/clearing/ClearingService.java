@@ -1,85 +1,115 @@
 package org.warpexchange_learning.tradingengine.clearing;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
 import org.warpexchange_learning.common.enums.AssetEnum;
 import org.warpexchange_learning.common.model.trade.OrderEntity;
 import org.warpexchange_learning.common.support.LoggerSupport;
+import org.warpexchange_learning.common.util.FixedPointUtil;
 import org.warpexchange_learning.tradingengine.assets.AssetService;
-import org.warpexchange_learning.tradingengine.assets.Transfer;
-import org.warpexchange_learning.tradingengine.match.MatchDetailRecord;
 import org.warpexchange_learning.tradingengine.match.MatchResult;
+import org.warpexchange_learning.tradingengine.match.OrderNode;
 import org.warpexchange_learning.tradingengine.order.OrderService;
 
-import java.math.BigDecimal;
-
-@Component
+/**
+ * 一个交易对的清算，每个交易对一个实例，只能在引擎线程中调用
+ */
 public class ClearingService extends LoggerSupport {
 
     final AssetService assetService;
 
     final OrderService orderService;
 
-    public ClearingService(@Autowired AssetService assetService, @Autowired OrderService orderService) {
+    // 交易对的基础资产和计价资产:
+    final AssetEnum baseAsset;
+    final AssetEnum quoteAsset;
+
+    public ClearingService(AssetService assetService, OrderService orderService, AssetEnum baseAsset, AssetEnum quoteAsset) {
         this.assetService = assetService;
         this.orderService = orderService;
+        this.baseAsset = baseAsset;
+        this.quoteAsset = quoteAsset;
     }
 
+    /**
+     * 清算撮合结果：每个Maker逐笔修改余额，Taker在所有成交中的资产变化合并后只修改一次。
+     * 订单是否完全成交以MatchResult中记录的未成交数量为准，清算时订单可能已被之后的撮合修改
+     */
     public void clearMatchResult(MatchResult result) {
+        if (result.isEmpty()) {
+            return;
+        }
         OrderEntity taker = result.takerOrder;
+        long takerPrice = result.takerPrice;
+        // Taker各笔成交的合计：
+        long takerPaid = 0;
+        long takerReceived = 0;
+        long takerUnfreeze = 0;
         switch (taker.direction){
             case BUY -> {
                 // 买入时，按Maker的价格成交：
-                for(MatchDetailRecord detail : result.matchDetails){
+                for (int i = 0; i < result.size(); i++) {
+                    OrderEntity maker = result.makerOrder(i);
+                    long makerPrice = result.price(i);
+                    long matched = result.quantity(i);
                     if (logger.isDebugEnabled()){
                         logger.debug(
                                 "clear buy matched detail: price = {}, quantity = {}, takerOrderId = {}, makerOrderId = {}, takerUserId = {}, makerUserId = {}",
-                                detail.price(), detail.quantity(), detail.takerOrder().id, detail.makerOrder().id,
-                                detail.takerOrder().userId, detail.makerOrder().userId);
+                                makerPrice, matched, taker.id, maker.id, taker.userId, maker.userId);
                     }
-                    OrderEntity maker = detail.makerOrder();
-                    BigDecimal matched = detail.quantity();
-                    if (taker.price.compareTo(maker.price) > 0){
-                        // 实际买入价比报价低，部分USD退回账户:
-                        BigDecimal unfreezeQuote = taker.price.subtract(maker.price).multiply(matched);
-                        logger.debug("unfree extra unused quote {} back to taker user {}", unfreezeQuote, taker.userId);
-                        assetService.unfreeze(taker.userId, AssetEnum.USD, unfreezeQuote);
+                    if (takerPrice > makerPrice){
+                        // 实际买入价比报价低，部分计价资产退回账户:
+                        takerUnfreeze += FixedPointUtil.amountOf(takerPrice - makerPrice, matched);
                     }
-                    // 买方USD转入卖方账户:
-                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, AssetEnum.USD, maker.price.multiply(matched));
-                    // 卖方BTC转入买方账户:
-                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, AssetEnum.BTC, matched);
+                    long quote = FixedPointUtil.amountOf(makerPrice, matched);
+                    long base = FixedPointUtil.quantityToAmount(matched);
+                    // 买方计价资产转入卖方账户:
+                    assetService.settle(maker.userId, this.quoteAsset, quote, 0);
+                    takerPaid += quote;
+                    // 卖方基础资产转入买方账户:
+                    assetService.settle(maker.userId, this.baseAsset, 0, -base);
+                    takerReceived += base;
                     // 删除完全成交的Maker:
-                    if (maker.unfilledQuantity.signum() == 0) {
+                    if (result.makerUnfilledQuantity(i) == 0) {
                         orderService.removeOrder(maker.id);
                     }
                 }
+                if (logger.isDebugEnabled() && takerUnfreeze > 0) {
+                    logger.debug("unfree extra unused quote {} back to taker user {}", takerUnfreeze, taker.userId);
+                }
+                // Taker支付的计价资产和多冻结的部分一起从冻结中扣除，多冻结的部分退回可用:
+                assetService.settle(taker.userId, this.quoteAsset, takerUnfreeze, -Math.addExact(takerPaid, takerUnfreeze));
+                assetService.settle(taker.userId, this.baseAsset, takerReceived, 0);
                 // 删除完全成交的Taker:
-                if (taker.unfilledQuantity.signum() == 0) {
+                if (result.takerUnfilledQuantity == 0) {
                     orderService.removeOrder(taker.id);
                 }
             }
             case SELL -> {
-                for(MatchDetailRecord detail : result.matchDetails){
+                for (int i = 0; i < result.size(); i++) {
+                    OrderEntity maker = result.makerOrder(i);
+                    long makerPrice = result.price(i);
+                    long matched = result.quantity(i);
                     if (logger.isDebugEnabled()) {
                         logger.debug(
                                 "clear sell matched detail: price = {}, quantity = {}, takerOrderId = {}, makerOrderId = {}, takerUserId = {}, makerUserId = {}",
-                                detail.price(), detail.quantity(), detail.takerOrder().id, detail.makerOrder().id,
-                                detail.takerOrder().userId, detail.makerOrder().userId);
+                                makerPrice, matched, taker.id, maker.id, taker.userId, maker.userId);
                     }
-                    OrderEntity maker = detail.makerOrder();
-                    BigDecimal matched = detail.quantity();
-                    // 卖方BTC转入买方账户:
-                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, AssetEnum.BTC, matched);
-                    // 买方USD转入卖方账户:
-                    assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, AssetEnum.USD, maker.price.multiply(matched));
+                    long base = FixedPointUtil.quantityToAmount(matched);
+                    long quote = FixedPointUtil.amountOf(makerPrice, matched);
+                    // 卖方基础资产转入买方账户:
+                    assetService.settle(maker.userId, this.baseAsset, base, 0);
+                    takerPaid += base;
+                    // 买方计价资产转入卖方账户:
+                    assetService.settle(maker.userId, this.quoteAsset, 0, -quote);
+                    takerReceived += quote;
                     // 删除完全成交的Maker:
-                    if (maker.unfilledQuantity.signum() == 0) {
+                    if (result.makerUnfilledQuantity(i) == 0) {
                         orderService.removeOrder(maker.id);
                     }
                 }
+                assetService.settle(taker.userId, this.baseAsset, 0, -takerPaid);
+                assetService.settle(taker.userId, this.quoteAsset, takerReceived, 0);
                 // 删除完全成交的Taker:
-                if (taker.unfilledQuantity.signum() == 0) {
+                if (result.takerUnfilledQuantity == 0) {
                     orderService.removeOrder(taker.id);
                 }
             }
@@ -87,15 +117,19 @@ public class ClearingService extends LoggerSupport {
         }
     }
 
-    public void clearCancelOrder(OrderEntity order) {
+    /**
+     * @param node 从订单簿中删除的订单，见MatchEngine.cancel()
+     */
+    public void clearCancelOrder(OrderNode node) {
+        OrderEntity order = node.order;
         switch (order.direction){
             case BUY -> {
-                // 解冻USD = 价格 x 未成交数量
-                assetService.unfreeze(order.userId, AssetEnum.USD, order.price.multiply(order.unfilledQuantity));
+                // 解冻计价资产 = 价格 x 未成交数量
+                assetService.unfreeze(order.userId, this.quoteAsset, FixedPointUtil.amountOf(node.price, node.unfilledQuantity));
             }
             case SELL -> {
-                // 解冻BTC = 未成交数量
-                assetService.unfreeze(order.userId, AssetEnum.BTC, order.unfilledQuantity);
+                // 解冻基础资产 = 未成交数量
+                assetService.unfreeze(order.userId, this.baseAsset, FixedPointUtil.quantityToAmount(node.unfilledQuantity));
             }
             default -> throw new IllegalArgumentException("Invalid direction.");
         }
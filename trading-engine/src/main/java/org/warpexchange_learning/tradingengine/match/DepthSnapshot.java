@@ -0,0 +1,17 @@
+package org.warpexchange_learning.tradingengine.match;
+
+import org.warpexchange_learning.common.bean.OrderBookItemBean;
+
+import java.util.List;
+
+/**
+ * 买盘或卖盘前若干档的快照，生成后不再修改，可以安全地交给其他线程
+ */
+public final class DepthSnapshot {
+
+    public final List<OrderBookItemBean> items;
+
+    public DepthSnapshot(List<OrderBookItemBean> items) {
+        this.items = items;
+    }
+}
@@ -1,8 +0,0 @@
-package org.warpexchange_learning.tradingengine.match;
-
-import org.warpexchange_learning.common.model.trade.OrderEntity;
-
-import java.math.BigDecimal;
-
-public record MatchDetailRecord(BigDecimal price, BigDecimal quantity, OrderEntity takerOrder, OrderEntity makerOrder) {
-}
@@ -1,26 +1,72 @@
 package org.warpexchange_learning.tradingengine.match;
 
 
-import org.springframework.stereotype.Component;
 import org.warpexchange_learning.common.bean.OrderBookBean;
 import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.OrderBookType;
 import org.warpexchange_learning.common.enums.OrderStatus;
 import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+import org.warpexchange_learning.common.util.HashUtil;
 
-import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
 
-@Component
+/**
+ * 一个交易对的买盘和卖盘，每个交易对一个实例，同一时刻只能由一个线程访问
+ */
 public class MatchEngine {
 
-    public final OrderBook buyBook = new OrderBook(Direction.BUY);
-    public final OrderBook sellBook = new OrderBook(Direction.SELL);
-    public BigDecimal marketPrice = BigDecimal.ZERO; // 最新成交价
+    public final OrderBook buyBook;
+    public final OrderBook sellBook;
+    public long marketPrice = 0; // 最新成交价，定点long
     private long sequenceId; // 消息事件ID是MatchEngine的状态之一，是当前处理订单的sequenceId
 
+    // 订单簿中所有订单的索引: Order ID => OrderNode，取消订单时无需在订单簿中查找:
+    final Map<Long, OrderNode> orderIndex = new HashMap<>();
+
+    // 调用方未传入MatchResult时复用的成交结果:
+    private final MatchResult matchResult = new MatchResult(16);
+
+    // 订单簿中所有订单的哈希之和，订单加入、成交和删除时增量更新:
+    private long bookHash = 0;
+
+    // 开启后按用户增量维护订单簿中未成交订单对应的冻结金额 userId => [买单冻结的计价资产, 卖单冻结的基础资产]，用于增量校验:
+    private boolean trackFrozen = false;
+    private final Map<Long, long[]> userOrderFrozen = new HashMap<>();
+
+    // 上次生成的订单簿快照:
+    private OrderBookBean lastOrderBook = null;
+    private DepthSnapshot lastBuyDepth = null;
+    private DepthSnapshot lastSellDepth = null;
+    private long lastOrderBookPrice = 0;
+
+    public MatchEngine(OrderBookType orderBookType) {
+        this.buyBook = createOrderBook(orderBookType, Direction.BUY);
+        this.sellBook = createOrderBook(orderBookType, Direction.SELL);
+    }
+
+    static OrderBook createOrderBook(OrderBookType type, Direction direction) {
+        return switch (type) {
+            case TREE_MAP -> new TreeMapOrderBook(direction);
+            case PRICE_LEVEL -> new PriceLevelOrderBook(direction);
+        };
+    }
+
+    /**
+     * @return 成交结果，该对象会被下一次processOrder()复用
+     */
     public MatchResult processOrder(long sequenceId, OrderEntity order) {
+        return processOrder(sequenceId, order, this.matchResult);
+    }
+
+    /**
+     * 撮合结果写入matchResult，撮合和清算不在同一步骤时由调用方为每个订单提供MatchResult
+     */
+    public MatchResult processOrder(long sequenceId, OrderEntity order, MatchResult matchResult) {
         return switch (order.direction) {
-            case BUY -> processOrder(sequenceId, order, this.sellBook, this.buyBook);
-            case SELL -> processOrder(sequenceId, order, this.buyBook, this.sellBook);
+            case BUY -> processOrder(sequenceId, order, this.sellBook, this.buyBook, matchResult);
+            case SELL -> processOrder(sequenceId, order, this.buyBook, this.sellBook, matchResult);
             default -> throw new IllegalArgumentException("Invalid direction.");
         };
     }
@@ -29,81 +75,196 @@ public class MatchEngine {
      * @param takerOrder  输入订单
      * @param makerBook   尝试匹配成交的OrderBook
      * @param anotherBook 未能完全成交后挂单的OrderBook
-     * @return 成交结果
      */
-    private MatchResult processOrder(long sequenceId, OrderEntity takerOrder, OrderBook makerBook, OrderBook anotherBook) {
+    private MatchResult processOrder(long sequenceId, OrderEntity takerOrder, OrderBook makerBook, OrderBook anotherBook,
+                                     MatchResult matchResult) {
         this.sequenceId = sequenceId;
         long ts = takerOrder.createdAt;
-        MatchResult matchResult = new MatchResult(takerOrder);
-        BigDecimal takerUnfilledQuantity = takerOrder.quantity;
+        long takerPrice = takerOrder.priceValue;
+        long takerQuantity = takerOrder.unfilledQuantityValue;
+        matchResult.reset(takerOrder, takerPrice);
+        long takerUnfilledQuantity = takerQuantity;
         for(;;){
-            OrderEntity makerOrder = makerBook.getFirst();
-            if (makerOrder == null) {
+            OrderNode maker = makerBook.getFirst();
+            if (maker == null) {
                 // 对手盘不存在:
                 break;
             }
-            if (takerOrder.direction == Direction.BUY && takerOrder.price.compareTo(makerOrder.price) < 0) {
+            if (takerOrder.direction == Direction.BUY && takerPrice < maker.price) {
                 // 买入订单价格比卖盘第一档价格低:
                 break;
-            }else if (takerOrder.direction == Direction.SELL && takerOrder.price.compareTo(makerOrder.price) > 0) {
+            }else if (takerOrder.direction == Direction.SELL && takerPrice > maker.price) {
                 // 卖出订单价格比买盘第一档价格高:
                 break;
             }
             // 以Maker价格成交:
-            this.marketPrice = makerOrder.price;
+            this.marketPrice = maker.price;
             // 待成交数量为两者较小值:
-            BigDecimal matchedQuantity = takerUnfilledQuantity.min(makerOrder.unfilledQuantity);
-            // 成交记录:
-            matchResult.add(makerOrder.price, matchedQuantity, makerOrder);
+            long matchedQuantity = Math.min(takerUnfilledQuantity, maker.unfilledQuantity);
             // 更新成交后的订单数量:
-            takerUnfilledQuantity = takerUnfilledQuantity.subtract(matchedQuantity);
-            BigDecimal makerUnfilledQuantity = makerOrder.unfilledQuantity.subtract(matchedQuantity);
+            takerUnfilledQuantity -= matchedQuantity;
+            beforeChange(maker);
+            makerBook.reduceQuantity(maker, matchedQuantity);
+            // 成交记录:
+            matchResult.add(maker.price, matchedQuantity, maker.order, maker.unfilledQuantity);
             // 对手盘完全成交后，从订单簿中删除:
-            if (makerUnfilledQuantity.signum() == 0) {
-                makerOrder.updateOrder(makerUnfilledQuantity, OrderStatus.FULLY_FILLED, ts);
-                makerBook.remove(makerOrder);
+            if (maker.unfilledQuantity == 0) {
+                maker.order.updateOrder(0, OrderStatus.FULLY_FILLED, ts);
+                makerBook.remove(maker);
+                this.orderIndex.remove(maker.order.id);
             } else {
                 // 对手盘部分成交:
-                makerOrder.updateOrder(makerUnfilledQuantity, OrderStatus.PARTIAL_FILLED, ts);
+                maker.order.updateOrder(maker.unfilledQuantity, OrderStatus.PARTIAL_FILLED, ts);
+                afterChange(maker);
             }
             // Taker订单完全成交后，退出循环:
-            if (takerUnfilledQuantity.signum() == 0) {
-                takerOrder.updateOrder(takerUnfilledQuantity, OrderStatus.FULLY_FILLED, ts);
+            if (takerUnfilledQuantity == 0) {
+                takerOrder.updateOrder(0, OrderStatus.FULLY_FILLED, ts);
                 break;
             }
         }
-        // Taker订单未完全成交时，放入订单簿:
-        if (takerUnfilledQuantity.signum() > 0) {
+        // Taker订单未完全成交时，放入订单簿，只有此时才需要创建OrderNode:
+        if (takerUnfilledQuantity > 0) {
             takerOrder.updateOrder(takerUnfilledQuantity,
-                    takerUnfilledQuantity.compareTo(takerOrder.quantity) == 0 ? OrderStatus.PENDING
+                    takerUnfilledQuantity == takerQuantity ? OrderStatus.PENDING
                             : OrderStatus.PARTIAL_FILLED,
                     ts);
-            anotherBook.add(takerOrder);
+            OrderNode taker = new OrderNode(takerOrder);
+            anotherBook.add(taker);
+            afterChange(taker);
+            this.orderIndex.put(takerOrder.id, taker);
         }
+        matchResult.takerUnfilledQuantity = takerUnfilledQuantity;
         return matchResult;
     }
 
     /**
-     * 从相应的买盘或者卖盘中将订单删除
+     * 从相应的买盘或者卖盘中将订单删除，取消也会改变订单簿，因此同样推进sequenceId
+     *
+     * @return 被删除的订单，清算时使用其定点价格和未成交数量
      */
-    public void cancel(long ts, OrderEntity order) {
+    public OrderNode cancel(long sequenceId, long ts, OrderEntity order) {
         OrderBook book = order.direction == Direction.BUY ? this.buyBook : this.sellBook;
-        if (!book.remove(order)) {
+        OrderNode node = this.orderIndex.remove(order.id);
+        if (node == null || !book.remove(node)) {
             throw new IllegalArgumentException("Order not found in order book.");
         }
-        OrderStatus status = order.unfilledQuantity.compareTo(order.quantity) == 0 ? OrderStatus.FULLY_CANCELLED : OrderStatus.PARTIAL_CANCELLED;
-        order.updateOrder(order.unfilledQuantity, status, ts);
+        this.sequenceId = sequenceId;
+        beforeChange(node);
+        OrderStatus status = node.unfilledQuantity == order.quantityValue ? OrderStatus.FULLY_CANCELLED : OrderStatus.PARTIAL_CANCELLED;
+        order.updateOrder(node.unfilledQuantity, status, ts);
+        return node;
+    }
+
+    public long getSequenceId() {
+        return this.sequenceId;
+    }
+
+    /**
+     * 从快照恢复状态，只在引擎启动时调用，订单须按撮合优先级依次调用restoreOrder()
+     */
+    public void restore(long sequenceId, long marketPrice) {
+        this.sequenceId = sequenceId;
+        this.marketPrice = marketPrice;
+    }
+
+    public void restoreOrder(OrderEntity order) {
+        OrderNode node = new OrderNode(order);
+        (order.direction == Direction.BUY ? this.buyBook : this.sellBook).add(node);
+        this.orderIndex.put(order.id, node);
+        afterChange(node);
+    }
+
+    /**
+     * 返回订单簿及最新成交价的状态哈希，必须在引擎线程中调用
+     */
+    public long getStateHash() {
+        return this.bookHash ^ HashUtil.mix64(this.marketPrice);
+    }
+
+    /**
+     * 开始按用户维护未成交订单的冻结金额，此时按订单簿中的所有订单重新计算
+     */
+    public void enableFrozenTracking() {
+        this.userOrderFrozen.clear();
+        for (OrderNode node : this.orderIndex.values()) {
+            updateFrozen(node, 1);
+        }
+        this.trackFrozen = true;
+    }
+
+    public boolean isTrackingFrozen() {
+        return this.trackFrozen;
+    }
+
+    /**
+     * 用户在订单簿中某方向的未成交订单应冻结的金额，以FixedPointUtil.AMOUNT_SCALE定点存储
+     */
+    public long getOrderFrozen(Long userId, Direction direction) {
+        long[] frozen = this.userOrderFrozen.get(userId);
+        return frozen == null ? 0 : frozen[direction == Direction.BUY ? 0 : 1];
+    }
+
+    // 订单簿中的订单加入、未成交数量变化或删除时，在变化前调用beforeChange()，变化后调用afterChange():
+    private void beforeChange(OrderNode node) {
+        this.bookHash -= hashOf(node);
+        if (this.trackFrozen) {
+            updateFrozen(node, -1);
+        }
     }
 
+    private void afterChange(OrderNode node) {
+        this.bookHash += hashOf(node);
+        if (this.trackFrozen) {
+            updateFrozen(node, 1);
+        }
+    }
+
+    private void updateFrozen(OrderNode node, int sign) {
+        long[] frozen = this.userOrderFrozen.computeIfAbsent(node.order.userId, userId -> new long[2]);
+        if (node.order.direction == Direction.BUY) {
+            frozen[0] += sign * FixedPointUtil.amountOf(node.price, node.unfilledQuantity);
+        } else {
+            frozen[1] += sign * FixedPointUtil.quantityToAmount(node.unfilledQuantity);
+        }
+        if (frozen[0] == 0 && frozen[1] == 0) {
+            this.userOrderFrozen.remove(node.order.userId);
+        }
+    }
+
+    private static long hashOf(OrderNode node) {
+        return HashUtil.hash64(node.order.id, node.order.direction.ordinal(), node.price, node.unfilledQuantity);
+    }
+
+    /**
+     * 根据订单ID返回订单簿中的订单，不存在时返回null
+     */
+    public OrderNode getOrderNode(Long orderId) {
+        return this.orderIndex.get(orderId);
+    }
+
+    /**
+     * 前maxDepth档和最新成交价都未变化时返回上次的OrderBookBean，其sequenceId不变
+     */
     public OrderBookBean getOrderBook(int maxDepth){
-        return new OrderBookBean(this.sequenceId, this.marketPrice, this.buyBook.getOrderBook(maxDepth), this.sellBook.getOrderBook(maxDepth));
+        DepthSnapshot buy = this.buyBook.getDepth(maxDepth);
+        DepthSnapshot sell = this.sellBook.getDepth(maxDepth);
+        if (this.lastOrderBook != null && buy == this.lastBuyDepth && sell == this.lastSellDepth
+                && this.marketPrice == this.lastOrderBookPrice) {
+            return this.lastOrderBook;
+        }
+        this.lastOrderBook = new OrderBookBean(this.sequenceId, FixedPointUtil.fromValue(this.marketPrice), buy.items, sell.items);
+        this.lastBuyDepth = buy;
+        this.lastSellDepth = sell;
+        this.lastOrderBookPrice = this.marketPrice;
+        return this.lastOrderBook;
     }
 
     public void debug() {
         System.out.println("---------- match engine ----------");
         System.out.println(this.sellBook);
         System.out.println("  ----------");
-        System.out.println("  " + this.marketPrice);
+        System.out.println("  " + FixedPointUtil.fromValue(this.marketPrice));
         System.out.println("  ----------");
         System.out.println(this.buyBook);
         System.out.println("---------- // match engine ----------");
@@ -2,27 +2,105 @@ package org.warpexchange_learning.tradingengine.match;
 
 import org.warpexchange_learning.common.model.trade.OrderEntity;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * 撮合结果，由调用方传入processOrder()或使用MatchEngine持有的实例，每次撮合时重置，因此只在下一次使用之前有效。
+ * 成交明细按列存放在预分配的数组中，第i笔成交的价格、数量和Maker订单分别为price(i)、quantity(i)和makerOrder(i)，
+ * 价格和数量为定点long，见FixedPointUtil。
+ * <p>
+ * 成交后Taker和各Maker的未成交数量记录在结果中，清算时以此判断订单是否完全成交，
+ * 因为清算可能在同一订单簿后续的撮合之后才执行，那时订单的unfilledQuantityValue可能已经改变。
+ */
 public class MatchResult {
 
-    public final OrderEntity takerOrder;
-    public final List<MatchDetailRecord> matchDetails = new ArrayList<>();
+    public OrderEntity takerOrder;
+    // Taker订单的定点价格，清算时用于计算多冻结的金额:
+    public long takerPrice;
+    // 撮合后Taker的未成交数量:
+    public long takerUnfilledQuantity;
 
-    public MatchResult(OrderEntity takerOrder) {this.takerOrder = takerOrder;}
+    private int size = 0;
+    private long[] prices;
+    private long[] quantities;
+    private long[] makerUnfilledQuantities;
+    private OrderEntity[] makerOrders;
 
-    public void add(BigDecimal price, BigDecimal matchedQuantity, OrderEntity makerOrder) {
-        matchDetails.add(new MatchDetailRecord(price, matchedQuantity, this.takerOrder, makerOrder));
+    public MatchResult(int initialCapacity) {
+        this.prices = new long[initialCapacity];
+        this.quantities = new long[initialCapacity];
+        this.makerUnfilledQuantities = new long[initialCapacity];
+        this.makerOrders = new OrderEntity[initialCapacity];
+    }
+
+    void reset(OrderEntity takerOrder, long takerPrice) {
+        // 释放上次的Maker引用，避免已完成的订单无法被回收:
+        Arrays.fill(this.makerOrders, 0, this.size, null);
+        this.size = 0;
+        this.takerOrder = takerOrder;
+        this.takerPrice = takerPrice;
+        this.takerUnfilledQuantity = takerOrder.unfilledQuantityValue;
+    }
+
+    void add(long price, long matchedQuantity, OrderEntity makerOrder, long makerUnfilledQuantity) {
+        if (this.size == this.prices.length) {
+            // 成交笔数超过容量时扩容，稳定后不再分配:
+            int capacity = this.size * 2;
+            this.prices = Arrays.copyOf(this.prices, capacity);
+            this.quantities = Arrays.copyOf(this.quantities, capacity);
+            this.makerUnfilledQuantities = Arrays.copyOf(this.makerUnfilledQuantities, capacity);
+            this.makerOrders = Arrays.copyOf(this.makerOrders, capacity);
+        }
+        this.prices[this.size] = price;
+        this.quantities[this.size] = matchedQuantity;
+        this.makerUnfilledQuantities[this.size] = makerUnfilledQuantity;
+        this.makerOrders[this.size] = makerOrder;
+        this.size++;
+    }
+
+    /**
+     * 成交笔数
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public long price(int index) {
+        return this.prices[index];
+    }
+
+    public long quantity(int index) {
+        return this.quantities[index];
+    }
+
+    public OrderEntity makerOrder(int index) {
+        return this.makerOrders[index];
+    }
+
+    /**
+     * 第index笔成交后Maker的未成交数量，为0表示该Maker已完全成交
+     */
+    public long makerUnfilledQuantity(int index) {
+        return this.makerUnfilledQuantities[index];
     }
 
     @Override
     public String toString() {
-        if (matchDetails.isEmpty()) {
+        if (this.size == 0) {
             return "no matched.";
         }
-        return matchDetails.size() + " matched: "
-                + String.join(", ", this.matchDetails.stream().map(MatchDetailRecord::toString).toArray(String[]::new));
+        StringBuilder sb = new StringBuilder().append(this.size).append(" matched: ");
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("[price=").append(this.prices[i]).append(", quantity=").append(this.quantities[i])
+                    .append(", takerOrderId=").append(this.takerOrder.id).append(", makerOrderId=").append(this.makerOrders[i].id).append(']');
+        }
+        return sb.toString();
     }
 }
@@ -1,6 +1,4 @@
 package org.warpexchange_learning.tradingengine.match;
 
-import java.math.BigDecimal;
-
-public record OrderKey(long sequenceId, BigDecimal price) {
+public record OrderKey(long sequenceId, long price) {
 }
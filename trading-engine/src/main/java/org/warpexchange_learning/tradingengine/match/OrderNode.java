@@ -0,0 +1,28 @@
+package org.warpexchange_learning.tradingengine.match;
+
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+
+/**
+ * 订单簿中的订单，价格和未成交数量以定点long保存，撮合时无需BigDecimal运算。
+ * 订单状态变化时由MatchEngine同步更新OrderEntity的unfilledQuantityValue，不创建BigDecimal。
+ * 在PriceLevelOrderBook中，OrderNode同时是所在价格档位的链表节点。
+ */
+public class OrderNode {
+
+    public final OrderEntity order;
+
+    public final long price;
+
+    public long unfilledQuantity;
+
+    // 所在价格档位及前后订单，仅由PriceLevel维护:
+    PriceLevel level;
+    OrderNode prev;
+    OrderNode next;
+
+    public OrderNode(OrderEntity order) {
+        this.order = order;
+        this.price = order.priceValue;
+        this.unfilledQuantity = order.unfilledQuantityValue;
+    }
+}
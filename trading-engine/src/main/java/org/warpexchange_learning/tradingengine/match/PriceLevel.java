@@ -0,0 +1,64 @@
+package org.warpexchange_learning.tradingengine.match;
+
+import org.warpexchange_learning.common.bean.OrderBookItemBean;
+
+/**
+ * 同一价格的所有订单，订单按时间先后以双向链表串联，OrderNode自身即链表节点，
+ * 因此持有OrderNode即可在O(1)时间内将其从档位中删除。
+ */
+class PriceLevel {
+
+    final long price;
+
+    OrderNode head = null;
+
+    OrderNode tail = null;
+
+    int size = 0;
+
+    // 该档位所有订单的未成交数量之和:
+    long quantity = 0;
+
+    // 缓存的快照条目，quantity变化后置为null:
+    OrderBookItemBean item = null;
+
+    PriceLevel(long price) {
+        this.price = price;
+    }
+
+    boolean isEmpty() {
+        return this.head == null;
+    }
+
+    void addLast(OrderNode node) {
+        node.level = this;
+        node.prev = this.tail;
+        node.next = null;
+        if (this.tail == null) {
+            this.head = node;
+        } else {
+            this.tail.next = node;
+        }
+        this.tail = node;
+        this.size++;
+        this.quantity += node.unfilledQuantity;
+    }
+
+    void unlink(OrderNode node) {
+        if (node.prev == null) {
+            this.head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            this.tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.level = null;
+        node.prev = null;
+        node.next = null;
+        this.size--;
+        this.quantity -= node.unfilledQuantity;
+    }
+}
@@ -0,0 +1,164 @@
+package org.warpexchange_learning.tradingengine.match;
+
+import org.warpexchange_learning.common.bean.OrderBookItemBean;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 按价格分档的订单簿实现：TreeMap中只保存价格档位，每个档位内按时间先后排列订单并维护未成交总量。
+ * 订单大量集中在少数价格上时，增删和取首单只需在档位上比较，生成快照也无需遍历每个订单。
+ * 删除订单时直接从OrderNode所在档位的链表中摘除，只有档位被清空时才需要操作TreeMap。
+ */
+public class PriceLevelOrderBook implements OrderBook {
+
+    public final Direction direction;
+
+    // 价格 => 价格档位，买盘价格高在前，卖盘价格低在前:
+    final TreeMap<Long, PriceLevel> levels;
+
+    // 撮合优先级最高的档位，避免每次getFirst()都查找TreeMap:
+    private PriceLevel bestLevel = null;
+
+    private int size = 0;
+
+    // 最近一次生成的快照，前depthMaxDepth档未变化时直接复用:
+    private DepthSnapshot depth = null;
+    private int depthMaxDepth = 0;
+    // 快照中最后一档的价格，比它更差的价格变化不影响快照:
+    private long depthBoundaryPrice = 0;
+    private boolean depthChanged = true;
+
+    public PriceLevelOrderBook(Direction direction) {
+        this.direction = direction;
+        this.levels = new TreeMap<>(direction == Direction.BUY ? SORT_BUY : SORT_SELL);
+    }
+
+    @Override
+    public Direction getDirection() {
+        return this.direction;
+    }
+
+    @Override
+    public OrderNode getFirst() {
+        return this.bestLevel == null ? null : this.bestLevel.head;
+    }
+
+    @Override
+    public boolean remove(OrderNode node) {
+        PriceLevel level = node.level;
+        if (level == null) {
+            return false;
+        }
+        level.unlink(node);
+        touch(level);
+        this.size--;
+        if (level.isEmpty()) {
+            this.levels.remove(level.price);
+            if (level == this.bestLevel) {
+                this.bestLevel = this.levels.isEmpty() ? null : this.levels.firstEntry().getValue();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean add(OrderNode node) {
+        PriceLevel level = this.levels.get(node.price);
+        if (level == null) {
+            level = new PriceLevel(node.price);
+            this.levels.put(node.price, level);
+            if (this.bestLevel == null || this.levels.comparator().compare(node.price, this.bestLevel.price) < 0) {
+                this.bestLevel = level;
+            }
+        }
+        level.addLast(node);
+        touch(level);
+        this.size++;
+        return true;
+    }
+
+    @Override
+    public OrderNode get(OrderEntity order) {
+        PriceLevel level = this.levels.get(order.priceValue);
+        if (level == null) {
+            return null;
+        }
+        for (OrderNode node = level.head; node != null; node = node.next) {
+            if (node.order == order) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void reduceQuantity(OrderNode node, long matchedQuantity) {
+        node.unfilledQuantity -= matchedQuantity;
+        node.level.quantity -= matchedQuantity;
+        touch(node.level);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public List<OrderEntity> getOrders() {
+        List<OrderEntity> orders = new ArrayList<>(this.size);
+        for (PriceLevel level : this.levels.values()) {
+            for (OrderNode node = level.head; node != null; node = node.next) {
+                orders.add(node.order);
+            }
+        }
+        return orders;
+    }
+
+    @Override
+    public DepthSnapshot getDepth(int maxDepth) {
+        if (!this.depthChanged && this.depth != null && this.depthMaxDepth == maxDepth) {
+            return this.depth;
+        }
+        List<OrderBookItemBean> items = new ArrayList<>(Math.min(maxDepth, this.levels.size()));
+        for (PriceLevel level : this.levels.values()) {
+            if (items.size() >= maxDepth) {
+                break;
+            }
+            // 只有数量变化过的档位才需要重新生成条目:
+            if (level.item == null) {
+                level.item = new OrderBookItemBean(FixedPointUtil.fromValue(level.price), FixedPointUtil.fromValue(level.quantity));
+            }
+            items.add(level.item);
+            this.depthBoundaryPrice = level.price;
+        }
+        this.depth = new DepthSnapshot(items);
+        this.depthMaxDepth = maxDepth;
+        this.depthChanged = false;
+        return this.depth;
+    }
+
+    /**
+     * 档位数量变化后调用，只有变化落在上次快照的范围内时才需要重新生成快照
+     */
+    private void touch(PriceLevel level) {
+        level.item = null;
+        if (!this.depthChanged) {
+            if (this.depth == null || this.depth.items.size() < this.depthMaxDepth
+                    || this.levels.comparator().compare(level.price, this.depthBoundaryPrice) <= 0) {
+                this.depthChanged = true;
+            }
+        }
+    }
+
+    // 价格低在前:
+    private static final Comparator<Long> SORT_SELL = Comparator.naturalOrder();
+
+    // 价格高在前:
+    private static final Comparator<Long> SORT_BUY = Comparator.reverseOrder();
+}
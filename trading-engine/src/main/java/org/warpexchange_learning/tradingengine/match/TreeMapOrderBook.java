@@ -0,0 +1,153 @@
+package org.warpexchange_learning.tradingengine.match;
+
+import org.warpexchange_learning.common.bean.OrderBookItemBean;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 以OrderKey为key，将所有订单放在同一个TreeMap中的订单簿实现
+ */
+public class TreeMapOrderBook implements OrderBook {
+    public final Direction direction;
+    public final TreeMap<OrderKey, OrderNode> book;
+
+    // 最近一次生成的快照，前depthMaxDepth档未变化时直接复用:
+    private DepthSnapshot depth = null;
+    private int depthMaxDepth = 0;
+    // 快照中最后一档的价格，比它更差的价格变化不影响快照:
+    private long depthBoundaryPrice = 0;
+    private boolean depthChanged = true;
+
+    public TreeMapOrderBook(Direction direction) {
+        this.direction = direction;
+        this.book = new TreeMap<>(direction == Direction.BUY ? SORT_BUY : SORT_SELL);
+    }
+
+    @Override
+    public Direction getDirection() {
+        return this.direction;
+    }
+
+    @Override
+    public OrderNode getFirst() {
+        return this.book.isEmpty() ? null : this.book.firstEntry().getValue();
+    }
+
+    @Override
+    public boolean remove(OrderNode node) {
+        if (this.book.remove(new OrderKey(node.order.sequenceId, node.price)) == null) {
+            return false;
+        }
+        touch(node.price);
+        return true;
+    }
+
+    @Override
+    public boolean add(OrderNode node) {
+        touch(node.price);
+        return this.book.put(new OrderKey(node.order.sequenceId, node.price), node) == null;
+    }
+
+    @Override
+    public OrderNode get(OrderEntity order) {
+        return this.book.get(new OrderKey(order.sequenceId, order.priceValue));
+    }
+
+    @Override
+    public void reduceQuantity(OrderNode node, long matchedQuantity) {
+        node.unfilledQuantity -= matchedQuantity;
+        touch(node.price);
+    }
+
+    @Override
+    public int size() {return this.book.size();}
+
+    @Override
+    public List<OrderEntity> getOrders() {
+        List<OrderEntity> orders = new ArrayList<>(this.book.size());
+        for (OrderNode node : this.book.values()) {
+            orders.add(node.order);
+        }
+        return orders;
+    }
+
+    @Override
+    public DepthSnapshot getDepth(int maxDepth) {
+        if (!this.depthChanged && this.depth != null && this.depthMaxDepth == maxDepth) {
+            return this.depth;
+        }
+        List<OrderBookItemBean> items = getOrderBook(maxDepth);
+        this.depth = new DepthSnapshot(items);
+        this.depthMaxDepth = maxDepth;
+        this.depthBoundaryPrice = items.isEmpty() ? 0 : FixedPointUtil.toValue(items.get(items.size() - 1).price);
+        this.depthChanged = false;
+        return this.depth;
+    }
+
+    /**
+     * 价格为price的订单变化后调用，只有变化落在上次快照的范围内时才需要重新生成快照
+     */
+    private void touch(long price) {
+        if (!this.depthChanged) {
+            if (this.depth == null || this.depth.items.size() < this.depthMaxDepth
+                    || (this.direction == Direction.BUY ? price >= this.depthBoundaryPrice : price <= this.depthBoundaryPrice)) {
+                this.depthChanged = true;
+            }
+        }
+    }
+
+    List<OrderBookItemBean> getOrderBook(int maxDepth){
+        List<OrderBookItemBean> items = new ArrayList<>(maxDepth);
+        long prevPrice = 0;
+        long prevQuantity = 0;
+        for (OrderNode node : this.book.values()) {
+            if (prevQuantity == 0) {
+                // 处理第一个订单
+                prevPrice = node.price;
+                prevQuantity = node.unfilledQuantity;
+            } else if (node.price == prevPrice) {
+                // 合并相同价格的订单
+                prevQuantity += node.unfilledQuantity;
+            } else {
+                // 处理不同价格的订单
+                items.add(new OrderBookItemBean(FixedPointUtil.fromValue(prevPrice), FixedPointUtil.fromValue(prevQuantity)));
+                if (items.size() >= maxDepth) {
+                    return items;
+                }
+                prevPrice = node.price;
+                prevQuantity = node.unfilledQuantity;
+            }
+        }
+        if (prevQuantity > 0 && items.size() < maxDepth) {
+            items.add(new OrderBookItemBean(FixedPointUtil.fromValue(prevPrice), FixedPointUtil.fromValue(prevQuantity)));
+        }
+        return items;
+    }
+
+
+    private static final Comparator<OrderKey> SORT_SELL = new Comparator<>() {
+        @Override
+        public int compare(OrderKey o1, OrderKey o2) {
+            // 价格低在前:
+            int cmp = Long.compare(o1.price(), o2.price());
+            // 时间早在前:
+            return cmp == 0 ? Long.compare(o1.sequenceId(), o2.sequenceId()) : cmp;
+        }
+    };
+
+    private static final Comparator<OrderKey> SORT_BUY = new Comparator<>() {
+        @Override
+        public int compare(OrderKey o1, OrderKey o2) {
+            // 价格高在前:
+            int cmp = Long.compare(o2.price(), o1.price());
+            // 时间早在前:
+            return cmp == 0 ? Long.compare(o1.sequenceId(), o2.sequenceId()) : cmp;
+        }
+    };
+}
@@ -0,0 +1,66 @@
+package org.warpexchange_learning.tradingengine.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.warpexchange_learning.common.enums.OverflowPolicy;
+import org.warpexchange_learning.common.pipeline.RingBuffer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 交易引擎各阶段的延迟直方图和内部队列深度，通过/actuator/metrics查看，例如：
+ * <p>
+ * /actuator/metrics/engine.stage.latency?tag=stage:match
+ * <p>
+ * 延迟直方图由Micrometer基于HdrHistogram实现，记录时不分配对象，百分位按滑动时间窗口计算。
+ */
+@Component
+public class EngineMetrics {
+
+    public static final String STAGE_LATENCY = "engine.stage.latency";
+    public static final String QUEUE_WAIT = "engine.queue.wait";
+    public static final String QUEUE_SIZE = "engine.queue.size";
+    public static final String QUEUE_CAPACITY = "engine.queue.capacity";
+    public static final String QUEUE_DROPPED = "engine.queue.dropped";
+
+    final MeterRegistry registry;
+
+    public EngineMetrics(@Autowired MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 引擎某个处理阶段的耗时
+     */
+    public Timer stage(String stage) {
+        return timer(STAGE_LATENCY, "stage", stage);
+    }
+
+    /**
+     * 注册队列深度，并记录每个元素在队列中等待的时间，DROP_OLDEST队列还注册已丢弃的元素数
+     */
+    public void registerQueue(RingBuffer<?> queue) {
+        Timer wait = timer(QUEUE_WAIT, "queue", queue.getName());
+        queue.setWaitRecorder(nanos -> wait.record(nanos, TimeUnit.NANOSECONDS));
+        Gauge.builder(QUEUE_SIZE, queue, RingBuffer::size).tag("queue", queue.getName()).register(this.registry);
+        Gauge.builder(QUEUE_CAPACITY, queue, RingBuffer::capacity).tag("queue", queue.getName()).register(this.registry);
+        if (queue.getOverflowPolicy() == OverflowPolicy.DROP_OLDEST) {
+            FunctionCounter.builder(QUEUE_DROPPED, queue, RingBuffer::dropped).tag("queue", queue.getName()).register(this.registry);
+        }
+    }
+
+    Timer timer(String name, String tagKey, String tagValue) {
+        return Timer.builder(name)
+                .tag(tagKey, tagValue)
+                .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(this.registry);
+    }
+}
@@ -2,9 +2,10 @@ package org.warpexchange_learning.tradingengine.order;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.bean.TradingPair;
 import org.warpexchange_learning.common.enums.Direction;
 import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
 import org.warpexchange_learning.tradingengine.assets.AssetService;
 
 import java.math.BigDecimal;
@@ -19,7 +20,9 @@ public class OrderService {
 
     final AssetService assetService;
 
-    public OrderService(@Autowired AssetService assetService) {this.assetService = assetService;}
+    public OrderService(@Autowired AssetService assetService) {
+        this.assetService = assetService;
+    }
 
     // 跟踪所有活动订单: Order ID => OrderEntity
     final ConcurrentMap<Long, OrderEntity> activeOrders = new ConcurrentHashMap<>();
@@ -28,44 +31,62 @@ public class OrderService {
     final ConcurrentMap<Long, ConcurrentMap<Long, OrderEntity>> userOrders = new ConcurrentHashMap<>();
 
     /**
-     * 创建订单，失败返回null:
+     * 创建订单并按交易对冻结资产，失败返回null:
      */
-    public OrderEntity createOrder(long sequenceId, long ts, Long orderId, Long userId, Direction direction, BigDecimal price, BigDecimal quantity) {
-        switch (direction){
-            case BUY -> {
-                // 买入，需冻结USD：
-                if (!assetService.tryFreeze(userId, AssetEnum.USD, price.multiply(quantity))){
-                    return null;
-                }
-            }
-            case SELL -> {
-                // 卖出，需冻结BTC：
-                if (!assetService.tryFreeze(userId, AssetEnum.BTC, quantity)) {
-                    return null;
-                }
+    public OrderEntity createOrder(long sequenceId, long ts, Long orderId, Long userId, TradingPair pair, Direction direction,
+                                   BigDecimal price, BigDecimal quantity) {
+        // 价格和数量只在这里转换一次定点long，之后撮合和清算都使用定点值:
+        long priceValue;
+        long quantityValue;
+        try {
+            priceValue = FixedPointUtil.toValue(price);
+            quantityValue = FixedPointUtil.toValue(quantity);
+            // 买入冻结计价资产，卖出冻结基础资产，金额溢出按冻结失败处理:
+            boolean frozen = switch (direction) {
+                case BUY -> assetService.tryFreeze(userId, pair.quoteAsset(), FixedPointUtil.amountOf(priceValue, quantityValue));
+                case SELL -> assetService.tryFreeze(userId, pair.baseAsset(), FixedPointUtil.quantityToAmount(quantityValue));
+                default -> throw new IllegalArgumentException("Invalid direction.");
+            };
+            if (!frozen) {
+                return null;
             }
-            default -> throw new IllegalArgumentException("Invalid direction.");
+        } catch (ArithmeticException e) {
+            return null;
         }
         // 实例化Order:
         OrderEntity order = new OrderEntity();
         order.id = orderId;
         order.sequenceId = sequenceId;
         order.userId = userId;
+        order.symbol = pair.symbol();
         order.direction = direction;
         order.price = price;
         order.quantity = quantity;
         order.unfilledQuantity = quantity;
+        order.priceValue = priceValue;
+        order.quantityValue = order.unfilledQuantityValue = quantityValue;
         order.createdAt = order.updatedAt = ts;
+        addOrder(order);
+        return order;
+    }
+
+    /**
+     * 从快照恢复活动订单，只在引擎启动时调用
+     */
+    public void restoreOrder(OrderEntity order) {
+        addOrder(order);
+    }
+
+    private void addOrder(OrderEntity order) {
         // 添加到ActiveOrders:
-        activeOrders.put(orderId, order);
+        activeOrders.put(order.id, order);
         // 添加到UserOrders:
-        ConcurrentMap<Long, OrderEntity> uOrders = this.userOrders.get(userId);
+        ConcurrentMap<Long, OrderEntity> uOrders = this.userOrders.get(order.userId);
         if (uOrders == null) {
             uOrders = new ConcurrentHashMap<>();
-            this.userOrders.put(userId, uOrders);
+            this.userOrders.put(order.userId, uOrders);
         }
-        uOrders.put(orderId, order);
-        return order;
+        uOrders.put(order.id, order);
     }
 
     public void removeOrder(Long orderId) {
@@ -101,8 +122,8 @@ public class OrderService {
         List<OrderEntity> orders = new ArrayList<>(this.activeOrders.values());
         Collections.sort(orders);
         for (OrderEntity order : orders) {
-            System.out.println("  " + order.id + " " + order.direction + " price: " + order.price + " unfilled: "
-                    + order.unfilledQuantity + " quantity: " + order.quantity + " sequenceId: " + order.sequenceId
+            System.out.println("  " + order.id + " " + order.symbol + " " + order.direction + " price: " + order.price + " unfilled: "
+                    + FixedPointUtil.fromValue(order.unfilledQuantityValue) + " quantity: " + order.quantity + " sequenceId: " + order.sequenceId
                     + " userId: " + order.userId);
         }
         System.out.println("---------- // orders ----------");
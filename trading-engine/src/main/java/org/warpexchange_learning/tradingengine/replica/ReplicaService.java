@@ -0,0 +1,155 @@
+package org.warpexchange_learning.tradingengine.replica;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.warpexchange_learning.common.redis.RedisCache;
+import org.warpexchange_learning.common.redis.RedisService;
+import org.warpexchange_learning.common.support.LoggerSupport;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 交易引擎主备。
+ * <p>
+ * 引擎对同一序列的事件是确定性的，因此热备引擎（exchange.config.replica.standby=true）消费相同的事件即可保持相同状态，
+ * 但不推送结果、不写数据库。每当sequenceId跨过hashInterval的整数倍时，主引擎把状态哈希写入Redis，
+ * 热备引擎读取主引擎在同一sequenceId的哈希并与自己的比较，不一致时标记为已分叉，不能再被提升为主引擎。
+ */
+@Component
+public class ReplicaService extends LoggerSupport {
+
+    // Redis中保留的最近状态哈希个数:
+    static final int MAX_HASHES = 1000;
+    // 热备引擎等待主引擎写入哈希的最长时间:
+    static final long PRIMARY_HASH_TIMEOUT = 30_000;
+
+    @Autowired
+    RedisService redisService;
+
+    @Value("#{exchangeConfiguration.replica.standby}")
+    volatile boolean standby = false;
+
+    @Value("#{exchangeConfiguration.replica.hashInterval}")
+    long hashInterval = 10000;
+
+    private volatile boolean diverged = false;
+
+    private volatile long lastVerifiedSequenceId = 0;
+
+    private final BlockingQueue<Checkpoint> checkpointQueue = new ArrayBlockingQueue<>(100);
+
+    private Thread stateHashThread;
+
+    record Checkpoint(long sequenceId, long stateHash) {
+    }
+
+    @PostConstruct
+    public void init() {
+        logger.info("start trading engine as {}.", this.standby ? "standby" : "primary");
+        this.stateHashThread = new Thread(this::runStateHashThread, "async-state-hash");
+        this.stateHashThread.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.stateHashThread.interrupt();
+    }
+
+    /**
+     * 热备引擎不对外输出任何结果
+     */
+    public boolean isStandby() {
+        return this.standby;
+    }
+
+    public boolean isDiverged() {
+        return this.diverged;
+    }
+
+    public long getLastVerifiedSequenceId() {
+        return this.lastVerifiedSequenceId;
+    }
+
+    /**
+     * 把热备引擎提升为主引擎，状态已与主引擎分叉时拒绝提升
+     */
+    public synchronized void promote() {
+        if (!this.standby) {
+            return;
+        }
+        if (this.diverged) {
+            throw new IllegalStateException("Cannot promote a diverged replica.");
+        }
+        this.standby = false;
+        logger.warn("standby promoted to primary, last verified sequence id: {}.", this.lastVerifiedSequenceId);
+    }
+
+    /**
+     * 由引擎线程在处理完每个事件后调用，sequenceId跨过hashInterval的整数倍时提交状态哈希
+     */
+    public boolean isCheckpoint(long previousId, long sequenceId) {
+        return this.hashInterval > 0 && previousId / this.hashInterval != sequenceId / this.hashInterval;
+    }
+
+    public void checkpoint(long sequenceId, long stateHash) {
+        if (!this.checkpointQueue.offer(new Checkpoint(sequenceId, stateHash))) {
+            logger.warn("skip state hash at {}: too many pending checkpoints.", sequenceId);
+        }
+    }
+
+    private void runStateHashThread() {
+        for (;;) {
+            try {
+                Checkpoint checkpoint = this.checkpointQueue.take();
+                if (this.standby) {
+                    verify(checkpoint);
+                } else {
+                    publish(checkpoint);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("{} was interrupted.", Thread.currentThread().getName());
+                break;
+            } catch (RuntimeException e) {
+                logger.warn("process state hash failed.", e);
+            }
+        }
+    }
+
+    private void publish(Checkpoint checkpoint) {
+        this.redisService.executeSync(commands -> {
+            commands.zadd(RedisCache.Key.ENGINE_STATE_HASH, checkpoint.sequenceId(), checkpoint.sequenceId() + ":" + checkpoint.stateHash());
+            return commands.zremrangebyrank(RedisCache.Key.ENGINE_STATE_HASH, 0, -MAX_HASHES - 1);
+        });
+    }
+
+    private void verify(Checkpoint checkpoint) throws InterruptedException {
+        // 热备引擎可能领先于主引擎，等待主引擎写入同一sequenceId的哈希:
+        long deadline = System.currentTimeMillis() + PRIMARY_HASH_TIMEOUT;
+        String expected = checkpoint.sequenceId() + ":" + checkpoint.stateHash();
+        for (;;) {
+            List<String> hashes = this.redisService.zrangebyscore(RedisCache.Key.ENGINE_STATE_HASH, checkpoint.sequenceId(), checkpoint.sequenceId());
+            if (!hashes.isEmpty()) {
+                if (hashes.contains(expected)) {
+                    this.lastVerifiedSequenceId = checkpoint.sequenceId();
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("state hash verified at {}.", checkpoint.sequenceId());
+                    }
+                } else {
+                    this.diverged = true;
+                    logger.error("state diverged from primary at {}: expected {} but actual {}.", checkpoint.sequenceId(), hashes, expected);
+                }
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                logger.warn("skip verify state hash at {}: primary hash not found.", checkpoint.sequenceId());
+                return;
+            }
+            Thread.sleep(100);
+        }
+    }
+}
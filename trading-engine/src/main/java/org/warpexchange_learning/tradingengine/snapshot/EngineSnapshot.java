@@ -0,0 +1,295 @@
+package org.warpexchange_learning.tradingengine.snapshot;
+
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.OrderStatus;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+import org.warpexchange_learning.tradingengine.assets.AssetService;
+import org.warpexchange_learning.tradingengine.match.MatchEngine;
+import org.warpexchange_learning.tradingengine.order.OrderService;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 交易引擎在某个sequenceId处的完整状态：所有用户资产、各交易对订单簿中的订单（即所有活动订单）、最新成交价。
+ * <p>
+ * capture()在引擎线程的两批消息之间调用，把状态复制到基本类型数组中，此后引擎可以继续修改状态，
+ * 序列化和写盘由SnapshotService在其他线程完成。订单按交易对、买盘、卖盘的撮合优先级依次存放，恢复时按顺序加入订单簿即可保持时间优先。
+ * <p>
+ * 枚举按ordinal存储，调整AssetEnum、Direction或OrderStatus的顺序时必须增加VERSION。
+ * VERSION 1只有一个交易对且不记录symbol，读取后恢复到默认交易对。
+ */
+public class EngineSnapshot {
+
+    static final int MAGIC = 0x57455853;
+    static final int VERSION = 2;
+
+    // 已处理的最后一个事件:
+    public final long sequenceId;
+
+    // 各交易对的MatchEngine状态，VERSION 1的symbol为null:
+    final String[] symbols;
+    final long[] matchSequenceIds;
+    final long[] marketPrices;
+
+    // 资产，available和frozen为定点金额:
+    final long[] assetUserIds;
+    final byte[] assetIds;
+    final long[] assetAvailables;
+    final long[] assetFrozens;
+
+    // 订单，BigDecimal不可变，可以直接引用:
+    // 订单所属交易对在symbols中的下标:
+    final byte[] orderSymbols;
+    final long[] orderIds;
+    final long[] orderSequenceIds;
+    final long[] orderUserIds;
+    final byte[] orderDirections;
+    final byte[] orderStatuses;
+    final BigDecimal[] orderPrices;
+    final BigDecimal[] orderQuantities;
+    final BigDecimal[] orderUnfilledQuantities;
+    final long[] orderCreatedAts;
+    final long[] orderUpdatedAts;
+
+    EngineSnapshot(long sequenceId, int engines, int assets, int orders) {
+        this(sequenceId, engines, new long[assets], new byte[assets], new long[assets], new long[assets], orders);
+    }
+
+    EngineSnapshot(long sequenceId, int engines, long[] assetUserIds, byte[] assetIds,
+                   long[] assetAvailables, long[] assetFrozens, int orders) {
+        this.sequenceId = sequenceId;
+        this.symbols = new String[engines];
+        this.matchSequenceIds = new long[engines];
+        this.marketPrices = new long[engines];
+        this.assetUserIds = assetUserIds;
+        this.assetIds = assetIds;
+        this.assetAvailables = assetAvailables;
+        this.assetFrozens = assetFrozens;
+        this.orderSymbols = new byte[orders];
+        this.orderIds = new long[orders];
+        this.orderSequenceIds = new long[orders];
+        this.orderUserIds = new long[orders];
+        this.orderDirections = new byte[orders];
+        this.orderStatuses = new byte[orders];
+        this.orderPrices = new BigDecimal[orders];
+        this.orderQuantities = new BigDecimal[orders];
+        this.orderUnfilledQuantities = new BigDecimal[orders];
+        this.orderCreatedAts = new long[orders];
+        this.orderUpdatedAts = new long[orders];
+    }
+
+    /**
+     * 必须在引擎线程中调用，此时各交易对的撮合线程没有未完成的任务
+     *
+     * @param matchEngines symbol => MatchEngine
+     */
+    public static EngineSnapshot capture(long sequenceId, AssetService assetService, Map<String, MatchEngine> matchEngines) {
+        if (matchEngines.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many symbols: " + matchEngines.size());
+        }
+        List<List<OrderEntity>> books = new ArrayList<>(matchEngines.size() * 2);
+        int orders = 0;
+        for (MatchEngine matchEngine : matchEngines.values()) {
+            List<OrderEntity> buyOrders = matchEngine.buyBook.getOrders();
+            List<OrderEntity> sellOrders = matchEngine.sellBook.getOrders();
+            books.add(buyOrders);
+            books.add(sellOrders);
+            orders += buyOrders.size() + sellOrders.size();
+        }
+        EngineSnapshot snapshot = new EngineSnapshot(sequenceId, matchEngines.size(), assetService.getAssetCount(), orders);
+        int e = 0;
+        for (Map.Entry<String, MatchEngine> entry : matchEngines.entrySet()) {
+            snapshot.symbols[e] = entry.getKey();
+            snapshot.matchSequenceIds[e] = entry.getValue().getSequenceId();
+            snapshot.marketPrices[e] = entry.getValue().marketPrice;
+            e++;
+        }
+        int[] n = {0};
+        assetService.forEach((userId, assetId, available, frozen) -> {
+            int i = n[0]++;
+            snapshot.assetUserIds[i] = userId;
+            snapshot.assetIds[i] = (byte) assetId.ordinal();
+            snapshot.assetAvailables[i] = available;
+            snapshot.assetFrozens[i] = frozen;
+        });
+        int i = 0;
+        for (int b = 0; b < books.size(); b++) {
+            for (OrderEntity order : books.get(b)) {
+                snapshot.setOrder(i++, (byte) (b / 2), order);
+            }
+        }
+        return snapshot;
+    }
+
+    private void setOrder(int i, byte symbol, OrderEntity order) {
+        this.orderSymbols[i] = symbol;
+        this.orderIds[i] = order.id;
+        this.orderSequenceIds[i] = order.sequenceId;
+        this.orderUserIds[i] = order.userId;
+        this.orderDirections[i] = (byte) order.direction.ordinal();
+        this.orderStatuses[i] = (byte) order.status.ordinal();
+        this.orderPrices[i] = order.price;
+        this.orderQuantities[i] = order.quantity;
+        this.orderUnfilledQuantities[i] = FixedPointUtil.fromValue(order.unfilledQuantityValue);
+        this.orderCreatedAts[i] = order.createdAt;
+        this.orderUpdatedAts[i] = order.updatedAt;
+    }
+
+    /**
+     * 恢复到空的AssetService、OrderService和各交易对的MatchEngine，快照中没有的交易对保持为空
+     *
+     * @param matchEngines symbol => MatchEngine，第一个为默认交易对
+     * @throws IllegalStateException 快照中的交易对不在matchEngines中
+     */
+    public void restore(AssetService assetService, OrderService orderService, Map<String, MatchEngine> matchEngines) {
+        String[] symbols = new String[this.symbols.length];
+        MatchEngine[] engines = new MatchEngine[this.symbols.length];
+        String primary = matchEngines.keySet().iterator().next();
+        for (int e = 0; e < symbols.length; e++) {
+            symbols[e] = this.symbols[e] == null ? primary : this.symbols[e];
+            engines[e] = matchEngines.get(symbols[e]);
+            if (engines[e] == null) {
+                throw new IllegalStateException("Snapshot contains unconfigured symbol: " + symbols[e]);
+            }
+        }
+        AssetEnum[] assetEnums = AssetEnum.values();
+        for (int i = 0; i < this.assetUserIds.length; i++) {
+            assetService.restoreAsset(this.assetUserIds[i], assetEnums[this.assetIds[i]], this.assetAvailables[i], this.assetFrozens[i]);
+        }
+        Direction[] directions = Direction.values();
+        OrderStatus[] statuses = OrderStatus.values();
+        for (int i = 0; i < this.orderIds.length; i++) {
+            OrderEntity order = new OrderEntity();
+            order.id = this.orderIds[i];
+            order.sequenceId = this.orderSequenceIds[i];
+            order.userId = this.orderUserIds[i];
+            order.symbol = symbols[this.orderSymbols[i]];
+            order.direction = directions[this.orderDirections[i]];
+            order.status = statuses[this.orderStatuses[i]];
+            order.price = this.orderPrices[i];
+            order.quantity = this.orderQuantities[i];
+            order.unfilledQuantity = this.orderUnfilledQuantities[i];
+            order.priceValue = FixedPointUtil.toValue(order.price);
+            order.quantityValue = FixedPointUtil.toValue(order.quantity);
+            order.unfilledQuantityValue = FixedPointUtil.toValue(order.unfilledQuantity);
+            order.createdAt = this.orderCreatedAts[i];
+            order.updatedAt = this.orderUpdatedAts[i];
+            orderService.restoreOrder(order);
+            engines[this.orderSymbols[i]].restoreOrder(order);
+        }
+        for (int e = 0; e < engines.length; e++) {
+            engines[e].restore(this.matchSequenceIds[e], this.marketPrices[e]);
+        }
+    }
+
+    public int assetCount() {
+        return this.assetUserIds.length;
+    }
+
+    public int orderCount() {
+        return this.orderIds.length;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(this.sequenceId);
+        out.writeInt(this.symbols.length);
+        for (int e = 0; e < this.symbols.length; e++) {
+            out.writeUTF(this.symbols[e]);
+            out.writeLong(this.matchSequenceIds[e]);
+            out.writeLong(this.marketPrices[e]);
+        }
+        out.writeInt(this.assetUserIds.length);
+        for (int i = 0; i < this.assetUserIds.length; i++) {
+            out.writeLong(this.assetUserIds[i]);
+            out.writeByte(this.assetIds[i]);
+            out.writeLong(this.assetAvailables[i]);
+            out.writeLong(this.assetFrozens[i]);
+        }
+        out.writeInt(this.orderIds.length);
+        for (int i = 0; i < this.orderIds.length; i++) {
+            out.writeByte(this.orderSymbols[i]);
+            out.writeLong(this.orderIds[i]);
+            out.writeLong(this.orderSequenceIds[i]);
+            out.writeLong(this.orderUserIds[i]);
+            out.writeByte(this.orderDirections[i]);
+            out.writeByte(this.orderStatuses[i]);
+            writeDecimal(out, this.orderPrices[i]);
+            writeDecimal(out, this.orderQuantities[i]);
+            writeDecimal(out, this.orderUnfilledQuantities[i]);
+            out.writeLong(this.orderCreatedAts[i]);
+            out.writeLong(this.orderUpdatedAts[i]);
+        }
+    }
+
+    public static EngineSnapshot readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid snapshot file.");
+        }
+        int version = in.readInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        long sequenceId = in.readLong();
+        int engines = version == 1 ? 1 : in.readInt();
+        String[] symbols = new String[engines];
+        long[] matchSequenceIds = new long[engines];
+        long[] marketPrices = new long[engines];
+        for (int e = 0; e < engines; e++) {
+            symbols[e] = version == 1 ? null : in.readUTF();
+            matchSequenceIds[e] = in.readLong();
+            marketPrices[e] = in.readLong();
+        }
+        int assets = in.readInt();
+        long[] assetUserIds = new long[assets];
+        byte[] assetIds = new byte[assets];
+        long[] assetAvailables = new long[assets];
+        long[] assetFrozens = new long[assets];
+        for (int i = 0; i < assets; i++) {
+            assetUserIds[i] = in.readLong();
+            assetIds[i] = in.readByte();
+            assetAvailables[i] = in.readLong();
+            assetFrozens[i] = in.readLong();
+        }
+        int orders = in.readInt();
+        EngineSnapshot snapshot = new EngineSnapshot(sequenceId, engines, assetUserIds, assetIds, assetAvailables, assetFrozens, orders);
+        System.arraycopy(symbols, 0, snapshot.symbols, 0, engines);
+        System.arraycopy(matchSequenceIds, 0, snapshot.matchSequenceIds, 0, engines);
+        System.arraycopy(marketPrices, 0, snapshot.marketPrices, 0, engines);
+        for (int i = 0; i < orders; i++) {
+            snapshot.orderSymbols[i] = version == 1 ? 0 : in.readByte();
+            snapshot.orderIds[i] = in.readLong();
+            snapshot.orderSequenceIds[i] = in.readLong();
+            snapshot.orderUserIds[i] = in.readLong();
+            snapshot.orderDirections[i] = in.readByte();
+            snapshot.orderStatuses[i] = in.readByte();
+            snapshot.orderPrices[i] = readDecimal(in);
+            snapshot.orderQuantities[i] = readDecimal(in);
+            snapshot.orderUnfilledQuantities[i] = readDecimal(in);
+            snapshot.orderCreatedAts[i] = in.readLong();
+            snapshot.orderUpdatedAts[i] = in.readLong();
+        }
+        return snapshot;
+    }
+
+    // BigDecimal按scale和unscaledValue存储，恢复后与原值完全相同:
+    static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        out.writeByte(value.scale());
+        out.writeLong(value.unscaledValue().longValueExact());
+    }
+
+    static BigDecimal readDecimal(DataInput in) throws IOException {
+        int scale = in.readByte();
+        return new BigDecimal(BigInteger.valueOf(in.readLong()), scale);
+    }
+}
@@ -0,0 +1,207 @@
+package org.warpexchange_learning.tradingengine.snapshot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.warpexchange_learning.common.support.LoggerSupport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 把EngineSnapshot写入exchange.config.snapshot.dir目录，启动时读取最新的有效快照，dir为空时不启用。
+ * <p>
+ * 文件名为engine-{sequenceId}.snapshot，内容末尾附加CRC32，先写临时文件并刷盘，再原子重命名并刷盘目录，
+ * 因此目录中不会出现写了一半的快照，删除旧快照前新快照一定已写入磁盘，损坏的文件在加载时被跳过。
+ */
+@Component
+public class SnapshotService extends LoggerSupport {
+
+    static final String PREFIX = "engine-";
+    static final String SUFFIX = ".snapshot";
+    static final Pattern FILE_NAME = Pattern.compile("^engine-(\\d+)\\.snapshot$");
+
+    @Value("#{exchangeConfiguration.snapshot.dir}")
+    String dir = "";
+
+    @Value("#{exchangeConfiguration.snapshot.interval}")
+    long interval = 100000;
+
+    @Value("#{exchangeConfiguration.snapshot.retain}")
+    int retain = 2;
+
+    // 只保留一个待写入的快照，上一个还没写完时丢弃新的快照:
+    private final BlockingQueue<PendingSnapshot> pendingQueue = new ArrayBlockingQueue<>(1);
+
+    private Thread snapshotThread;
+
+    record PendingSnapshot(EngineSnapshot snapshot, BooleanSupplier ready) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!isEnabled()) {
+            logger.info("engine snapshot is disabled.");
+            return;
+        }
+        Files.createDirectories(Paths.get(this.dir));
+        this.snapshotThread = new Thread(this::runSnapshotThread, "async-snapshot");
+        this.snapshotThread.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (this.snapshotThread != null) {
+            this.snapshotThread.interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return !this.dir.isEmpty();
+    }
+
+    public long getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * 提交快照，由async-snapshot线程在ready返回true后写入，上一个快照仍未写入时返回false
+     */
+    public boolean submit(EngineSnapshot snapshot, BooleanSupplier ready) {
+        if (!this.pendingQueue.offer(new PendingSnapshot(snapshot, ready))) {
+            logger.warn("skip snapshot at {}: previous snapshot is still pending.", snapshot.sequenceId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 读取最新的有效快照，不存在时返回null
+     */
+    public EngineSnapshot load() {
+        if (!isEnabled()) {
+            return null;
+        }
+        List<Path> files = listSnapshots();
+        for (int i = files.size() - 1; i >= 0; i--) {
+            Path file = files.get(i);
+            try {
+                EngineSnapshot snapshot = read(file);
+                logger.info("loaded snapshot {}: sequence id = {}, assets = {}, orders = {}.", file, snapshot.sequenceId,
+                        snapshot.assetCount(), snapshot.orderCount());
+                return snapshot;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("skip invalid snapshot " + file, e);
+            }
+        }
+        return null;
+    }
+
+    private void runSnapshotThread() {
+        logger.info("start write snapshot to {}...", this.dir);
+        for (;;) {
+            try {
+                PendingSnapshot pending = this.pendingQueue.take();
+                // 等待快照之前的订单和成交都已存入数据库，否则从快照启动后这部分数据将丢失:
+                while (!pending.ready().getAsBoolean()) {
+                    Thread.sleep(1);
+                }
+                write(pending.snapshot());
+            } catch (InterruptedException e) {
+                logger.warn("{} was interrupted.", Thread.currentThread().getName());
+                break;
+            } catch (IOException | RuntimeException e) {
+                logger.error("write snapshot failed.", e);
+            }
+        }
+    }
+
+    void write(EngineSnapshot snapshot) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Path file = Paths.get(this.dir, PREFIX + snapshot.sequenceId + SUFFIX);
+        Path tmp = Paths.get(this.dir, PREFIX + snapshot.sequenceId + SUFFIX + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), 65536);
+            CheckedOutputStream checked = new CheckedOutputStream(output, new CRC32());
+            DataOutputStream data = new DataOutputStream(checked);
+            snapshot.writeTo(data);
+            data.flush();
+            data.writeLong(checked.getChecksum().getValue());
+            data.flush();
+            // 重命名之前内容必须已写入磁盘，否则断电后可能只剩下重命名后的空文件:
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // 重命名本身写入磁盘后才能删除旧快照:
+        forceDirectory(file.getParent());
+        logger.info("write snapshot {} in {} ms.", file, System.currentTimeMillis() - startTime);
+        // 删除旧快照:
+        List<Path> files = listSnapshots();
+        for (int i = 0; i < files.size() - Math.max(this.retain, 1); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 部分平台（如Windows）不能打开目录:
+            logger.warn("force directory {} failed: {}", dir, e.getMessage());
+        }
+    }
+
+    EngineSnapshot read(Path file) throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file), 65536)) {
+            CheckedInputStream checked = new CheckedInputStream(input, new CRC32());
+            EngineSnapshot snapshot = EngineSnapshot.readFrom(new DataInputStream(checked));
+            long expected = checked.getChecksum().getValue();
+            if (new DataInputStream(input).readLong() != expected) {
+                throw new IOException("Checksum mismatch.");
+            }
+            return snapshot;
+        }
+    }
+
+    // 按sequenceId从小到大排序:
+    private List<Path> listSnapshots() {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(Paths.get(this.dir))) {
+            stream.filter(path -> FILE_NAME.matcher(path.getFileName().toString()).matches()).forEach(files::add);
+        } catch (IOException e) {
+            logger.warn("list snapshots failed.", e);
+        }
+        files.sort(Comparator.comparingLong(SnapshotService::sequenceIdOf));
+        return files;
+    }
+
+    private static long sequenceIdOf(Path file) {
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+}
@@ -1,7 +1,9 @@
 package org.warpexchange_learning.tradingengine.store;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -24,10 +26,23 @@ public class StoreService extends LoggerSupport {
     @Autowired
     DbTemplate dbTemplate;
 
-    // 从数据库中恢复丢失的消息
-    public List<AbstractEvent> loadEventsFromDb(long lastEventId) {
-        List<EventEntity> events = this.dbTemplate.from(EventEntity.class).where("sequenceId > ?", lastEventId).orderBy("sequenceId").limit(10000).list();
-        return events.stream().map(event -> (AbstractEvent) messageTypes.deserialize(event.data)).collect(Collectors.toList());
+    /**
+     * 从数据库中按顺序读取sequenceId在(fromEventId, toEventId]之间的消息，反序列化后依次交给handler。
+     * 使用MySQL的流式结果集逐行读取，不会一次载入所有消息，也不需要分页多次查询。
+     */
+    public void streamEventsFromDb(long fromEventId, long toEventId, Consumer<AbstractEvent> handler) {
+        String sql = "SELECT data FROM " + this.dbTemplate.getTable(EventEntity.class)
+                + " WHERE sequenceId > ? AND sequenceId <= ? ORDER BY sequenceId";
+        this.dbTemplate.getJdbcTemplate().query(conn -> {
+            PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // fetchSize为Integer.MIN_VALUE时MySQL驱动逐行返回结果:
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setLong(1, fromEventId);
+            ps.setLong(2, toEventId);
+            return ps;
+        }, rs -> {
+            handler.accept((AbstractEvent) messageTypes.deserialize(rs.getString(1)));
+        });
     }
 
     public void insertIgnore(List<? extends EntitySupport> list) {
@@ -0,0 +1,51 @@
+package org.warpexchange_learning.tradingengine.symbol;
+
+import org.warpexchange_learning.common.message.event.AbstractEvent;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.tradingengine.match.MatchResult;
+import org.warpexchange_learning.tradingengine.match.OrderNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个下单或取消事件：引擎线程冻结资产后生成，由交易对的撮合线程撮合或取消，再回到引擎线程按sequenceId顺序清算和输出。
+ * MatchTask由引擎线程复用，其中的撮合结果和复制的订单只在下一次reset()之前有效。
+ */
+public class MatchTask {
+
+    public enum Type {
+        // 下单，由撮合线程撮合:
+        ORDER,
+        // 取消，由撮合线程从订单簿中删除:
+        CANCEL,
+        // 冻结失败的下单:
+        ORDER_FAILED,
+        // 订单不存在或已完全成交的取消:
+        CANCEL_FAILED
+    }
+
+    public Type type;
+    public AbstractEvent event;
+    // ORDER和CANCEL所属的交易对:
+    public SymbolEngine symbolEngine;
+    // 下单创建的订单，或被取消的订单:
+    public OrderEntity order;
+    public final MatchResult result = new MatchResult(16);
+    // 从订单簿中删除的订单:
+    public OrderNode cancelled;
+    // 撮合或取消后立即在撮合线程中复制的订单，之后的撮合不影响复制的订单，热备引擎不复制:
+    public OrderEntity orderCopy;
+    public final List<OrderEntity> makerCopies = new ArrayList<>();
+
+    public MatchTask reset(Type type, AbstractEvent event, SymbolEngine symbolEngine, OrderEntity order) {
+        this.type = type;
+        this.event = event;
+        this.symbolEngine = symbolEngine;
+        this.order = order;
+        this.cancelled = null;
+        this.orderCopy = null;
+        this.makerCopies.clear();
+        return this;
+    }
+}
@@ -0,0 +1,162 @@
+package org.warpexchange_learning.tradingengine.symbol;
+
+import io.micrometer.core.instrument.Timer;
+import org.warpexchange_learning.common.bean.OrderBookBean;
+import org.warpexchange_learning.common.bean.TradingPair;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.pipeline.RingBuffer;
+import org.warpexchange_learning.common.support.LoggerSupport;
+import org.warpexchange_learning.tradingengine.clearing.ClearingService;
+import org.warpexchange_learning.tradingengine.match.MatchEngine;
+import org.warpexchange_learning.tradingengine.match.MatchResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个交易对的订单簿、清算和撮合线程。
+ * <p>
+ * 引擎线程按sequenceId顺序把MatchTask加入各交易对，submit()后由各交易对的撮合线程并行撮合，
+ * 引擎线程在await()返回后再按sequenceId顺序清算。MatchEngine只在撮合线程中访问，
+ * 只有一个交易对有任务时引擎线程直接调用match()，不经过撮合线程。
+ * submit()和await()之间引擎线程不能访问MatchEngine，Semaphore保证两个线程之间的可见性。
+ */
+public class SymbolEngine extends LoggerSupport {
+
+    public final TradingPair pair;
+    public final MatchEngine matchEngine;
+    public final ClearingService clearingService;
+
+    private final int orderBookDepth;
+    private final Timer matchTimer;
+    private final Timer orderBookTimer;
+
+    private final List<MatchTask> tasks = new ArrayList<>();
+    private final Semaphore start = new Semaphore(0);
+    private final Semaphore done = new Semaphore(0);
+    private boolean copyOrders;
+    private RuntimeException error;
+    private Thread thread;
+
+    // 最近一次match()后的订单簿快照，前orderBookDepth档未变化时仍是同一个对象:
+    private OrderBookBean orderBook;
+
+    // 以下只由引擎线程和该交易对的推送线程访问，推送线程只处理每批中最新的快照:
+    public RingBuffer<OrderBookBean> orderBookQueue;
+    public OrderBookBean latestOrderBook;
+
+    public SymbolEngine(TradingPair pair, MatchEngine matchEngine, ClearingService clearingService, int orderBookDepth,
+                        Timer matchTimer, Timer orderBookTimer) {
+        this.pair = pair;
+        this.matchEngine = matchEngine;
+        this.clearingService = clearingService;
+        this.orderBookDepth = orderBookDepth;
+        this.matchTimer = matchTimer;
+        this.orderBookTimer = orderBookTimer;
+    }
+
+    public String getSymbol() {
+        return this.pair.symbol();
+    }
+
+    public void start() {
+        this.thread = new Thread(this::runMatchThread, "match-" + this.pair.symbol());
+        this.thread.start();
+    }
+
+    public void stop() {
+        if (this.thread != null) {
+            this.thread.interrupt();
+        }
+    }
+
+    public void add(MatchTask task) {
+        this.tasks.add(task);
+    }
+
+    public boolean hasTasks() {
+        return !this.tasks.isEmpty();
+    }
+
+    /**
+     * 通知撮合线程处理已加入的任务，之后必须调用await()
+     */
+    public void submit(boolean copyOrders) {
+        this.copyOrders = copyOrders;
+        this.start.release();
+    }
+
+    /**
+     * 等待撮合线程处理完submit()时的任务，撮合出错时在引擎线程中重新抛出
+     */
+    public void await() throws InterruptedException {
+        this.done.acquire();
+        RuntimeException e = this.error;
+        if (e != null) {
+            this.error = null;
+            throw e;
+        }
+    }
+
+    /**
+     * 按加入顺序撮合或取消，copyOrders为true时在每个任务之后立即复制涉及的订单，最后生成订单簿快照
+     */
+    public void match(boolean copyOrders) {
+        for (MatchTask task : this.tasks) {
+            long startTime = System.nanoTime();
+            OrderEntity order = task.order;
+            switch (task.type) {
+                case ORDER -> {
+                    MatchResult result = this.matchEngine.processOrder(task.event.sequenceId, order, task.result);
+                    if (copyOrders) {
+                        task.orderCopy = order.copy();
+                        for (int i = 0; i < result.size(); i++) {
+                            task.makerCopies.add(result.makerOrder(i).copy());
+                        }
+                    }
+                }
+                case CANCEL -> {
+                    // 订单已在之前的撮合中完全成交:
+                    if (this.matchEngine.getOrderNode(order.id) == null) {
+                        task.type = MatchTask.Type.CANCEL_FAILED;
+                    } else {
+                        task.cancelled = this.matchEngine.cancel(task.event.sequenceId, task.event.createdAt, order);
+                        if (copyOrders) {
+                            task.orderCopy = order.copy();
+                        }
+                    }
+                }
+                default -> throw new IllegalArgumentException("Invalid match task: " + task.type);
+            }
+            this.matchTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+        this.tasks.clear();
+        long startTime = System.nanoTime();
+        this.orderBook = this.matchEngine.getOrderBook(this.orderBookDepth);
+        this.orderBookTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    }
+
+    public OrderBookBean getOrderBook() {
+        return this.orderBook;
+    }
+
+    private void runMatchThread() {
+        logger.info("start match thread for {}...", this.pair.symbol());
+        try {
+            for (;;) {
+                this.start.acquire();
+                try {
+                    match(this.copyOrders);
+                } catch (RuntimeException e) {
+                    this.tasks.clear();
+                    this.error = e;
+                }
+                this.done.release();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("{} was interrupted.", Thread.currentThread().getName());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.warpexchange_learning.tradingengine.web.api;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.warpexchange_learning.common.enums.AssetEnum;
@@ -11,6 +12,7 @@ import org.warpexchange_learning.common.support.LoggerSupport;
 import org.warpexchange_learning.tradingengine.assets.Asset;
 import org.warpexchange_learning.tradingengine.assets.AssetService;
 import org.warpexchange_learning.tradingengine.order.OrderService;
+import org.warpexchange_learning.tradingengine.replica.ReplicaService;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +29,9 @@ public class InternalTradingEngineApiController extends LoggerSupport {
     @Autowired
     AssetService assetService;
 
+    @Autowired
+    ReplicaService replicaService;
+
     @GetMapping("/{userId}/assets")
     public Map<AssetEnum, Asset> getAssets(@PathVariable("userId") Long userId) {
         return assetService.getAssets(userId);
@@ -40,12 +45,8 @@ public class InternalTradingEngineApiController extends LoggerSupport {
         }
         List<OrderEntity> list = new ArrayList<>(orders.size());
         for (OrderEntity order : orders.values()) {
-            OrderEntity copy = null;
-            // 基于版本号的乐观锁机制
-            while (copy == null) {
-                copy = order.copy();
-            }
-            list.add(copy);
+            // 引擎线程可能正在修改订单，只返回一致的副本:
+            list.add(order.copy());
         }
         return list;
     }
@@ -56,6 +57,21 @@ public class InternalTradingEngineApiController extends LoggerSupport {
         if (order == null || order.userId.longValue() != userId.longValue()) {
             return null;
         }
-        return order;
+        return order.copy();
+    }
+
+    @GetMapping("/replica")
+    public Map<String, Object> getReplica() {
+        return Map.of("standby", replicaService.isStandby(), "diverged", replicaService.isDiverged(),
+                "lastVerifiedSequenceId", replicaService.getLastVerifiedSequenceId());
+    }
+
+    /**
+     * 主引擎失效后把热备引擎提升为主引擎，状态已分叉的热备引擎不能提升
+     */
+    @PostMapping("/replica/promote")
+    public Map<String, Object> promote() {
+        replicaService.promote();
+        return getReplica();
     }
 }
@@ -0,0 +1,298 @@
+package org.warpexchange_learning.tradingengine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.UserType;
+import org.warpexchange_learning.common.message.event.AbstractEvent;
+import org.warpexchange_learning.common.message.event.OrderCancelEvent;
+import org.warpexchange_learning.common.message.event.OrderRequestEvent;
+import org.warpexchange_learning.common.message.event.TransferEvent;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.tradingengine.assets.Asset;
+import org.warpexchange_learning.tradingengine.assets.AssetService;
+import org.warpexchange_learning.tradingengine.metrics.EngineMetrics;
+import org.warpexchange_learning.tradingengine.order.OrderService;
+import org.warpexchange_learning.tradingengine.replica.ReplicaService;
+import org.warpexchange_learning.tradingengine.snapshot.SnapshotService;
+import org.warpexchange_learning.tradingengine.store.StoreService;
+import org.warpexchange_learning.tradingengine.symbol.SymbolEngine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+
+/**
+ * 多个交易对由各自的撮合线程并行撮合，结果必须与逐个事件处理完全相同
+ */
+class TradingEngineServiceTest {
+
+    static final List<String> SYMBOLS = List.of("BTC/USD", "ETH/USD");
+    static final int USERS = 10;
+    // 交易用户不能是系统负债账户:
+    static final long FIRST_USER = UserType.DEBT.getInternalUserId() + 1;
+    static final long CREATED_AT = 1_700_000_000_000L;
+
+    @Test
+    void shardedBatchesMatchSerialProcessing() {
+        TradingEngineService serial = createService();
+        TradingEngineService sharded = createService();
+        sharded.symbolEngines.values().forEach(SymbolEngine::start);
+        try {
+            List<AbstractEvent> events = randomEvents(serial, new Random(20231017), 5000);
+            // 每批只有一个事件时撮合和清算都在引擎线程中逐个完成:
+            for (AbstractEvent event : events) {
+                serial.processMessages(List.of(event));
+            }
+            for (int i = 0; i < events.size(); i += 200) {
+                sharded.processMessages(events.subList(i, Math.min(i + 200, events.size())));
+            }
+        } finally {
+            sharded.symbolEngines.values().forEach(SymbolEngine::stop);
+        }
+        assertEquals(serial.getStateHash(), sharded.getStateHash());
+        assertEquals(assetsOf(serial.assetService), assetsOf(sharded.assetService));
+        assertEquals(ordersOf(serial.orderService), ordersOf(sharded.orderService));
+        for (String symbol : SYMBOLS) {
+            List<Long> expected = orderIdsOf(serial.symbolEngines.get(symbol));
+            assertEquals(expected, orderIdsOf(sharded.symbolEngines.get(symbol)));
+            // 两个交易对都有挂单，说明撮合确实分布在两个线程:
+            assertNotEquals(1, expected.size());
+        }
+    }
+
+    @Test
+    void validateIncrementalDetectsInjectedMismatch() {
+        TradingEngineService service = spy(createService());
+        // 校验失败时抛出异常而不是退出进程:
+        doAnswer(invocation -> {
+            throw new IllegalStateException(invocation.getArgument(0, String.class));
+        }).when(service).fail(anyString());
+        long debt = UserType.DEBT.getInternalUserId();
+        OrderRequestEvent buy = new OrderRequestEvent();
+        buy.userId = 2L;
+        buy.symbol = "BTC/USD";
+        buy.direction = Direction.BUY;
+        buy.price = new BigDecimal("100.00");
+        buy.quantity = BigDecimal.ONE;
+        service.processMessages(sequence(List.of(transfer(debt, 2, AssetEnum.USD, "1000", false),
+                transfer(debt, 3, AssetEnum.USD, "1000", false), buy)));
+        assertEquals(1, service.orderService.getActiveOrders().size());
+        // 第一次全量校验并开始记录资产变化，之后只校验变化的用户:
+        service.validateIncremental(2, 3);
+        service.validateIncremental(3, 4);
+
+        // 余额凭空增加:
+        AssetService assetService = service.assetService;
+        Asset asset = assetService.getAsset(3L, AssetEnum.USD);
+        long available = asset.getAvailableAmount();
+        assetService.restoreAsset(3L, AssetEnum.USD, available + 1, 0);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> service.validateIncremental(4, 5));
+        assertTrue(e.getMessage().startsWith("Non zero USD balance"), e.getMessage());
+        assetService.restoreAsset(3L, AssetEnum.USD, available, 0);
+        service.validateIncremental(5, 6);
+
+        // 总额不变，但冻结和挂单不一致:
+        asset = assetService.getAsset(2L, AssetEnum.USD);
+        assertEquals(100L * 10000, asset.getFrozenAmount());
+        assetService.restoreAsset(2L, AssetEnum.USD, asset.getAvailableAmount() - 1, asset.getFrozenAmount() + 1);
+        e = assertThrows(IllegalStateException.class, () -> service.validateIncremental(6, 7));
+        assertTrue(e.getMessage().startsWith("Order frozen"), e.getMessage());
+    }
+
+    @Test
+    void catchUpFromDbResumesWithoutDuplicates() {
+        TradingEngineService serial = createService();
+        TradingEngineService service = createService();
+        List<AbstractEvent> events = randomEvents(serial, new Random(20231018), 210);
+        for (AbstractEvent event : events) {
+            serial.processMessages(List.of(event));
+        }
+        // 数据库第一次只写入到第120个事件，重试时才有全部事件:
+        List<long[]> reads = new ArrayList<>();
+        service.storeService = mock(StoreService.class);
+        doAnswer(invocation -> {
+            long from = invocation.getArgument(0);
+            long to = invocation.getArgument(1);
+            Consumer<AbstractEvent> handler = invocation.getArgument(2);
+            long last = reads.isEmpty() ? Math.min(to, 120) : to;
+            reads.add(new long[]{from, last});
+            for (long seq = from + 1; seq <= last; seq++) {
+                handler.accept(events.get((int) seq - 1));
+            }
+            return null;
+        }).when(service.storeService).streamEventsFromDb(anyLong(), anyLong(), any());
+
+        service.symbolEngines.values().forEach(SymbolEngine::start);
+        try {
+            service.processMessages(events.subList(0, 50));
+            // 第51~199个事件丢失:
+            service.processMessages(events.subList(199, 200));
+            assertEquals(2, reads.size());
+            assertEquals(List.of(50L, 120L), List.of(reads.get(0)[0], reads.get(0)[1]));
+            // 第二次从已处理的第120个事件之后读取，不会重复处理:
+            assertEquals(List.of(120L, 199L), List.of(reads.get(1)[0], reads.get(1)[1]));
+            // Kafka重新投递的事件全部跳过，之后的事件继续按顺序处理:
+            service.processMessages(events.subList(149, 200));
+            service.processMessages(events.subList(200, events.size()));
+        } finally {
+            service.symbolEngines.values().forEach(SymbolEngine::stop);
+        }
+        verify(service.storeService, times(2)).streamEventsFromDb(anyLong(), anyLong(), any());
+
+        assertEquals(serial.getStateHash(), service.getStateHash());
+        assertEquals(assetsOf(serial.assetService), assetsOf(service.assetService));
+        assertEquals(ordersOf(serial.orderService), ordersOf(service.orderService));
+    }
+
+    @Test
+    void promotedStandbyResumesOutputs() {
+        TradingEngineService service = createService();
+        ReplicaService replicaService = new ReplicaService();
+        ReflectionTestUtils.setField(replicaService, "standby", true);
+        service.replicaService = replicaService;
+        long debt = UserType.DEBT.getInternalUserId();
+        List<AbstractEvent> events = new ArrayList<>();
+        events.add(transfer(debt, FIRST_USER, AssetEnum.USD, "1000", false));
+        for (int i = 0; i < 2; i++) {
+            OrderRequestEvent buy = new OrderRequestEvent();
+            buy.userId = FIRST_USER;
+            buy.direction = Direction.BUY;
+            buy.price = new BigDecimal("100.00");
+            buy.quantity = BigDecimal.ONE;
+            events.add(buy);
+        }
+        sequence(events);
+        // 热备引擎只维护状态，不输出结果:
+        service.processMessages(events.subList(0, 2));
+        assertEquals(1, service.orderService.getActiveOrders().size());
+        assertTrue(service.apiResultQueue.isEmpty());
+        replicaService.promote();
+        assertFalse(replicaService.isStandby());
+        service.processMessages(events.subList(2, 3));
+        assertEquals(2, service.orderService.getActiveOrders().size());
+        assertEquals(1, service.apiResultQueue.size());
+    }
+
+    static TradingEngineService createService() {
+        TradingEngineService service = new TradingEngineService();
+        service.symbols = SYMBOLS;
+        service.assetService = new AssetService();
+        service.orderService = new OrderService(service.assetService);
+        service.replicaService = mock(ReplicaService.class);
+        service.snapshotService = mock(SnapshotService.class);
+        service.engineMetrics = new EngineMetrics(new SimpleMeterRegistry());
+        service.createPipeline();
+        return service;
+    }
+
+    /**
+     * 余额只够少量挂单，冻结经常因尚未清算的成交失败，取消的订单可能已在同一批中成交
+     */
+    static List<AbstractEvent> randomEvents(TradingEngineService service, Random random, int count) {
+        List<AbstractEvent> events = new ArrayList<>();
+        long debt = UserType.DEBT.getInternalUserId();
+        for (long userId = FIRST_USER; userId < FIRST_USER + USERS; userId++) {
+            events.add(transfer(debt, userId, AssetEnum.USD, "3000", false));
+            events.add(transfer(debt, userId, AssetEnum.BTC, "10", false));
+            events.add(transfer(debt, userId, AssetEnum.ETH, "100", false));
+        }
+        // 已发出的下单请求: 订单ID => 用户ID
+        List<long[]> orders = new ArrayList<>();
+        while (events.size() < count) {
+            int n = random.nextInt(20);
+            long userId = FIRST_USER + random.nextInt(USERS);
+            if (n < 4 && !orders.isEmpty()) {
+                long[] order = orders.get(random.nextInt(orders.size()));
+                OrderCancelEvent event = new OrderCancelEvent();
+                event.refOrderId = order[0];
+                // 偶尔取消其他用户的订单:
+                event.userId = n == 0 ? userId : order[1];
+                events.add(event);
+            } else if (n == 4) {
+                events.add(transfer(userId, FIRST_USER + random.nextInt(USERS), AssetEnum.USD, "100", true));
+            } else {
+                String symbol = SYMBOLS.get(random.nextInt(SYMBOLS.size()));
+                int base = symbol.equals("BTC/USD") ? 10000 : 1000;
+                OrderRequestEvent event = new OrderRequestEvent();
+                event.userId = userId;
+                // 未指定交易对时使用默认交易对:
+                event.symbol = n == 5 && symbol.equals("BTC/USD") ? null : symbol;
+                event.direction = random.nextBoolean() ? Direction.BUY : Direction.SELL;
+                event.price = BigDecimal.valueOf(base - 50 + random.nextInt(100), 2);
+                event.quantity = BigDecimal.valueOf(1 + random.nextInt(500), 2);
+                events.add(event);
+            }
+            AbstractEvent event = events.get(events.size() - 1);
+            if (event instanceof OrderRequestEvent request) {
+                long seq = events.size();
+                orders.add(new long[]{seq * 10000 + service.yearMonthOf(CREATED_AT + seq), request.userId});
+            }
+        }
+        return sequence(events);
+    }
+
+    static List<AbstractEvent> sequence(List<AbstractEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            AbstractEvent event = events.get(i);
+            event.sequenceId = i + 1;
+            event.previousId = i;
+            event.createdAt = CREATED_AT + event.sequenceId;
+            event.refId = "ref-" + event.sequenceId;
+        }
+        return events;
+    }
+
+    static TransferEvent transfer(long fromUserId, long toUserId, AssetEnum asset, String amount, boolean sufficient) {
+        TransferEvent event = new TransferEvent();
+        event.fromUserId = fromUserId;
+        event.toUserId = toUserId;
+        event.asset = asset;
+        event.amount = new BigDecimal(amount);
+        event.sufficient = sufficient;
+        return event;
+    }
+
+    static Map<String, List<Long>> assetsOf(AssetService assetService) {
+        Map<String, List<Long>> assets = new HashMap<>();
+        assetService.forEach((userId, assetId, available, frozen) -> assets.put(userId + ":" + assetId, List.of(available, frozen)));
+        return assets;
+    }
+
+    static Map<Long, String> ordersOf(OrderService orderService) {
+        Map<Long, String> orders = new HashMap<>();
+        for (OrderEntity order : orderService.getActiveOrders().values()) {
+            orders.put(order.id, order.symbol + ":" + order.status + ":" + order.unfilledQuantityValue);
+        }
+        return orders;
+    }
+
+    // 按撮合优先级排列的买盘和卖盘订单ID:
+    static List<Long> orderIdsOf(SymbolEngine engine) {
+        List<Long> ids = new ArrayList<>();
+        engine.matchEngine.buyBook.getOrders().forEach(order -> ids.add(order.id));
+        ids.add(0L);
+        engine.matchEngine.sellBook.getOrders().forEach(order -> ids.add(order.id));
+        return ids;
+    }
+}
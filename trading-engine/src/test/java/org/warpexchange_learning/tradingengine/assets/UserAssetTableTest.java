@@ -0,0 +1,99 @@
+package org.warpexchange_learning.tradingengine.assets;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.enums.AssetEnum;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 引擎线程不断冻结、解冻并加入新用户（触发扩容）时，其他线程不加锁读到的每个资产都是某次修改前或修改后的完整数据
+ */
+class UserAssetTableTest {
+
+    static final long USER_ID = 2;
+    static final long TOTAL = 1_000_000;
+    static final int WRITES = 200_000;
+
+    @Test
+    void readsAreConsistentUnderConcurrentWrites() throws Exception {
+        AssetService assetService = new AssetService();
+        for (AssetEnum assetId : AssetEnum.values()) {
+            assetService.restoreAsset(USER_ID, assetId, TOTAL, 0);
+        }
+        AtomicReference<String> error = new AtomicReference<>();
+        AtomicLong reads = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            long newUserId = 100;
+            for (int n = 0; n < WRITES; n++) {
+                AssetEnum assetId = AssetEnum.values()[n % AssetEnum.values().length];
+                long amount = 1 + n % TOTAL;
+                assetService.tryFreeze(USER_ID, assetId, amount);
+                assetService.unfreeze(USER_ID, assetId, amount);
+                if (n % 100 == 0) {
+                    assetService.restoreAsset(newUserId++, assetId, n, 0);
+                }
+            }
+        }, "engine");
+        Runnable reader = () -> {
+            while (writer.isAlive() && error.get() == null) {
+                Asset asset = assetService.getAsset(USER_ID, AssetEnum.USD);
+                check(asset, error);
+                Map<AssetEnum, Asset> assets = assetService.getAssets(USER_ID);
+                if (assets.size() != AssetEnum.values().length) {
+                    error.compareAndSet(null, "missing assets: " + assets);
+                }
+                assets.values().forEach(a -> check(a, error));
+                reads.incrementAndGet();
+            }
+        };
+        Thread reader1 = new Thread(reader, "reader-1");
+        Thread reader2 = new Thread(reader, "reader-2");
+        writer.start();
+        reader1.start();
+        reader2.start();
+        writer.join();
+        reader1.join();
+        reader2.join();
+        assertNull(error.get());
+        assertTrue(reads.get() > 0);
+        // 扩容后原有用户仍在原来的行:
+        assertEquals(0, assetService.getAsset(USER_ID, AssetEnum.BTC).getFrozenAmount());
+        assertEquals(WRITES / 100 + 1, assetService.table.size());
+    }
+
+    @Test
+    void readerWaitsForUnfinishedWrite() throws Exception {
+        AssetService assetService = new AssetService();
+        assetService.restoreAsset(USER_ID, AssetEnum.USD, TOTAL, 0);
+        UserAssetTable.Storage s = assetService.table.storage();
+        int row = s.find(USER_ID);
+        int i = UserAssetTable.index(row, AssetEnum.USD);
+        // 引擎线程修改到一半，只写了available:
+        s.beginWrite(row);
+        s.balances[i] = TOTAL - 1;
+        AtomicReference<Asset> read = new AtomicReference<>();
+        Thread reader = new Thread(() -> read.set(assetService.getAsset(USER_ID, AssetEnum.USD)), "reader");
+        reader.start();
+        reader.join(100);
+        assertTrue(reader.isAlive());
+        assertNull(read.get());
+        s.balances[i + 1] = 1;
+        s.endWrite(row);
+        reader.join();
+        assertEquals(TOTAL - 1, read.get().getAvailableAmount());
+        assertEquals(1, read.get().getFrozenAmount());
+    }
+
+    static void check(Asset asset, AtomicReference<String> error) {
+        if (asset.getAvailableAmount() < 0 || asset.getFrozenAmount() < 0
+                || asset.getAvailableAmount() + asset.getFrozenAmount() != TOTAL) {
+            error.compareAndSet(null, "inconsistent read: " + asset);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.warpexchange_learning.tradingengine.clearing;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.bean.TradingPair;
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.OrderBookType;
+import org.warpexchange_learning.common.enums.UserType;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+import org.warpexchange_learning.tradingengine.assets.Asset;
+import org.warpexchange_learning.tradingengine.assets.AssetService;
+import org.warpexchange_learning.tradingengine.assets.Transfer;
+import org.warpexchange_learning.tradingengine.match.MatchEngine;
+import org.warpexchange_learning.tradingengine.match.MatchResult;
+import org.warpexchange_learning.tradingengine.order.OrderService;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Taker吃掉多个Maker时，合并后的资产修改与逐笔转账的结果相同：各资产总额不变，冻结全部释放或与剩余挂单一致
+ */
+class ClearingServiceTest {
+
+    static final TradingPair PAIR = TradingPair.of("BTC/USD");
+    static final long TAKER = 2;
+    static final long[] MAKERS = {3, 4, 5};
+
+    AssetService assetService = new AssetService();
+    OrderService orderService = new OrderService(assetService);
+    MatchEngine matchEngine = new MatchEngine(OrderBookType.PRICE_LEVEL);
+    ClearingService clearingService = new ClearingService(assetService, orderService, PAIR.baseAsset(), PAIR.quoteAsset());
+    long sequenceId = 0;
+
+    @Test
+    void nettedSettlementConservesTotals() {
+        long debt = UserType.DEBT.getInternalUserId();
+        for (long userId = TAKER; userId <= MAKERS[MAKERS.length - 1]; userId++) {
+            deposit(debt, userId, AssetEnum.USD, "10000");
+            deposit(debt, userId, AssetEnum.BTC, "10");
+        }
+        Map<AssetEnum, Long> totals = totals();
+
+        // Taker以103买入2.5，按Maker的价格100、101、102成交，最后一个Maker部分成交:
+        for (int i = 0; i < MAKERS.length; i++) {
+            place(MAKERS[i], Direction.SELL, BigDecimal.valueOf(100 + i), BigDecimal.ONE);
+        }
+        OrderEntity buy = place(TAKER, Direction.BUY, new BigDecimal("103"), new BigDecimal("2.5"));
+        assertEquals(totals, totals());
+        assertBalance(TAKER, AssetEnum.USD, "9748", "0");
+        assertBalance(TAKER, AssetEnum.BTC, "12.5", "0");
+        assertBalance(MAKERS[0], AssetEnum.USD, "10100", "0");
+        assertBalance(MAKERS[0], AssetEnum.BTC, "9", "0");
+        assertBalance(MAKERS[2], AssetEnum.USD, "10051", "0");
+        assertBalance(MAKERS[2], AssetEnum.BTC, "9", "0.5");
+        assertNull(this.orderService.getOrder(buy.id));
+        assertEquals(1, this.orderService.getActiveOrders().size());
+
+        // Taker以99卖出3，按Maker的价格101、100成交，Taker剩余1挂单:
+        place(MAKERS[0], Direction.BUY, new BigDecimal("101"), BigDecimal.ONE);
+        place(MAKERS[1], Direction.BUY, new BigDecimal("100"), BigDecimal.ONE);
+        OrderEntity sell = place(TAKER, Direction.SELL, new BigDecimal("99"), new BigDecimal("3"));
+        assertEquals(totals, totals());
+        assertBalance(TAKER, AssetEnum.USD, "9949", "0");
+        assertBalance(TAKER, AssetEnum.BTC, "9.5", "1");
+        assertBalance(MAKERS[0], AssetEnum.USD, "9999", "0");
+        assertBalance(MAKERS[0], AssetEnum.BTC, "10", "0");
+        assertBalance(MAKERS[1], AssetEnum.USD, "10001", "0");
+        assertBalance(MAKERS[1], AssetEnum.BTC, "10", "0");
+        assertNotNull(this.orderService.getOrder(sell.id));
+        assertEquals(2, this.orderService.getActiveOrders().size());
+
+        // 增量维护的状态哈希与按最终余额重新计算的相同:
+        AssetService restored = new AssetService();
+        this.assetService.forEach((userId, assetId, available, frozen) -> restored.restoreAsset(userId, assetId, available, frozen));
+        assertEquals(restored.getStateHash(), this.assetService.getStateHash());
+    }
+
+    OrderEntity place(long userId, Direction direction, BigDecimal price, BigDecimal quantity) {
+        long seq = ++this.sequenceId;
+        OrderEntity order = this.orderService.createOrder(seq, seq, seq, userId, PAIR, direction, price, quantity);
+        assertNotNull(order);
+        MatchResult result = this.matchEngine.processOrder(seq, order);
+        this.clearingService.clearMatchResult(result);
+        return order;
+    }
+
+    void deposit(long fromUserId, long toUserId, AssetEnum assetId, String amount) {
+        this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, fromUserId, toUserId, assetId,
+                FixedPointUtil.toAmount(new BigDecimal(amount)), false);
+    }
+
+    Map<AssetEnum, Long> totals() {
+        Map<AssetEnum, Long> totals = new EnumMap<>(AssetEnum.class);
+        this.assetService.forEach((userId, assetId, available, frozen) -> totals.merge(assetId, available + frozen, Long::sum));
+        return totals;
+    }
+
+    void assertBalance(long userId, AssetEnum assetId, String available, String frozen) {
+        Asset asset = this.assetService.getAsset(userId, assetId);
+        assertEquals(0, new BigDecimal(available).compareTo(asset.getAvailable()), userId + " " + assetId + ": " + asset);
+        assertEquals(0, new BigDecimal(frozen).compareTo(asset.getFrozen()), userId + " " + assetId + ": " + asset);
+    }
+}
@@ -0,0 +1,75 @@
+package org.warpexchange_learning.tradingengine.match;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.bean.OrderBookBean;
+import org.warpexchange_learning.common.bean.OrderBookDeltaBean;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.OrderBookType;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.warpexchange_learning.tradingengine.match.OrderBookEquivalenceTest.createOrder;
+
+class MatchEngineTest {
+
+    static final int MAX_DEPTH = 5;
+
+    @Test
+    void cancelOnlyBatchProducesNewerOrderBook() {
+        for (OrderBookType type : OrderBookType.values()) {
+            MatchEngine engine = new MatchEngine(type);
+            OrderEntity order = createOrder(1, Direction.BUY, new BigDecimal("100"), BigDecimal.ONE);
+            engine.processOrder(1, order);
+            engine.processOrder(2, createOrder(2, Direction.SELL, new BigDecimal("101"), BigDecimal.ONE));
+            OrderBookBean before = engine.getOrderBook(MAX_DEPTH);
+            assertEquals(2, before.sequenceId);
+
+            // 只有取消的一批事件，生成的订单簿必须带上取消事件的sequenceId，否则推送线程会当作旧快照丢弃:
+            engine.cancel(3, 3, order);
+            assertEquals(3, engine.getSequenceId());
+            OrderBookBean after = engine.getOrderBook(MAX_DEPTH);
+            assertNotSame(before, after);
+            assertTrue(after.sequenceId > before.sequenceId);
+            assertSame(after, engine.getOrderBook(MAX_DEPTH));
+
+            OrderBookDeltaBean delta = OrderBookDeltaBean.of(before, after);
+            assertEquals(3, delta.sequenceId);
+            assertEquals(2, delta.previousId);
+            assertEquals(1, delta.buy.size());
+            assertEquals(0, new BigDecimal("100").compareTo(delta.buy.get(0).price));
+            assertEquals(0, delta.buy.get(0).quantity.signum());
+            assertTrue(delta.sell.isEmpty());
+        }
+    }
+
+    @Test
+    void matchingAllocatesNothingPerFill() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled());
+        int n = 10_000;
+        MatchEngine engine = new MatchEngine(OrderBookType.PRICE_LEVEL);
+        for (int i = 0; i < n; i++) {
+            engine.processOrder(i + 1, createOrder(i + 1, Direction.SELL, BigDecimal.valueOf(10000 + i % 50, 2), new BigDecimal("2")));
+        }
+        // 订单在计时前创建，每个买单和一个卖单部分成交或完全成交，不进入订单簿:
+        OrderEntity[] takers = new OrderEntity[n];
+        for (int i = 0; i < n; i++) {
+            takers[i] = createOrder(n + i + 1, Direction.BUY, new BigDecimal("200"), BigDecimal.ONE);
+        }
+        long allocated = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < n; i++) {
+            engine.processOrder(n + i + 1, takers[i]);
+        }
+        allocated = mx.getCurrentThreadAllocatedBytes() - allocated;
+        assertTrue(allocated / n < 16, "allocated " + allocated / n + " bytes per order");
+        // 每个卖单被两个买单吃完:
+        assertEquals(n / 2, engine.sellBook.size());
+    }
+}
@@ -0,0 +1,141 @@
+package org.warpexchange_learning.tradingengine.match;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.bean.OrderBookItemBean;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.OrderBookType;
+import org.warpexchange_learning.common.enums.OrderStatus;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 同一组订单分别交给TREE_MAP和PRICE_LEVEL两种订单簿，撮合结果、深度和订单必须完全一致
+ */
+class OrderBookEquivalenceTest {
+
+    static final int MAX_DEPTH = 5;
+
+    @Test
+    void randomOrdersMatchIdentically() {
+        MatchEngine treeMap = new MatchEngine(OrderBookType.TREE_MAP);
+        MatchEngine priceLevel = new MatchEngine(OrderBookType.PRICE_LEVEL);
+        List<OrderEntity[]> pending = new ArrayList<>();
+        Random random = new Random(20231017);
+        for (long seq = 1; seq <= 20_000; seq++) {
+            if (!pending.isEmpty() && random.nextInt(4) == 0) {
+                // 取消一个随机挂单:
+                OrderEntity[] pair = pending.remove(random.nextInt(pending.size()));
+                if (pair[0].status == OrderStatus.PENDING || pair[0].status == OrderStatus.PARTIAL_FILLED) {
+                    OrderNode a = treeMap.cancel(seq, seq, pair[0]);
+                    OrderNode b = priceLevel.cancel(seq, seq, pair[1]);
+                    assertEquals(a.unfilledQuantity, b.unfilledQuantity);
+                    assertEquals(pair[0].status, pair[1].status);
+                }
+            } else {
+                Direction direction = random.nextBoolean() ? Direction.BUY : Direction.SELL;
+                // 价格集中在少数档位，使同一档位有多个订单:
+                BigDecimal price = BigDecimal.valueOf(9900 + random.nextInt(200), 2);
+                BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(500), 2);
+                OrderEntity a = createOrder(seq, direction, price, quantity);
+                OrderEntity b = createOrder(seq, direction, price, quantity);
+                assertMatchResult(treeMap.processOrder(seq, a), priceLevel.processOrder(seq, b));
+                assertEquals(a.status, b.status);
+                assertEquals(a.unfilledQuantityValue, b.unfilledQuantityValue);
+                if (a.status == OrderStatus.PENDING || a.status == OrderStatus.PARTIAL_FILLED) {
+                    pending.add(new OrderEntity[]{a, b});
+                }
+            }
+            assertBook(treeMap.buyBook, priceLevel.buyBook);
+            assertBook(treeMap.sellBook, priceLevel.sellBook);
+            assertEquals(treeMap.marketPrice, priceLevel.marketPrice);
+            assertEquals(treeMap.getStateHash(), priceLevel.getStateHash());
+        }
+    }
+
+    @Test
+    void priceLevelDepthIsReusedUntilTopLevelsChange() {
+        assertDepthReused(OrderBookType.PRICE_LEVEL);
+    }
+
+    @Test
+    void treeMapDepthIsReusedUntilTopLevelsChange() {
+        assertDepthReused(OrderBookType.TREE_MAP);
+    }
+
+    static void assertDepthReused(OrderBookType type) {
+        MatchEngine engine = new MatchEngine(type);
+        for (int i = 0; i < 10; i++) {
+            engine.processOrder(i + 1, createOrder(i + 1, Direction.BUY, BigDecimal.valueOf(100 - i), BigDecimal.ONE));
+        }
+        DepthSnapshot first = engine.buyBook.getDepth(MAX_DEPTH);
+        assertSame(first, engine.buyBook.getDepth(MAX_DEPTH));
+        // 前MAX_DEPTH档以外的变化不影响快照内容:
+        engine.processOrder(11, createOrder(11, Direction.BUY, BigDecimal.valueOf(80), BigDecimal.ONE));
+        assertItems(first, engine.buyBook.getDepth(MAX_DEPTH));
+        // 前MAX_DEPTH档内的变化必须生成新的快照:
+        engine.processOrder(12, createOrder(12, Direction.BUY, BigDecimal.valueOf(99), BigDecimal.ONE));
+        DepthSnapshot changed = engine.buyBook.getDepth(MAX_DEPTH);
+        assertEquals(0, new BigDecimal("2").compareTo(changed.items.get(1).quantity));
+    }
+
+    static OrderEntity createOrder(long seq, Direction direction, BigDecimal price, BigDecimal quantity) {
+        OrderEntity order = new OrderEntity();
+        order.id = seq;
+        order.sequenceId = seq;
+        order.userId = seq % 10;
+        order.direction = direction;
+        order.price = price;
+        order.quantity = quantity;
+        order.unfilledQuantity = quantity;
+        order.priceValue = FixedPointUtil.toValue(price);
+        order.quantityValue = order.unfilledQuantityValue = FixedPointUtil.toValue(quantity);
+        order.status = OrderStatus.PENDING;
+        order.createdAt = order.updatedAt = seq;
+        return order;
+    }
+
+    static void assertMatchResult(MatchResult expected, MatchResult actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.price(i), actual.price(i));
+            assertEquals(expected.quantity(i), actual.quantity(i));
+            assertEquals(expected.makerOrder(i).id, actual.makerOrder(i).id);
+        }
+    }
+
+    static void assertBook(OrderBook expected, OrderBook actual) {
+        assertEquals(expected.size(), actual.size());
+        OrderNode first = expected.getFirst();
+        if (first == null) {
+            assertSame(null, actual.getFirst());
+        } else {
+            assertEquals(first.order.id, actual.getFirst().order.id);
+        }
+        List<OrderEntity> expectedOrders = expected.getOrders();
+        List<OrderEntity> actualOrders = actual.getOrders();
+        assertEquals(expectedOrders.size(), actualOrders.size());
+        for (int i = 0; i < expectedOrders.size(); i++) {
+            assertEquals(expectedOrders.get(i).id, actualOrders.get(i).id);
+            assertEquals(expectedOrders.get(i).unfilledQuantityValue, actualOrders.get(i).unfilledQuantityValue);
+        }
+        assertItems(expected.getDepth(MAX_DEPTH), actual.getDepth(MAX_DEPTH));
+    }
+
+    static void assertItems(DepthSnapshot expected, DepthSnapshot actual) {
+        assertEquals(expected.items.size(), actual.items.size());
+        for (int i = 0; i < expected.items.size(); i++) {
+            OrderBookItemBean e = expected.items.get(i);
+            OrderBookItemBean a = actual.items.get(i);
+            assertEquals(0, e.price.compareTo(a.price));
+            assertEquals(0, e.quantity.compareTo(a.quantity));
+        }
+    }
+}
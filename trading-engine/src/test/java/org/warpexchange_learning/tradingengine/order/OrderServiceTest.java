@@ -0,0 +1,52 @@
+package org.warpexchange_learning.tradingengine.order;
+
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.bean.TradingPair;
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.tradingengine.assets.AssetService;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 价格或数量无法转换为定点long、或冻结金额溢出时，createOrder()按冻结失败返回null，不抛出异常也不冻结资产
+ */
+class OrderServiceTest {
+
+    static final TradingPair PAIR = TradingPair.of("BTC/USD");
+
+    @Test
+    void createOrderReturnsNullOnArithmeticException() {
+        AssetService assetService = new AssetService();
+        OrderService orderService = new OrderService(assetService);
+        assetService.restoreAsset(1L, AssetEnum.USD, Long.MAX_VALUE / 4, 0);
+        assetService.restoreAsset(1L, AssetEnum.BTC, Long.MAX_VALUE / 4, 0);
+        BigDecimal huge = BigDecimal.valueOf(Long.MAX_VALUE);
+
+        // 超出精度:
+        assertNull(orderService.createOrder(1, 1, 10L, 1L, PAIR, Direction.BUY, new BigDecimal("100.001"), BigDecimal.ONE));
+        // 转换溢出:
+        assertNull(orderService.createOrder(2, 2, 20L, 1L, PAIR, Direction.SELL, BigDecimal.ONE, huge));
+        // 价格x数量溢出:
+        BigDecimal large = new BigDecimal("10000000000");
+        assertNull(orderService.createOrder(3, 3, 30L, 1L, PAIR, Direction.BUY, large, large));
+        // 数量换算为金额溢出:
+        assertNull(orderService.createOrder(4, 4, 40L, 1L, PAIR, Direction.SELL, BigDecimal.ONE, new BigDecimal("1000000000000000")));
+
+        assertTrue(orderService.getActiveOrders().isEmpty());
+        assertEquals(0, assetService.getAsset(1L, AssetEnum.USD).getFrozenAmount());
+        assertEquals(0, assetService.getAsset(1L, AssetEnum.BTC).getFrozenAmount());
+
+        // API允许的最大值可以正常下单:
+        OrderEntity order = orderService.createOrder(5, 5, 50L, 1L, PAIR, Direction.SELL, new BigDecimal("10000000"), new BigDecimal("10000000"));
+        assertNotNull(order);
+        assertEquals(1_000_000_000L, order.quantityValue);
+        assertEquals(1_000_000_000L * 100, assetService.getAsset(1L, AssetEnum.BTC).getFrozenAmount());
+    }
+}
@@ -0,0 +1,70 @@
+package org.warpexchange_learning.tradingengine.replica;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.redis.RedisCache;
+import org.warpexchange_learning.common.redis.RedisService;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 热备引擎把自己的状态哈希与主引擎写入Redis的比较，不一致时标记为已分叉并拒绝提升
+ */
+class ReplicaServiceTest {
+
+    ReplicaService replicaService;
+
+    @AfterEach
+    void tearDown() {
+        this.replicaService.destroy();
+    }
+
+    @Test
+    void mismatchedStateHashIsReported() throws Exception {
+        this.replicaService = createStandby(List.of("20000:41"));
+        this.replicaService.checkpoint(20000, 42);
+        await(this.replicaService::isDiverged);
+        assertEquals(0, this.replicaService.getLastVerifiedSequenceId());
+        assertThrows(IllegalStateException.class, this.replicaService::promote);
+        assertTrue(this.replicaService.isStandby());
+    }
+
+    @Test
+    void promoteFlipsStandby() throws Exception {
+        this.replicaService = createStandby(List.of("20000:42"));
+        this.replicaService.checkpoint(20000, 42);
+        await(() -> this.replicaService.getLastVerifiedSequenceId() == 20000);
+        assertFalse(this.replicaService.isDiverged());
+        this.replicaService.promote();
+        assertFalse(this.replicaService.isStandby());
+        // 已是主引擎时再次提升不做任何事:
+        this.replicaService.promote();
+        assertFalse(this.replicaService.isStandby());
+    }
+
+    static ReplicaService createStandby(List<String> primaryHashes) {
+        RedisService redisService = mock(RedisService.class);
+        when(redisService.zrangebyscore(RedisCache.Key.ENGINE_STATE_HASH, 20000, 20000)).thenReturn(primaryHashes);
+        ReplicaService replicaService = new ReplicaService();
+        replicaService.redisService = redisService;
+        replicaService.standby = true;
+        replicaService.init();
+        return replicaService;
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
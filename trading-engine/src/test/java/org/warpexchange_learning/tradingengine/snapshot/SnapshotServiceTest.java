@@ -0,0 +1,245 @@
+package org.warpexchange_learning.tradingengine.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.warpexchange_learning.common.bean.TradingPair;
+import org.warpexchange_learning.common.enums.AssetEnum;
+import org.warpexchange_learning.common.enums.Direction;
+import org.warpexchange_learning.common.enums.OrderBookType;
+import org.warpexchange_learning.common.enums.OrderStatus;
+import org.warpexchange_learning.common.enums.UserType;
+import org.warpexchange_learning.common.model.trade.OrderEntity;
+import org.warpexchange_learning.common.util.FixedPointUtil;
+import org.warpexchange_learning.tradingengine.assets.AssetService;
+import org.warpexchange_learning.tradingengine.assets.Transfer;
+import org.warpexchange_learning.tradingengine.clearing.ClearingService;
+import org.warpexchange_learning.tradingengine.match.MatchEngine;
+import org.warpexchange_learning.tradingengine.match.MatchResult;
+import org.warpexchange_learning.tradingengine.order.OrderService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 写入快照后读取并恢复到新的引擎，状态哈希必须相同，之后处理相同的订单也必须得到相同的状态
+ */
+class SnapshotServiceTest {
+
+    static final int USERS = 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writeAndRestoreKeepsState() throws IOException {
+        Engine engine = new Engine();
+        Random random = new Random(123);
+        engine.deposit();
+        for (long seq = 1; seq <= 2000; seq++) {
+            engine.randomEvent(seq, random);
+        }
+        assertNotEquals(0, engine.matchEngine.buyBook.size());
+        assertNotEquals(0, engine.matchEngine.sellBook.size());
+
+        SnapshotService snapshotService = createSnapshotService();
+        EngineSnapshot snapshot = EngineSnapshot.capture(2000, engine.assetService, engine.matchEngines());
+        snapshotService.write(snapshot);
+
+        EngineSnapshot loaded = snapshotService.load();
+        assertNotNull(loaded);
+        assertEquals(2000, loaded.sequenceId);
+        assertEquals(snapshot.assetCount(), loaded.assetCount());
+        assertEquals(snapshot.orderCount(), loaded.orderCount());
+
+        Engine restored = new Engine();
+        loaded.restore(restored.assetService, restored.orderService, restored.matchEngines());
+        assertEquals(engine.matchEngine.getSequenceId(), restored.matchEngine.getSequenceId());
+        assertSameState(engine, restored);
+
+        // 恢复后继续处理相同的事件，状态保持一致，说明订单的时间优先也已恢复:
+        Random r1 = new Random(456);
+        Random r2 = new Random(456);
+        for (long seq = 2001; seq <= 3000; seq++) {
+            engine.randomEvent(seq, r1);
+            restored.randomEvent(seq, r2);
+            assertSameState(engine, restored);
+        }
+    }
+
+    @Test
+    void loadSkipsCorruptedSnapshot() throws IOException {
+        Engine engine = new Engine();
+        engine.deposit();
+        SnapshotService snapshotService = createSnapshotService();
+        snapshotService.write(EngineSnapshot.capture(100, engine.assetService, engine.matchEngines()));
+        engine.randomEvent(101, new Random(1));
+        snapshotService.write(EngineSnapshot.capture(101, engine.assetService, engine.matchEngines()));
+
+        // 最新的快照损坏时读取上一个快照:
+        Path latest = this.dir.resolve("engine-101.snapshot");
+        try (RandomAccessFile file = new RandomAccessFile(latest.toFile(), "rw")) {
+            file.seek(file.length() / 2);
+            int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xff);
+        }
+        assertEquals(100, snapshotService.load().sequenceId);
+
+        Files.delete(this.dir.resolve("engine-100.snapshot"));
+        assertNull(snapshotService.load());
+    }
+
+    @Test
+    void writeRetainsLatestSnapshots() throws IOException {
+        Engine engine = new Engine();
+        engine.deposit();
+        SnapshotService snapshotService = createSnapshotService();
+        for (long seq : new long[]{9, 10, 100, 1000}) {
+            snapshotService.write(EngineSnapshot.capture(seq, engine.assetService, engine.matchEngines()));
+        }
+        try (Stream<Path> files = Files.list(this.dir)) {
+            assertEquals(List.of("engine-100.snapshot", "engine-1000.snapshot"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+        assertEquals(1000, snapshotService.load().sequenceId);
+    }
+
+    @Test
+    void readVersion1IntoPrimarySymbol() throws IOException {
+        // 增加交易对之前写入的快照，只有一个交易对且不记录symbol:
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(EngineSnapshot.MAGIC);
+        out.writeInt(1);
+        out.writeLong(5);
+        out.writeLong(4);
+        out.writeLong(10000);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeLong(4);
+        out.writeLong(4);
+        out.writeLong(1000);
+        out.writeByte(Direction.BUY.ordinal());
+        out.writeByte(OrderStatus.PENDING.ordinal());
+        EngineSnapshot.writeDecimal(out, new BigDecimal("100.00"));
+        EngineSnapshot.writeDecimal(out, new BigDecimal("2.00"));
+        EngineSnapshot.writeDecimal(out, new BigDecimal("2.00"));
+        out.writeLong(4);
+        out.writeLong(4);
+        EngineSnapshot loaded = EngineSnapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Map<String, MatchEngine> matchEngines = new LinkedHashMap<>();
+        matchEngines.put("BTC/USD", new MatchEngine(OrderBookType.PRICE_LEVEL));
+        matchEngines.put("ETH/USD", new MatchEngine(OrderBookType.PRICE_LEVEL));
+        OrderService orderService = new OrderService(new AssetService());
+        loaded.restore(new AssetService(), orderService, matchEngines);
+        assertEquals("BTC/USD", orderService.getOrder(4L).symbol);
+        assertEquals(1, matchEngines.get("BTC/USD").buyBook.size());
+        assertEquals(4, matchEngines.get("BTC/USD").getSequenceId());
+        assertEquals(0, matchEngines.get("ETH/USD").buyBook.size());
+    }
+
+    @Test
+    void restoreRejectsUnconfiguredSymbol() {
+        Engine engine = new Engine();
+        engine.deposit();
+        EngineSnapshot snapshot = EngineSnapshot.capture(1, engine.assetService, engine.matchEngines());
+        Engine restored = new Engine();
+        assertThrows(IllegalStateException.class, () -> snapshot.restore(restored.assetService, restored.orderService,
+                Map.of("ETH/USD", restored.matchEngine)));
+    }
+
+    SnapshotService createSnapshotService() {
+        SnapshotService snapshotService = new SnapshotService();
+        snapshotService.dir = this.dir.toString();
+        snapshotService.retain = 2;
+        return snapshotService;
+    }
+
+    static void assertSameState(Engine expected, Engine actual) {
+        assertEquals(expected.assetService.getStateHash(), actual.assetService.getStateHash());
+        assertEquals(expected.matchEngine.getStateHash(), actual.matchEngine.getStateHash());
+        assertEquals(assetsOf(expected.assetService), assetsOf(actual.assetService));
+        assertEquals(expected.orderService.getActiveOrders().keySet(), actual.orderService.getActiveOrders().keySet());
+        assertEquals(orderIdsOf(expected.matchEngine), orderIdsOf(actual.matchEngine));
+    }
+
+    static Map<String, List<Long>> assetsOf(AssetService assetService) {
+        Map<String, List<Long>> assets = new HashMap<>();
+        assetService.forEach((userId, assetId, available, frozen) -> assets.put(userId + ":" + assetId, List.of(available, frozen)));
+        return assets;
+    }
+
+    // 按撮合优先级排列的买盘和卖盘订单ID:
+    static List<Long> orderIdsOf(MatchEngine matchEngine) {
+        List<Long> ids = new ArrayList<>();
+        matchEngine.buyBook.getOrders().forEach(order -> ids.add(order.id));
+        ids.add(0L);
+        matchEngine.sellBook.getOrders().forEach(order -> ids.add(order.id));
+        return ids;
+    }
+
+    /**
+     * 不依赖Spring组装的引擎状态
+     */
+    static class Engine {
+
+        final AssetService assetService = new AssetService();
+        static final TradingPair PAIR = TradingPair.of("BTC/USD");
+
+        final OrderService orderService = new OrderService(assetService);
+        final MatchEngine matchEngine = new MatchEngine(OrderBookType.PRICE_LEVEL);
+        final ClearingService clearingService = new ClearingService(assetService, orderService, PAIR.baseAsset(), PAIR.quoteAsset());
+
+        Map<String, MatchEngine> matchEngines() {
+            return Map.of(PAIR.symbol(), matchEngine);
+        }
+
+        void deposit() {
+            long debt = UserType.DEBT.getInternalUserId();
+            for (long userId = 1000; userId < 1000 + USERS; userId++) {
+                assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, debt, userId, AssetEnum.USD, FixedPointUtil.toAmount(new BigDecimal("1000000")), false);
+                assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, debt, userId, AssetEnum.BTC, FixedPointUtil.toAmount(new BigDecimal("1000")), false);
+            }
+        }
+
+        void randomEvent(long seq, Random random) {
+            List<OrderEntity> active = new ArrayList<>(orderService.getActiveOrders().values());
+            if (!active.isEmpty() && random.nextInt(5) == 0) {
+                active.sort(null);
+                OrderEntity order = active.get(random.nextInt(active.size()));
+                clearingService.clearCancelOrder(matchEngine.cancel(seq, seq, order));
+                return;
+            }
+            Direction direction = random.nextBoolean() ? Direction.BUY : Direction.SELL;
+            BigDecimal price = BigDecimal.valueOf(9950 + random.nextInt(100), 2);
+            BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(1000), 2);
+            long userId = 1000 + random.nextInt(USERS);
+            OrderEntity order = orderService.createOrder(seq, seq, seq, userId, PAIR, direction, price, quantity);
+            if (order != null) {
+                MatchResult result = matchEngine.processOrder(seq, order);
+                clearingService.clearMatchResult(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.warpexchange_learning.tradingsequencer.journal;
+
+import org.warpexchange_learning.common.enums.FsyncPolicy;
+import org.warpexchange_learning.common.support.LoggerSupport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 只追加的本地事件日志，由多个内存映射的段文件组成，段文件名为该段第一条记录的sequenceId，写满后创建新段。
+ * <p>
+ * 只能由一个线程追加，可由其他线程按sequenceId并发读取：先按段起始sequenceId找到段，再按段内稀疏索引定位后顺序扫描。
+ * 追加后按FsyncPolicy把数据写入磁盘，启动时扫描全部段，重建索引并丢弃末尾写了一半的记录。
+ */
+public class EventJournal extends LoggerSupport {
+
+    static final Pattern SEGMENT_NAME = Pattern.compile("^(\\d{20})\\.journal$");
+
+    final Path dir;
+    final int segmentSize;
+    final FsyncPolicy fsyncPolicy;
+    final long fsyncIntervalNanos;
+
+    // 段起始sequenceId -> 段:
+    private final ConcurrentSkipListMap<Long, JournalSegment> segments = new ConcurrentSkipListMap<>();
+    private JournalSegment current = null;
+    private long lastForceTime = System.nanoTime();
+
+    public EventJournal(Path dir, int segmentSize, FsyncPolicy fsyncPolicy, Duration fsyncInterval) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+        Files.createDirectories(dir);
+        List<Long> firstSequenceIds = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    firstSequenceIds.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        firstSequenceIds.sort(null);
+        for (int i = 0; i < firstSequenceIds.size(); i++) {
+            long firstSequenceId = firstSequenceIds.get(i);
+            JournalSegment segment = new JournalSegment(segmentPath(firstSequenceId), firstSequenceId, segmentSize);
+            if (segment.recover()) {
+                if (i < firstSequenceIds.size() - 1) {
+                    throw new IllegalStateException("Journal segment is corrupted: " + segment.path);
+                }
+                logger.warn("discard incomplete record at the end of journal segment {}.", segment.path);
+            }
+            if (this.current != null) {
+                this.current.seal();
+            }
+            this.segments.put(firstSequenceId, segment);
+            this.current = segment;
+        }
+        logger.info("opened journal {}: {} segments, last sequence id = {}.", dir, this.segments.size(), getLastSequenceId());
+    }
+
+    public long getLastSequenceId() {
+        JournalSegment segment = this.current;
+        return segment == null ? 0 : segment.lastSequenceId();
+    }
+
+    /**
+     * 按顺序追加records，sequenceId必须递增。ALWAYS时整组records只刷盘一次，返回后这些记录已写入磁盘
+     */
+    public void append(List<JournalRecord> records) throws IOException {
+        for (JournalRecord record : records) {
+            if (this.current == null || !this.current.append(record)) {
+                rollSegment(record.sequenceId());
+                if (!this.current.append(record)) {
+                    throw new IllegalArgumentException("Record is larger than journal segment: sequenceId = " + record.sequenceId());
+                }
+            }
+        }
+        switch (this.fsyncPolicy) {
+            case ALWAYS -> this.current.force();
+            case INTERVAL -> {
+                long now = System.nanoTime();
+                if (now - this.lastForceTime >= this.fsyncIntervalNanos) {
+                    this.current.force();
+                    this.lastForceTime = now;
+                }
+            }
+            case NEVER -> {
+            }
+        }
+    }
+
+    /**
+     * 读取sequenceId >= fromSequenceId的最多max条记录，可在追加的同时由其他线程调用
+     */
+    public List<JournalRecord> read(long fromSequenceId, int max) {
+        List<JournalRecord> records = new ArrayList<>();
+        Map.Entry<Long, JournalSegment> entry = this.segments.floorEntry(fromSequenceId);
+        if (entry == null) {
+            entry = this.segments.firstEntry();
+        }
+        while (entry != null && records.size() < max) {
+            // 先读sealed再读段内记录：未写满的段之后不会有下一个段，写满的段此时已读到全部记录:
+            boolean sealed = entry.getValue().isSealed();
+            entry.getValue().read(fromSequenceId, max - records.size(), records);
+            if (!sealed) {
+                break;
+            }
+            entry = this.segments.higherEntry(entry.getKey());
+        }
+        return records;
+    }
+
+    /**
+     * 把尚未写入磁盘的内容写入磁盘
+     */
+    public void flush() {
+        if (this.current != null && this.fsyncPolicy != FsyncPolicy.NEVER) {
+            this.current.force();
+        }
+    }
+
+    private void rollSegment(long firstSequenceId) throws IOException {
+        // 无论刷盘策略如何，写满的段都先写入磁盘，并在创建下一个段之前标记为已写满，
+        // 否则断电后非最后一个段的末尾可能不完整，启动时无法恢复:
+        if (this.current != null) {
+            this.current.force();
+            this.current.seal();
+        }
+        JournalSegment segment = new JournalSegment(segmentPath(firstSequenceId), firstSequenceId, this.segmentSize);
+        this.segments.put(firstSequenceId, segment);
+        this.current = segment;
+        logger.info("create journal segment {}.", segment.path);
+    }
+
+    private Path segmentPath(long firstSequenceId) {
+        return this.dir.resolve(String.format("%020d.journal", firstSequenceId));
+    }
+}
@@ -0,0 +1,7 @@
+package org.warpexchange_learning.tradingsequencer.journal;
+
+/**
+ * 事件日志中的一条记录，对应一个EventEntity，uniqueId为null表示该事件不需要去重
+ */
+public record JournalRecord(long sequenceId, long previousId, long createdAt, String uniqueId, String data) {
+}
@@ -0,0 +1,219 @@
+package org.warpexchange_learning.tradingsequencer.journal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 一个预分配大小并整体映射到内存的日志段，文件名为起始sequenceId。
+ * <p>
+ * 记录格式：int长度 + int CRC32 + 内容，内容为sequenceId、previousId、createdAt、uniqueId（short长度，-1表示null）和data，
+ * 长度为0表示已到末尾。只由一个线程追加，追加后才推进writePosition，读取线程只读取writePosition之前的记录。
+ */
+final class JournalSegment {
+
+    static final int HEADER_SIZE = 8;
+    // 每隔INDEX_INTERVAL条记录建立一个稀疏索引:
+    static final int INDEX_INTERVAL = 64;
+
+    final Path path;
+    final long firstSequenceId;
+    final int capacity;
+
+    // 映射在文件关闭后仍然有效，直到被GC回收:
+    private final MappedByteBuffer buffer;
+    private final CRC32 crc32 = new CRC32();
+
+    private volatile int writePosition = 0;
+    private volatile long lastSequenceId = 0;
+    // 已写满并创建了下一个段，不再追加:
+    private volatile boolean sealed = false;
+    private int forcedPosition = 0;
+    private int records = 0;
+
+    // 稀疏索引：第i项为sequenceIds[i]所在记录的位置:
+    private long[] indexSequenceIds = new long[64];
+    private int[] indexPositions = new int[64];
+    private int indexSize = 0;
+
+    JournalSegment(Path path, long firstSequenceId, int capacity) throws IOException {
+        this.path = path;
+        this.firstSequenceId = firstSequenceId;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() < capacity) {
+                file.setLength(capacity);
+                // 文件长度也必须写入磁盘，之后force()只需写入映射的内容:
+                file.getChannel().force(true);
+            }
+            this.capacity = (int) Math.min(Integer.MAX_VALUE, file.length());
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        }
+    }
+
+    /**
+     * 打开已存在的段时扫描全部记录，重建索引并定位到最后一条有效记录之后，返回是否遇到了损坏的记录
+     */
+    boolean recover() {
+        int pos = 0;
+        CRC32 crc = new CRC32();
+        while (pos + HEADER_SIZE <= this.capacity) {
+            int length = this.buffer.getInt(pos);
+            if (length == 0) {
+                this.writePosition = pos;
+                return false;
+            }
+            if (length < 0 || pos + HEADER_SIZE + length > this.capacity || !checksum(crc, pos, length)) {
+                // 写了一半的记录，清零后从这里继续追加:
+                int end = length < 0 ? this.capacity : Math.min(this.capacity, pos + HEADER_SIZE + length);
+                for (int i = pos; i < end; i++) {
+                    this.buffer.put(i, (byte) 0);
+                }
+                this.writePosition = pos;
+                return true;
+            }
+            long sequenceId = this.buffer.getLong(pos + HEADER_SIZE);
+            if (this.records % INDEX_INTERVAL == 0) {
+                addIndex(sequenceId, pos);
+            }
+            this.records++;
+            this.lastSequenceId = sequenceId;
+            pos += HEADER_SIZE + length;
+        }
+        this.writePosition = pos;
+        return false;
+    }
+
+    long lastSequenceId() {
+        return this.lastSequenceId;
+    }
+
+    boolean isSealed() {
+        return this.sealed;
+    }
+
+    void seal() {
+        this.sealed = true;
+    }
+
+    /**
+     * 追加一条记录，剩余空间不足时返回false
+     */
+    boolean append(JournalRecord record) {
+        byte[] uniqueId = record.uniqueId() == null ? null : record.uniqueId().getBytes(StandardCharsets.UTF_8);
+        byte[] data = record.data().getBytes(StandardCharsets.UTF_8);
+        int length = 26 + (uniqueId == null ? 0 : uniqueId.length) + data.length;
+        int pos = this.writePosition;
+        if (pos + HEADER_SIZE + length > this.capacity) {
+            return false;
+        }
+        int p = pos + HEADER_SIZE;
+        this.buffer.putLong(p, record.sequenceId());
+        this.buffer.putLong(p + 8, record.previousId());
+        this.buffer.putLong(p + 16, record.createdAt());
+        p += 24;
+        if (uniqueId == null) {
+            this.buffer.putShort(p, (short) -1);
+            p += 2;
+        } else {
+            this.buffer.putShort(p, (short) uniqueId.length);
+            p += 2;
+            this.buffer.put(p, uniqueId);
+            p += uniqueId.length;
+        }
+        this.buffer.put(p, data);
+        this.crc32.reset();
+        this.crc32.update(this.buffer.slice(pos + HEADER_SIZE, length));
+        this.buffer.putInt(pos + 4, (int) this.crc32.getValue());
+        // 最后写长度，长度非0的记录一定是完整的:
+        this.buffer.putInt(pos, length);
+        if (this.records % INDEX_INTERVAL == 0) {
+            addIndex(record.sequenceId(), pos);
+        }
+        this.records++;
+        this.lastSequenceId = record.sequenceId();
+        this.writePosition = pos + HEADER_SIZE + length;
+        return true;
+    }
+
+    /**
+     * 把上次force之后追加的内容写入磁盘
+     */
+    void force() {
+        int pos = this.writePosition;
+        if (pos > this.forcedPosition) {
+            this.buffer.force(this.forcedPosition, pos - this.forcedPosition);
+            this.forcedPosition = pos;
+        }
+    }
+
+    /**
+     * 从sequenceId >= fromSequenceId的第一条记录开始读取，最多读取max条加入records，返回读取的条数
+     */
+    int read(long fromSequenceId, int max, List<JournalRecord> records) {
+        int end = this.writePosition;
+        int pos = floorPosition(fromSequenceId);
+        CRC32 crc = new CRC32();
+        int n = 0;
+        while (pos < end && n < max) {
+            int length = this.buffer.getInt(pos);
+            int p = pos + HEADER_SIZE;
+            long sequenceId = this.buffer.getLong(p);
+            if (sequenceId >= fromSequenceId) {
+                if (!checksum(crc, pos, length)) {
+                    throw new IllegalStateException("Checksum mismatch at " + pos + " of " + this.path);
+                }
+                long previousId = this.buffer.getLong(p + 8);
+                long createdAt = this.buffer.getLong(p + 16);
+                p += 24;
+                short uniqueIdLength = this.buffer.getShort(p);
+                p += 2;
+                String uniqueId = null;
+                if (uniqueIdLength >= 0) {
+                    uniqueId = getString(p, uniqueIdLength);
+                    p += uniqueIdLength;
+                }
+                String data = getString(p, pos + HEADER_SIZE + length - p);
+                records.add(new JournalRecord(sequenceId, previousId, createdAt, uniqueId, data));
+                n++;
+            }
+            pos += HEADER_SIZE + length;
+        }
+        return n;
+    }
+
+    private boolean checksum(CRC32 crc, int pos, int length) {
+        crc.reset();
+        crc.update(this.buffer.slice(pos + HEADER_SIZE, length));
+        return (int) crc.getValue() == this.buffer.getInt(pos + 4);
+    }
+
+    private String getString(int pos, int length) {
+        byte[] bytes = new byte[length];
+        this.buffer.get(pos, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private synchronized void addIndex(long sequenceId, int pos) {
+        if (this.indexSize == this.indexSequenceIds.length) {
+            this.indexSequenceIds = Arrays.copyOf(this.indexSequenceIds, this.indexSize * 2);
+            this.indexPositions = Arrays.copyOf(this.indexPositions, this.indexSize * 2);
+        }
+        this.indexSequenceIds[this.indexSize] = sequenceId;
+        this.indexPositions[this.indexSize] = pos;
+        this.indexSize++;
+    }
+
+    private synchronized int floorPosition(long sequenceId) {
+        int i = Arrays.binarySearch(this.indexSequenceIds, 0, this.indexSize, sequenceId);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i < 0 ? 0 : this.indexPositions[i];
+    }
+}
@@ -0,0 +1,70 @@
+package org.warpexchange_learning.tradingsequencer.sequencer;
+
+/**
+ * 字符串布隆过滤器：mightContain()返回false时一定没有加入过，返回true时可能是误判。
+ * <p>
+ * 按预计容量和1%误判率确定位数组大小和哈希函数个数，超过预计容量后误判率逐渐升高，但不会漏判。
+ * 非线程安全。
+ */
+public final class BloomFilter {
+
+    // 1%误判率时每个元素约需9.6位，需7个哈希函数:
+    static final double BITS_PER_ELEMENT = 9.6;
+    static final int NUM_HASHES = 7;
+
+    private final long[] bits;
+    private final long numBits;
+    private long size = 0;
+
+    public BloomFilter(int expectedElements) {
+        long n = Math.max(64, (long) (expectedElements * BITS_PER_ELEMENT));
+        this.bits = new long[(int) ((n + 63) >>> 6)];
+        this.numBits = (long) this.bits.length << 6;
+    }
+
+    /**
+     * 已加入的元素个数
+     */
+    public long size() {
+        return this.size;
+    }
+
+    public void add(String s) {
+        long h = hash(s);
+        long h1 = h;
+        long h2 = (h >>> 32) | 1;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            long index = Math.floorMod(h1 + i * h2, this.numBits);
+            this.bits[(int) (index >>> 6)] |= 1L << index;
+        }
+        this.size++;
+    }
+
+    public boolean mightContain(String s) {
+        long h = hash(s);
+        long h1 = h;
+        long h2 = (h >>> 32) | 1;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            long index = Math.floorMod(h1 + i * h2, this.numBits);
+            if ((this.bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a后再做一次murmur3的fmix64，使高低32位都分布均匀:
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
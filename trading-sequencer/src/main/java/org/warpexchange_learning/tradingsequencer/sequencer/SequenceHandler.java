@@ -1,17 +1,22 @@
 package org.warpexchange_learning.tradingsequencer.sequencer;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.warpexchange_learning.common.enums.FsyncPolicy;
 import org.warpexchange_learning.common.message.event.AbstractEvent;
 import org.warpexchange_learning.common.messaging.MessageTypes;
 import org.warpexchange_learning.common.model.trade.EventEntity;
 import org.warpexchange_learning.common.model.trade.UniqueEventEntity;
 import org.warpexchange_learning.common.support.AbstractDbService;
+import org.warpexchange_learning.tradingsequencer.journal.EventJournal;
+import org.warpexchange_learning.tradingsequencer.journal.JournalRecord;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -23,18 +28,183 @@ public class SequenceHandler extends AbstractDbService {
 
     private long lastTimestamp = 0;
 
+    @Value("#{exchangeConfiguration.sequencer.uniqueIdCacheSize}")
+    int uniqueIdCacheSize = 100000;
+
+    @Value("#{exchangeConfiguration.sequencer.uniqueIdBloomFilterCapacity}")
+    int uniqueIdBloomFilterCapacity = 10000000;
+
+    // 启动时每次从数据库读取的uniqueId个数:
+    static final int LOAD_UNIQUE_ID_BATCH_SIZE = 10000;
+    // 布隆过滤器的最大容量，约占用240MB内存:
+    static final long MAX_UNIQUE_ID_BLOOM_FILTER_CAPACITY = 200_000_000L;
+
+    // 最近定序的uniqueId，超过uniqueIdCacheSize时淘汰最早定序的:
+    private Set<String> recentUniqueIds = Set.of();
+    // 全部已定序的uniqueId，为null时不使用布隆过滤器:
+    private BloomFilter uniqueIdFilter = null;
+
+    @Value("#{exchangeConfiguration.sequencer.journalDir}")
+    String journalDir = "";
+
+    @Value("#{exchangeConfiguration.sequencer.journalSegmentSize}")
+    int journalSegmentSize = 256 * 1024 * 1024;
+
+    @Value("#{exchangeConfiguration.sequencer.journalFsync}")
+    FsyncPolicy journalFsync = FsyncPolicy.ALWAYS;
+
+    @Value("#{exchangeConfiguration.sequencer.journalFsyncInterval}")
+    Duration journalFsyncInterval = Duration.ofSeconds(1);
+
+    // 本地事件日志，为null时直接写入数据库:
+    private EventJournal journal = null;
+    // 已从日志写入数据库的最大sequenceId:
+    private volatile long mirroredSequenceId = 0;
+    // 已定序但尚未提交到数据库的uniqueKey -> sequenceId，由定序线程加入，事务提交后由写入线程或mirror线程移除。
+    // 最近uniqueId缓存可能在提交前就淘汰这些uniqueId，此时数据库也查不到，只能由这里去重:
+    private final Map<String, Long> uncommittedUniqueKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 定序器启动时调用，配置了journalDir时打开本地事件日志并返回true
+     */
+    public boolean openJournal() throws IOException {
+        if (this.journalDir.isEmpty()) {
+            return false;
+        }
+        this.journal = new EventJournal(Path.of(this.journalDir), this.journalSegmentSize, this.journalFsync, this.journalFsyncInterval);
+        EventEntity last = db.from(EventEntity.class).orderBy("sequenceId").desc().first();
+        this.mirroredSequenceId = last == null ? 0 : last.sequenceId;
+        logger.info("journal is mirrored to database up to sequence id {}.", this.mirroredSequenceId);
+        return true;
+    }
+
+    public void closeJournal() {
+        if (this.journal != null) {
+            this.journal.flush();
+        }
+    }
+
+    /**
+     * 把日志中尚未写入数据库的最多max条事件在一个事务中写入数据库，返回写入的最大sequenceId，没有需要写入的事件时返回0
+     */
+    public long mirrorJournal(int max) {
+        List<JournalRecord> records = this.journal.read(this.mirroredSequenceId + 1, max);
+        if (records.isEmpty()) {
+            return 0;
+        }
+        List<UniqueEventEntity> uniques = new ArrayList<>();
+        List<EventEntity> events = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            if (record.uniqueId() != null) {
+                UniqueEventEntity unique = new UniqueEventEntity();
+                unique.uniqueId = record.uniqueId();
+                unique.sequenceId = record.sequenceId();
+                unique.createdAt = record.createdAt();
+                uniques.add(unique);
+            }
+            EventEntity event = new EventEntity();
+            event.sequenceId = record.sequenceId();
+            event.previousId = record.previousId();
+            event.createdAt = record.createdAt();
+            event.data = record.data();
+            events.add(event);
+        }
+        if (!uniques.isEmpty()) {
+            db.insert(uniques);
+        }
+        db.insert(events);
+        // 写入失败时进程退出，因此可以在提交前推进:
+        long lastSequenceId = records.get(records.size() - 1).sequenceId();
+        this.mirroredSequenceId = lastSequenceId;
+        return lastSequenceId;
+    }
+
+    /**
+     * mirrorJournal()的事务提交后调用，此后这些uniqueId可以从数据库查到
+     */
+    public void onJournalMirrored(long lastSequenceId) {
+        forgetUncommittedUniqueKeys(lastSequenceId);
+    }
+
+    /**
+     * persist()的事务提交后调用，启用本地事件日志时要等mirrorJournal()写入数据库后才能查到
+     */
+    public void onPersisted(long lastSequenceId) {
+        if (this.journal == null) {
+            forgetUncommittedUniqueKeys(lastSequenceId);
+        }
+    }
+
+    private void forgetUncommittedUniqueKeys(long lastSequenceId) {
+        if (!this.uncommittedUniqueKeys.isEmpty()) {
+            this.uncommittedUniqueKeys.values().removeIf(sequenceId -> sequenceId <= lastSequenceId);
+        }
+    }
+
+    /**
+     * 定序器启动时调用，创建最近uniqueId缓存，并把数据库中全部uniqueId加入布隆过滤器。
+     * <p>
+     * 布隆过滤器必须包含全部已定序的uniqueId才不会漏判，因此启动时间随unique_events表的大小线性增长。
+     * 容量按表中的行数确定，至少为行数的两倍，保证加载后和运行一段时间后误判率仍接近1%，
+     * 否则超过容量后误判率升高，大部分批次又退化为每批一次IN查询。
+     */
+    public void loadUniqueIds() {
+        final int cacheSize = this.uniqueIdCacheSize;
+        this.recentUniqueIds = Collections.newSetFromMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        if (this.uniqueIdBloomFilterCapacity <= 0) {
+            logger.info("bloom filter of unique ids is disabled.");
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        Long count = db.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM " + db.getTable(UniqueEventEntity.class), Long.class);
+        long rows = count == null ? 0 : count;
+        int capacity = (int) Math.min(MAX_UNIQUE_ID_BLOOM_FILTER_CAPACITY, Math.max(this.uniqueIdBloomFilterCapacity, rows * 2));
+        if (capacity > this.uniqueIdBloomFilterCapacity) {
+            logger.warn("{} unique ids in database, increase bloom filter capacity from {} to {}.", rows,
+                    this.uniqueIdBloomFilterCapacity, capacity);
+        }
+        BloomFilter filter = new BloomFilter(capacity);
+        String lastUniqueId = "";
+        for (;;) {
+            List<UniqueEventEntity> uniques = db.from(UniqueEventEntity.class).where("uniqueId > ?", lastUniqueId)
+                    .orderBy("uniqueId").limit(LOAD_UNIQUE_ID_BATCH_SIZE).list();
+            for (UniqueEventEntity unique : uniques) {
+                filter.add(uniqueKey(unique.uniqueId));
+            }
+            if (uniques.size() < LOAD_UNIQUE_ID_BATCH_SIZE) {
+                break;
+            }
+            lastUniqueId = uniques.get(uniques.size() - 1).uniqueId;
+        }
+        this.uniqueIdFilter = filter;
+        logger.info("loaded {} unique ids into bloom filter of capacity {} in {} ms.", filter.size(), capacity,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 定序后等待写入数据库的一批消息，uniques为空时表示没有需要去重的消息
+     */
+    public record SequencedBatch(List<AbstractEvent> messages, List<EventEntity> events, List<UniqueEventEntity> uniques) {
+    }
+
     /**
-     * Set sequence for each message, persist into database as batch.
+     * Set sequence for each message. Call persist() to persist batches into database.
      *
-     * @return Sequenced messages.
+     * @return Sequenced batch.
      */
-    public List<AbstractEvent> sequenceMessages(final MessageTypes messageTypes, final AtomicLong sequence, final List<AbstractEvent> messages) throws Exception {
+    public SequencedBatch sequenceMessages(final MessageTypes messageTypes, final AtomicLong sequence, final List<AbstractEvent> messages) throws Exception {
         // 检测系统是否出现了时间倒退
         final long t = System.currentTimeMillis();
         if (t < this.lastTimestamp) {
             logger.warn("[Sequence] current time {} is turned back from {}!", t, this.lastTimestamp);
         }
-        // 利用UniqueEventEntity去重:
+        // 利用UniqueEventEntity去重，先一次找出本批中已定序过的uniqueId:
+        final Set<String> sequencedKeys = findSequencedUniqueKeys(messages);
         List<UniqueEventEntity> uniques = null;
         Set<String> uniqueKeys = null;
         List<AbstractEvent> sequencedMessages = new ArrayList<>(messages.size());  // 用于保存定序好的message
@@ -42,10 +212,12 @@ public class SequenceHandler extends AbstractDbService {
         for (AbstractEvent message : messages) {
             // 对于每一条消息，先根据uniqueId进行去重，然后为其设置sequenceId和previousId
             UniqueEventEntity unique = null;
+            String uniqueKey = null;
             final String uniqueId = message.uniqueId;
             if (uniqueId != null) {
-                // uniqueKeys在uniqueKeys中或在数据库中,则该消息为重复消息，跳过处理
-                if ((uniqueKeys != null && uniqueKeys.contains(uniqueId)) || db.fetch(UniqueEventEntity.class, uniqueId) != null) {
+                // uniqueId在本批之前的消息中或已定序过,则该消息为重复消息，跳过处理
+                uniqueKey = uniqueKey(uniqueId);
+                if ((uniqueKeys != null && uniqueKeys.contains(uniqueKey)) || sequencedKeys.contains(uniqueKey)) {
                     logger.warn("ignore processed unique message: {}", message);
                     continue;
                 }
@@ -59,11 +231,11 @@ public class SequenceHandler extends AbstractDbService {
                 if (uniqueKeys == null) {
                     uniqueKeys = new HashSet<>();
                 }
-                uniqueKeys.add(uniqueId);
+                uniqueKeys.add(uniqueKey);
                 logger.info("unique event {} sequenced.", uniqueId);
             }
             final long previousId = sequence.get();
-            final long currentId = sequence.getAndIncrement();
+            final long currentId = sequence.incrementAndGet();
 
             // 为message设置sequenceId和previousId
             message.sequenceId = currentId;
@@ -73,6 +245,7 @@ public class SequenceHandler extends AbstractDbService {
             // 如果此消息关联了UniqueEvent，给UniqueEvent加上相同的sequenceId：
             if (unique != null) {
                 unique.sequenceId = message.sequenceId;
+                this.uncommittedUniqueKeys.put(uniqueKey, currentId);
             }
             // 准备写入数据库的Event:
             EventEntity event = new EventEntity();
@@ -84,15 +257,101 @@ public class SequenceHandler extends AbstractDbService {
             events.add(event);
             sequencedMessages.add(message);
         }
-        if (uniques != null) {
+        if (uniqueKeys != null) {
+            // 定序后立即加入缓存，后续批次在本批写入数据库之前也能去重；写入失败时进程退出，缓存不会残留未入库的uniqueId:
+            rememberUniqueKeys(uniqueKeys);
+        }
+        return new SequencedBatch(sequencedMessages, events, uniques == null ? List.of() : uniques);
+    }
+
+    /**
+     * 在一个事务中把多批已定序的消息写入数据库，启用本地事件日志时只追加到日志，由mirrorJournal()异步写入数据库
+     */
+    public void persist(List<SequencedBatch> batches) throws IOException {
+        if (this.journal != null) {
+            appendJournal(batches);
+            return;
+        }
+        List<UniqueEventEntity> uniques = new ArrayList<>();
+        List<EventEntity> events = new ArrayList<>();
+        for (SequencedBatch batch : batches) {
+            uniques.addAll(batch.uniques());
+            events.addAll(batch.events());
+        }
+        if (!uniques.isEmpty()) {
             db.insert(uniques);  // 这是UniqueEventEntity入库，用于前面去重处理
         }
         db.insert(events);  // 这是EventEntity入库，用于丢失事件追溯
-        return sequencedMessages;
+    }
+
+    void appendJournal(List<SequencedBatch> batches) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        for (SequencedBatch batch : batches) {
+            Map<Long, String> uniqueIds = new HashMap<>();
+            for (UniqueEventEntity unique : batch.uniques()) {
+                uniqueIds.put(unique.sequenceId, unique.uniqueId);
+            }
+            for (EventEntity event : batch.events()) {
+                records.add(new JournalRecord(event.sequenceId, event.previousId, event.createdAt,
+                        uniqueIds.get(event.sequenceId), event.data));
+            }
+        }
+        this.journal.append(records);
+    }
+
+    /**
+     * 找出messages中已定序过的uniqueId：命中最近uniqueId缓存的一定已定序，布隆过滤器判定不存在的一定未定序，
+     * 其余的用一条IN查询一次确认，返回统一转换后的uniqueKey
+     */
+    Set<String> findSequencedUniqueKeys(List<AbstractEvent> messages) {
+        Set<String> sequenced = new HashSet<>();
+        Set<String> lookups = null;
+        for (AbstractEvent message : messages) {
+            if (message.uniqueId == null) {
+                continue;
+            }
+            String uniqueKey = uniqueKey(message.uniqueId);
+            if (this.recentUniqueIds.contains(uniqueKey) || this.uncommittedUniqueKeys.containsKey(uniqueKey)) {
+                sequenced.add(uniqueKey);
+            } else if (this.uniqueIdFilter == null || this.uniqueIdFilter.mightContain(uniqueKey)) {
+                if (lookups == null) {
+                    lookups = new HashSet<>();
+                }
+                lookups.add(message.uniqueId);
+            }
+        }
+        if (lookups != null) {
+            String placeholders = String.join(", ", Collections.nCopies(lookups.size(), "?"));
+            List<UniqueEventEntity> found = db.from(UniqueEventEntity.class)
+                    .where("uniqueId IN (" + placeholders + ")", lookups.toArray()).list();
+            for (UniqueEventEntity unique : found) {
+                sequenced.add(uniqueKey(unique.uniqueId));
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("lookup {} unique ids in database, {} found.", lookups.size(), found.size());
+            }
+        }
+        return sequenced;
+    }
+
+    void rememberUniqueKeys(Set<String> uniqueKeys) {
+        this.recentUniqueIds.addAll(uniqueKeys);
+        if (this.uniqueIdFilter != null) {
+            for (String uniqueKey : uniqueKeys) {
+                this.uniqueIdFilter.add(uniqueKey);
+            }
+        }
+    }
+
+    /**
+     * unique_events表的字符集不区分大小写，缓存和布隆过滤器也按小写比较，与数据库的判断一致
+     */
+    static String uniqueKey(String uniqueId) {
+        return uniqueId.toLowerCase(Locale.ROOT);
     }
 
     /**
-     * 用于定序器重启后正确初始化下一个序列号
+     * 用于定序器重启后正确初始化下一个序列号，启用本地事件日志时必须先把日志全部写入数据库
      */
     public long getMaxSequenceId() {
         EventEntity last = db.from(EventEntity.class).orderBy("sequenceId").desc().first();
@@ -5,32 +5,72 @@ import jakarta.annotation.PreDestroy;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.listener.CommonErrorHandler;
 import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.stereotype.Component;
 import org.warpexchange_learning.common.message.event.AbstractEvent;
 import org.warpexchange_learning.common.messaging.*;
 import org.warpexchange_learning.common.support.LoggerSupport;
+import org.warpexchange_learning.tradingsequencer.sequencer.SequenceHandler.SequencedBatch;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 定序流水线：消费线程为每批消息定序后交给写入线程，写入线程把积压的多批消息在一个事务中写入数据库并提交offset，
+ * 再交给发送线程一次发送并flush。写入第N批时第N+1批已在定序，发送第N批时第N+1批已在写入，
+ * 每个阶段只有一个线程且按顺序处理，消息总是先写入数据库再发送。
+ * <p>
+ * 配置了本地事件日志时，写入线程只把事件追加到日志，由mirror线程异步写入数据库，消息在追加到日志后即可发送。
+ * 日志按ALWAYS刷盘时，每组批次追加后刷盘一次再提交offset和发送，仍然保证先持久化再发送。
+ */
 @Component
 public class SequenceService extends LoggerSupport implements CommonErrorHandler {
 
     private static final String GROUP_ID = "SequencerGroup";
 
     @Autowired
-    private SequenceHandler sequenceHandler;
+    SequenceHandler sequenceHandler;
 
     @Autowired
-    private MessagingFactory messagingFactory;
+    MessagingFactory messagingFactory;
 
     @Autowired
-    private MessageTypes messageTypes;
+    MessageTypes messageTypes;
 
     private MessageProducer<AbstractEvent> messageProducer;
 
+    @Value("#{exchangeConfiguration.sequencer.pipelineDepth}")
+    int pipelineDepth = 4;
+
+    @Value("#{exchangeConfiguration.sequencer.pipelineTimeout}")
+    Duration pipelineTimeout = Duration.ofSeconds(60);
+
+    /**
+     * 已定序的一批消息，写入数据库后调用acknowledge提交这批消息的offset
+     */
+    record PendingBatch(SequencedBatch batch, Runnable acknowledge) {
+    }
+
+    // 已定序待写入数据库的批，以及已写入数据库待发送的消息:
+    private BlockingQueue<PendingBatch> sequencedQueue;
+    private BlockingQueue<List<AbstractEvent>> persistedQueue;
+    private Thread persistThread;
+    private Thread sendThread;
+
+    // 启用本地事件日志时，由该线程把日志异步写入数据库:
+    private Thread mirrorThread;
+    // 每次从日志写入数据库的最大事件数，以及没有新事件时的等待时间:
+    static final int MIRROR_BATCH_SIZE = 1000;
+    static final long MIRROR_IDLE_MILLIS = 10;
+
     // 全局唯一递增ID:
     private AtomicLong sequence;
     private Thread jobThread;
@@ -40,18 +80,14 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
     public void init() {
         Thread thread = new Thread(() -> {
             logger.info("start sequence job...");
-            // 向交易引擎发送定好序的请求
-            this.messageProducer = this.messagingFactory.createMessageProducer(Messaging.Topic.TRADE, AbstractEvent.class);
-            // find max event id:
-            this.sequence = new AtomicLong(this.sequenceHandler.getMaxSequenceId());
+            startPipeline();
 
             // init consumer:
             logger.info("create message consumer for {}...", getClass().getName());
             // share same group id:
             // 接受来自API模块的消息，即创建订单请求
-            MessageConsumer consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.SEQUENCE, GROUP_ID, this::processMessages, this);
-            // start running:
-            this.running = true;
+            // 写入数据库后才提交offset:
+            MessageConsumer consumer = this.messagingFactory.createAcknowledgingBatchMessageListener(Messaging.Topic.SEQUENCE, GROUP_ID, this::processMessages, this);
             // 这个忙等循环是为了保持线程不退出，让producer和consumer能一直发挥作用
             while (running) {
                 try {
@@ -69,10 +105,50 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
         this.jobThread.start();
     }
 
+    /**
+     * 初始化序列号和uniqueId缓存，启动写入、发送和mirror线程，之后才能调用processMessages()
+     */
+    void startPipeline() {
+        // 向交易引擎发送定好序的请求
+        this.messageProducer = this.messagingFactory.createMessageProducer(Messaging.Topic.TRADE, AbstractEvent.class);
+        // 先把本地事件日志中尚未写入数据库的事件全部写入，之后数据库中的事件和uniqueId才是完整的:
+        boolean journalEnabled = openJournal();
+        // find max event id:
+        this.sequence = new AtomicLong(this.sequenceHandler.getMaxSequenceId());
+        // 加载已定序的uniqueId用于去重:
+        this.sequenceHandler.loadUniqueIds();
+        // 启动写入和发送线程:
+        this.sequencedQueue = new ArrayBlockingQueue<>(this.pipelineDepth);
+        this.persistedQueue = new ArrayBlockingQueue<>(this.pipelineDepth);
+        this.persistThread = new Thread(this::runPersistThread, "sequence-persist");
+        this.persistThread.start();
+        this.sendThread = new Thread(this::runSendThread, "sequence-send");
+        this.sendThread.start();
+        if (journalEnabled) {
+            this.mirrorThread = new Thread(this::runMirrorThread, "sequence-mirror");
+            this.mirrorThread.start();
+        }
+        // start running:
+        this.running = true;
+    }
+
+    /**
+     * 停止写入、发送和mirror线程，未写入数据库的批没有提交offset，重启后会重新定序
+     */
+    void stopPipeline() {
+        running = false;
+        for (Thread thread : new Thread[]{this.persistThread, this.sendThread, this.mirrorThread}) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
     @PreDestroy
     public void shutdown() {
         logger.info("shutdown sequence service...");
-        running = false;
+        stopPipeline();
+        this.sequenceHandler.closeJournal();
         if (jobThread != null) {
             jobThread.interrupt();
             try {
@@ -96,12 +172,8 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
         panic();
     }
 
-    private void sendMessages(List<AbstractEvent> messages) {
-        this.messageProducer.sendMessages(messages);
-    }
-
-    // 接收消息并定序再发送:
-    private synchronized void processMessages(List<AbstractEvent> messages) {
+    // 接收消息并定序，交给写入线程:
+    synchronized void processMessages(List<AbstractEvent> messages, Runnable acknowledge) {
         if (!running || crash) {
             panic();
             return;
@@ -111,9 +183,14 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
         }
         long start = System.currentTimeMillis();
         // 定序后的事件消息:
-        List<AbstractEvent> sequenced = null;
+        SequencedBatch sequenced = null;
         try {
             sequenced = this.sequenceHandler.sequenceMessages(this.messageTypes, this.sequence, messages);
+            // 写入线程积压pipelineDepth批时在此等待，等待期间消费者不会poll，
+            // 超过pipelineTimeout说明写入已停滞，退出而不是等到被踢出消费组后由其他成员重复定序:
+            if (!this.sequencedQueue.offer(new PendingBatch(sequenced, acknowledge), this.pipelineTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("Persist thread is stalled for " + this.pipelineTimeout.toMillis() + " ms.");
+            }
         } catch (Throwable e) {
             // 定序出错时进程退出:
             logger.error("exception when do sequence", e);
@@ -126,8 +203,119 @@ public class SequenceService extends LoggerSupport implements CommonErrorHandler
             logger.info("sequenced {} messages in {} ms. current sequence id: {}", messages.size(), (end - start),
                     this.sequence.get());
         }
-        // 将定序好的消息发给TRADE，也即交易引擎模块
-        sendMessages(sequenced);
+    }
+
+    /**
+     * 该线程取出全部已定序的批，在一个事务中写入数据库，提交offset后交给发送线程
+     */
+    private void runPersistThread() {
+        List<PendingBatch> pendings = new ArrayList<>(this.pipelineDepth);
+        List<SequencedBatch> batches = new ArrayList<>(this.pipelineDepth);
+        try {
+            for (;;) {
+                pendings.add(this.sequencedQueue.take());
+                this.sequencedQueue.drainTo(pendings);
+                long start = System.currentTimeMillis();
+                List<AbstractEvent> messages = new ArrayList<>();
+                for (PendingBatch pending : pendings) {
+                    batches.add(pending.batch());
+                    messages.addAll(pending.batch().messages());
+                }
+                this.sequenceHandler.persist(batches);
+                if (!messages.isEmpty()) {
+                    // 事务已提交，之后由数据库去重:
+                    this.sequenceHandler.onPersisted(messages.get(messages.size() - 1).sequenceId);
+                }
+                for (PendingBatch pending : pendings) {
+                    pending.acknowledge().run();
+                }
+                if (logger.isInfoEnabled()) {
+                    logger.info("persisted {} batches of {} messages in {} ms.", pendings.size(), messages.size(),
+                            System.currentTimeMillis() - start);
+                }
+                pendings.clear();
+                batches.clear();
+                if (!messages.isEmpty()) {
+                    this.persistedQueue.put(messages);
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("{} was interrupted.", Thread.currentThread().getName());
+        } catch (Throwable e) {
+            // 写入出错时进程退出:
+            logger.error("exception when persist sequenced messages", e);
+            panic();
+        }
+    }
+
+    /**
+     * 该线程取出全部已写入数据库的消息，发给TRADE，也即交易引擎模块，每次只flush一次
+     */
+    private void runSendThread() {
+        List<List<AbstractEvent>> persisted = new ArrayList<>(this.pipelineDepth);
+        List<AbstractEvent> messages = new ArrayList<>();
+        try {
+            for (;;) {
+                persisted.add(this.persistedQueue.take());
+                this.persistedQueue.drainTo(persisted);
+                for (List<AbstractEvent> list : persisted) {
+                    messages.addAll(list);
+                }
+                this.messageProducer.sendMessagesAndFlush(messages);
+                persisted.clear();
+                messages.clear();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("{} was interrupted.", Thread.currentThread().getName());
+        } catch (Throwable e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // 等待发送结果时被shutdown()中断:
+                logger.warn("{} was interrupted.", Thread.currentThread().getName());
+                return;
+            }
+            // 发送出错时进程退出，交易引擎可从数据库读取已写入但未收到的事件:
+            logger.error("exception when send sequenced messages", e);
+            panic();
+        }
+    }
+
+    private boolean openJournal() {
+        try {
+            if (!this.sequenceHandler.openJournal()) {
+                return false;
+            }
+        } catch (Exception e) {
+            logger.error("open journal failed", e);
+            panic();
+        }
+        long lastSequenceId;
+        while ((lastSequenceId = this.sequenceHandler.mirrorJournal(MIRROR_BATCH_SIZE)) > 0) {
+            this.sequenceHandler.onJournalMirrored(lastSequenceId);
+            logger.info("mirrored journal to database up to sequence id {}.", lastSequenceId);
+        }
+        return true;
+    }
+
+    /**
+     * 该线程把追加到本地事件日志的事件成批写入数据库，供查询和交易引擎追赶时读取
+     */
+    private void runMirrorThread() {
+        try {
+            for (;;) {
+                long lastSequenceId = this.sequenceHandler.mirrorJournal(MIRROR_BATCH_SIZE);
+                if (lastSequenceId > 0) {
+                    this.sequenceHandler.onJournalMirrored(lastSequenceId);
+                } else {
+                    Thread.sleep(MIRROR_IDLE_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("{} was interrupted.", Thread.currentThread().getName());
+        } catch (Throwable e) {
+            // 写入出错时进程退出，重启后从日志中继续写入:
+            logger.error("exception when mirror journal to database", e);
+            panic();
+        }
     }
 
     private void panic() {
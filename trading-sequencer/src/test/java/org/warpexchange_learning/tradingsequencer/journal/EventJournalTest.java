@@ -0,0 +1,109 @@
+package org.warpexchange_learning.tradingsequencer.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.warpexchange_learning.common.enums.FsyncPolicy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventJournalTest {
+
+    static final int SEGMENT_SIZE = JournalSegmentTest.RECORD_SIZE * 100;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendAndReadAcrossSegments() throws IOException {
+        EventJournal journal = openJournal();
+        appendRecords(journal, 1, 1000);
+        assertEquals(2000, journal.getLastSequenceId());
+        assertTrue(listSegments().size() >= 10);
+        for (long from : new long[]{0, 1, 2, 199, 200, 201, 1001, 1999, 2000}) {
+            List<JournalRecord> records = journal.read(from, 250);
+            long first = Math.max(1, (from + 1) / 2);
+            assertEquals(Math.min(250, 1000 - first + 1), records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(JournalSegmentTest.record(first + i), records.get(i));
+            }
+        }
+        assertTrue(journal.read(2001, 10).isEmpty());
+    }
+
+    @Test
+    void reopenContinuesLastSegment() throws IOException {
+        EventJournal journal = openJournal();
+        appendRecords(journal, 1, 250);
+        journal.flush();
+
+        EventJournal reopened = openJournal();
+        assertEquals(500, reopened.getLastSequenceId());
+        appendRecords(reopened, 251, 300);
+        List<JournalRecord> records = reopened.read(0, 1000);
+        assertEquals(300, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(JournalSegmentTest.record(i + 1), records.get(i));
+        }
+    }
+
+    @Test
+    void reopenDiscardsTornTailOfLastSegment() throws IOException {
+        EventJournal journal = openJournal();
+        appendRecords(journal, 1, 150);
+        List<Path> segments = listSegments();
+        // 最后一个段中有50条记录，破坏最后一条:
+        JournalSegmentTest.corrupt(segments.get(segments.size() - 1), JournalSegmentTest.RECORD_SIZE * 50L - 1);
+
+        EventJournal reopened = openJournal();
+        assertEquals(298, reopened.getLastSequenceId());
+        appendRecords(reopened, 150, 151);
+        assertEquals(151, reopened.read(0, 1000).size());
+    }
+
+    @Test
+    void corruptedSealedSegmentIsRejected() throws IOException {
+        EventJournal journal = openJournal();
+        appendRecords(journal, 1, 150);
+        JournalSegmentTest.corrupt(listSegments().get(0), JournalSegmentTest.RECORD_SIZE * 10L - 1);
+        assertThrows(IllegalStateException.class, this::openJournal);
+    }
+
+    @Test
+    void recordLargerThanSegmentIsRejected() throws IOException {
+        EventJournal journal = openJournal();
+        List<JournalRecord> records = List.of(new JournalRecord(1, 0, 0, null, "x".repeat(SEGMENT_SIZE)));
+        assertThrows(IllegalArgumentException.class, () -> journal.append(records));
+    }
+
+    EventJournal openJournal() throws IOException {
+        return new EventJournal(this.dir, SEGMENT_SIZE, FsyncPolicy.ALWAYS, Duration.ofMillis(10));
+    }
+
+    List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(this.dir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    static void appendRecords(EventJournal journal, int from, int to) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            records.add(JournalSegmentTest.record(i));
+            // 每批10条:
+            if (records.size() == 10 || i == to) {
+                journal.append(records);
+                records.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.warpexchange_learning.tradingsequencer.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalSegmentTest {
+
+    // record()生成的每条记录占用的字节数：头部 + 26 + uniqueId + data:
+    static final int RECORD_SIZE = JournalSegment.HEADER_SIZE + 26 + 6 + 6;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readFromAnySequenceIdUsesSparseIndex() throws IOException {
+        JournalSegment segment = createSegment(1 << 20);
+        // sequenceId为2, 4, 6...，使部分fromSequenceId不存在:
+        int count = JournalSegment.INDEX_INTERVAL * 5 + 7;
+        appendRecords(segment, 1, count);
+        assertEquals(count * 2L, segment.lastSequenceId());
+        for (long from = 0; from <= count * 2L + 2; from++) {
+            List<JournalRecord> records = new ArrayList<>();
+            int n = segment.read(from, 10, records);
+            assertEquals(records.size(), n);
+            long expected = Math.max(2, (from + 1) / 2 * 2);
+            assertEquals(Math.min(10, Math.max(0, (count * 2L - expected) / 2 + 1)), n);
+            for (JournalRecord record : records) {
+                assertEquals(record(expected / 2), record);
+                expected += 2;
+            }
+        }
+    }
+
+    @Test
+    void nullUniqueIdRoundTrip() throws IOException {
+        JournalSegment segment = createSegment(4096);
+        assertTrue(segment.append(new JournalRecord(1, 0, 100, null, "数据")));
+        List<JournalRecord> records = new ArrayList<>();
+        segment.read(1, 10, records);
+        assertNull(records.get(0).uniqueId());
+        assertEquals("数据", records.get(0).data());
+    }
+
+    @Test
+    void appendReturnsFalseWhenFull() throws IOException {
+        JournalSegment segment = createSegment(RECORD_SIZE * 3 + 10);
+        assertTrue(segment.append(record(1)));
+        assertTrue(segment.append(record(2)));
+        assertTrue(segment.append(record(3)));
+        assertFalse(segment.append(record(4)));
+        assertEquals(6, segment.lastSequenceId());
+    }
+
+    @Test
+    void recoverRebuildsIndex() throws IOException {
+        JournalSegment segment = createSegment(1 << 20);
+        appendRecords(segment, 1, 200);
+        segment.force();
+
+        JournalSegment reopened = new JournalSegment(segment.path, 2, 1 << 20);
+        assertFalse(reopened.recover());
+        assertEquals(400, reopened.lastSequenceId());
+        List<JournalRecord> records = new ArrayList<>();
+        reopened.read(301, 1000, records);
+        assertEquals(50, records.size());
+        assertEquals(record(151), records.get(0));
+        // 恢复后继续追加:
+        assertTrue(reopened.append(record(201)));
+        records.clear();
+        reopened.read(400, 10, records);
+        assertEquals(List.of(record(200), record(201)), records);
+    }
+
+    @Test
+    void recoverDiscardsCorruptedTail() throws IOException {
+        JournalSegment segment = createSegment(1 << 20);
+        appendRecords(segment, 1, 100);
+        segment.force();
+        // 最后一条记录的内容只写了一部分:
+        corrupt(segment.path, RECORD_SIZE * 99L + RECORD_SIZE - 1);
+
+        JournalSegment reopened = new JournalSegment(segment.path, 2, 1 << 20);
+        assertTrue(reopened.recover());
+        assertEquals(198, reopened.lastSequenceId());
+        assertTrue(reopened.append(record(100)));
+        reopened.force();
+
+        JournalSegment again = new JournalSegment(segment.path, 2, 1 << 20);
+        assertFalse(again.recover());
+        assertEquals(200, again.lastSequenceId());
+        List<JournalRecord> records = new ArrayList<>();
+        again.read(0, 1000, records);
+        assertEquals(100, records.size());
+        assertEquals(record(100), records.get(99));
+    }
+
+    @Test
+    void recoverDiscardsTornHeader() throws IOException {
+        JournalSegment segment = createSegment(1 << 16);
+        appendRecords(segment, 1, 10);
+        segment.force();
+        // 末尾只写入了长度，内容和CRC都没有写入:
+        try (RandomAccessFile file = new RandomAccessFile(segment.path.toFile(), "rw")) {
+            file.seek(RECORD_SIZE * 10L);
+            file.writeInt(1000);
+        }
+        JournalSegment reopened = new JournalSegment(segment.path, 2, 1 << 16);
+        assertTrue(reopened.recover());
+        assertEquals(20, reopened.lastSequenceId());
+        assertTrue(reopened.append(record(11)));
+        List<JournalRecord> records = new ArrayList<>();
+        reopened.read(20, 10, records);
+        assertEquals(List.of(record(10), record(11)), records);
+    }
+
+    JournalSegment createSegment(int capacity) throws IOException {
+        JournalSegment segment = new JournalSegment(this.dir.resolve("segment.journal"), 2, capacity);
+        assertFalse(segment.recover());
+        return segment;
+    }
+
+    static void appendRecords(JournalSegment segment, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            assertTrue(segment.append(record(i)));
+        }
+    }
+
+    /**
+     * 第i条记录，sequenceId为2i
+     */
+    static JournalRecord record(long i) {
+        return new JournalRecord(i * 2, i * 2 - 2, 1_700_000_000_000L + i, String.format("u%05d", i), String.format("d%05d", i));
+    }
+
+    static void corrupt(Path path, long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xff);
+        }
+    }
+}
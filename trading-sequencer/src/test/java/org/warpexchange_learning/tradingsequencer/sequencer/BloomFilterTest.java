@@ -0,0 +1,63 @@
+package org.warpexchange_learning.tradingsequencer.sequencer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(100_000);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add("order-" + i);
+        }
+        assertEquals(100_000, filter.size());
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.mightContain("order-" + i));
+        }
+    }
+
+    @Test
+    void noFalseNegativesBeyondExpectedElements() {
+        BloomFilter filter = new BloomFilter(1000);
+        String[] values = new String[20_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = UUID.randomUUID().toString();
+            filter.add(values[i]);
+        }
+        for (String value : values) {
+            assertTrue(filter.mightContain(value));
+        }
+    }
+
+    @Test
+    void falsePositiveRateIsBounded() {
+        BloomFilter filter = new BloomFilter(100_000);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add("unique-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        // 按1%误判率设计，留出余量:
+        assertTrue(falsePositives < 2000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(0);
+        assertEquals(0, filter.size());
+        assertFalse(filter.mightContain(""));
+        assertFalse(filter.mightContain("order-1"));
+        filter.add("");
+        assertTrue(filter.mightContain(""));
+    }
+}
@@ -0,0 +1,96 @@
+package org.warpexchange_learning.tradingsequencer.sequencer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.warpexchange_learning.common.db.DbTemplate;
+import org.warpexchange_learning.common.message.event.AbstractEvent;
+import org.warpexchange_learning.common.message.event.TransferEvent;
+import org.warpexchange_learning.common.messaging.MessageTypes;
+import org.warpexchange_learning.common.model.trade.UniqueEventEntity;
+import org.warpexchange_learning.tradingsequencer.sequencer.SequenceHandler.SequencedBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 不使用本地事件日志时，已定序的uniqueId在写入数据库的事务提交前被最近uniqueId缓存淘汰，仍然不能重复定序
+ */
+class SequenceHandlerTest {
+
+    SequenceHandler handler;
+    MessageTypes messageTypes;
+    final AtomicLong sequence = new AtomicLong();
+    // 模拟的unique_events表，persist()后才加入:
+    final Map<String, UniqueEventEntity> committed = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), any())).thenAnswer(invocation -> {
+            // 只有uniqueId IN (...)查询，参数从第3个开始:
+            List<UniqueEventEntity> found = new ArrayList<>();
+            Object[] args = invocation.getArguments();
+            for (int i = 2; i < args.length; i++) {
+                UniqueEventEntity unique = this.committed.get(args[i]);
+                if (unique != null) {
+                    found.add(unique);
+                }
+            }
+            return found;
+        });
+        this.handler = new SequenceHandler();
+        ReflectionTestUtils.setField(this.handler, "db", new DbTemplate(jdbcTemplate));
+        this.handler.uniqueIdCacheSize = 1;
+        this.handler.uniqueIdBloomFilterCapacity = 0;
+        this.handler.loadUniqueIds();
+        this.messageTypes = new MessageTypes();
+        this.messageTypes.init();
+    }
+
+    @Test
+    void uncommittedUniqueIdIsNotSequencedTwiceAfterEviction() throws Exception {
+        SequencedBatch first = sequence("a");
+        // 缓存只能保存1个uniqueId，"a"被淘汰，但还没有写入数据库:
+        SequencedBatch second = sequence("b");
+        assertEquals(1, second.messages().size());
+        assertEquals(0, sequence("A").messages().size());
+
+        commit(first, second);
+        // 提交后由数据库去重:
+        assertEquals(0, sequence("a").messages().size());
+        assertEquals(0, sequence("b").messages().size());
+        assertEquals(1, sequence("c").messages().size());
+        assertEquals(3, this.sequence.get());
+    }
+
+    SequencedBatch sequence(String uniqueId) throws Exception {
+        TransferEvent event = new TransferEvent();
+        event.uniqueId = uniqueId;
+        event.fromUserId = 1L;
+        event.toUserId = 2L;
+        return this.handler.sequenceMessages(this.messageTypes, this.sequence, List.<AbstractEvent>of(event));
+    }
+
+    void commit(SequencedBatch... batches) {
+        long lastSequenceId = 0;
+        for (SequencedBatch batch : batches) {
+            for (UniqueEventEntity unique : batch.uniques()) {
+                this.committed.put(unique.uniqueId, unique);
+            }
+            lastSequenceId = batch.events().get(batch.events().size() - 1).sequenceId;
+        }
+        this.handler.onPersisted(lastSequenceId);
+    }
+}
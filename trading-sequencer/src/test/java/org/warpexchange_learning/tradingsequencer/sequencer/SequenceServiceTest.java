@@ -0,0 +1,169 @@
+package org.warpexchange_learning.tradingsequencer.sequencer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.warpexchange_learning.common.message.event.AbstractEvent;
+import org.warpexchange_learning.common.message.event.TransferEvent;
+import org.warpexchange_learning.common.messaging.MessageProducer;
+import org.warpexchange_learning.common.messaging.MessageTypes;
+import org.warpexchange_learning.common.messaging.Messaging;
+import org.warpexchange_learning.common.messaging.MessagingFactory;
+import org.warpexchange_learning.tradingsequencer.sequencer.SequenceHandler.SequencedBatch;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用模拟的写入和发送验证定序流水线：sequenceId连续且按接收顺序发送，积压时每条消息仍先写入再发送
+ */
+class SequenceServiceTest {
+
+    SequenceService service;
+
+    // 按发生顺序记录写入、提交offset和发送，如"persist:3"、"ack:1"、"send:3":
+    final List<String> log = Collections.synchronizedList(new ArrayList<>());
+    final List<AbstractEvent> sent = Collections.synchronizedList(new ArrayList<>());
+    // 写入线程每次写入前等待persistReleased:
+    final CountDownLatch persistStarted = new CountDownLatch(1);
+    CountDownLatch persistReleased = new CountDownLatch(0);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SequenceHandler handler = new SequenceHandler();
+        handler.uniqueIdBloomFilterCapacity = 0;
+        handler = spy(handler);
+        doReturn(0L).when(handler).getMaxSequenceId();
+        doAnswer(invocation -> {
+            this.persistStarted.countDown();
+            assertTrue(this.persistReleased.await(10, TimeUnit.SECONDS));
+            List<SequencedBatch> batches = invocation.getArgument(0);
+            for (SequencedBatch batch : batches) {
+                batch.events().forEach(event -> this.log.add("persist:" + event.sequenceId));
+            }
+            return null;
+        }).when(handler).persist(anyList());
+
+        MessageProducer<AbstractEvent> producer = message -> {
+            this.log.add("send:" + message.sequenceId);
+            this.sent.add(message);
+        };
+        MessagingFactory messagingFactory = mock(MessagingFactory.class);
+        when(messagingFactory.createMessageProducer(Messaging.Topic.TRADE, AbstractEvent.class)).thenReturn(producer);
+
+        MessageTypes messageTypes = new MessageTypes();
+        messageTypes.init();
+
+        this.service = new SequenceService();
+        this.service.sequenceHandler = handler;
+        this.service.messagingFactory = messagingFactory;
+        this.service.messageTypes = messageTypes;
+        this.service.pipelineTimeout = Duration.ofSeconds(30);
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.service.stopPipeline();
+    }
+
+    @Test
+    void sequencesAreContiguousAndSentInOrder() throws Exception {
+        this.service.pipelineDepth = 2;
+        this.service.startPipeline();
+        List<String> refIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            List<AbstractEvent> batch = createBatch(i, 1 + i % 5);
+            batch.forEach(event -> refIds.add(event.refId));
+            int n = i;
+            this.service.processMessages(batch, () -> this.log.add("ack:" + n));
+        }
+        awaitSent(refIds.size());
+        for (int i = 0; i < refIds.size(); i++) {
+            AbstractEvent event = this.sent.get(i);
+            assertEquals(refIds.get(i), event.refId);
+            assertEquals(i + 1, event.sequenceId);
+            assertEquals(i, event.previousId);
+        }
+        // 每批只提交一次offset，且按接收顺序提交:
+        List<String> acks = this.log.stream().filter(s -> s.startsWith("ack:")).toList();
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ack:" + i, acks.get(i));
+        }
+    }
+
+    @Test
+    void persistsBeforeSendWhenPipelineIsFull() throws Exception {
+        this.service.pipelineDepth = 1;
+        this.persistReleased = new CountDownLatch(1);
+        this.service.startPipeline();
+        AtomicInteger returned = new AtomicInteger();
+        Thread consumer = new Thread(() -> {
+            for (int i = 0; i < 4; i++) {
+                int n = i;
+                this.service.processMessages(createBatch(i, 3), () -> this.log.add("ack:" + n));
+                returned.incrementAndGet();
+            }
+        });
+        consumer.start();
+        // 第1批在写入中，第2批在队列中，第3批等待队列空闲:
+        assertTrue(this.persistStarted.await(10, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (returned.get() < 2 || consumer.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.currentTimeMillis() < deadline, "consumer is not blocked by full pipeline");
+            Thread.sleep(1);
+        }
+        assertEquals(2, returned.get());
+        assertTrue(this.sent.isEmpty());
+        assertTrue(this.log.isEmpty());
+
+        this.persistReleased.countDown();
+        consumer.join(10_000);
+        assertEquals(4, returned.get());
+        awaitSent(12);
+        List<String> log = List.copyOf(this.log);
+        for (AbstractEvent event : this.sent) {
+            long seq = event.sequenceId;
+            int batch = (int) (seq - 1) / 3;
+            int persisted = log.indexOf("persist:" + seq);
+            assertTrue(persisted >= 0);
+            assertTrue(persisted < log.indexOf("ack:" + batch));
+            assertTrue(log.indexOf("ack:" + batch) < log.indexOf("send:" + seq));
+        }
+    }
+
+    void awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (this.sent.size() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "sent " + this.sent.size() + " of " + count);
+            Thread.sleep(1);
+        }
+        Thread.sleep(10);
+        assertEquals(count, this.sent.size());
+    }
+
+    static List<AbstractEvent> createBatch(int batch, int size) {
+        List<AbstractEvent> events = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TransferEvent event = new TransferEvent();
+            event.refId = "ref-" + batch + "-" + i;
+            event.fromUserId = 1L;
+            event.toUserId = 2L;
+            events.add(event);
+        }
+        return events;
+    }
+}